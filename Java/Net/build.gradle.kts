@@ -69,12 +69,20 @@ android {
             withJavadocJar()
         }
     }
+    // Benchmarks are started from main and they are not run as unit tests.
+    testOptions {
+        unitTests.all {
+            it.exclude("**/*Benchmark*")
+        }
+    }
     buildFeatures {
         viewBinding = true
+        aidl = true
     }
 }
 
 dependencies {
+    api(project(":NetCore"))
     implementation(libs.guruxCommonAndroid)
     implementation(libs.appcompat)
     implementation(libs.material)
@@ -167,6 +175,8 @@ jreleaser {
                     password.set(findProperty("sonatypePassword") as String)
                     applyMavenCentralRules.set(false)
                     stagingRepositories.add("build/staging-deploy")
+                    // Networking core is published to its own staging repository.
+                    stagingRepositories.add("../NetCore/build/staging-deploy")
                 }
             }
         }
@@ -0,0 +1,421 @@
+//
+// --------------------------------------------------------------------------
+//  Gurux Ltd
+// 
+//
+//
+// Filename:        $HeadURL$
+//
+// Version:         $Revision$,
+//                  $Date$
+//                  $Author$
+//
+// Copyright (c) Gurux Ltd
+//
+//---------------------------------------------------------------------------
+//
+//  DESCRIPTION
+//
+// This file is a part of Gurux Device Framework.
+//
+// Gurux Device Framework is Open Source software; you can redistribute it
+// and/or modify it under the terms of the GNU General Public License 
+// as published by the Free Software Foundation; version 2 of the License.
+// Gurux Device Framework is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of 
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+// See the GNU General Public License for more details.
+//
+// More information of Gurux products: http://www.gurux.org
+//
+// This code is licensed under the GNU General Public License v2. 
+// Full text may be retrieved at http://www.gnu.org/licenses/gpl-2.0.txt
+//---------------------------------------------------------------------------
+
+package gurux.net;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import gurux.common.ReceiveEventArgs;
+
+/**
+ * Writes received data straight to a file.
+ * <p>
+ * Sink is attached to the connection as a receive handler, so received
+ * bytes are written from the receive buffer to the file channel or to the
+ * memory-mapped region without collecting them in memory. Transfer is
+ * completed when the given amount of bytes is received or when end of
+ * packet is found. Bytes that are received after the completion are sent to
+ * the listeners of the connection.
+ * </p>
+ * <pre>
+ * GXFileSink sink = new GXFileSink(file.getChannel(), 0);
+ * sink.setCount(size);
+ * sink.attach(net);
+ * net.send(request);
+ * if (!sink.waitForCompletion(60000)) {
+ *     ...
+ * }
+ * </pre>
+ */
+public class GXFileSink implements IGXReceiveHandler {
+
+    /**
+     * File channel or null if mapped region is used.
+     */
+    private final FileChannel mFile;
+
+    /**
+     * Memory-mapped region or null if file channel is used.
+     */
+    private final ByteBuffer mRegion;
+
+    /**
+     * Signaled when the transfer is completed.
+     */
+    private final CountDownLatch mCompleted = new CountDownLatch(1);
+
+    /**
+     * Position in the file where next bytes are written.
+     */
+    private long mPosition;
+
+    /**
+     * Amount of bytes to receive or -1 if count is not used.
+     */
+    private long mCount = -1;
+
+    /**
+     * End of packet or null.
+     */
+    private byte[] mEop;
+
+    /**
+     * Partial match table of the end of packet.
+     */
+    private int[] mEopTable;
+
+    /**
+     * Amount of matched end of packet bytes.
+     */
+    private int mMatched;
+
+    /**
+     * Progress listener or null.
+     */
+    private IGXProgressListener mProgress;
+
+    /**
+     * Amount of written bytes.
+     */
+    private volatile long mWritten;
+
+    /**
+     * Occurred error or null.
+     */
+    private volatile Exception mError;
+
+    /**
+     * Attached connection.
+     */
+    private volatile GXNet mNet;
+
+    /**
+     * Receive handler that was used before the sink was attached.
+     */
+    private IGXReceiveHandler mPrevious;
+
+    /**
+     * Receive buffer that is wrapped.
+     */
+    private byte[] mWrappedArray;
+
+    /**
+     * Wrapper of the receive buffer.
+     */
+    private ByteBuffer mWrapper;
+
+    /**
+     * Constructor.
+     *
+     * @param file     File channel where data is written.
+     * @param position Position in the file where writing starts.
+     */
+    public GXFileSink(final FileChannel file, final long position) {
+        if (file == null) {
+            throw new IllegalArgumentException("file");
+        }
+        mFile = file;
+        mRegion = null;
+        mPosition = position;
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param region Memory-mapped region where data is written.
+     */
+    public GXFileSink(final ByteBuffer region) {
+        if (region == null) {
+            throw new IllegalArgumentException("region");
+        }
+        mFile = null;
+        mRegion = region;
+    }
+
+    /**
+     * Returns amount of bytes to receive.
+     *
+     * @return Amount of bytes or -1 if count is not used.
+     */
+    public final long getCount() {
+        return mCount;
+    }
+
+    /**
+     * Set amount of bytes to receive. Transfer is completed when the count
+     * is reached.
+     *
+     * @param value Amount of bytes or -1 if count is not used.
+     */
+    public final void setCount(final long value) {
+        mCount = value;
+    }
+
+    /**
+     * Returns end of packet.
+     *
+     * @return End of packet or null.
+     */
+    public final byte[] getEop() {
+        return mEop;
+    }
+
+    /**
+     * Set end of packet. Transfer is completed when the end of packet is
+     * received. End of packet is written to the file.
+     *
+     * @param value End of packet or null.
+     */
+    public final void setEop(final byte[] value) {
+        if (value != null && value.length == 0) {
+            throw new IllegalArgumentException("eop");
+        }
+        mEop = value;
+        mEopTable = null;
+        if (value != null) {
+            mEopTable = new int[value.length];
+            int k = 0;
+            for (int pos = 1; pos < value.length; ++pos) {
+                while (k != 0 && value[pos] != value[k]) {
+                    k = mEopTable[k - 1];
+                }
+                if (value[pos] == value[k]) {
+                    ++k;
+                }
+                mEopTable[pos] = k;
+            }
+        }
+        mMatched = 0;
+    }
+
+    /**
+     * Returns progress listener.
+     *
+     * @return Progress listener or null.
+     */
+    public final IGXProgressListener getProgressListener() {
+        return mProgress;
+    }
+
+    /**
+     * Set progress listener. Listener is called from the receive thread.
+     *
+     * @param value Progress listener or null.
+     */
+    public final void setProgressListener(final IGXProgressListener value) {
+        mProgress = value;
+    }
+
+    /**
+     * Returns amount of written bytes.
+     *
+     * @return Amount of bytes.
+     */
+    public final long getWritten() {
+        return mWritten;
+    }
+
+    /**
+     * Returns occurred error.
+     *
+     * @return Error or null.
+     */
+    public final Exception getError() {
+        return mError;
+    }
+
+    /**
+     * Is transfer completed.
+     *
+     * @return True, if transfer is completed or failed.
+     */
+    public final boolean isCompleted() {
+        return mCompleted.getCount() == 0;
+    }
+
+    /**
+     * Attach the sink to the connection. Received data is written to the
+     * file until the transfer is completed. Connection must not be used
+     * synchronously during the transfer. If framing is needed, the sink can
+     * be called from own receive handler instead.
+     *
+     * @param net Network connection.
+     */
+    public final void attach(final GXNet net) {
+        if (net == null) {
+            throw new IllegalArgumentException("net");
+        }
+        if (isCompleted()) {
+            throw new RuntimeException("Transfer is already completed.");
+        }
+        mNet = net;
+        mPrevious = net.getReceiveHandler();
+        net.setReceiveHandler(this);
+    }
+
+    /**
+     * Detach the sink from the connection. Previous receive handler is
+     * restored.
+     */
+    public final void detach() {
+        GXNet net = mNet;
+        mNet = null;
+        if (net != null && net.getReceiveHandler() == this) {
+            net.setReceiveHandler(mPrevious);
+        }
+    }
+
+    /**
+     * Wait until the transfer is completed.
+     *
+     * @param timeout Wait time in milliseconds.
+     * @return True, if transfer is completed.
+     * @throws Exception Writing to the file failed.
+     */
+    public final boolean waitForCompletion(final int timeout) throws Exception {
+        if (!mCompleted.await(timeout, TimeUnit.MILLISECONDS)) {
+            return false;
+        }
+        if (mError != null) {
+            throw mError;
+        }
+        return true;
+    }
+
+    @Override
+    public final void onReceived(final GXNet sender, final GXReceivedData data) {
+        if (isCompleted()) {
+            sender.notifyReceived(data.toEventArgs());
+            return;
+        }
+        byte[] buffer = data.getBuffer();
+        int count = data.getCount();
+        int size = count;
+        boolean done = false;
+        if (mCount != -1 && mWritten + size >= mCount) {
+            size = (int) (mCount - mWritten);
+            done = true;
+        }
+        if (mEop != null) {
+            int end = findEop(buffer, size);
+            if (end != -1) {
+                size = end;
+                done = true;
+            }
+        }
+        try {
+            write(buffer, size);
+            if (done && mFile != null) {
+                mFile.force(false);
+            }
+        } catch (IOException | RuntimeException ex) {
+            mError = ex;
+            complete();
+            sender.notifyError(new RuntimeException(ex.getMessage()));
+            return;
+        }
+        mWritten += size;
+        if (mProgress != null) {
+            mProgress.onProgress(mWritten, mCount);
+        }
+        if (done) {
+            complete();
+            if (size != count) {
+                byte[] rest = new byte[count - size];
+                System.arraycopy(buffer, size, rest, 0, rest.length);
+                sender.notifyReceived(new ReceiveEventArgs(rest, data.getSenderInfo()));
+            }
+        }
+    }
+
+    /**
+     * Find the end of packet. Match can start in the previous chunk.
+     *
+     * @param buffer Received data.
+     * @param count  Amount of searched bytes.
+     * @return Amount of bytes including the end of packet, or -1 if end of
+     * packet is not found.
+     */
+    private int findEop(final byte[] buffer, final int count) {
+        for (int pos = 0; pos != count; ++pos) {
+            while (mMatched != 0 && buffer[pos] != mEop[mMatched]) {
+                mMatched = mEopTable[mMatched - 1];
+            }
+            if (buffer[pos] == mEop[mMatched]) {
+                ++mMatched;
+                if (mMatched == mEop.length) {
+                    mMatched = 0;
+                    return pos + 1;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Write received bytes.
+     *
+     * @param buffer Received data.
+     * @param count  Amount of written bytes.
+     * @throws IOException Write failed.
+     */
+    private void write(final byte[] buffer, final int count) throws IOException {
+        if (mRegion != null) {
+            mRegion.put(buffer, 0, count);
+            return;
+        }
+        if (mWrappedArray != buffer) {
+            // Receive buffer is reused, so the wrapper is reused too.
+            mWrappedArray = buffer;
+            mWrapper = ByteBuffer.wrap(buffer);
+        }
+        mWrapper.limit(count);
+        mWrapper.position(0);
+        while (mWrapper.hasRemaining()) {
+            mPosition += mFile.write(mWrapper, mPosition);
+        }
+    }
+
+    /**
+     * Complete the transfer and detach from the connection.
+     */
+    private void complete() {
+        detach();
+        mCompleted.countDown();
+    }
+}
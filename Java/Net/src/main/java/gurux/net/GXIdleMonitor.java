@@ -0,0 +1,281 @@
+//
+// --------------------------------------------------------------------------
+//  Gurux Ltd
+// 
+//
+//
+// Filename:        $HeadURL$
+//
+// Version:         $Revision$,
+//                  $Date$
+//                  $Author$
+//
+// Copyright (c) Gurux Ltd
+//
+//---------------------------------------------------------------------------
+//
+//  DESCRIPTION
+//
+// This file is a part of Gurux Device Framework.
+//
+// Gurux Device Framework is Open Source software; you can redistribute it
+// and/or modify it under the terms of the GNU General Public License 
+// as published by the Free Software Foundation; version 2 of the License.
+// Gurux Device Framework is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of 
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+// See the GNU General Public License for more details.
+//
+// More information of Gurux products: http://www.gurux.org
+//
+// This code is licensed under the GNU General Public License v2. 
+// Full text may be retrieved at http://www.gnu.org/licenses/gpl-2.0.txt
+//---------------------------------------------------------------------------
+
+package gurux.net;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Detects idle and dead connections.
+ * <p>
+ * Monitor has one timeout in the shared timing wheel. When the timeout
+ * expires, monitor checks the read and write times and schedules next check
+ * for the nearest time limit. Heartbeat is sent when the connection is write
+ * idle or all idle. Connection is closed when nothing is read in the read
+ * idle time, when the connection is all idle and heartbeat is not used, or
+ * when write doesn't complete in the write timeout.
+ * </p>
+ */
+final class GXIdleMonitor implements Runnable {
+
+    /**
+     * Monitored connection.
+     */
+    private final GXNet mNet;
+
+    /**
+     * Used timing wheel.
+     */
+    private final GXTimingWheel mWheel;
+
+    /**
+     * Read idle time in nanoseconds.
+     */
+    private final long mReadIdleTime;
+
+    /**
+     * Write idle time in nanoseconds.
+     */
+    private final long mWriteIdleTime;
+
+    /**
+     * All idle time in nanoseconds.
+     */
+    private final long mAllIdleTime;
+
+    /**
+     * Write timeout in nanoseconds.
+     */
+    private final long mWriteTimeout;
+
+    /**
+     * Heartbeat frame or null.
+     */
+    private final byte[] mHeartbeat;
+
+    /**
+     * Last read time.
+     */
+    private volatile long mLastRead;
+
+    /**
+     * Last write time.
+     */
+    private volatile long mLastWrite;
+
+    /**
+     * Start time of the pending write or zero.
+     */
+    private volatile long mWriteStarted;
+
+    /**
+     * Current timeout.
+     */
+    private volatile GXTimingWheel.Timeout mTimeout;
+
+    /**
+     * Is monitor stopped.
+     */
+    private volatile boolean mStopped;
+
+    /**
+     * Constructor.
+     *
+     * @param net           Monitored connection.
+     * @param wheel         Used timing wheel.
+     * @param readIdleTime  Read idle time in milliseconds.
+     * @param writeIdleTime Write idle time in milliseconds.
+     * @param allIdleTime   All idle time in milliseconds.
+     * @param writeTimeout  Write timeout in milliseconds.
+     * @param heartbeat     Heartbeat frame or null.
+     */
+    GXIdleMonitor(final GXNet net, final GXTimingWheel wheel, final int readIdleTime,
+                  final int writeIdleTime, final int allIdleTime, final int writeTimeout,
+                  final byte[] heartbeat) {
+        mNet = net;
+        mWheel = wheel;
+        mReadIdleTime = TimeUnit.MILLISECONDS.toNanos(readIdleTime);
+        mWriteIdleTime = TimeUnit.MILLISECONDS.toNanos(writeIdleTime);
+        mAllIdleTime = TimeUnit.MILLISECONDS.toNanos(allIdleTime);
+        mWriteTimeout = TimeUnit.MILLISECONDS.toNanos(writeTimeout);
+        mHeartbeat = heartbeat;
+    }
+
+    /**
+     * Start monitoring.
+     */
+    void start() {
+        long now = System.nanoTime();
+        mLastRead = now;
+        mLastWrite = now;
+        schedule(Math.min(Math.min(nonZero(mReadIdleTime), nonZero(mWriteIdleTime)),
+                Math.min(nonZero(mAllIdleTime), nonZero(mWriteTimeout))));
+    }
+
+    /**
+     * Stop monitoring.
+     */
+    void stop() {
+        mStopped = true;
+        GXTimingWheel.Timeout timeout = mTimeout;
+        if (timeout != null) {
+            timeout.cancel();
+        }
+    }
+
+    /**
+     * Data is read.
+     */
+    void onRead() {
+        mLastRead = System.nanoTime();
+    }
+
+    /**
+     * Write is started.
+     */
+    void onWriteStarted() {
+        mWriteStarted = System.nanoTime();
+    }
+
+    /**
+     * Write is completed.
+     */
+    void onWriteCompleted() {
+        mLastWrite = System.nanoTime();
+        mWriteStarted = 0;
+    }
+
+    /**
+     * Returns time or maximum value if time is not used.
+     *
+     * @param value Time in nanoseconds.
+     * @return Time in nanoseconds.
+     */
+    private static long nonZero(final long value) {
+        if (value == 0) {
+            return Long.MAX_VALUE;
+        }
+        return value;
+    }
+
+    /**
+     * Schedule next check.
+     *
+     * @param delay Delay in nanoseconds.
+     */
+    private void schedule(final long delay) {
+        if (!mStopped && delay != Long.MAX_VALUE) {
+            mTimeout = mWheel.schedule(this, TimeUnit.NANOSECONDS.toMillis(delay) + 1);
+        }
+    }
+
+    /**
+     * Check the connection. This is called from the timing wheel.
+     */
+    @Override
+    public void run() {
+        if (mStopped) {
+            return;
+        }
+        long now = System.nanoTime();
+        long next = Long.MAX_VALUE;
+        if (mWriteTimeout != 0) {
+            long started = mWriteStarted;
+            if (started != 0) {
+                long left = started + mWriteTimeout - now;
+                if (left <= 0) {
+                    fail("Write stalled.");
+                    return;
+                }
+                next = left;
+            } else {
+                next = mWriteTimeout;
+            }
+        }
+        if (mReadIdleTime != 0) {
+            long left = mLastRead + mReadIdleTime - now;
+            if (left <= 0) {
+                fail("Read idle timeout.");
+                return;
+            }
+            next = Math.min(next, left);
+        }
+        if (mAllIdleTime != 0) {
+            long left = Math.max(mLastRead, mLastWrite) + mAllIdleTime - now;
+            if (left <= 0) {
+                if (mHeartbeat == null) {
+                    fail("Connection idle timeout.");
+                    return;
+                }
+                sendHeartbeat(now);
+                left = mAllIdleTime;
+            }
+            next = Math.min(next, left);
+        }
+        if (mWriteIdleTime != 0) {
+            long left = mLastWrite + mWriteIdleTime - now;
+            if (left <= 0) {
+                if (mHeartbeat != null) {
+                    sendHeartbeat(now);
+                }
+                left = mWriteIdleTime;
+            }
+            next = Math.min(next, left);
+        }
+        schedule(next);
+    }
+
+    /**
+     * Send heartbeat frame in the background. Timing wheel thread is not
+     * blocked.
+     *
+     * @param now Current time.
+     */
+    private void sendHeartbeat(final long now) {
+        // Heartbeat is not sent again before the next idle period.
+        mLastWrite = now;
+        mNet.sendHeartbeat(mHeartbeat);
+    }
+
+    /**
+     * Connection is dead. Error is notified and connection is closed in the
+     * background.
+     *
+     * @param reason Reason.
+     */
+    private void fail(final String reason) {
+        mStopped = true;
+        mNet.closeDead(reason);
+    }
+}
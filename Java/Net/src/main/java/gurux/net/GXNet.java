@@ -38,6 +38,7 @@ import android.app.Activity;
 import android.content.Context;
 import android.content.Intent;
 import android.content.pm.PackageInfo;
+import android.os.ParcelFileDescriptor;
 import android.util.Log;
 import android.util.Xml;
 
@@ -48,18 +49,27 @@ import androidx.lifecycle.ViewModelStoreOwner;
 import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
 
-import java.io.Closeable;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.StringReader;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
-import java.net.InetAddress;
-import java.net.Socket;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
-import gurux.common.GXCommon;
 import gurux.common.GXSync;
 import gurux.common.GXSynchronousMediaBase;
 import gurux.common.IGXMedia2;
@@ -73,6 +83,7 @@ import gurux.common.enums.MediaState;
 import gurux.common.enums.TraceLevel;
 import gurux.common.enums.TraceTypes;
 import gurux.net.enums.AvailableMediaSettings;
+import gurux.net.enums.ListenerInterests;
 import gurux.net.enums.NetworkType;
 import gurux.net.properties.PropertiesFragment;
 import gurux.net.properties.PropertiesViewModel;
@@ -83,40 +94,78 @@ import gurux.net.properties.PropertiesViewModel;
  */
 public class GXNet implements IGXMedia2, AutoCloseable {
     /**
-     * Used protocol.
+     * Connection settings. Settings are replaced as one snapshot, so I/O
+     * threads can read them without locks.
      */
-    private NetworkType Protocol = NetworkType.TCP;
-    /**
-     * Host name.
-     */
-    private String HostName;
-    /**
-     * Used port.
-     */
-    private int Port;
+    private final AtomicReference<GXNetConfig> mConfig =
+            new AtomicReference<>(GXNetConfig.DEFAULT);
     private int receiveDelay;
 
     private int asyncWaitTime;
 
-    private Closeable mSocket;
+    /**
+     * Network transport that sends and receives the data.
+     */
+    private final GXReceiveDispatcher mDispatcher = new GXReceiveDispatcher(this);
 
     /**
-     * Receiver thread.
+     * Network transport that sends and receives the data.
      */
-    private GXReceiveThread mReceiver;
+    private final GXNetTransport mTransport = new GXNetTransport(mDispatcher);
 
     /*
      * Synchronously class.
      */
     private final GXSynchronousMediaBase mSyncBase;
     /*
-     * Amount of bytes sent.
+     * Synchronous counter.
      */
-    private long mBytesSend = 0;
+    private volatile int mSynchronous = 0;
     /*
-     * Synchronous counter.
+     * Is lock-free ring used for synchronous data.
+     */
+    private boolean mLockFreeReceive;
+    /*
+     * Lock-free synchronous receiver. This is null if lock-free receive is
+     * not used.
+     */
+    private volatile GXRingReceiver mRingReceiver;
+    /*
+     * Round-trip time estimator of the endpoint.
+     */
+    private final GXRttEstimator mRtt = new GXRttEstimator();
+    /*
+     * Is reply wait time adapted to the round-trip time.
+     */
+    private volatile boolean mAdaptiveTimeout;
+    /*
+     * Time when the last request was sent or zero if reply is received.
      */
-    private int mSynchronous = 0;
+    private final AtomicLong mSendTime = new AtomicLong();
+    /*
+     * Runs the events of this connection one at the time.
+     */
+    private volatile GXSerialExecutor mSerialExecutor;
+    /*
+     * Serial executor is created inside this lock.
+     */
+    private final Object mSerialLock = new Object();
+    /*
+     * Request and reply exchanges of the helpers are run inside this lock.
+     */
+    private final Object mExchangeLock = new Object();
+    /*
+     * Is connection opened and not closed yet.
+     */
+    private final AtomicBoolean mOpened = new AtomicBoolean();
+    /*
+     * Publisher of the received data.
+     */
+    private final GXReceivePublisher mPublisher = new GXReceivePublisher(this);
+    /*
+     * Multiplexer that splits received data to channels or null.
+     */
+    private volatile GXNetMultiplexer mMultiplexer;
     /*
      * Trace level.
      */
@@ -132,12 +181,82 @@ public class GXNet implements IGXMedia2, AutoCloseable {
 
     private final Context mContext;
 
-    private Activity mActivity;
+    private volatile Activity mActivity;
+
+    /**
+     * Send lanes or null if lanes are not used.
+     */
+    private volatile GXSendLanes mSendLanes;
+
+    /**
+     * Read idle time in milliseconds.
+     */
+    private int mReadIdleTime;
+
+    /**
+     * Write idle time in milliseconds.
+     */
+    private int mWriteIdleTime;
+
+    /**
+     * All idle time in milliseconds.
+     */
+    private int mAllIdleTime;
+
+    /**
+     * Write timeout in milliseconds.
+     */
+    private int mWriteTimeout;
+
+    /**
+     * Heartbeat frame or null.
+     */
+    private byte[] mHeartbeat;
+
+    /**
+     * Zero-garbage receive handler or null.
+     */
+    private volatile IGXReceiveHandler mReceiveHandler;
+
+    /**
+     * Idle monitor or null if idle times are not used.
+     */
+    private volatile GXIdleMonitor mIdleMonitor;
 
     /**
      * Media listeners.
      */
-    private final List<IGXMediaListener> mMediaListeners = new ArrayList<>();
+    private final List<IGXMediaListener> mMediaListeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Interests of the media listeners.
+     */
+    private final Map<IGXMediaListener, Integer> mInterests = new IdentityHashMap<>();
+
+    /**
+     * Listeners of the received data.
+     */
+    private volatile IGXMediaListener[] mReceivedListeners = new IGXMediaListener[0];
+
+    /**
+     * Listeners of the errors.
+     */
+    private volatile IGXMediaListener[] mErrorListeners = new IGXMediaListener[0];
+
+    /**
+     * Listeners of the media state changes.
+     */
+    private volatile IGXMediaListener[] mStateListeners = new IGXMediaListener[0];
+
+    /**
+     * Listeners of the property changes.
+     */
+    private volatile IGXMediaListener[] mPropertyListeners = new IGXMediaListener[0];
+
+    /**
+     * Listeners of the traces by trace type.
+     */
+    private volatile IGXMediaListener[][] mTraceListeners = new IGXMediaListener[TraceTypes.values().length][0];
 
     /**
      * Constructor.
@@ -173,9 +292,7 @@ public class GXNet implements IGXMedia2, AutoCloseable {
     public GXNet(Context context, final NetworkType networkType, final String name,
                  final int port) {
         this(context);
-        Protocol = networkType;
-        HostName = name;
-        Port = port;
+        mConfig.set(new GXNetConfig(networkType, name, port));
     }
 
     /**
@@ -192,297 +309,1122 @@ public class GXNet implements IGXMedia2, AutoCloseable {
     }
 
     /**
-     * Returns synchronous class used to communicate synchronously.
+     * Set activity that is used to notify listeners in the UI thread.
+     *
+     * @param value Activity or null if listeners are notified in the
+     *              receive thread.
+     */
+    final void setActivity(final Activity value) {
+        mActivity = value;
+    }
+
+    /**
+     * Returns activity that is used to notify listeners in the UI thread.
+     *
+     * @return Activity or null.
+     */
+    final Activity getActivity() {
+        return mActivity;
+    }
+
+    /**
+     * Returns synchronous class used to communicate synchronously.
+     *
+     * @return Synchronous class.
+     */
+    final GXSynchronousMediaBase getSyncBase() {
+        return mSyncBase;
+    }
+
+    @Override
+    protected final void finalize() throws Throwable {
+        super.finalize();
+        if (isOpen()) {
+            close();
+        }
+    }
+
+    @Override
+    public final TraceLevel getTrace() {
+        return mTrace;
+    }
+
+    @Override
+    public final void setTrace(final TraceLevel value) {
+        mTrace = value;
+        mSyncBase.setTrace(value);
+    }
+
+    /**
+     * Returns publisher of the received data. Subscriber demand controls
+     * how fast the data is read from the connection.
+     *
+     * @return Publisher of the received data.
+     */
+    public final GXReceivePublisher getPublisher() {
+        return mPublisher;
+    }
+
+    /**
+     * Returns multiplexer that splits received data to logical channels.
+     *
+     * @return Multiplexer or null if the connection is not multiplexed.
+     */
+    public final GXNetMultiplexer getMultiplexer() {
+        return mMultiplexer;
+    }
+
+    /**
+     * Set multiplexer that splits received data to logical channels.
+     *
+     * @param value Multiplexer or null.
+     */
+    final void setMultiplexer(final GXNetMultiplexer value) {
+        if (value != null && mMultiplexer != null) {
+            throw new IllegalStateException("Connection is already multiplexed.");
+        }
+        mMultiplexer = value;
+    }
+
+    /**
+     * Returns executors used for the background work. Each connection has
+     * own executors until shared executors are set.
+     *
+     * @return Executors.
+     */
+    public final GXNetExecutors getExecutors() {
+        return mTransport.getExecutors();
+    }
+
+    /**
+     * Set executors used for the background work. Same executors can be
+     * shared between several connections. New executors are used for the
+     * tasks that are started after this call.
+     *
+     * @param value Executors.
+     */
+    public final void setExecutors(final GXNetExecutors value) {
+        mTransport.setExecutors(value);
+    }
+
+    /**
+     * Returns TLS context that is used when the protocol is TLS.
+     *
+     * @return TLS context.
+     */
+    public final GXTlsContext getTlsContext() {
+        return mTransport.getTlsContext();
+    }
+
+    /**
+     * Set TLS context that is used when the protocol is TLS. Same context
+     * can be shared between several connections so that cached sessions
+     * are shared.
+     *
+     * @param value TLS context. Null if default context is used.
+     */
+    public final void setTlsContext(final GXTlsContext value) {
+        mTransport.setTlsContext(value);
+    }
+
+    /**
+     * Returns cache that is used to resolve host names.
+     *
+     * @return Resolver cache.
+     */
+    public final GXResolverCache getResolverCache() {
+        return mTransport.getResolverCache();
+    }
+
+    /**
+     * Set cache that is used to resolve host names. Same cache can be
+     * shared between several connections.
+     *
+     * @param value Resolver cache. Null if default cache is used.
+     */
+    public final void setResolverCache(final GXResolverCache value) {
+        mTransport.setResolverCache(value);
+    }
+
+    /**
+     * Returns traffic shaper that limits how fast data is sent.
+     *
+     * @return Traffic shaper or null if sent data is not shaped.
+     */
+    public final GXTrafficShaper getTrafficShaper() {
+        return mTransport.getTrafficShaper();
+    }
+
+    /**
+     * Set traffic shaper that limits how fast data is sent. Same shaper can
+     * be shared between several connections.
+     *
+     * @param value Traffic shaper or null if sent data is not shaped.
+     */
+    public final void setTrafficShaper(final GXTrafficShaper value) {
+        mTransport.setTrafficShaper(value);
+    }
+
+    /**
+     * Returns send lanes.
+     *
+     * @return Send lanes or null if lanes are not used.
+     */
+    public final GXSendLanes getSendLanes() {
+        return mSendLanes;
+    }
+
+    /**
+     * Set send lanes. When lanes are used, sent frames are queued by
+     * priority and sent one at a time.
+     *
+     * @param value Send lanes or null if lanes are not used.
+     */
+    public final void setSendLanes(final GXSendLanes value) {
+        mSendLanes = value;
+    }
+
+    /**
+     * Returns minimum size of the TCP receive buffer.
+     *
+     * @return Minimum size in bytes.
+     */
+    public final int getMinReceiveBufferSize() {
+        return mTransport.getMinReceiveBufferSize();
+    }
+
+    /**
+     * Returns initial size of the TCP receive buffer.
+     *
+     * @return Initial size in bytes.
+     */
+    public final int getInitialReceiveBufferSize() {
+        return mTransport.getInitialReceiveBufferSize();
+    }
+
+    /**
+     * Returns maximum size of the TCP receive buffer.
+     *
+     * @return Maximum size in bytes.
+     */
+    public final int getMaxReceiveBufferSize() {
+        return mTransport.getMaxReceiveBufferSize();
+    }
+
+    /**
+     * Set size bounds of the TCP receive buffer. Buffer grows when reads
+     * fill the buffer and shrinks when reads are small. UDP receive buffer
+     * is always the size of the maximum datagram. New sizes are taken into
+     * use when the connection is opened next time.
+     *
+     * @param minimum Minimum size in bytes.
+     * @param initial Initial size in bytes.
+     * @param maximum Maximum size in bytes.
+     */
+    public final void setReceiveBufferSize(final int minimum, final int initial,
+                                           final int maximum) {
+        mTransport.setReceiveBufferSize(minimum, initial, maximum);
+    }
+
+    /**
+     * Notify listeners using the dispatch executor. If dispatch executor
+     * is not set, listeners are notified in the UI thread of the activity
+     * or in the calling thread.
+     *
+     * @param task Notify task.
+     */
+    private void dispatch(final Runnable task) {
+        Executor executor = getExecutors().getDispatchExecutor();
+        Activity activity = mActivity;
+        if (executor != null) {
+            // Events are notified in order even if executor has several threads.
+            getSerialExecutor(executor).execute(task);
+        } else if (activity != null) {
+            //New data is coming from worker thread.
+            activity.runOnUiThread(task);
+        } else {
+            task.run();
+        }
+    }
+
+    /**
+     * Handle received frame that doesn't belong to any channel of the
+     * multiplexer. Frame is handled like data of a connection without
+     * multiplexer. This is called from the receive thread.
+     *
+     * @param frame Received frame.
+     * @param info  Sender information.
+     */
+    final void handleUnmatchedFrame(final byte[] frame, final String info) {
+        mDispatcher.dispatch(frame, frame.length, info);
+    }
+
+    /**
+     * Returns executor that runs the events of this connection one at the
+     * time with the dispatch executor.
+     *
+     * @param executor Dispatch executor.
+     * @return Serial executor.
+     */
+    private GXSerialExecutor getSerialExecutor(final Executor executor) {
+        GXSerialExecutor serial = mSerialExecutor;
+        if (serial == null || serial.getExecutor() != executor) {
+            synchronized (mSerialLock) {
+                serial = mSerialExecutor;
+                if (serial == null || serial.getExecutor() != executor) {
+                    serial = new GXSerialExecutor(executor);
+                    mSerialExecutor = serial;
+                }
+            }
+        }
+        return serial;
+    }
+
+    /**
+     * Returns listener interest of the trace type.
+     *
+     * @param type Trace type.
+     * @return Listener interest.
+     */
+    private static int getTraceInterest(final TraceTypes type) {
+        switch (type) {
+            case ERROR:
+                return ListenerInterests.TRACE_ERROR.getValue();
+            case WARNING:
+                return ListenerInterests.TRACE_WARNING.getValue();
+            case INFO:
+                return ListenerInterests.TRACE_INFO.getValue();
+            case SENT:
+                return ListenerInterests.TRACE_SENT.getValue();
+            default:
+                return ListenerInterests.TRACE_RECEIVED.getValue();
+        }
+    }
+
+    /**
+     * Update listener arrays after listeners are changed.
+     */
+    private void updateListeners() {
+        List<IGXMediaListener> received = new ArrayList<>();
+        List<IGXMediaListener> errors = new ArrayList<>();
+        List<IGXMediaListener> states = new ArrayList<>();
+        List<IGXMediaListener> properties = new ArrayList<>();
+        TraceTypes[] types = TraceTypes.values();
+        IGXMediaListener[][] traces = new IGXMediaListener[types.length][];
+        for (IGXMediaListener it : mMediaListeners) {
+            int interests = mInterests.get(it);
+            if ((interests & ListenerInterests.RECEIVED.getValue()) != 0) {
+                received.add(it);
+            }
+            if ((interests & ListenerInterests.ERROR.getValue()) != 0) {
+                errors.add(it);
+            }
+            if ((interests & ListenerInterests.MEDIA_STATE.getValue()) != 0) {
+                states.add(it);
+            }
+            if ((interests & ListenerInterests.PROPERTY_CHANGED.getValue()) != 0) {
+                properties.add(it);
+            }
+        }
+        for (TraceTypes type : types) {
+            List<IGXMediaListener> list = new ArrayList<>();
+            int interest = getTraceInterest(type);
+            for (IGXMediaListener it : mMediaListeners) {
+                if ((mInterests.get(it) & interest) != 0) {
+                    list.add(it);
+                }
+            }
+            traces[type.ordinal()] = list.toArray(new IGXMediaListener[0]);
+        }
+        mReceivedListeners = received.toArray(new IGXMediaListener[0]);
+        mErrorListeners = errors.toArray(new IGXMediaListener[0]);
+        mStateListeners = states.toArray(new IGXMediaListener[0]);
+        mPropertyListeners = properties.toArray(new IGXMediaListener[0]);
+        mTraceListeners = traces;
+    }
+
+    /**
+     * Is there listeners for the received data.
+     *
+     * @return True, if received data is listened.
+     */
+    final boolean hasReceivedListeners() {
+        return mReceivedListeners.length != 0;
+    }
+
+    /**
+     * Is trace type listened. Trace level is not checked.
+     *
+     * @param type Trace type.
+     * @return True, if trace type is listened.
+     */
+    final boolean hasTraceListeners(final TraceTypes type) {
+        return mTraceListeners[type.ordinal()].length != 0;
+    }
+
+    /**
+     * Notify that property has changed.
+     *
+     * @param info Name of changed property.
+     */
+    private void notifyPropertyChanged(final String info) {
+        final IGXMediaListener[] listeners = mPropertyListeners;
+        if (listeners.length == 0) {
+            return;
+        }
+        dispatch(new Runnable() {
+            @Override
+            public void run() {
+                PropertyChangedEventArgs e = new PropertyChangedEventArgs(info);
+                for (IGXMediaListener listener : listeners) {
+                    listener.onPropertyChanged(GXNet.this, e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Notify clients from error occurred.
+     *
+     * @param ex Occurred error.
+     */
+    final void notifyError(final RuntimeException ex) {
+        final IGXMediaListener[] listeners = mErrorListeners;
+        final IGXMediaListener[] traces;
+        if (mTrace.ordinal() >= TraceLevel.ERROR.ordinal()) {
+            traces = mTraceListeners[TraceTypes.ERROR.ordinal()];
+        } else {
+            traces = new IGXMediaListener[0];
+        }
+        if (listeners.length == 0 && traces.length == 0) {
+            return;
+        }
+        dispatch(new Runnable() {
+            @Override
+            public void run() {
+                for (IGXMediaListener listener : listeners) {
+                    listener.onError(GXNet.this, ex);
+                }
+                if (traces.length != 0) {
+                    TraceEventArgs e = new TraceEventArgs(TraceTypes.ERROR, ex);
+                    for (IGXMediaListener listener : traces) {
+                        listener.onTrace(GXNet.this, e);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Notify clients from new data received.
+     *
+     * @param arg Received event argument.
+     */
+    final void notifyReceived(final ReceiveEventArgs arg) {
+        final IGXMediaListener[] listeners = mReceivedListeners;
+        if (listeners.length == 0) {
+            return;
+        }
+        dispatch(new Runnable() {
+            @Override
+            public void run() {
+                for (IGXMediaListener listener : listeners) {
+                    listener.onReceived(GXNet.this, arg);
+                }
+            }
+        });
+    }
+
+    /**
+     * Notify clients from trace events.
+     *
+     * @param arg Trace event argument.
+     */
+    final void notifyTrace(final TraceEventArgs arg) {
+        final IGXMediaListener[] listeners = mTraceListeners[arg.getType().ordinal()];
+        if (listeners.length == 0) {
+            return;
+        }
+        dispatch(new Runnable() {
+            @Override
+            public void run() {
+                for (IGXMediaListener listener : listeners) {
+                    listener.onTrace(GXNet.this, arg);
+                }
+            }
+        });
+    }
+
+    @Override
+    public final int getConfigurableSettings() {
+        return mConfigurableSettings;
+    }
+
+    @Override
+    public final void setConfigurableSettings(final int value) {
+        mConfigurableSettings = value;
+    }
+
+    @Override
+    public final void send(final Object data, final String target) throws Exception {
+        send(data);
+    }
+
+    public final void send(final Object data) throws Exception {
+        GXSendLanes lanes = mSendLanes;
+        if (lanes == null) {
+            send(data, 0);
+        } else {
+            send(data, lanes.getDefaultLane());
+        }
+    }
+
+    /**
+     * Send data using the given send lane. Lane is ignored if send lanes
+     * are not used.
+     *
+     * @param data Sent data.
+     * @param lane Lane index. Lane 0 has the highest priority.
+     * @throws Exception Send failed.
+     * @see #setSendLanes(GXSendLanes)
+     */
+    public final void send(final Object data, final int lane) throws Exception {
+        if (!mTransport.isOpen()) {
+            throw new RuntimeException("Network connection is not open.");
+        }
+        if (mTrace == TraceLevel.VERBOSE && hasTraceListeners(TraceTypes.SENT)) {
+            notifyTrace(new TraceEventArgs(TraceTypes.SENT, data));
+        }
+        // Reset last position if end of packet is used.
+        mSyncBase.resetLastPosition();
+        GXRingReceiver ring = mRingReceiver;
+        if (ring != null) {
+            ring.resetLastPosition();
+        }
+        byte[] buff = GXSynchronousMediaBase.getAsByteArray(data);
+        if (buff == null) {
+            throw new IllegalArgumentException("Data send failed. Invalid data.");
+        }
+        if (sendFrame(buff, lane)) {
+            // Round-trip is measured from the moment the request is written.
+            mSendTime.set(System.nanoTime());
+        }
+    }
+
+    /**
+     * Send the frame and wait until it's written. Synchronous receive
+     * state is not changed.
+     *
+     * @param buff Sent frame.
+     * @param lane Lane index.
+     * @return True, if frame was sent. False, if connection was closed.
+     * @throws Exception Send failed.
+     */
+    private boolean sendFrame(final byte[] buff, final int lane) throws Exception {
+        final Exception[] exceltionHolder = new Exception[1];
+        GXSendLanes lanes = mSendLanes;
+        if (lanes != null) {
+            // Frame is queued and the writer of the lanes sends it.
+            exceltionHolder[0] = lanes.send(this, buff, lane);
+        } else {
+            GXTrafficShaper shaper = getTrafficShaper();
+            if (shaper != null) {
+                // Sender waits in its own thread until the frame can be sent.
+                shaper.acquire(buff.length);
+            }
+            GXNetExecutors executors = getExecutors();
+            CountDownLatch latch = new CountDownLatch(1);
+            executors.execute(executors.getWriteExecutor(), new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        write(buff);
+                    } catch (Exception ex) {
+                        exceltionHolder[0] = ex;
+                    } finally {
+                        latch.countDown();
+                    }
+                }
+            }, "send");
+            latch.await();
+        }
+        if (exceltionHolder[0] != null) {
+            if (exceltionHolder[0] instanceof java.net.SocketException) {
+                close();
+                return false;
+            }
+            throw exceltionHolder[0];
+        }
+        return true;
+    }
+
+    /**
+     * Write the frame to the socket. This is called from the write thread.
+     *
+     * @param buff Sent frame.
+     * @throws Exception Write failed.
+     */
+    final void write(final byte[] buff) throws Exception {
+        mTransport.write(buff);
+    }
+
+    /**
+     * Write part of the file to the socket. This is called from the write
+     * thread.
+     *
+     * @param file   Sent file.
+     * @param offset Position in the file where sending starts.
+     * @param length Amount of sent bytes.
+     * @throws Exception Write failed.
+     */
+    final void writeFile(final FileChannel file, final long offset, final long length)
+            throws Exception {
+        mTransport.sendFile(file, offset, length, null);
+    }
+
+    /**
+     * Send part of the file.
+     * <p>
+     * TCP connection sends the file with FileChannel.transferTo, so data is
+     * not copied to the application. TLS connection sends the file in chunks
+     * using one reused buffer. UDP connection sends the file in datagrams of
+     * the datagram size. Sender waits while the socket or traffic shaper
+     * can't take more data, so the file is not kept in memory. If send lanes
+     * are used, file is sent in chunks in the default lane.
+     * </p>
+     *
+     * @param file     Sent file.
+     * @param offset   Position in the file where sending starts.
+     * @param length   Amount of sent bytes or -1 if file is sent to the end.
+     * @param progress Progress listener or null.
+     * @throws Exception Send failed.
+     */
+    public final void sendFile(final FileChannel file, final long offset, final long length,
+                               final IGXProgressListener progress) throws Exception {
+        if (!mTransport.isOpen()) {
+            throw new RuntimeException("Network connection is not open.");
+        }
+        if (file == null) {
+            throw new IllegalArgumentException("file");
+        }
+        final long total;
+        if (length == -1) {
+            total = file.size() - offset;
+        } else {
+            total = length;
+        }
+        if (offset < 0 || total < 0) {
+            throw new IllegalArgumentException("Invalid file range.");
+        }
+        // Reset last position if end of packet is used.
+        mSyncBase.resetLastPosition();
+        GXRingReceiver ring = mRingReceiver;
+        if (ring != null) {
+            ring.resetLastPosition();
+        }
+        final Exception[] exceltionHolder = new Exception[1];
+        GXSendLanes lanes = mSendLanes;
+        if (lanes != null) {
+            // Frames of the higher priority lanes are sent between the chunks.
+            exceltionHolder[0] = lanes.sendFile(this, file, offset, total, progress,
+                    lanes.getDefaultLane());
+        } else {
+            GXNetExecutors executors = getExecutors();
+            CountDownLatch latch = new CountDownLatch(1);
+            executors.execute(executors.getWriteExecutor(), new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        mTransport.sendFile(file, offset, total, progress);
+                    } catch (Exception ex) {
+                        exceltionHolder[0] = ex;
+                    } finally {
+                        latch.countDown();
+                    }
+                }
+            }, "send file");
+            latch.await();
+        }
+        if (exceltionHolder[0] != null) {
+            if (exceltionHolder[0] instanceof java.net.SocketException) {
+                close();
+            }
+            throw exceltionHolder[0];
+        }
+    }
+
+    /**
+     * Send part of the file.
+     *
+     * @param file     Sent file. File descriptor is not closed.
+     * @param offset   Position in the file where sending starts.
+     * @param length   Amount of sent bytes or -1 if file is sent to the end.
+     * @param progress Progress listener or null.
+     * @throws Exception Send failed.
+     * @see #sendFile(FileChannel, long, long, IGXProgressListener)
+     */
+    public final void sendFile(final ParcelFileDescriptor file, final long offset,
+                               final long length, final IGXProgressListener progress)
+            throws Exception {
+        if (file == null) {
+            throw new IllegalArgumentException("file");
+        }
+        // Channel is not closed, because it would close the descriptor.
+        FileInputStream in = new FileInputStream(file.getFileDescriptor());
+        sendFile(in.getChannel(), offset, length, progress);
+    }
+
+    /**
+     * Returns maximum size of the datagram when file is sent using UDP.
+     *
+     * @return Datagram size in bytes.
+     */
+    public final int getDatagramSize() {
+        return mTransport.getDatagramSize();
+    }
+
+    /**
+     * Set maximum size of the datagram when file is sent using UDP.
+     *
+     * @param value Datagram size in bytes.
+     */
+    public final void setDatagramSize(final int value) {
+        mTransport.setDatagramSize(value);
+    }
+
+    /**
+     * Notify client from media state change.
+     *
+     * @param state New media state.
+     */
+    private void notifyMediaStateChange(final MediaState state) {
+        if (mTrace.ordinal() >= TraceLevel.ERROR.ordinal()) {
+            IGXMediaListener[] traces = mTraceListeners[TraceTypes.INFO.ordinal()];
+            if (traces.length != 0) {
+                TraceEventArgs e = new TraceEventArgs(TraceTypes.INFO, state);
+                for (IGXMediaListener listener : traces) {
+                    listener.onTrace(this, e);
+                }
+            }
+        }
+        IGXMediaListener[] listeners = mStateListeners;
+        if (listeners.length != 0) {
+            MediaStateEventArgs e = new MediaStateEventArgs(state);
+            for (IGXMediaListener listener : listeners) {
+                listener.onMediaStateChange(this, e);
+            }
+        }
+    }
+
+    @Override
+    public final void open() throws Exception {
+        close();
+        synchronized (mSyncBase.getSync()) {
+            mSyncBase.resetLastPosition();
+        }
+        GXNetMultiplexer multiplexer = mMultiplexer;
+        if (multiplexer != null) {
+            multiplexer.reset();
+        }
+        if (mLockFreeReceive) {
+            mRingReceiver = new GXRingReceiver(GXByteRing.DEFAULT_CAPACITY);
+        } else {
+            mRingReceiver = null;
+        }
+        notifyMediaStateChange(MediaState.OPENING);
+        // Same settings are used for the whole connection.
+        GXNetConfig config = mConfig.get();
+        try {
+            mTransport.open(config);
+        } catch (Exception ex) {
+            notifyMediaStateChange(MediaState.CLOSING);
+            notifyMediaStateChange(MediaState.CLOSED);
+            throw ex;
+        }
+        if (config.getProtocol() != NetworkType.UDP
+                && mTrace.ordinal() >= TraceLevel.INFO.ordinal()
+                && hasTraceListeners(TraceTypes.INFO)) {
+            notifyTrace(new TraceEventArgs(TraceTypes.INFO,
+                    "Client settings: Protocol: "
+                            + config.getProtocol() + " Host: "
+                            + config.getHostName() + " Port: "
+                            + String.valueOf(config.getPort())));
+        }
+        mOpened.set(true);
+        startIdleMonitor();
+        notifyMediaStateChange(MediaState.OPEN);
+    }
+
+    /**
+     * Start idle monitor if idle times are used.
+     */
+    private void startIdleMonitor() {
+        if (mReadIdleTime != 0 || mWriteIdleTime != 0 || mAllIdleTime != 0
+                || mWriteTimeout != 0) {
+            GXIdleMonitor idle = new GXIdleMonitor(this, GXTimingWheel.getDefault(),
+                    mReadIdleTime, mWriteIdleTime, mAllIdleTime, mWriteTimeout, mHeartbeat);
+            mIdleMonitor = idle;
+            idle.start();
+        }
+    }
+
+    /**
+     * Returns idle monitor.
+     *
+     * @return Idle monitor or null if idle times are not used.
+     */
+    final GXIdleMonitor getIdleMonitor() {
+        return mIdleMonitor;
+    }
+
+    /**
+     * Send heartbeat frame in the background. Heartbeat doesn't reset the
+     * synchronous receive state and it's not used to measure the
+     * round-trip time.
+     *
+     * @param data Heartbeat frame.
+     */
+    final void sendHeartbeat(final byte[] data) {
+        GXNetExecutors executors = getExecutors();
+        executors.execute(executors.getConnectExecutor(), new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (isOpen()) {
+                        if (mTrace == TraceLevel.VERBOSE
+                                && hasTraceListeners(TraceTypes.SENT)) {
+                            notifyTrace(new TraceEventArgs(TraceTypes.SENT, data));
+                        }
+                        GXSendLanes lanes = mSendLanes;
+                        sendFrame(data, lanes == null ? 0 : lanes.getDefaultLane());
+                    }
+                } catch (Exception ex) {
+                    notifyError(new RuntimeException(ex.getMessage()));
+                }
+            }
+        }, "heartbeat");
+    }
+
+    /**
+     * Close dead connection in the background. Connection is reset, so
+     * close doesn't wait the peer.
+     *
+     * @param reason Reason why connection is dead.
+     */
+    final void closeDead(final String reason) {
+        notifyError(new RuntimeException(reason));
+        abort();
+        closeAsync();
+    }
+
+    @Override
+    public final void close() {
+        GXIdleMonitor idle = mIdleMonitor;
+        if (idle != null) {
+            mIdleMonitor = null;
+            idle.stop();
+        }
+        // Only one thread closes the connection when the receive thread,
+        // idle monitor and the application close it at the same time.
+        if (mOpened.compareAndSet(true, false)) {
+            try {
+                notifyMediaStateChange(MediaState.CLOSING);
+            } catch (RuntimeException ex) {
+                notifyError(ex);
+                throw ex;
+            } finally {
+                try {
+                    mTransport.close();
+                } catch (IOException e) {
+                    throw new RuntimeException(e.getMessage());
+                }
+                mPublisher.complete();
+                notifyMediaStateChange(MediaState.CLOSED);
+                mSyncBase.resetReceivedSize();
+            }
+        }
+    }
+
+    /**
+     * Close the connection without waiting the peer. This is used when
+     * close doesn't complete in given time.
+     */
+    final void abort() {
+        mTransport.abort();
+    }
+
+    /**
+     * Returns handler of the received data in zero-garbage receive mode.
+     *
+     * @return Receive handler or null if received data is sent to the
+     * listeners.
+     */
+    public final IGXReceiveHandler getReceiveHandler() {
+        return mReceiveHandler;
+    }
+
+    /**
+     * Set handler of the received data. When handler is set, received data
+     * is not sent to the listeners or to the publisher when the connection
+     * is not used synchronously. Handler is called in the receive thread
+     * with reused data object, so no objects are allocated for the received
+     * data.
+     *
+     * @param value Receive handler or null if received data is sent to the
+     *              listeners.
+     */
+    public final void setReceiveHandler(final IGXReceiveHandler value) {
+        mReceiveHandler = value;
+    }
+
+    /**
+     * Returns how long connection can be without received data before it's
+     * closed.
+     *
+     * @return Read idle time in milliseconds. Zero if not used.
+     */
+    public final int getReadIdleTime() {
+        return mReadIdleTime;
+    }
+
+    /**
+     * Set how long connection can be without received data before it's
+     * closed. Setting is used when the connection is opened next time.
+     *
+     * @param value Read idle time in milliseconds. Zero if not used.
+     */
+    public final void setReadIdleTime(final int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("readIdleTime");
+        }
+        mReadIdleTime = value;
+    }
+
+    /**
+     * Returns how long connection can be without sent data before
+     * heartbeat is sent.
      *
-     * @return Synchronous class.
+     * @return Write idle time in milliseconds. Zero if not used.
      */
-    final GXSynchronousMediaBase getSyncBase() {
-        return mSyncBase;
+    public final int getWriteIdleTime() {
+        return mWriteIdleTime;
     }
 
-    @Override
-    protected final void finalize() throws Throwable {
-        super.finalize();
-        if (isOpen()) {
-            close();
+    /**
+     * Set how long connection can be without sent data before heartbeat is
+     * sent. Setting is used when the connection is opened next time.
+     *
+     * @param value Write idle time in milliseconds. Zero if not used.
+     */
+    public final void setWriteIdleTime(final int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("writeIdleTime");
         }
+        mWriteIdleTime = value;
     }
 
-    @Override
-    public final TraceLevel getTrace() {
-        return mTrace;
-    }
-
-    @Override
-    public final void setTrace(final TraceLevel value) {
-        mTrace = value;
-        mSyncBase.setTrace(value);
+    /**
+     * Returns how long connection can be without sent or received data.
+     * After that heartbeat is sent or the connection is closed if heartbeat
+     * is not used.
+     *
+     * @return All idle time in milliseconds. Zero if not used.
+     */
+    public final int getAllIdleTime() {
+        return mAllIdleTime;
     }
 
     /**
-     * Notify that property has changed.
+     * Set how long connection can be without sent or received data. After
+     * that heartbeat is sent or the connection is closed if heartbeat is not
+     * used. Setting is used when the connection is opened next time.
      *
-     * @param info Name of changed property.
+     * @param value All idle time in milliseconds. Zero if not used.
      */
-    private void notifyPropertyChanged(final String info) {
-        if (mActivity != null) {
-            //New data is coming from worker thread.
-            mActivity.runOnUiThread(new Runnable() {
-                @Override
-                public void run() {
-                    for (IGXMediaListener listener : mMediaListeners) {
-                        listener.onPropertyChanged(this, new PropertyChangedEventArgs(info));
-                    }
-                }
-            });
-        } else {
-            for (IGXMediaListener listener : mMediaListeners) {
-                listener.onPropertyChanged(this, new PropertyChangedEventArgs(info));
-            }
+    public final void setAllIdleTime(final int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("allIdleTime");
         }
+        mAllIdleTime = value;
     }
 
     /**
-     * Notify clients from error occurred.
+     * Returns how long write can take before the connection is closed.
      *
-     * @param ex Occurred error.
+     * @return Write timeout in milliseconds. Zero if not used.
      */
-    final void notifyError(final RuntimeException ex) {
-        if (mActivity != null) {
-            //New data is coming from worker thread.
-            mActivity.runOnUiThread(new Runnable() {
-                @Override
-                public void run() {
-                    for (IGXMediaListener listener : mMediaListeners) {
-                        listener.onError(this, ex);
-                        if (mTrace.ordinal() >= TraceLevel.ERROR.ordinal()) {
-                            listener.onTrace(this, new TraceEventArgs(TraceTypes.ERROR, ex));
-                        }
-                    }
-                }
-            });
-        } else {
-            for (IGXMediaListener listener : mMediaListeners) {
-                listener.onError(this, ex);
-                if (mTrace.ordinal() >= TraceLevel.ERROR.ordinal()) {
-                    listener.onTrace(this, new TraceEventArgs(TraceTypes.ERROR, ex));
-                }
-            }
-        }
+    public final int getWriteTimeout() {
+        return mWriteTimeout;
     }
 
     /**
-     * Notify clients from new data received.
+     * Set how long write can take before the connection is closed. Setting
+     * is used when the connection is opened next time.
      *
-     * @param arg Received event argument.
+     * @param value Write timeout in milliseconds. Zero if not used.
      */
-    final void notifyReceived(final ReceiveEventArgs arg) {
-        if (mActivity != null) {
-            //New data is coming from worker thread.
-            mActivity.runOnUiThread(new Runnable() {
-                @Override
-                public void run() {
-                    for (IGXMediaListener listener : mMediaListeners) {
-                        listener.onReceived(this, arg);
-                    }
-                }
-            });
-        } else {
-            for (IGXMediaListener listener : mMediaListeners) {
-                listener.onReceived(this, arg);
-            }
+    public final void setWriteTimeout(final int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("writeTimeout");
         }
+        mWriteTimeout = value;
     }
 
     /**
-     * Notify clients from trace events.
+     * Returns heartbeat frame that is sent when the connection is idle.
      *
-     * @param arg Trace event argument.
+     * @return Heartbeat frame or null if heartbeat is not used.
      */
-    final void notifyTrace(final TraceEventArgs arg) {
-        if (mActivity != null) {
-            //New data is coming from worker thread.
-            mActivity.runOnUiThread(new Runnable() {
-                @Override
-                public void run() {
-                    for (IGXMediaListener listener : mMediaListeners) {
-                        listener.onTrace(this, arg);
-                    }
-                }
-            });
-        } else {
-            for (IGXMediaListener listener : mMediaListeners) {
-                listener.onTrace(this, arg);
-            }
-        }
+    public final byte[] getHeartbeat() {
+        return mHeartbeat;
     }
 
-    @Override
-    public final int getConfigurableSettings() {
-        return mConfigurableSettings;
+    /**
+     * Set heartbeat frame that is sent when the connection is idle. Reply
+     * of the heartbeat is handled as any other received data. Setting is
+     * used when the connection is opened next time.
+     *
+     * @param value Heartbeat frame or null if heartbeat is not used.
+     */
+    public final void setHeartbeat(final byte[] value) {
+        mHeartbeat = value;
     }
 
-    @Override
-    public final void setConfigurableSettings(final int value) {
-        mConfigurableSettings = value;
+    /**
+     * Returns how long close waits that the peer closes the connection.
+     *
+     * @return Close timeout in milliseconds. Zero if close waits forever.
+     */
+    public final int getCloseTimeout() {
+        return mTransport.getCloseTimeout();
     }
 
-    @Override
-    public final void send(final Object data, final String target) throws Exception {
-        send(data);
+    /**
+     * Set how long close waits that the peer closes the connection. After
+     * the timeout connection is reset.
+     *
+     * @param value Close timeout in milliseconds. Zero if close waits
+     *              forever.
+     */
+    public final void setCloseTimeout(final int value) {
+        mTransport.setCloseTimeout(value);
     }
 
-    public final void send(final Object data) throws Exception {
-        if (mSocket == null) {
-            throw new RuntimeException("Network connection is not open.");
-        }
-        if (mTrace == TraceLevel.VERBOSE) {
-            notifyTrace(new TraceEventArgs(TraceTypes.SENT, data));
-        }
-        // Reset last position if end of packet is used.
-        mSyncBase.resetLastPosition();
-        byte[] buff = GXSynchronousMediaBase.getAsByteArray(data);
-        if (buff == null) {
-            throw new IllegalArgumentException("Data send failed. Invalid data.");
-        }
-        final Exception[] exceltionHolder = new Exception[1];
-        CountDownLatch latch = new CountDownLatch(1);
-        new Thread(new Runnable() {
+    /**
+     * Close the connection in the background.
+     *
+     * @return Future that is completed when the connection is closed.
+     */
+    public final Future<Void> closeAsync() {
+        FutureTask<Void> task = new FutureTask<>(new Runnable() {
             @Override
             public void run() {
-                try {
-                    if (Protocol == NetworkType.TCP) {
-                        ((Socket) mSocket).getOutputStream().write(buff);
-
-                    } else if (getProtocol() == NetworkType.UDP) {
-                        InetAddress addr = InetAddress.getByName(getHostName());
-                        DatagramPacket p =
-                                new DatagramPacket(buff, buff.length, addr, getPort());
-                        ((DatagramSocket) mSocket).send(p);
-                    }
-                } catch (Exception ex) {
-                    exceltionHolder[0] = ex;
-                } finally {
-                    latch.countDown();
-                }
-            }
-        }).start();
-        latch.await();
-        if (exceltionHolder[0] != null) {
-            if (exceltionHolder[0] instanceof java.net.SocketException) {
                 close();
-                return;
             }
-            throw exceltionHolder[0];
-        }
-        this.mBytesSend += buff.length;
+        }, null);
+        GXNetExecutors executors = getExecutors();
+        executors.execute(executors.getConnectExecutor(), task, "close");
+        return task;
     }
 
     /**
-     * Notify client from media state change.
+     * Close the connections in parallel. Connections that are not closed
+     * before the timeout are reset.
      *
-     * @param state New media state.
+     * @param connections Closed connections.
+     * @param timeout     Maximum time in milliseconds to close all
+     *                    connections.
+     * @return Amount of connections that are closed before the timeout.
      */
-    private void notifyMediaStateChange(final MediaState state) {
-        for (IGXMediaListener listener : mMediaListeners) {
-            if (mTrace.ordinal() >= TraceLevel.ERROR.ordinal()) {
-                listener.onTrace(this, new TraceEventArgs(TraceTypes.INFO, state));
+    public static int closeAll(final Collection<GXNet> connections, final int timeout) {
+        long deadline = System.currentTimeMillis() + timeout;
+        List<GXNet> list = new ArrayList<>(connections);
+        List<Future<Void>> futures = new ArrayList<>(list.size());
+        for (GXNet it : list) {
+            futures.add(it.closeAsync());
+        }
+        int count = 0;
+        boolean interrupted = false;
+        for (int pos = 0; pos != list.size(); ++pos) {
+            try {
+                if (interrupted) {
+                    list.get(pos).abort();
+                } else {
+                    futures.get(pos).get(Math.max(0, deadline - System.currentTimeMillis()),
+                            TimeUnit.MILLISECONDS);
+                    ++count;
+                }
+            } catch (ExecutionException e) {
+                // Close failed, but the socket is closed.
+                ++count;
+            } catch (TimeoutException e) {
+                list.get(pos).abort();
+            } catch (InterruptedException e) {
+                interrupted = true;
+                list.get(pos).abort();
             }
-            listener.onMediaStateChange(this, new MediaStateEventArgs(state));
         }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        return count;
     }
 
-    @Override
-    public final void open() throws Exception {
-        close();
-        synchronized (mSyncBase.getSync()) {
-            mSyncBase.resetLastPosition();
-        }
-        notifyMediaStateChange(MediaState.OPENING);
-        if (Protocol == NetworkType.TCP) {
-            final Exception[] exceltionHolder = new Exception[1];
-            final Socket[] socketHolder = new Socket[1];
-            CountDownLatch latch = new CountDownLatch(1);
-            new Thread(new Runnable() {
-                @Override
-                public void run() {
-                    try {
-                        socketHolder[0] = new Socket(HostName, Port);
-                    } catch (Exception ex) {
-                        exceltionHolder[0] = ex;
-                    } finally {
-                        latch.countDown();
-                    }
-                }
-            }).start();
-            latch.await();
-            mSocket = socketHolder[0];
-            if (mSocket != null && ((Socket) mSocket).isConnected()) {
-                if (mTrace.ordinal() >= TraceLevel.INFO.ordinal()) {
-                    String eopString = "None";
-                    if (getEop() instanceof byte[]) {
-                        eopString = GXCommon.bytesToHex((byte[]) getEop());
-                    } else if (getEop() != null) {
-                        eopString = getEop().toString();
-                    }
-                    notifyTrace(new TraceEventArgs(TraceTypes.INFO,
-                            "Client settings: Protocol: "
-                                    + Protocol + " Host: "
-                                    + HostName + " Port: "
-                                    + String.valueOf(Port)));
-                }
-                mReceiver = new GXReceiveThread(this, mSocket);
-                mReceiver.start();
-                notifyMediaStateChange(MediaState.OPEN);
-            } else {
-                notifyMediaStateChange(MediaState.CLOSING);
-                notifyMediaStateChange(MediaState.CLOSED);
-                throw exceltionHolder[0];
-            }
-        } else {
-            mSocket = new DatagramSocket();
-            mReceiver = new GXReceiveThread(this, mSocket);
-            mReceiver.start();
-            notifyMediaStateChange(MediaState.OPEN);
+    /**
+     * Returns connection settings.
+     *
+     * @return Current settings snapshot.
+     */
+    public final GXNetConfig getConfig() {
+        return mConfig.get();
+    }
+
+    /**
+     * Set connection settings. All settings are changed at once and
+     * listeners are notified only once. If only one setting is changed,
+     * the name of the setting is used in the notification. Else
+     * "Settings" is used.
+     *
+     * @param value New settings.
+     */
+    public final void setConfig(final GXNetConfig value) {
+        if (value == null) {
+            throw new IllegalArgumentException("config");
         }
+        GXNetConfig old = mConfig.getAndSet(value);
+        notifyConfigChanged(old, value);
     }
 
-    @Override
-    public final void close() {
-        if (mSocket != null) {
-            try {
-                notifyMediaStateChange(MediaState.CLOSING);
-            } catch (RuntimeException ex) {
-                notifyError(ex);
-                throw ex;
-            } finally {
-                try {
-                    if (mSocket instanceof Socket) {
-                        mReceiver.interrupt();
-                        try {
-                            ((Socket) mSocket).shutdownOutput();
-                        } catch (Exception ignored) {
-                            //This might fail if connection to the server is lost.
-                        }
-                        try {
-                            if (mReceiver != null) {
-                                // Wait until the server has send ACK.
-                                mReceiver.join();
-                                mReceiver = null;
-                            }
-                        } catch (InterruptedException e) {
-                            mReceiver = null;
-                        }
-                    }
-                    mSocket.close();
-                } catch (IOException e) {
-                    mSocket = null;
-                    throw new RuntimeException(e.getMessage());
-                }
-                mSocket = null;
-                notifyMediaStateChange(MediaState.CLOSED);
-                mSyncBase.resetReceivedSize();
-            }
+    /**
+     * Notify listeners that settings are changed.
+     *
+     * @param old   Old settings.
+     * @param value New settings.
+     */
+    private void notifyConfigChanged(final GXNetConfig old, final GXNetConfig value) {
+        String name = null;
+        int count = 0;
+        if (old.getProtocol() != value.getProtocol()) {
+            name = "Protocol";
+            ++count;
+        }
+        if (old.getHostName() == null ? value.getHostName() != null
+                : !old.getHostName().equals(value.getHostName())) {
+            name = "HostName";
+            ++count;
+        }
+        if (old.getPort() != value.getPort()) {
+            name = "Port";
+            ++count;
+        }
+        if (count != 0) {
+            // Estimate of the old endpoint is not valid.
+            mRtt.reset();
+        }
+        if (count > 1) {
+            notifyPropertyChanged("Settings");
+        } else if (count == 1) {
+            notifyPropertyChanged(name);
         }
     }
 
@@ -492,7 +1434,7 @@ public class GXNet implements IGXMedia2, AutoCloseable {
      * @return Protocol in use.
      */
     public final NetworkType getProtocol() {
-        return Protocol;
+        return mConfig.get().getProtocol();
     }
 
     /**
@@ -501,10 +1443,13 @@ public class GXNet implements IGXMedia2, AutoCloseable {
      * @param value Used protocol.
      */
     public final void setProtocol(final NetworkType value) {
-        if (Protocol != value) {
-            Protocol = value;
-            notifyPropertyChanged("Protocol");
-        }
+        GXNetConfig old;
+        GXNetConfig tmp;
+        do {
+            old = mConfig.get();
+            tmp = old.withProtocol(value);
+        } while (!mConfig.compareAndSet(old, tmp));
+        notifyConfigChanged(old, tmp);
     }
 
     /**
@@ -512,11 +1457,11 @@ public class GXNet implements IGXMedia2, AutoCloseable {
      *
      * @return The name of the host.
      * @see #open
-     * @see #Port
-     * @see #Protocol
+     * @see #getPort
+     * @see #getProtocol
      */
     public final String getHostName() {
-        return HostName;
+        return mConfig.get().getHostName();
     }
 
     /**
@@ -525,10 +1470,13 @@ public class GXNet implements IGXMedia2, AutoCloseable {
      * @param value The name of the host.
      */
     public final void setHostName(final String value) {
-        if (HostName == null || !HostName.equals(value)) {
-            HostName = value;
-            notifyPropertyChanged("HostName");
-        }
+        GXNetConfig old;
+        GXNetConfig tmp;
+        do {
+            old = mConfig.get();
+            tmp = old.withHostName(value);
+        } while (!mConfig.compareAndSet(old, tmp));
+        notifyConfigChanged(old, tmp);
     }
 
     /**
@@ -536,11 +1484,11 @@ public class GXNet implements IGXMedia2, AutoCloseable {
      *
      * @return Host or server port number.
      * @see #open
-     * @see #HostName
-     * @see #Protocol
+     * @see #getHostName
+     * @see #getProtocol
      */
     public final int getPort() {
-        return Port;
+        return mConfig.get().getPort();
     }
 
     /**
@@ -548,64 +1496,231 @@ public class GXNet implements IGXMedia2, AutoCloseable {
      *
      * @param value Host or server port number
      * @see #open
-     * @see #HostName
-     * @see #Protocol
+     * @see #getHostName
+     * @see #getProtocol
      */
     public final void setPort(final int value) {
-        if (Port != value) {
-            Port = value;
-            notifyPropertyChanged("Port");
-        }
+        GXNetConfig old;
+        GXNetConfig tmp;
+        do {
+            old = mConfig.get();
+            tmp = old.withPort(value);
+        } while (!mConfig.compareAndSet(old, tmp));
+        notifyConfigChanged(old, tmp);
     }
 
     @Override
     public final boolean isOpen() {
-        return mSocket != null;
+        return mTransport.isOpen();
+    }
+
+
+    /**
+     * Returns the ring where received synchronous data is written.
+     *
+     * @return Byte ring or null if lock-free receive is not used.
+     */
+    final GXByteRing getRing() {
+        GXRingReceiver ring = mRingReceiver;
+        if (ring == null) {
+            return null;
+        }
+        return ring.getRing();
+    }
+
+    /**
+     * Is lock-free ring used to receive synchronous data.
+     *
+     * @return True, if lock-free ring is used.
+     */
+    public final boolean isLockFreeReceive() {
+        return mLockFreeReceive;
     }
 
+    /**
+     * Set is lock-free ring used to receive synchronous data.
+     * <p>
+     * When lock-free receive is used, receive thread writes the data to a
+     * single producer, single consumer ring and the thread that waits the
+     * reply spins a short moment before it parks. Monitors are not taken
+     * when the data is received. Only one thread can wait the reply at the
+     * time and the reply is returned as a byte array. New value is taken
+     * into use when the connection is opened next time.
+     * </p>
+     *
+     * @param value Is lock-free ring used.
+     */
+    public final void setLockFreeReceive(final boolean value) {
+        mLockFreeReceive = value;
+    }
 
     @Override
     public final <T> boolean receive(final ReceiveParameters<T> args) {
-        return mSyncBase.receive(args);
+        long sent = mSendTime.get();
+        int waitTime = args.getWaitTime();
+        args.setWaitTime(getReplyTimeout(waitTime));
+        boolean ret;
+        try {
+            GXRingReceiver ring = mRingReceiver;
+            if (ring != null) {
+                ret = ring.receive(args);
+            } else {
+                ret = mSyncBase.receive(args);
+            }
+        } finally {
+            args.setWaitTime(waitTime);
+        }
+        // Only the first reply after the request is measured.
+        if (sent != 0 && mSendTime.compareAndSet(sent, 0)) {
+            if (ret) {
+                mRtt.addSample((System.nanoTime() - sent) / 1000000);
+            } else {
+                mRtt.backOff();
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Measure the round-trip time when data is received asynchronously.
+     * Only the first data after the request is measured. This is called
+     * from the receive thread.
+     */
+    final void onReplyReceived() {
+        long sent = mSendTime.getAndSet(0);
+        if (sent != 0) {
+            mRtt.addSample((System.nanoTime() - sent) / 1000000);
+        }
+    }
+
+    /**
+     * Returns time how long reply is waited.
+     * <p>
+     * If adaptive timeout is used and round-trip time is estimated,
+     * estimated timeout is returned. Given wait time is used as the upper
+     * limit. Listeners and receive handlers use this to time their own
+     * reply waits.
+     * </p>
+     *
+     * @param waitTime Maximum wait time in milliseconds. Zero or negative
+     *                 value if reply is waited forever.
+     * @return Wait time in milliseconds.
+     * @see #setAdaptiveTimeout(boolean)
+     */
+    public final int getReplyTimeout(final int waitTime) {
+        if (mAdaptiveTimeout) {
+            int timeout = mRtt.getTimeout();
+            if (timeout != -1 && (waitTime <= 0 || timeout < waitTime)) {
+                return timeout;
+            }
+        }
+        return waitTime;
+    }
+
+    /**
+     * Reply of the last request was not received in time. Timeout is
+     * doubled and late reply is not measured. Listeners and receive
+     * handlers call this when their reply wait expires. Synchronous
+     * receive does this automatically.
+     */
+    public final void replyLost() {
+        if (mSendTime.getAndSet(0) != 0) {
+            mRtt.backOff();
+        }
+    }
+
+    /**
+     * Returns round-trip time estimator of the endpoint.
+     *
+     * @return Round-trip time estimator.
+     */
+    public final GXRttEstimator getRttEstimator() {
+        return mRtt;
+    }
+
+    /**
+     * Is reply wait time adapted to the round-trip time of the endpoint.
+     *
+     * @return True, if adaptive timeout is used.
+     */
+    public final boolean isAdaptiveTimeout() {
+        return mAdaptiveTimeout;
+    }
+
+    /**
+     * Set is reply wait time adapted to the round-trip time of the
+     * endpoint.
+     * <p>
+     * Round-trip time is measured from the sent request to the received
+     * reply. When adaptive timeout is used and round-trip time is
+     * estimated, reply is waited the estimated timeout. Wait time of the
+     * receive parameters is used as the upper limit, so lost replies are
+     * detected faster from the fast endpoints. Timeout is doubled after
+     * each lost reply. Estimate is saved to the settings, so it's restored
+     * when the connection is created next time.
+     * </p>
+     * <p>
+     * When data is received with listeners or a receive handler, round-trip
+     * time is measured to the first data after the request. Those users
+     * get the wait time from {@link #getReplyTimeout(int)} and call
+     * {@link #replyLost()} when the reply is not received in time. Heartbeats
+     * are not measured.
+     * </p>
+     *
+     * @param value Is adaptive timeout used.
+     * @see #getRttEstimator()
+     */
+    public final void setAdaptiveTimeout(final boolean value) {
+        mAdaptiveTimeout = value;
     }
 
     @Override
     public final long getBytesSent() {
-        return mBytesSend;
+        return mTransport.getBytesSent();
     }
 
     @Override
     public final long getBytesReceived() {
-        return mReceiver.getBytesReceived();
+        return mTransport.getBytesReceived();
     }
 
     @Override
     public final void resetByteCounters() {
-        mBytesSend = 0;
-        mReceiver.resetBytesReceived();
+        mTransport.resetByteCounters();
     }
 
     @Override
     public final String getSettings() {
+        GXNetConfig config = mConfig.get();
         StringBuilder sb = new StringBuilder();
-        if (HostName != null && !HostName.isEmpty()) {
+        if (config.getHostName() != null && !config.getHostName().isEmpty()) {
             sb.append("<IP>");
-            sb.append(HostName);
+            sb.append(config.getHostName());
             sb.append("</IP>");
             sb.append(System.lineSeparator());
         }
-        if (Port != 0) {
+        if (config.getPort() != 0) {
             sb.append("<Port>");
-            sb.append(Port);
+            sb.append(config.getPort());
             sb.append("</Port>");
             sb.append(System.lineSeparator());
         }
-        if (Protocol != NetworkType.TCP) {
+        if (config.getProtocol() != NetworkType.TCP) {
             sb.append("<Protocol>");
-            sb.append(Protocol.ordinal());
+            sb.append(config.getProtocol().ordinal());
             sb.append("</Protocol>");
             sb.append(System.lineSeparator());
         }
+        if (mRtt.hasEstimate()) {
+            sb.append("<SmoothedRtt>");
+            sb.append(mRtt.getSmoothedRtt());
+            sb.append("</SmoothedRtt>");
+            sb.append(System.lineSeparator());
+            sb.append("<RttVariance>");
+            sb.append(mRtt.getRttVariance());
+            sb.append("</RttVariance>");
+            sb.append(System.lineSeparator());
+        }
         return sb.toString();
     }
 
@@ -622,9 +1737,11 @@ public class GXNet implements IGXMedia2, AutoCloseable {
     @Override
     public final void setSettings(final String value) {
         //Reset to default values.
-        Protocol = NetworkType.TCP;
-        HostName = null;
-        Port = 0;
+        NetworkType protocol = NetworkType.TCP;
+        String hostName = null;
+        int port = 0;
+        int smoothedRtt = -1;
+        int rttVariance = -1;
         if (value != null && !value.isEmpty()) {
             try {
                 XmlPullParser parser = Xml.newPullParser();
@@ -635,11 +1752,15 @@ public class GXNet implements IGXMedia2, AutoCloseable {
                         String target = parser.getName();
                         boolean found = false;
                         if ("Port".equalsIgnoreCase(target)) {
-                            setPort(Integer.parseInt(readText(parser)));
+                            port = Integer.parseInt(readText(parser));
                         } else if ("IP".equalsIgnoreCase(target)) {
-                            setHostName(readText(parser));
+                            hostName = readText(parser);
                         } else if ("Protocol".equalsIgnoreCase(target)) {
-                            setProtocol(NetworkType.values()[Integer.parseInt(readText(parser))]);
+                            protocol = NetworkType.values()[Integer.parseInt(readText(parser))];
+                        } else if ("SmoothedRtt".equalsIgnoreCase(target)) {
+                            smoothedRtt = Integer.parseInt(readText(parser));
+                        } else if ("RttVariance".equalsIgnoreCase(target)) {
+                            rttVariance = Integer.parseInt(readText(parser));
                         }
                     }
                 }
@@ -647,6 +1768,11 @@ public class GXNet implements IGXMedia2, AutoCloseable {
                 throw new RuntimeException(e.getMessage());
             }
         }
+        //All settings are published at once.
+        setConfig(new GXNetConfig(protocol, hostName, port));
+        if (smoothedRtt != -1 && rttVariance != -1) {
+            mRtt.restore(smoothedRtt, rttVariance);
+        }
     }
 
     public void properties(final Activity activity) {
@@ -665,17 +1791,16 @@ public class GXNet implements IGXMedia2, AutoCloseable {
     @Override
     public final void copy(final Object target) {
         GXNet tmp = (GXNet) target;
-        setPort(tmp.getPort());
-        setHostName(tmp.getHostName());
-        setProtocol(tmp.getProtocol());
+        setConfig(tmp.getConfig());
     }
 
     @Override
     public final String getName() {
-        if (HostName == null) {
+        GXNetConfig config = mConfig.get();
+        if (config.getHostName() == null) {
             return "";
         }
-        return HostName + ":" + Port;
+        return config.getHostName() + ":" + config.getPort();
     }
 
     @Override
@@ -683,21 +1808,34 @@ public class GXNet implements IGXMedia2, AutoCloseable {
         return "Net";
     }
 
+    /**
+     * Returns lock that serializes request and reply exchanges of the
+     * connection. {@link #getSynchronous()} returns a new object on each
+     * call, so it can't be used as a lock.
+     *
+     * @return Exchange lock.
+     */
+    final Object getExchangeLock() {
+        return mExchangeLock;
+    }
+
     @Override
     public final Object getSynchronous() {
         synchronized (this) {
             int[] tmp = new int[]{mSynchronous};
             GXSync obj = new GXSync(tmp);
             mSynchronous = tmp[0];
+            // Receive thread is not waiting demand when data is read synchronously.
+            mPublisher.wakeUp();
             return obj;
         }
     }
 
     @Override
     public final boolean getIsSynchronous() {
-        synchronized (this) {
-            return mSynchronous != 0;
-        }
+        // Receive thread calls this for each received packet. Counter is
+        // volatile so monitor is not needed here.
+        return mSynchronous != 0;
     }
 
     @Override
@@ -705,14 +1843,19 @@ public class GXNet implements IGXMedia2, AutoCloseable {
         synchronized (mSyncBase.getSync()) {
             mSyncBase.resetReceivedSize();
         }
+        GXRingReceiver ring = mRingReceiver;
+        if (ring != null) {
+            ring.reset();
+        }
     }
 
     @Override
     public final void validate() {
-        if (HostName == null || HostName.isEmpty()) {
+        GXNetConfig config = mConfig.get();
+        if (config.getHostName() == null || config.getHostName().isEmpty()) {
             throw new RuntimeException("Invalid hostname.");
         }
-        if (Port == 0) {
+        if (config.getPort() == 0) {
             throw new RuntimeException("Invalid port.");
         }
     }
@@ -729,15 +1872,38 @@ public class GXNet implements IGXMedia2, AutoCloseable {
 
     @Override
     public final void addListener(final IGXMediaListener listener) {
-        if (mMediaListeners.contains(listener)) {
-            Log.w("GXNet", "Listener already added.");
+        addListener(listener, ListenerInterests.ALL.getValue());
+    }
+
+    /**
+     * Add media listener that is notified only from the events it's
+     * interested in.
+     *
+     * @param listener  Media listener.
+     * @param interests Listener interests. Values of ListenerInterests can
+     *                  be combined.
+     * @see ListenerInterests
+     */
+    public final void addListener(final IGXMediaListener listener, final int interests) {
+        synchronized (mInterests) {
+            if (mMediaListeners.contains(listener)) {
+                Log.w("GXNet", "Listener already added.");
+            }
+            mMediaListeners.add(listener);
+            mInterests.put(listener, interests);
+            updateListeners();
         }
-        mMediaListeners.add(listener);
     }
 
     @Override
     public final void removeListener(final IGXMediaListener listener) {
-        mMediaListeners.remove(listener);
+        synchronized (mInterests) {
+            mMediaListeners.remove(listener);
+            if (!mMediaListeners.contains(listener)) {
+                mInterests.remove(listener);
+            }
+            updateListeners();
+        }
     }
 
     @Override
@@ -0,0 +1,373 @@
+//
+// --------------------------------------------------------------------------
+//  Gurux Ltd
+// 
+//
+//
+// Filename:        $HeadURL$
+//
+// Version:         $Revision$,
+//                  $Date$
+//                  $Author$
+//
+// Copyright (c) Gurux Ltd
+//
+//---------------------------------------------------------------------------
+//
+//  DESCRIPTION
+//
+// This file is a part of Gurux Device Framework.
+//
+// Gurux Device Framework is Open Source software; you can redistribute it
+// and/or modify it under the terms of the GNU General Public License 
+// as published by the Free Software Foundation; version 2 of the License.
+// Gurux Device Framework is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of 
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+// See the GNU General Public License for more details.
+//
+// More information of Gurux products: http://www.gurux.org
+//
+// This code is licensed under the GNU General Public License v2. 
+// Full text may be retrieved at http://www.gnu.org/licenses/gpl-2.0.txt
+//---------------------------------------------------------------------------
+
+package gurux.net;
+
+import android.os.Bundle;
+import android.os.IBinder;
+import android.os.RemoteException;
+import android.os.SharedMemory;
+import android.system.ErrnoException;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import gurux.common.IGXMediaListener;
+import gurux.common.MediaStateEventArgs;
+import gurux.common.ReceiveEventArgs;
+import gurux.common.enums.MediaState;
+
+/**
+ * Client handle to the connection that is owned by
+ * {@link GXNetBrokerService} in another process.
+ * <p>
+ * Sent and received data is passed in shared memory, so large payloads are
+ * not copied to binder parcels. Listeners are notified in the binder
+ * thread. Connection is shared with the other clients of the same name and
+ * it's closed when the last client is released. Client locks the
+ * connection for the transaction, so the reply is not delivered to the
+ * other clients. Client that doesn't read received data fast enough is
+ * detached and it gets an error.
+ * </p>
+ * <pre>
+ * Intent intent = new Intent(GXNetBrokerService.ACTION).setPackage("com.example.broker");
+ * bindService(intent, connection, Context.BIND_AUTO_CREATE);
+ * ...
+ * public void onServiceConnected(ComponentName name, IBinder binder) {
+ *     mClient = new GXNetBrokerClient(binder, "gateway");
+ *     mClient.addListener(MainActivity.this);
+ *     mClient.open(settings);
+ * }
+ * ...
+ * if (mClient.lock(5000)) {
+ *     mClient.send(request);
+ *     //Call unlock when the reply is received in onReceived.
+ * }
+ * ...
+ * protected void onDestroy() {
+ *     mClient.release();
+ *     unbindService(connection);
+ * }
+ * </pre>
+ */
+public final class GXNetBrokerClient {
+
+    /**
+     * Default size of the send and receive memory in bytes.
+     */
+    public static final int DEFAULT_CAPACITY = 0x10000;
+
+    /**
+     * Broker service.
+     */
+    private final IGXNetBroker mBroker;
+
+    /**
+     * Connection name.
+     */
+    private final String mName;
+
+    /**
+     * Shared memory where sent data is written.
+     */
+    private final SharedMemory mSendMemory;
+
+    /**
+     * Shared memory where broker writes received data.
+     */
+    private final SharedMemory mReceiveMemory;
+
+    /**
+     * Mapped send region.
+     */
+    private final ByteBuffer mSend;
+
+    /**
+     * Receive ring.
+     */
+    private final GXSharedRing mRing;
+
+    /**
+     * Client ID.
+     */
+    private final int mId;
+
+    /**
+     * Media listeners.
+     */
+    private final List<IGXMediaListener> mListeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Is handle released.
+     */
+    private volatile boolean mReleased;
+
+    /**
+     * Callback that broker calls in the binder thread.
+     */
+    private final IGXNetBrokerCallback.Stub mCallback = new IGXNetBrokerCallback.Stub() {
+        @Override
+        public void onReceived(final int count) {
+            if (mReleased) {
+                // Memory is not read after the handle is released.
+                return;
+            }
+            byte[] data = new byte[count];
+            if (!mRing.read(data, 0, count)) {
+                return;
+            }
+            try {
+                mBroker.release(mId, count);
+            } catch (RemoteException ignored) {
+                //Broker is dead.
+            }
+            ReceiveEventArgs e = new ReceiveEventArgs(data, mName);
+            for (IGXMediaListener listener : mListeners) {
+                listener.onReceived(GXNetBrokerClient.this, e);
+            }
+        }
+
+        @Override
+        public void onMediaStateChange(final int state) {
+            MediaStateEventArgs e = new MediaStateEventArgs(MediaState.values()[state]);
+            for (IGXMediaListener listener : mListeners) {
+                listener.onMediaStateChange(GXNetBrokerClient.this, e);
+            }
+        }
+
+        @Override
+        public void onError(final String message) {
+            RuntimeException ex = new RuntimeException(message);
+            for (IGXMediaListener listener : mListeners) {
+                listener.onError(GXNetBrokerClient.this, ex);
+            }
+        }
+    };
+
+    /**
+     * Constructor.
+     *
+     * @param binder Binder of the broker service.
+     * @param name   Connection name.
+     * @throws RemoteException Broker is dead.
+     * @throws ErrnoException  Shared memory can't be created.
+     */
+    public GXNetBrokerClient(final IBinder binder, final String name)
+            throws RemoteException, ErrnoException {
+        this(binder, name, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param binder   Binder of the broker service.
+     * @param name     Connection name.
+     * @param capacity Size of the send and receive memory in bytes.
+     * @throws RemoteException Broker is dead.
+     * @throws ErrnoException  Shared memory can't be created.
+     */
+    public GXNetBrokerClient(final IBinder binder, final String name, final int capacity)
+            throws RemoteException, ErrnoException {
+        if (binder == null) {
+            throw new IllegalArgumentException("binder");
+        }
+        if (name == null) {
+            throw new IllegalArgumentException("name");
+        }
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity");
+        }
+        mBroker = IGXNetBroker.Stub.asInterface(binder);
+        mName = name;
+        mSendMemory = SharedMemory.create("gurux.net.send", capacity);
+        mReceiveMemory = SharedMemory.create("gurux.net.receive", capacity);
+        mSend = mSendMemory.mapReadWrite();
+        mRing = new GXSharedRing(mReceiveMemory.mapReadOnly());
+        Bundle memory = new Bundle();
+        memory.putParcelable("send", mSendMemory);
+        memory.putParcelable("receive", mReceiveMemory);
+        mId = mBroker.attach(name, memory, mCallback);
+        if (mId == 0) {
+            throw new RemoteException("Attach failed.");
+        }
+    }
+
+    /**
+     * Returns connection name.
+     *
+     * @return Connection name.
+     */
+    public String getName() {
+        return mName;
+    }
+
+    /**
+     * Is handle released.
+     *
+     * @return True, if handle is released.
+     */
+    public boolean isReleased() {
+        return mReleased;
+    }
+
+    /**
+     * Open the shared connection if it's not open.
+     *
+     * @param settings Connection settings or null if current settings are
+     *                 used. Settings are ignored if the connection is
+     *                 already open.
+     * @throws RemoteException Broker is dead.
+     * @see GXNet#getSettings()
+     */
+    public void open(final String settings) throws RemoteException {
+        checkReleased();
+        mBroker.open(mId, settings);
+    }
+
+    /**
+     * Is shared connection open.
+     *
+     * @return True, if connection is open.
+     * @throws RemoteException Broker is dead.
+     */
+    public boolean isOpen() throws RemoteException {
+        checkReleased();
+        return mBroker.isOpen(mId);
+    }
+
+    /**
+     * Lock the shared connection for the transaction. Only the client that
+     * holds the lock can send and received data is delivered only to it.
+     *
+     * @param waitTime Maximum wait time in milliseconds. Zero or negative
+     *                 value and values over
+     *                 {@link GXNetBrokerService#MAX_LOCK_WAIT} wait
+     *                 {@link GXNetBrokerService#MAX_LOCK_WAIT} milliseconds.
+     * @return True, if lock is got.
+     * @throws RemoteException Broker is dead.
+     */
+    public boolean lock(final int waitTime) throws RemoteException {
+        checkReleased();
+        return mBroker.lock(mId, waitTime);
+    }
+
+    /**
+     * Unlock the shared connection.
+     *
+     * @throws RemoteException Broker is dead.
+     */
+    public void unlock() throws RemoteException {
+        checkReleased();
+        mBroker.unlock(mId);
+    }
+
+    /**
+     * Send data. Data that doesn't fit to the send memory is sent in
+     * parts. Parts are kept together only while the client holds the
+     * lock.
+     *
+     * @param data Sent data.
+     * @throws RemoteException Broker is dead.
+     * @see #lock(int)
+     */
+    public void send(final byte[] data) throws RemoteException {
+        if (data == null) {
+            throw new IllegalArgumentException("data");
+        }
+        synchronized (mSend) {
+            checkReleased();
+            int offset = 0;
+            do {
+                int count = Math.min(data.length - offset, mSend.capacity());
+                mSend.position(0);
+                mSend.put(data, offset, count);
+                mBroker.send(mId, count);
+                offset += count;
+            } while (offset != data.length);
+        }
+    }
+
+    /**
+     * Add media listener.
+     *
+     * @param listener Media listener.
+     */
+    public void addListener(final IGXMediaListener listener) {
+        mListeners.add(listener);
+    }
+
+    /**
+     * Remove media listener.
+     *
+     * @param listener Media listener.
+     */
+    public void removeListener(final IGXMediaListener listener) {
+        mListeners.remove(listener);
+    }
+
+    /**
+     * Release the handle. Listeners are removed and shared memory is
+     * released. Connection is closed if this is the last client.
+     */
+    public void release() {
+        synchronized (mSend) {
+            if (mReleased) {
+                return;
+            }
+            mReleased = true;
+            // Send region is unmapped while no sender is using it.
+            SharedMemory.unmap(mSend);
+        }
+        // Receive ring is unmapped while callback is not reading it.
+        mRing.close();
+        mListeners.clear();
+        try {
+            mBroker.detach(mId);
+        } catch (RemoteException ignored) {
+            //Broker is dead.
+        }
+        mSendMemory.close();
+        mReceiveMemory.close();
+    }
+
+    /**
+     * Check that the handle is not released.
+     */
+    private void checkReleased() {
+        if (mReleased) {
+            throw new IllegalStateException("Client is released.");
+        }
+    }
+}
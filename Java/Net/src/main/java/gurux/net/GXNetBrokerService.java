@@ -0,0 +1,618 @@
+//
+// --------------------------------------------------------------------------
+//  Gurux Ltd
+// 
+//
+//
+// Filename:        $HeadURL$
+//
+// Version:         $Revision$,
+//                  $Date$
+//                  $Author$
+//
+// Copyright (c) Gurux Ltd
+//
+//---------------------------------------------------------------------------
+//
+//  DESCRIPTION
+//
+// This file is a part of Gurux Device Framework.
+//
+// Gurux Device Framework is Open Source software; you can redistribute it
+// and/or modify it under the terms of the GNU General Public License 
+// as published by the Free Software Foundation; version 2 of the License.
+// Gurux Device Framework is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of 
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+// See the GNU General Public License for more details.
+//
+// More information of Gurux products: http://www.gurux.org
+//
+// This code is licensed under the GNU General Public License v2. 
+// Full text may be retrieved at http://www.gnu.org/licenses/gpl-2.0.txt
+//---------------------------------------------------------------------------
+
+package gurux.net;
+
+import android.app.Service;
+import android.content.Intent;
+import android.os.Bundle;
+import android.os.IBinder;
+import android.os.RemoteException;
+import android.os.SharedMemory;
+import android.system.ErrnoException;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import gurux.common.IGXMediaListener;
+import gurux.common.MediaStateEventArgs;
+import gurux.common.PropertyChangedEventArgs;
+import gurux.common.ReceiveEventArgs;
+import gurux.common.TraceEventArgs;
+import gurux.net.enums.ListenerInterests;
+
+/**
+ * Service that shares network connections between processes.
+ * <p>
+ * Broker owns the network connections and client processes use them with
+ * {@link GXNetBrokerClient}. Data is not copied to binder parcels. Each
+ * client has a send region and a receive ring in shared memory, and binder
+ * calls tell only how many bytes are written or read.
+ * </p>
+ * <p>
+ * Client locks the connection for the transaction, so only it can send and
+ * the reply is delivered only to it. Received data is sent to all clients
+ * while the connection is not locked. Client whose receive ring is full is
+ * detached, so a slow client doesn't stop receiving of the others.
+ * </p>
+ * <p>
+ * Service is not added to the library manifest. Application that works as
+ * a broker declares it, so only one application on the device exports it:
+ * </p>
+ * <pre>
+ * &lt;permission android:name="gurux.net.permission.BROKER"
+ *     android:protectionLevel="signature" /&gt;
+ * &lt;service android:name="gurux.net.GXNetBrokerService"
+ *     android:exported="true"
+ *     android:permission="gurux.net.permission.BROKER"&gt;
+ *     &lt;intent-filter&gt;
+ *         &lt;action android:name="gurux.net.BROKER" /&gt;
+ *     &lt;/intent-filter&gt;
+ * &lt;/service&gt;
+ * </pre>
+ */
+public class GXNetBrokerService extends Service {
+
+    /**
+     * Action that is used to bind to the broker.
+     */
+    public static final String ACTION = "gurux.net.BROKER";
+
+    /**
+     * Permission that clients must hold.
+     */
+    public static final String PERMISSION = "gurux.net.permission.BROKER";
+
+    /**
+     * Maximum time in milliseconds that a binder thread waits for the lock.
+     * Binder thread pool is small, so waiting clients can't hold it for
+     * longer.
+     */
+    public static final int MAX_LOCK_WAIT = 10000;
+
+    /**
+     * Owned connection and its clients.
+     */
+    private static final class Entry {
+        /**
+         * Network connection.
+         */
+        private final GXNet mNet;
+
+        /**
+         * Attached clients.
+         */
+        private final List<Remote> mClients = new CopyOnWriteArrayList<>();
+
+        /**
+         * Client that holds the lock or null if connection is not locked.
+         * Guarded by the entry.
+         */
+        private volatile Remote mOwner;
+
+        /**
+         * Frames of the clients are sent one at the time.
+         */
+        private final Object mSendLock = new Object();
+
+        /**
+         * Constructor.
+         *
+         * @param net Network connection.
+         */
+        Entry(final GXNet net) {
+            mNet = net;
+        }
+    }
+
+    /**
+     * Attached client process.
+     */
+    private final class Remote implements IBinder.DeathRecipient {
+        /**
+         * Client ID.
+         */
+        private final int mId;
+
+        /**
+         * Connection of the client.
+         */
+        private final Entry mEntry;
+
+        /**
+         * Callback of the client.
+         */
+        private final IGXNetBrokerCallback mCallback;
+
+        /**
+         * Shared memory where client writes sent data.
+         */
+        private final SharedMemory mSendMemory;
+
+        /**
+         * Shared memory where received data is written.
+         */
+        private final SharedMemory mReceiveMemory;
+
+        /**
+         * Mapped send region.
+         */
+        private final ByteBuffer mSend;
+
+        /**
+         * Receive ring.
+         */
+        private final GXSharedRing mRing;
+
+        /**
+         * Is client detached.
+         */
+        private volatile boolean mClosed;
+
+        /**
+         * Constructor.
+         *
+         * @param id       Client ID.
+         * @param entry    Connection of the client.
+         * @param callback Callback of the client.
+         * @param send     Shared memory where client writes sent data.
+         * @param receive  Shared memory where received data is written.
+         * @throws ErrnoException Memory mapping failed.
+         */
+        Remote(final int id, final Entry entry, final IGXNetBrokerCallback callback,
+               final SharedMemory send, final SharedMemory receive) throws ErrnoException {
+            mId = id;
+            mEntry = entry;
+            mCallback = callback;
+            mSendMemory = send;
+            mReceiveMemory = receive;
+            mSend = send.mapReadOnly();
+            mRing = new GXSharedRing(receive.mapReadWrite());
+        }
+
+        @Override
+        public void binderDied() {
+            detach(mId);
+        }
+    }
+
+    /**
+     * Connections by name.
+     */
+    private final Map<String, Entry> mEntries = new HashMap<>();
+
+    /**
+     * Clients by ID.
+     */
+    private final Map<Integer, Remote> mRemotes = new HashMap<>();
+
+    /**
+     * Next client ID.
+     */
+    private int mNextId = 1;
+
+    /**
+     * Binder.
+     */
+    private final IGXNetBroker.Stub mBinder = new IGXNetBroker.Stub() {
+        @Override
+        public int attach(final String name, final Bundle memory,
+                          final IGXNetBrokerCallback callback) {
+            return GXNetBrokerService.this.attach(name, memory, callback);
+        }
+
+        @Override
+        public void open(final int id, final String settings) {
+            GXNet net = getRemote(id).mEntry.mNet;
+            try {
+                synchronized (net) {
+                    if (!net.isOpen()) {
+                        if (settings != null) {
+                            net.setSettings(settings);
+                        }
+                        net.open();
+                    }
+                }
+            } catch (Exception ex) {
+                // Only some exception types are delivered to the client.
+                throw new IllegalStateException(ex.getMessage());
+            }
+        }
+
+        @Override
+        public boolean isOpen(final int id) {
+            return getRemote(id).mEntry.mNet.isOpen();
+        }
+
+        @Override
+        public void send(final int id, final int count) {
+            Remote remote = getRemote(id);
+            if (count < 0 || count > remote.mSend.capacity()) {
+                throw new IllegalArgumentException("count");
+            }
+            Entry entry = remote.mEntry;
+            Remote owner = entry.mOwner;
+            if (owner != null && owner != remote) {
+                throw new IllegalStateException("Connection is locked by other client.");
+            }
+            // Frame is copied once, because the send region is reused.
+            byte[] data = new byte[count];
+            synchronized (remote) {
+                if (remote.mClosed) {
+                    throw new IllegalStateException("Client is not attached.");
+                }
+                remote.mSend.position(0);
+                remote.mSend.get(data);
+            }
+            synchronized (entry.mSendLock) {
+                try {
+                    entry.mNet.send(data);
+                } catch (Exception ex) {
+                    throw new IllegalStateException(ex.getMessage());
+                }
+            }
+        }
+
+        @Override
+        public boolean lock(final int id, final int waitTime) {
+            try {
+                return GXNetBrokerService.this.lock(getRemote(id), waitTime);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+
+        @Override
+        public void unlock(final int id) {
+            GXNetBrokerService.this.unlock(getRemote(id));
+        }
+
+        @Override
+        public void release(final int id, final int count) {
+            Remote remote;
+            synchronized (mEntries) {
+                remote = mRemotes.get(id);
+            }
+            if (remote != null) {
+                remote.mRing.release(count);
+            }
+        }
+
+        @Override
+        public void detach(final int id) {
+            GXNetBrokerService.this.detach(id);
+        }
+    };
+
+    @Override
+    public IBinder onBind(final Intent intent) {
+        return mBinder;
+    }
+
+    @Override
+    public void onDestroy() {
+        List<Remote> remotes;
+        synchronized (mEntries) {
+            remotes = new ArrayList<>(mRemotes.values());
+        }
+        for (Remote it : remotes) {
+            detach(it.mId);
+        }
+        super.onDestroy();
+    }
+
+    /**
+     * Returns names of the connections.
+     *
+     * @return Connection names.
+     */
+    public final String[] getNames() {
+        synchronized (mEntries) {
+            return mEntries.keySet().toArray(new String[0]);
+        }
+    }
+
+    /**
+     * Returns amount of clients of the connection.
+     *
+     * @param name Connection name.
+     * @return Amount of clients.
+     */
+    public final int getClientCount(final String name) {
+        synchronized (mEntries) {
+            Entry entry = mEntries.get(name);
+            if (entry == null) {
+                return 0;
+            }
+            return entry.mClients.size();
+        }
+    }
+
+    /**
+     * Returns attached client.
+     *
+     * @param id Client ID.
+     * @return Client.
+     */
+    private Remote getRemote(final int id) {
+        synchronized (mEntries) {
+            Remote remote = mRemotes.get(id);
+            if (remote == null) {
+                throw new IllegalStateException("Client is not attached.");
+            }
+            return remote;
+        }
+    }
+
+    /**
+     * Attach client to the named connection.
+     *
+     * @param name     Connection name.
+     * @param memory   Shared memory regions of the client.
+     * @param callback Callback of the client.
+     * @return Client ID.
+     */
+    private int attach(final String name, final Bundle memory,
+                       final IGXNetBrokerCallback callback) {
+        if (name == null) {
+            throw new IllegalArgumentException("name");
+        }
+        if (callback == null) {
+            throw new IllegalArgumentException("callback");
+        }
+        if (memory == null || !(memory.getParcelable("send") instanceof SharedMemory)
+                || !(memory.getParcelable("receive") instanceof SharedMemory)) {
+            throw new IllegalArgumentException("memory");
+        }
+        SharedMemory send = memory.getParcelable("send");
+        SharedMemory receive = memory.getParcelable("receive");
+        Remote remote;
+        synchronized (mEntries) {
+            Entry entry = mEntries.get(name);
+            boolean created = entry == null;
+            if (created) {
+                entry = createEntry();
+            }
+            try {
+                remote = new Remote(mNextId, entry, callback, send, receive);
+            } catch (ErrnoException ex) {
+                throw new IllegalArgumentException(ex.getMessage());
+            }
+            ++mNextId;
+            try {
+                callback.asBinder().linkToDeath(remote, 0);
+            } catch (RemoteException ex) {
+                // Client is already dead.
+                closeRemote(remote);
+                return 0;
+            }
+            if (created) {
+                mEntries.put(name, entry);
+            }
+            mRemotes.put(remote.mId, remote);
+            entry.mClients.add(remote);
+        }
+        return remote.mId;
+    }
+
+    /**
+     * Lock the connection for the transaction of the client.
+     *
+     * @param remote   Client.
+     * @param waitTime Maximum wait time in milliseconds. Zero or negative
+     *                 value waits {@link #MAX_LOCK_WAIT} milliseconds.
+     * @return True, if client holds the lock.
+     * @throws InterruptedException Waiting is interrupted.
+     */
+    private static boolean lock(final Remote remote, final int waitTime)
+            throws InterruptedException {
+        Entry entry = remote.mEntry;
+        int time = waitTime;
+        if (time <= 0 || time > MAX_LOCK_WAIT) {
+            time = MAX_LOCK_WAIT;
+        }
+        long deadline = System.currentTimeMillis() + time;
+        synchronized (entry) {
+            while (entry.mOwner != null && entry.mOwner != remote) {
+                if (remote.mClosed) {
+                    return false;
+                }
+                long wait = deadline - System.currentTimeMillis();
+                if (wait <= 0) {
+                    return false;
+                }
+                entry.wait(wait);
+            }
+            if (remote.mClosed) {
+                return false;
+            }
+            entry.mOwner = remote;
+            return true;
+        }
+    }
+
+    /**
+     * Unlock the connection if the client holds the lock. Waiting clients
+     * are woken up also when the client is detached.
+     *
+     * @param remote Client.
+     */
+    private static void unlock(final Remote remote) {
+        Entry entry = remote.mEntry;
+        synchronized (entry) {
+            if (entry.mOwner == remote) {
+                entry.mOwner = null;
+            }
+            entry.notifyAll();
+        }
+    }
+
+    /**
+     * Detach the client. Connection is closed when the last client is
+     * detached. This can be called from the receive thread, so connection
+     * is closed in the background.
+     *
+     * @param id Client ID.
+     */
+    private void detach(final int id) {
+        Remote remote;
+        GXNet closed = null;
+        synchronized (mEntries) {
+            remote = mRemotes.remove(id);
+            if (remote == null) {
+                return;
+            }
+            remote.mEntry.mClients.remove(remote);
+            if (remote.mEntry.mClients.isEmpty()) {
+                mEntries.values().remove(remote.mEntry);
+                closed = remote.mEntry.mNet;
+            }
+        }
+        remote.mCallback.asBinder().unlinkToDeath(remote, 0);
+        closeRemote(remote);
+        if (closed != null) {
+            closed.closeAsync();
+        }
+    }
+
+    /**
+     * Unlock the connection and release shared memory of the client.
+     *
+     * @param remote Client.
+     */
+    private static void closeRemote(final Remote remote) {
+        synchronized (remote) {
+            remote.mClosed = true;
+            SharedMemory.unmap(remote.mSend);
+        }
+        unlock(remote);
+        remote.mRing.close();
+        remote.mSendMemory.close();
+        remote.mReceiveMemory.close();
+    }
+
+    /**
+     * Create connection that sends received data to the clients.
+     *
+     * @return Connection.
+     */
+    private Entry createEntry() {
+        final Entry entry = new Entry(new GXNet(this));
+        entry.mNet.setReceiveHandler(new IGXReceiveHandler() {
+            @Override
+            public void onReceived(final GXNet sender, final GXReceivedData data) {
+                Remote owner = entry.mOwner;
+                if (owner != null) {
+                    // Reply belongs to the transaction of the lock holder.
+                    write(owner, data.getBuffer(), data.getCount());
+                } else {
+                    for (Remote it : entry.mClients) {
+                        write(it, data.getBuffer(), data.getCount());
+                    }
+                }
+            }
+        });
+        entry.mNet.addListener(new IGXMediaListener() {
+            @Override
+            public void onError(final Object sender, final RuntimeException ex) {
+                for (Remote it : entry.mClients) {
+                    try {
+                        it.mCallback.onError(ex.getMessage());
+                    } catch (RemoteException ignored) {
+                        //Client is detached when binder death is notified.
+                    }
+                }
+            }
+
+            @Override
+            public void onReceived(final Object sender, final ReceiveEventArgs e) {
+                //Received data is handled by the receive handler.
+            }
+
+            @Override
+            public void onMediaStateChange(final Object sender, final MediaStateEventArgs e) {
+                for (Remote it : entry.mClients) {
+                    try {
+                        it.mCallback.onMediaStateChange(e.getState().ordinal());
+                    } catch (RemoteException ignored) {
+                        //Client is detached when binder death is notified.
+                    }
+                }
+            }
+
+            @Override
+            public void onTrace(final Object sender, final TraceEventArgs e) {
+                //Trace is not sent to the clients.
+            }
+
+            @Override
+            public void onPropertyChanged(final Object sender, final PropertyChangedEventArgs e) {
+                //Clients don't change the settings after the connection is opened.
+            }
+        }, ListenerInterests.ERROR.getValue() | ListenerInterests.MEDIA_STATE.getValue());
+        return entry;
+    }
+
+    /**
+     * Write received data to the receive ring of the client. This is called
+     * from the receive thread and it never waits for the client. Client
+     * whose receive ring is full is detached.
+     *
+     * @param remote Client.
+     * @param buffer Received data.
+     * @param count  Amount of received bytes.
+     */
+    private void write(final Remote remote, final byte[] buffer, final int count) {
+        int size = remote.mRing.write(buffer, 0, count);
+        if (size == -1) {
+            // Client is detached.
+            return;
+        }
+        try {
+            if (size == 0) {
+                remote.mCallback.onError("Receive buffer overflow. Client is detached.");
+                detach(remote.mId);
+            } else {
+                remote.mCallback.onReceived(size);
+            }
+        } catch (RemoteException ex) {
+            detach(remote.mId);
+        }
+    }
+}
@@ -0,0 +1,481 @@
+//
+// --------------------------------------------------------------------------
+//  Gurux Ltd
+// 
+//
+//
+// Filename:        $HeadURL$
+//
+// Version:         $Revision$,
+//                  $Date$
+//                  $Author$
+//
+// Copyright (c) Gurux Ltd
+//
+//---------------------------------------------------------------------------
+//
+//  DESCRIPTION
+//
+// This file is a part of Gurux Device Framework.
+//
+// Gurux Device Framework is Open Source software; you can redistribute it
+// and/or modify it under the terms of the GNU General Public License 
+// as published by the Free Software Foundation; version 2 of the License.
+// Gurux Device Framework is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of 
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+// See the GNU General Public License for more details.
+//
+// More information of Gurux products: http://www.gurux.org
+//
+// This code is licensed under the GNU General Public License v2. 
+// Full text may be retrieved at http://www.gnu.org/licenses/gpl-2.0.txt
+//---------------------------------------------------------------------------
+
+package gurux.net;
+
+import android.app.Activity;
+
+import androidx.fragment.app.Fragment;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import gurux.common.GXSync;
+import gurux.common.GXSynchronousMediaBase;
+import gurux.common.IGXMedia2;
+import gurux.common.IGXMediaListener;
+import gurux.common.MediaStateEventArgs;
+import gurux.common.ReceiveEventArgs;
+import gurux.common.ReceiveParameters;
+import gurux.common.TraceEventArgs;
+import gurux.common.enums.MediaState;
+import gurux.common.enums.TraceLevel;
+import gurux.common.enums.TraceTypes;
+
+/**
+ * Logical channel of the multiplexed network connection.
+ * <p>
+ * Channel is a media view to the shared connection. Data that is sent is
+ * written to the shared connection as it is, so it must contain the
+ * addresses of the channel. Received frames are sent to the listeners and
+ * synchronous waiters of the channel in the receive thread. Closing the
+ * channel doesn't close the shared connection. Frames that are received
+ * while the channel is closed are dropped.
+ * </p>
+ * <p>
+ * Settings belong to the shared connection. They can be changed from the
+ * channel only while the shared connection is closed.
+ * </p>
+ */
+public class GXNetChannel implements IGXMedia2 {
+
+    /**
+     * Parent multiplexer.
+     */
+    private final GXNetMultiplexer mMultiplexer;
+
+    /**
+     * Channel key.
+     */
+    private final Object mKey;
+
+    /**
+     * Synchronously class.
+     */
+    private final GXSynchronousMediaBase mSyncBase;
+
+    /**
+     * Media listeners.
+     */
+    private final List<IGXMediaListener> mMediaListeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Is channel open.
+     */
+    private volatile boolean mOpen;
+
+    /**
+     * Synchronous counter.
+     */
+    private volatile int mSynchronous;
+
+    /**
+     * Trace level.
+     */
+    private TraceLevel mTrace = TraceLevel.OFF;
+
+    /**
+     * End of packet.
+     */
+    private Object mEop;
+
+    /**
+     * Amount of bytes sent.
+     */
+    private long mBytesSent;
+
+    /**
+     * Amount of bytes received.
+     */
+    private long mBytesReceived;
+
+    private int mConfigurableSettings;
+
+    private int mReceiveDelay;
+
+    private int mAsyncWaitTime;
+
+    /**
+     * Constructor.
+     *
+     * @param multiplexer Parent multiplexer.
+     * @param key         Channel key.
+     */
+    GXNetChannel(final GXNetMultiplexer multiplexer, final Object key) {
+        mMultiplexer = multiplexer;
+        mKey = key;
+        mSyncBase = new GXSynchronousMediaBase(200);
+    }
+
+    /**
+     * Returns channel key.
+     *
+     * @return Channel key.
+     */
+    public final Object getKey() {
+        return mKey;
+    }
+
+    /**
+     * Returns shared network connection.
+     *
+     * @return Network connection.
+     */
+    public final GXNet getNet() {
+        return mMultiplexer.getNet();
+    }
+
+    /**
+     * Handle received frame. This is called from the receive thread.
+     *
+     * @param frame Received frame.
+     * @param info  Sender information.
+     */
+    final void handleFrame(final byte[] frame, final String info) {
+        if (!mOpen) {
+            return;
+        }
+        mBytesReceived += frame.length;
+        if (mTrace == TraceLevel.VERBOSE) {
+            TraceEventArgs arg = new TraceEventArgs(TraceTypes.RECEIVED, frame);
+            for (IGXMediaListener listener : mMediaListeners) {
+                listener.onTrace(this, arg);
+            }
+        }
+        if (getIsSynchronous()) {
+            synchronized (mSyncBase.getSync()) {
+                mSyncBase.appendData(frame, 0, frame.length);
+                mSyncBase.setReceived();
+            }
+        } else {
+            ReceiveEventArgs e = new ReceiveEventArgs(frame, info);
+            for (IGXMediaListener listener : mMediaListeners) {
+                listener.onReceived(this, e);
+            }
+        }
+    }
+
+    /**
+     * Notify listeners from the error of the shared connection.
+     *
+     * @param ex Occurred error.
+     */
+    final void notifyError(final RuntimeException ex) {
+        for (IGXMediaListener listener : mMediaListeners) {
+            listener.onError(this, ex);
+        }
+    }
+
+    /**
+     * Notify listeners from the state change of the shared connection.
+     *
+     * @param e State change event.
+     */
+    final void notifyMediaStateChange(final MediaStateEventArgs e) {
+        if (mOpen) {
+            if (e.getState() == MediaState.CLOSED) {
+                mOpen = false;
+            }
+            for (IGXMediaListener listener : mMediaListeners) {
+                listener.onMediaStateChange(this, e);
+            }
+        }
+    }
+
+    @Override
+    public final TraceLevel getTrace() {
+        return mTrace;
+    }
+
+    @Override
+    public final void setTrace(final TraceLevel value) {
+        mTrace = value;
+        mSyncBase.setTrace(value);
+    }
+
+    @Override
+    public final int getConfigurableSettings() {
+        return mConfigurableSettings;
+    }
+
+    @Override
+    public final void setConfigurableSettings(final int value) {
+        mConfigurableSettings = value;
+    }
+
+    @Override
+    public final void send(final Object data, final String target) throws Exception {
+        if (!isOpen()) {
+            throw new RuntimeException("Channel is not open.");
+        }
+        byte[] buff = GXSynchronousMediaBase.getAsByteArray(data);
+        if (buff == null) {
+            throw new IllegalArgumentException("Data send failed. Invalid data.");
+        }
+        if (mTrace == TraceLevel.VERBOSE) {
+            TraceEventArgs arg = new TraceEventArgs(TraceTypes.SENT, buff);
+            for (IGXMediaListener listener : mMediaListeners) {
+                listener.onTrace(this, arg);
+            }
+        }
+        // Reset last position if end of packet is used.
+        mSyncBase.resetLastPosition();
+        mMultiplexer.send(buff);
+        mBytesSent += buff.length;
+    }
+
+    /**
+     * Send data to the channel.
+     *
+     * @param data Sent data.
+     * @throws Exception Send failed.
+     */
+    public final void send(final Object data) throws Exception {
+        send(data, null);
+    }
+
+    /**
+     * Open the channel. Shared connection is opened if it's not open.
+     */
+    @Override
+    public final void open() throws Exception {
+        GXNet net = getNet();
+        synchronized (net) {
+            if (!net.isOpen()) {
+                net.open();
+            }
+        }
+        synchronized (mSyncBase.getSync()) {
+            mSyncBase.resetLastPosition();
+            mSyncBase.resetReceivedSize();
+        }
+        mOpen = true;
+        MediaStateEventArgs e = new MediaStateEventArgs(MediaState.OPEN);
+        for (IGXMediaListener listener : mMediaListeners) {
+            listener.onMediaStateChange(this, e);
+        }
+    }
+
+    /**
+     * Close the channel. Shared connection is not closed.
+     */
+    @Override
+    public final void close() {
+        if (mOpen) {
+            mOpen = false;
+            MediaStateEventArgs e = new MediaStateEventArgs(MediaState.CLOSED);
+            for (IGXMediaListener listener : mMediaListeners) {
+                listener.onMediaStateChange(this, e);
+            }
+        }
+    }
+
+    @Override
+    public final boolean isOpen() {
+        return mOpen && getNet().isOpen();
+    }
+
+    @Override
+    public final <T> boolean receive(final ReceiveParameters<T> args) {
+        return mSyncBase.receive(args);
+    }
+
+    @Override
+    public final long getBytesSent() {
+        return mBytesSent;
+    }
+
+    @Override
+    public final long getBytesReceived() {
+        return mBytesReceived;
+    }
+
+    @Override
+    public final void resetByteCounters() {
+        mBytesSent = 0;
+        mBytesReceived = 0;
+    }
+
+    /**
+     * Returns settings of the shared connection.
+     */
+    @Override
+    public final String getSettings() {
+        return getNet().getSettings();
+    }
+
+    /**
+     * Set settings of the shared connection. Settings are changed for all
+     * the channels of the connection.
+     *
+     * @param value Settings.
+     * @throws IllegalStateException Shared connection is open.
+     */
+    @Override
+    public final void setSettings(final String value) {
+        GXNet net = getNet();
+        synchronized (net) {
+            if (net.isOpen()) {
+                throw new IllegalStateException(
+                        "Settings can't be changed while the shared connection is open.");
+            }
+            net.setSettings(value);
+        }
+    }
+
+    /**
+     * Copy channel settings from the other channel. Settings of the shared
+     * connection are not copied. If target is a network connection, its
+     * settings are copied to the shared connection.
+     *
+     * @param target Copied channel or network connection.
+     * @throws IllegalStateException Target is a network connection and the
+     *                               shared connection is open.
+     */
+    @Override
+    public final void copy(final Object target) {
+        if (target instanceof GXNetChannel) {
+            GXNetChannel tmp = (GXNetChannel) target;
+            setTrace(tmp.getTrace());
+            setEop(tmp.getEop());
+            setConfigurableSettings(tmp.getConfigurableSettings());
+            setReceiveDelay(tmp.getReceiveDelay());
+            setAsyncWaitTime(tmp.getAsyncWaitTime());
+        } else if (target instanceof GXNet) {
+            setSettings(((GXNet) target).getSettings());
+        } else {
+            throw new IllegalArgumentException("target");
+        }
+    }
+
+    @Override
+    public final String getName() {
+        return getNet().getName() + "/" + mKey;
+    }
+
+    @Override
+    public final String getMediaType() {
+        return "Net";
+    }
+
+    @Override
+    public final Object getSynchronous() {
+        synchronized (this) {
+            int[] tmp = new int[]{mSynchronous};
+            GXSync obj = new GXSync(tmp);
+            mSynchronous = tmp[0];
+            return obj;
+        }
+    }
+
+    @Override
+    public final boolean getIsSynchronous() {
+        return mSynchronous != 0;
+    }
+
+    @Override
+    public final void resetSynchronousBuffer() {
+        synchronized (mSyncBase.getSync()) {
+            mSyncBase.resetReceivedSize();
+        }
+    }
+
+    @Override
+    public final void validate() {
+        getNet().validate();
+    }
+
+    @Override
+    public final Object getEop() {
+        return mEop;
+    }
+
+    @Override
+    public final void setEop(final Object value) {
+        mEop = value;
+    }
+
+    @Override
+    public final void addListener(final IGXMediaListener listener) {
+        mMediaListeners.add(listener);
+    }
+
+    @Override
+    public final void removeListener(final IGXMediaListener listener) {
+        mMediaListeners.remove(listener);
+    }
+
+    @Override
+    public int getReceiveDelay() {
+        return mReceiveDelay;
+    }
+
+    @Override
+    public void setReceiveDelay(final int value) {
+        mReceiveDelay = value;
+    }
+
+    @Override
+    public int getAsyncWaitTime() {
+        return mAsyncWaitTime;
+    }
+
+    @Override
+    public void setAsyncWaitTime(final int value) {
+        mAsyncWaitTime = value;
+    }
+
+    @Override
+    public Object getAsyncWaitHandle() {
+        return null;
+    }
+
+    public void properties(final Activity activity) {
+        getNet().properties(activity);
+    }
+
+    public Fragment properties() {
+        return getNet().properties();
+    }
+
+    @Override
+    public int getIconResId() {
+        return getNet().getIconResId();
+    }
+
+    @Override
+    public String getVersion() {
+        return getNet().getVersion();
+    }
+}
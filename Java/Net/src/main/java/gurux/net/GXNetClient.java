@@ -0,0 +1,189 @@
+//
+// --------------------------------------------------------------------------
+//  Gurux Ltd
+// 
+//
+//
+// Filename:        $HeadURL$
+//
+// Version:         $Revision$,
+//                  $Date$
+//                  $Author$
+//
+// Copyright (c) Gurux Ltd
+//
+//---------------------------------------------------------------------------
+//
+//  DESCRIPTION
+//
+// This file is a part of Gurux Device Framework.
+//
+// Gurux Device Framework is Open Source software; you can redistribute it
+// and/or modify it under the terms of the GNU General Public License 
+// as published by the Free Software Foundation; version 2 of the License.
+// Gurux Device Framework is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of 
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+// See the GNU General Public License for more details.
+//
+// More information of Gurux products: http://www.gurux.org
+//
+// This code is licensed under the GNU General Public License v2. 
+// Full text may be retrieved at http://www.gnu.org/licenses/gpl-2.0.txt
+//---------------------------------------------------------------------------
+
+package gurux.net;
+
+import android.app.Activity;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import gurux.common.IGXMediaListener;
+
+/**
+ * Client handle to the connection that is owned by {@link GXNetService}.
+ * <p>
+ * Activity attaches itself to the handle so that listeners are notified in
+ * the UI thread. Listeners that are added through the handle are removed
+ * and the activity is detached when the handle is released, so the
+ * connection doesn't hold references to the destroyed activity.
+ * </p>
+ */
+public final class GXNetClient {
+
+    /**
+     * Owner service.
+     */
+    private final GXNetService mService;
+
+    /**
+     * Connection name.
+     */
+    private final String mName;
+
+    /**
+     * Network connection.
+     */
+    private final GXNet mNet;
+
+    /**
+     * Listeners that are added through this handle.
+     */
+    private final List<IGXMediaListener> mListeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Attached activity.
+     */
+    private volatile Activity mActivity;
+
+    /**
+     * Is handle released.
+     */
+    private volatile boolean mReleased;
+
+    /**
+     * Constructor.
+     *
+     * @param service Owner service.
+     * @param name    Connection name.
+     * @param net     Network connection.
+     */
+    GXNetClient(final GXNetService service, final String name, final GXNet net) {
+        mService = service;
+        mName = name;
+        mNet = net;
+    }
+
+    /**
+     * Returns connection name.
+     *
+     * @return Connection name.
+     */
+    public String getName() {
+        return mName;
+    }
+
+    /**
+     * Returns network connection.
+     *
+     * @return Network connection.
+     */
+    public GXNet getNet() {
+        if (mReleased) {
+            throw new IllegalStateException("Client is released.");
+        }
+        return mNet;
+    }
+
+    /**
+     * Is handle released.
+     *
+     * @return True, if handle is released.
+     */
+    public boolean isReleased() {
+        return mReleased;
+    }
+
+    /**
+     * Attach the activity. Listeners are notified in the UI thread of the
+     * activity.
+     *
+     * @param activity Activity.
+     */
+    public void attach(final Activity activity) {
+        if (activity == null) {
+            throw new IllegalArgumentException("activity");
+        }
+        getNet().setActivity(activity);
+        mActivity = activity;
+    }
+
+    /**
+     * Detach the activity. Listeners are notified in the receive thread
+     * until new activity is attached.
+     */
+    public void detach() {
+        Activity activity = mActivity;
+        mActivity = null;
+        if (activity != null && mNet.getActivity() == activity) {
+            mNet.setActivity(null);
+        }
+    }
+
+    /**
+     * Add media listener. Listener is removed when the handle is released.
+     *
+     * @param listener Media listener.
+     */
+    public void addListener(final IGXMediaListener listener) {
+        getNet().addListener(listener);
+        mListeners.add(listener);
+    }
+
+    /**
+     * Remove media listener.
+     *
+     * @param listener Media listener.
+     */
+    public void removeListener(final IGXMediaListener listener) {
+        mListeners.remove(listener);
+        mNet.removeListener(listener);
+    }
+
+    /**
+     * Release the handle. Listeners of the handle are removed and the
+     * activity is detached. Connection is not closed.
+     */
+    public void release() {
+        if (!mReleased) {
+            mReleased = true;
+            for (IGXMediaListener it : mListeners) {
+                mNet.removeListener(it);
+            }
+            mListeners.clear();
+            detach();
+            mService.release(this);
+        }
+    }
+}
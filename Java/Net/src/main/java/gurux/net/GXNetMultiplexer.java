@@ -0,0 +1,299 @@
+//
+// --------------------------------------------------------------------------
+//  Gurux Ltd
+// 
+//
+//
+// Filename:        $HeadURL$
+//
+// Version:         $Revision$,
+//                  $Date$
+//                  $Author$
+//
+// Copyright (c) Gurux Ltd
+//
+//---------------------------------------------------------------------------
+//
+//  DESCRIPTION
+//
+// This file is a part of Gurux Device Framework.
+//
+// Gurux Device Framework is Open Source software; you can redistribute it
+// and/or modify it under the terms of the GNU General Public License 
+// as published by the Free Software Foundation; version 2 of the License.
+// Gurux Device Framework is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of 
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+// See the GNU General Public License for more details.
+//
+// More information of Gurux products: http://www.gurux.org
+//
+// This code is licensed under the GNU General Public License v2. 
+// Full text may be retrieved at http://www.gnu.org/licenses/gpl-2.0.txt
+//---------------------------------------------------------------------------
+
+package gurux.net;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import gurux.common.IGXMediaListener;
+import gurux.common.MediaStateEventArgs;
+import gurux.common.PropertyChangedEventArgs;
+import gurux.common.ReceiveEventArgs;
+import gurux.common.TraceEventArgs;
+import gurux.net.enums.ListenerInterests;
+
+/**
+ * Multiplexer runs several logical channels over one network connection.
+ * <p>
+ * Received data is split to frames and each frame is sent to the channel
+ * that is resolved from the frame. Frames are handled in the receive
+ * thread. Frames that don't belong to any channel are received by the
+ * network connection like without multiplexer, so they can be read with
+ * receive, receive handler or listeners. Frames of closed channels are dropped. If the
+ * resolver finds an invalid frame, bytes are skipped until the next valid
+ * frame is found.
+ * </p>
+ * <p>
+ * Channels send through the multiplexer one frame at the time so that
+ * frames of different channels are not interleaved.
+ * </p>
+ * <pre>
+ * GXNet net = new GXNet(context, NetworkType.TCP, "gateway", 4059);
+ * GXNetMultiplexer mux = new GXNetMultiplexer(net, new GXWrapperChannelResolver());
+ * GXNetChannel meter = mux.getChannel(GXWrapperChannelResolver.getKey(16, 1));
+ * meter.open();
+ * </pre>
+ */
+public class GXNetMultiplexer {
+
+    /**
+     * Multiplexed network connection.
+     */
+    private final GXNet mNet;
+
+    /**
+     * Channel resolver.
+     */
+    private final IGXChannelResolver mResolver;
+
+    /**
+     * Channels by channel key.
+     */
+    private final Map<Object, GXNetChannel> mChannels = new ConcurrentHashMap<>();
+
+    /**
+     * Received bytes that are not handled yet. Accessed only from the
+     * receive thread.
+     */
+    private byte[] mBuffer = new byte[GXNetTransport.RECEIVE_BUFFER_SIZE];
+
+    /**
+     * Amount of received bytes.
+     */
+    private int mSize;
+
+    /**
+     * Sent frames are serialized with this lock.
+     */
+    private final Object mSendLock = new Object();
+
+    /**
+     * Amount of skipped bytes of invalid frames.
+     */
+    private volatile long mSkippedBytes;
+
+    /**
+     * Forwards state changes of the connection to the channels.
+     */
+    private final IGXMediaListener mListener = new IGXMediaListener() {
+        @Override
+        public void onError(final Object sender, final RuntimeException ex) {
+            for (GXNetChannel it : mChannels.values()) {
+                it.notifyError(ex);
+            }
+        }
+
+        @Override
+        public void onReceived(final Object sender, final ReceiveEventArgs e) {
+            //Frames are handled in the receive thread.
+        }
+
+        @Override
+        public void onMediaStateChange(final Object sender, final MediaStateEventArgs e) {
+            for (GXNetChannel it : mChannels.values()) {
+                it.notifyMediaStateChange(e);
+            }
+        }
+
+        @Override
+        public void onTrace(final Object sender, final TraceEventArgs e) {
+            //Trace is handled by the channels.
+        }
+
+        @Override
+        public void onPropertyChanged(final Object sender, final PropertyChangedEventArgs e) {
+            //Properties are not changed by the channels.
+        }
+    };
+
+    /**
+     * Constructor.
+     *
+     * @param net      Multiplexed network connection.
+     * @param resolver Channel resolver.
+     */
+    public GXNetMultiplexer(final GXNet net, final IGXChannelResolver resolver) {
+        if (net == null) {
+            throw new IllegalArgumentException("net");
+        }
+        if (resolver == null) {
+            throw new IllegalArgumentException("resolver");
+        }
+        mNet = net;
+        mResolver = resolver;
+        net.setMultiplexer(this);
+        net.addListener(mListener, ListenerInterests.ERROR.getValue()
+                | ListenerInterests.MEDIA_STATE.getValue());
+    }
+
+    /**
+     * Returns multiplexed network connection.
+     *
+     * @return Network connection.
+     */
+    public final GXNet getNet() {
+        return mNet;
+    }
+
+    /**
+     * Returns channel for the channel key. Channel is created if it doesn't
+     * exist.
+     *
+     * @param key Channel key.
+     * @return Channel.
+     */
+    public final GXNetChannel getChannel(final Object key) {
+        if (key == null) {
+            throw new IllegalArgumentException("key");
+        }
+        GXNetChannel channel = mChannels.get(key);
+        if (channel == null) {
+            channel = new GXNetChannel(this, key);
+            GXNetChannel tmp = mChannels.putIfAbsent(key, channel);
+            if (tmp != null) {
+                channel = tmp;
+            }
+        }
+        return channel;
+    }
+
+    /**
+     * Remove the channel.
+     *
+     * @param key Channel key.
+     */
+    public final void removeChannel(final Object key) {
+        GXNetChannel channel = mChannels.remove(key);
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+    /**
+     * Returns amount of channels.
+     *
+     * @return Amount of channels.
+     */
+    public final int getChannelCount() {
+        return mChannels.size();
+    }
+
+    /**
+     * Detach the multiplexer from the network connection. Network
+     * connection is not closed.
+     */
+    public final void detach() {
+        mNet.removeListener(mListener);
+        mNet.setMultiplexer(null);
+        for (GXNetChannel it : mChannels.values()) {
+            it.close();
+        }
+        mChannels.clear();
+    }
+
+    /**
+     * Returns amount of bytes that are skipped because the frames were
+     * invalid.
+     *
+     * @return Amount of skipped bytes.
+     */
+    public final long getSkippedBytes() {
+        return mSkippedBytes;
+    }
+
+    /**
+     * Send frame to the network connection. Only one frame is sent at the
+     * time.
+     *
+     * @param data Sent frame.
+     * @throws Exception Send failed.
+     */
+    final void send(final byte[] data) throws Exception {
+        synchronized (mSendLock) {
+            mNet.send(data);
+        }
+    }
+
+    /**
+     * Discard partially received frame. This is called when the connection
+     * is opened.
+     */
+    final void reset() {
+        mSize = 0;
+    }
+
+    /**
+     * Split received data to frames and send them to the channels. This is
+     * called from the receive thread.
+     *
+     * @param buffer Received data.
+     * @param length Length of received data.
+     * @param info   Sender information.
+     */
+    final void handleReceivedData(final byte[] buffer, final int length, final String info) {
+        if (mSize + length > mBuffer.length) {
+            byte[] tmp = new byte[Math.max(2 * mBuffer.length, mSize + length)];
+            System.arraycopy(mBuffer, 0, tmp, 0, mSize);
+            mBuffer = tmp;
+        }
+        System.arraycopy(buffer, 0, mBuffer, mSize, length);
+        mSize += length;
+        int index = 0;
+        int size;
+        while (index < mSize
+                && (size = mResolver.getFrameSize(mBuffer, index, mSize - index)) != 0) {
+            if (size < 0) {
+                // Frame is corrupted. Search the next frame.
+                ++index;
+                ++mSkippedBytes;
+                continue;
+            }
+            byte[] frame = new byte[size];
+            System.arraycopy(mBuffer, index, frame, 0, size);
+            GXNetChannel channel = mChannels.get(mResolver.getKey(mBuffer, index, size));
+            index += size;
+            if (channel != null) {
+                channel.handleFrame(frame, info);
+            } else {
+                // Parent connection receives frames of unknown channels.
+                mNet.handleUnmatchedFrame(frame, info);
+            }
+        }
+        if (index != 0) {
+            mSize -= index;
+            System.arraycopy(mBuffer, index, mBuffer, 0, mSize);
+        }
+    }
+}
@@ -0,0 +1,343 @@
+//
+// --------------------------------------------------------------------------
+//  Gurux Ltd
+// 
+//
+//
+// Filename:        $HeadURL$
+//
+// Version:         $Revision$,
+//                  $Date$
+//                  $Author$
+//
+// Copyright (c) Gurux Ltd
+//
+//---------------------------------------------------------------------------
+//
+//  DESCRIPTION
+//
+// This file is a part of Gurux Device Framework.
+//
+// Gurux Device Framework is Open Source software; you can redistribute it
+// and/or modify it under the terms of the GNU General Public License 
+// as published by the Free Software Foundation; version 2 of the License.
+// Gurux Device Framework is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of 
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+// See the GNU General Public License for more details.
+//
+// More information of Gurux products: http://www.gurux.org
+//
+// This code is licensed under the GNU General Public License v2. 
+// Full text may be retrieved at http://www.gnu.org/licenses/gpl-2.0.txt
+//---------------------------------------------------------------------------
+
+package gurux.net;
+
+import android.app.Notification;
+import android.app.Service;
+import android.content.Intent;
+import android.content.pm.ServiceInfo;
+import android.os.Binder;
+import android.os.IBinder;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Service that owns network connections independently from the activity
+ * lifecycle.
+ * <p>
+ * Activities bind to the service and acquire lightweight client handles to
+ * the named connections. Connections and their receive threads are kept
+ * when the activity is recreated, so rotation or app switch doesn't cause
+ * reconnect. Service can be moved to the foreground to keep connections
+ * alive when the application is in the background.
+ * </p>
+ * <p>
+ * Activity is destroyed before the recreated activity binds again, so the
+ * service must also be started to keep it alive over the recreation.
+ * Started service is stopped when the activity is finished.
+ * </p>
+ * <p>
+ * Service is not added to the library manifest. Application that uses it
+ * declares it. Foreground service permissions and type are needed only if
+ * {@link #setForeground(int, Notification)} is used:
+ * </p>
+ * <pre>
+ * &lt;uses-permission android:name="android.permission.FOREGROUND_SERVICE" /&gt;
+ * &lt;uses-permission
+ *     android:name="android.permission.FOREGROUND_SERVICE_CONNECTED_DEVICE" /&gt;
+ * &lt;service android:name="gurux.net.GXNetService"
+ *     android:exported="false"
+ *     android:foregroundServiceType="connectedDevice" /&gt;
+ * </pre>
+ * <pre>
+ * startService(new Intent(this, GXNetService.class));
+ * bindService(new Intent(this, GXNetService.class), connection, Context.BIND_AUTO_CREATE);
+ * ...
+ * public void onServiceConnected(ComponentName name, IBinder binder) {
+ *     GXNetService service = ((GXNetService.LocalBinder) binder).getService();
+ *     mClient = service.acquire("meter");
+ *     mClient.attach(MainActivity.this);
+ *     mClient.addListener(MainActivity.this);
+ * }
+ * ...
+ * protected void onDestroy() {
+ *     mClient.release();
+ *     if (isFinishing()) {
+ *         service.remove("meter");
+ *         stopService(new Intent(this, GXNetService.class));
+ *     }
+ *     unbindService(connection);
+ * }
+ * </pre>
+ */
+public class GXNetService extends Service {
+
+    /**
+     * Binder that returns the service to the local clients.
+     */
+    public class LocalBinder extends Binder {
+        /**
+         * Returns connection service.
+         *
+         * @return Connection service.
+         */
+        public GXNetService getService() {
+            return GXNetService.this;
+        }
+    }
+
+    /**
+     * Owned connection and its clients.
+     */
+    private static final class Entry {
+        /**
+         * Network connection.
+         */
+        private final GXNet mNet;
+
+        /**
+         * Acquired clients.
+         */
+        private final List<GXNetClient> mClients = new ArrayList<>();
+
+        /**
+         * Constructor.
+         *
+         * @param net Network connection.
+         */
+        Entry(final GXNet net) {
+            mNet = net;
+        }
+    }
+
+    /**
+     * Binder.
+     */
+    private final IBinder mBinder = new LocalBinder();
+
+    /**
+     * Connections by name.
+     */
+    private final Map<String, Entry> mEntries = new HashMap<>();
+
+    /**
+     * Intent extra that tells that the service is started for the
+     * foreground.
+     */
+    private static final String EXTRA_FOREGROUND = "gurux.net.foreground";
+
+    /**
+     * Is service in the foreground.
+     */
+    private boolean mForeground;
+
+    /**
+     * Is service started by the application.
+     */
+    private boolean mStarted;
+
+    @Override
+    public IBinder onBind(final Intent intent) {
+        return mBinder;
+    }
+
+    @Override
+    public int onStartCommand(final Intent intent, final int flags, final int startId) {
+        if (intent == null || !intent.getBooleanExtra(EXTRA_FOREGROUND, false)) {
+            synchronized (mEntries) {
+                mStarted = true;
+            }
+        }
+        // Closed connections can't be restored if the service is killed.
+        return START_NOT_STICKY;
+    }
+
+    @Override
+    public void onDestroy() {
+        List<Entry> entries;
+        synchronized (mEntries) {
+            entries = new ArrayList<>(mEntries.values());
+            mEntries.clear();
+        }
+        for (Entry it : entries) {
+            closeEntry(it);
+        }
+        super.onDestroy();
+    }
+
+    /**
+     * Acquire client handle to the named connection. Connection is created
+     * if it doesn't exist.
+     *
+     * @param name Connection name.
+     * @return Client handle.
+     */
+    public final GXNetClient acquire(final String name) {
+        if (name == null) {
+            throw new IllegalArgumentException("name");
+        }
+        synchronized (mEntries) {
+            Entry entry = mEntries.get(name);
+            if (entry == null) {
+                entry = new Entry(new GXNet(this));
+                mEntries.put(name, entry);
+            }
+            GXNetClient client = new GXNetClient(this, name, entry.mNet);
+            entry.mClients.add(client);
+            return client;
+        }
+    }
+
+    /**
+     * Release client handle. Connection is kept.
+     *
+     * @param client Client handle.
+     */
+    final void release(final GXNetClient client) {
+        synchronized (mEntries) {
+            Entry entry = mEntries.get(client.getName());
+            if (entry != null) {
+                entry.mClients.remove(client);
+            }
+        }
+    }
+
+    /**
+     * Returns names of the connections.
+     *
+     * @return Connection names.
+     */
+    public final String[] getNames() {
+        synchronized (mEntries) {
+            return mEntries.keySet().toArray(new String[0]);
+        }
+    }
+
+    /**
+     * Returns amount of clients of the connection.
+     *
+     * @param name Connection name.
+     * @return Amount of clients.
+     */
+    public final int getClientCount(final String name) {
+        synchronized (mEntries) {
+            Entry entry = mEntries.get(name);
+            if (entry == null) {
+                return 0;
+            }
+            return entry.mClients.size();
+        }
+    }
+
+    /**
+     * Close the connection and remove it from the service. Client handles
+     * of the connection are released.
+     *
+     * @param name Connection name.
+     */
+    public final void remove(final String name) {
+        Entry entry;
+        synchronized (mEntries) {
+            entry = mEntries.remove(name);
+        }
+        if (entry != null) {
+            closeEntry(entry);
+        }
+    }
+
+    /**
+     * Release clients and close the connection in the background. This is
+     * called from the main thread, so it doesn't wait for the connection
+     * to close. Entry is already removed from the service, so new clients
+     * can't be added.
+     *
+     * @param entry Removed connection.
+     */
+    private static void closeEntry(final Entry entry) {
+        for (GXNetClient it : entry.mClients) {
+            it.release();
+        }
+        entry.mClients.clear();
+        entry.mNet.closeAsync();
+    }
+
+    /**
+     * Move the service to the foreground. Service is started so that it's
+     * not destroyed when the last activity unbinds. Application must
+     * declare the foreground service permissions and the connectedDevice
+     * service type in its manifest.
+     *
+     * @param id           Notification ID.
+     * @param notification Shown notification.
+     */
+    public final void setForeground(final int id, final Notification notification) {
+        if (notification == null) {
+            throw new IllegalArgumentException("notification");
+        }
+        synchronized (mEntries) {
+            if (!mForeground) {
+                startService(new Intent(this, GXNetService.class)
+                        .putExtra(EXTRA_FOREGROUND, true));
+                mForeground = true;
+            }
+        }
+        startForeground(id, notification,
+                ServiceInfo.FOREGROUND_SERVICE_TYPE_CONNECTED_DEVICE);
+    }
+
+    /**
+     * Remove the service from the foreground. If the application has not
+     * started the service, service is destroyed when the last activity
+     * unbinds.
+     */
+    public final void clearForeground() {
+        boolean started;
+        synchronized (mEntries) {
+            if (!mForeground) {
+                return;
+            }
+            mForeground = false;
+            started = mStarted;
+        }
+        stopForeground(STOP_FOREGROUND_REMOVE);
+        if (!started) {
+            stopSelf();
+        }
+    }
+
+    /**
+     * Is service in the foreground.
+     *
+     * @return True, if service is in the foreground.
+     */
+    public final boolean isForeground() {
+        synchronized (mEntries) {
+            return mForeground;
+        }
+    }
+}
@@ -0,0 +1,264 @@
+//
+// --------------------------------------------------------------------------
+//  Gurux Ltd
+// 
+//
+//
+// Filename:        $HeadURL$
+//
+// Version:         $Revision$,
+//                  $Date$
+//                  $Author$
+//
+// Copyright (c) Gurux Ltd
+//
+//---------------------------------------------------------------------------
+//
+//  DESCRIPTION
+//
+// This file is a part of Gurux Device Framework.
+//
+// Gurux Device Framework is Open Source software; you can redistribute it
+// and/or modify it under the terms of the GNU General Public License 
+// as published by the Free Software Foundation; version 2 of the License.
+// Gurux Device Framework is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of 
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+// See the GNU General Public License for more details.
+//
+// More information of Gurux products: http://www.gurux.org
+//
+// This code is licensed under the GNU General Public License v2. 
+// Full text may be retrieved at http://www.gnu.org/licenses/gpl-2.0.txt
+//---------------------------------------------------------------------------
+
+package gurux.net;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Periodic poll job of the poll scheduler.
+ * <p>
+ * Job sends the requests to the endpoint one by one and waits the reply for
+ * each request. Job is released once in a period and it must be completed
+ * before the deadline that is counted from the release time. Reply is
+ * complete when the end of packet is found or count bytes are received.
+ * If the end of packet is not set, end of packet of the connection is
+ * used.
+ * </p>
+ */
+public class GXPollJob {
+
+    /**
+     * Endpoint connection.
+     */
+    private final GXNet mNet;
+
+    /**
+     * Sent requests.
+     */
+    private final List<byte[]> mRequests;
+
+    /**
+     * Period in milliseconds.
+     */
+    private final int mPeriod;
+
+    /**
+     * Relative deadline in milliseconds.
+     */
+    private final int mDeadline;
+
+    /**
+     * Reply wait time in milliseconds.
+     */
+    private int mWaitTime = 5000;
+
+    /**
+     * Is connection kept open after the job.
+     */
+    private boolean mKeepOpen;
+
+    /**
+     * End of packet of the reply or null.
+     */
+    private Object mEop;
+
+    /**
+     * Minimum amount of reply bytes.
+     */
+    private int mCount;
+
+    /**
+     * Endpoint of the current run. Accessed only by the scheduler.
+     */
+    Object mEndpoint;
+
+    /**
+     * Next release time in monotonic milliseconds. Accessed only by the
+     * scheduler.
+     */
+    long mRelease;
+
+    /**
+     * Absolute deadline of the current run in monotonic milliseconds.
+     * Accessed only by the scheduler.
+     */
+    long mAbsoluteDeadline;
+
+    /**
+     * Is job waiting or running. Accessed only by the scheduler.
+     */
+    boolean mPending;
+
+    /**
+     * Sequence number used to order jobs with the same deadline.
+     */
+    long mSequence;
+
+    /**
+     * Constructor.
+     *
+     * @param net      Endpoint connection.
+     * @param requests Sent requests.
+     * @param period   Period in milliseconds.
+     * @param deadline Deadline in milliseconds from the release time.
+     */
+    public GXPollJob(final GXNet net, final List<byte[]> requests, final int period,
+                     final int deadline) {
+        if (net == null) {
+            throw new IllegalArgumentException("net");
+        }
+        if (requests == null || requests.isEmpty()) {
+            throw new IllegalArgumentException("requests");
+        }
+        if (period <= 0) {
+            throw new IllegalArgumentException("period");
+        }
+        if (deadline <= 0) {
+            throw new IllegalArgumentException("deadline");
+        }
+        mNet = net;
+        mRequests = Collections.unmodifiableList(new ArrayList<>(requests));
+        mPeriod = period;
+        mDeadline = deadline;
+    }
+
+    /**
+     * Returns endpoint connection. Jobs of the same endpoint are run one at
+     * the time.
+     *
+     * @return Endpoint connection.
+     */
+    public final GXNet getNet() {
+        return mNet;
+    }
+
+    /**
+     * Returns sent requests.
+     *
+     * @return Sent requests.
+     */
+    public final List<byte[]> getRequests() {
+        return mRequests;
+    }
+
+    /**
+     * Returns period.
+     *
+     * @return Period in milliseconds.
+     */
+    public final int getPeriod() {
+        return mPeriod;
+    }
+
+    /**
+     * Returns deadline.
+     *
+     * @return Deadline in milliseconds from the release time.
+     */
+    public final int getDeadline() {
+        return mDeadline;
+    }
+
+    /**
+     * Returns reply wait time.
+     *
+     * @return Wait time in milliseconds.
+     */
+    public final int getWaitTime() {
+        return mWaitTime;
+    }
+
+    /**
+     * Set reply wait time.
+     *
+     * @param value Wait time in milliseconds.
+     */
+    public final void setWaitTime(final int value) {
+        mWaitTime = value;
+    }
+
+    /**
+     * Is connection kept open after the job. If false, connection is closed
+     * if the scheduler opened it.
+     *
+     * @return True, if connection is kept open.
+     */
+    public final boolean getKeepOpen() {
+        return mKeepOpen;
+    }
+
+    /**
+     * Set is connection kept open after the job.
+     *
+     * @param value True, if connection is kept open.
+     */
+    public final void setKeepOpen(final boolean value) {
+        mKeepOpen = value;
+    }
+
+    /**
+     * Returns end of packet of the reply.
+     *
+     * @return End of packet or null if end of packet of the connection is
+     * used.
+     */
+    public final Object getEop() {
+        return mEop;
+    }
+
+    /**
+     * Set end of packet of the reply.
+     *
+     * @param value End of packet or null if end of packet of the
+     *              connection is used.
+     */
+    public final void setEop(final Object value) {
+        mEop = value;
+    }
+
+    /**
+     * Returns minimum amount of reply bytes.
+     *
+     * @return Amount of bytes.
+     */
+    public final int getCount() {
+        return mCount;
+    }
+
+    /**
+     * Set minimum amount of reply bytes. If end of packet is not used,
+     * reply is complete when count bytes are received.
+     *
+     * @param value Amount of bytes.
+     */
+    public final void setCount(final int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("count");
+        }
+        mCount = value;
+    }
+}
@@ -0,0 +1,518 @@
+//
+// --------------------------------------------------------------------------
+//  Gurux Ltd
+// 
+//
+//
+// Filename:        $HeadURL$
+//
+// Version:         $Revision$,
+//                  $Date$
+//                  $Author$
+//
+// Copyright (c) Gurux Ltd
+//
+//---------------------------------------------------------------------------
+//
+//  DESCRIPTION
+//
+// This file is a part of Gurux Device Framework.
+//
+// Gurux Device Framework is Open Source software; you can redistribute it
+// and/or modify it under the terms of the GNU General Public License 
+// as published by the Free Software Foundation; version 2 of the License.
+// Gurux Device Framework is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of 
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+// See the GNU General Public License for more details.
+//
+// More information of Gurux products: http://www.gurux.org
+//
+// This code is licensed under the GNU General Public License v2. 
+// Full text may be retrieved at http://www.gnu.org/licenses/gpl-2.0.txt
+//---------------------------------------------------------------------------
+
+package gurux.net;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+import gurux.common.ReceiveParameters;
+
+/**
+ * Scheduler that polls several endpoints periodically.
+ * <p>
+ * Released jobs are started in earliest deadline first order. Amount of
+ * running jobs is limited and only one job is run at the time for each
+ * endpoint. Connections with the same protocol, host name and port are the
+ * same endpoint. Jobs that complete after the deadline, or are
+ * released again while the previous run is still pending, are reported as
+ * missed deadlines.
+ * </p>
+ * <pre>
+ * GXPollScheduler scheduler = new GXPollScheduler(8);
+ * scheduler.addListener(listener);
+ * scheduler.add(new GXPollJob(meter, requests, 60000, 10000));
+ * scheduler.start();
+ * </pre>
+ */
+public class GXPollScheduler {
+
+    /**
+     * Orders jobs by the absolute deadline.
+     */
+    private static final Comparator<GXPollJob> DEADLINE_ORDER = new Comparator<GXPollJob>() {
+        @Override
+        public int compare(final GXPollJob a, final GXPollJob b) {
+            int ret = Long.compare(a.mAbsoluteDeadline, b.mAbsoluteDeadline);
+            if (ret == 0) {
+                ret = Long.compare(a.mSequence, b.mSequence);
+            }
+            return ret;
+        }
+    };
+
+    /**
+     * Registered jobs.
+     */
+    private final List<GXPollJob> mJobs = new ArrayList<>();
+
+    /**
+     * Released jobs that are waiting to start.
+     */
+    private final TreeSet<GXPollJob> mReady = new TreeSet<>(DEADLINE_ORDER);
+
+    /**
+     * Endpoints that have a running job.
+     */
+    private final Set<Object> mBusy = new HashSet<>();
+
+    /**
+     * Listeners.
+     */
+    private final List<IGXPollListener> mListeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Maximum amount of running jobs.
+     */
+    private int mMaxConcurrency;
+
+    /**
+     * Amount of running jobs.
+     */
+    private int mRunning;
+
+    /**
+     * Sequence number of the released jobs.
+     */
+    private long mSequence;
+
+    /**
+     * Is scheduler started.
+     */
+    private boolean mStarted;
+
+    /**
+     * Generation of the scheduler thread. Thread of the earlier start
+     * exits when the scheduler is started again.
+     */
+    private long mGeneration;
+
+    /**
+     * Executor used to run the jobs or null if new thread is created for
+     * each job.
+     */
+    private volatile Executor mExecutor;
+
+    /**
+     * Amount of completed jobs.
+     */
+    private final AtomicLong mCompleted = new AtomicLong();
+
+    /**
+     * Amount of failed jobs.
+     */
+    private final AtomicLong mFailed = new AtomicLong();
+
+    /**
+     * Amount of missed deadlines.
+     */
+    private final AtomicLong mMissed = new AtomicLong();
+
+    /**
+     * Constructor.
+     *
+     * @param maxConcurrency Maximum amount of running jobs.
+     */
+    public GXPollScheduler(final int maxConcurrency) {
+        setMaxConcurrency(maxConcurrency);
+    }
+
+    /**
+     * Returns maximum amount of running jobs.
+     *
+     * @return Maximum amount of running jobs.
+     */
+    public final synchronized int getMaxConcurrency() {
+        return mMaxConcurrency;
+    }
+
+    /**
+     * Set maximum amount of running jobs.
+     *
+     * @param value Maximum amount of running jobs.
+     */
+    public final synchronized void setMaxConcurrency(final int value) {
+        if (value <= 0) {
+            throw new IllegalArgumentException("maxConcurrency");
+        }
+        mMaxConcurrency = value;
+        notifyAll();
+    }
+
+    /**
+     * Returns executor used to run the jobs.
+     *
+     * @return Executor or null if new thread is created for each job.
+     */
+    public final Executor getExecutor() {
+        return mExecutor;
+    }
+
+    /**
+     * Set executor used to run the jobs. Executor must not limit the amount
+     * of threads under the maximum concurrency.
+     *
+     * @param value Executor or null if new thread is created for each job.
+     */
+    public final void setExecutor(final Executor value) {
+        mExecutor = value;
+    }
+
+    /**
+     * Add listener.
+     *
+     * @param listener Poll listener.
+     */
+    public final void addListener(final IGXPollListener listener) {
+        mListeners.add(listener);
+    }
+
+    /**
+     * Remove listener.
+     *
+     * @param listener Poll listener.
+     */
+    public final void removeListener(final IGXPollListener listener) {
+        mListeners.remove(listener);
+    }
+
+    /**
+     * Add job. Job is released immediately.
+     *
+     * @param job Poll job.
+     */
+    public final synchronized void add(final GXPollJob job) {
+        if (job == null) {
+            throw new IllegalArgumentException("job");
+        }
+        if (mJobs.contains(job)) {
+            throw new IllegalArgumentException("Job is already added.");
+        }
+        job.mRelease = now();
+        job.mPending = false;
+        mJobs.add(job);
+        notifyAll();
+    }
+
+    /**
+     * Remove job. Running job is completed.
+     *
+     * @param job Poll job.
+     */
+    public final synchronized void remove(final GXPollJob job) {
+        mJobs.remove(job);
+        mReady.remove(job);
+    }
+
+    /**
+     * Returns amount of jobs.
+     *
+     * @return Amount of jobs.
+     */
+    public final synchronized int getJobCount() {
+        return mJobs.size();
+    }
+
+    /**
+     * Returns amount of running jobs.
+     *
+     * @return Amount of running jobs.
+     */
+    public final synchronized int getRunningCount() {
+        return mRunning;
+    }
+
+    /**
+     * Returns amount of completed jobs.
+     *
+     * @return Amount of completed jobs.
+     */
+    public final long getCompletedCount() {
+        return mCompleted.get();
+    }
+
+    /**
+     * Returns amount of failed jobs.
+     *
+     * @return Amount of failed jobs.
+     */
+    public final long getFailedCount() {
+        return mFailed.get();
+    }
+
+    /**
+     * Returns amount of missed deadlines.
+     *
+     * @return Amount of missed deadlines.
+     */
+    public final long getMissedDeadlineCount() {
+        return mMissed.get();
+    }
+
+    /**
+     * Reset statistics.
+     */
+    public final void resetStatistics() {
+        mCompleted.set(0);
+        mFailed.set(0);
+        mMissed.set(0);
+    }
+
+    /**
+     * Is scheduler started.
+     *
+     * @return True, if scheduler is started.
+     */
+    public final synchronized boolean isStarted() {
+        return mStarted;
+    }
+
+    /**
+     * Start the scheduler.
+     */
+    public final synchronized void start() {
+        if (!mStarted) {
+            mStarted = true;
+            final long generation = ++mGeneration;
+            GXNetExecutors.getDefault().execute(null, new Runnable() {
+                @Override
+                public void run() {
+                    schedule(generation);
+                }
+            }, "scheduler");
+        }
+    }
+
+    /**
+     * Stop the scheduler. Running jobs are completed, but new jobs are not
+     * started.
+     */
+    public final synchronized void stop() {
+        mStarted = false;
+        for (GXPollJob it : mReady) {
+            it.mPending = false;
+        }
+        mReady.clear();
+        notifyAll();
+    }
+
+    /**
+     * Release and start the jobs until the scheduler is stopped.
+     *
+     * @param generation Generation of the scheduler thread.
+     */
+    private void schedule(final long generation) {
+        List<GXPollJob> overruns = new ArrayList<>();
+        try {
+            while (true) {
+                synchronized (this) {
+                    if (!mStarted || generation != mGeneration) {
+                        break;
+                    }
+                    long delay = release(overruns);
+                    startJobs();
+                    if (overruns.isEmpty()) {
+                        wait(delay);
+                        continue;
+                    }
+                }
+                for (GXPollJob it : overruns) {
+                    mMissed.incrementAndGet();
+                    for (IGXPollListener listener : mListeners) {
+                        listener.onDeadlineMissed(it, 0);
+                    }
+                }
+                overruns.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Returns monotonic time in milliseconds. Wall clock is not used,
+     * because it's changed when network time is synchronized.
+     *
+     * @return Time in milliseconds.
+     */
+    private static long now() {
+        return System.nanoTime() / 1000000;
+    }
+
+    /**
+     * Release the jobs whose period has started.
+     *
+     * @param overruns Jobs whose previous run is still pending.
+     * @return Time in milliseconds until the next release.
+     */
+    private long release(final List<GXPollJob> overruns) {
+        long now = now();
+        long next = Long.MAX_VALUE;
+        for (GXPollJob it : mJobs) {
+            if (it.mRelease <= now) {
+                if (it.mPending) {
+                    overruns.add(it);
+                } else {
+                    it.mPending = true;
+                    it.mAbsoluteDeadline = it.mRelease + it.getDeadline();
+                    it.mSequence = ++mSequence;
+                    mReady.add(it);
+                }
+                // Skipped periods are not released afterwards.
+                it.mRelease += ((now - it.mRelease) / it.getPeriod() + 1) * it.getPeriod();
+            }
+            next = Math.min(next, it.mRelease);
+        }
+        if (next == Long.MAX_VALUE) {
+            return 0;
+        }
+        return Math.max(1, next - now);
+    }
+
+    /**
+     * Start ready jobs in deadline order while the concurrency limit allows.
+     * Jobs whose endpoint is busy are left waiting.
+     */
+    private void startJobs() {
+        Iterator<GXPollJob> it = mReady.iterator();
+        while (mRunning < mMaxConcurrency && it.hasNext()) {
+            final GXPollJob job = it.next();
+            Object endpoint = getEndpoint(job.getNet());
+            if (mBusy.add(endpoint)) {
+                job.mEndpoint = endpoint;
+                it.remove();
+                ++mRunning;
+                GXNetExecutors.getDefault().execute(mExecutor, new Runnable() {
+                    @Override
+                    public void run() {
+                        runJob(job);
+                    }
+                }, "poll");
+            }
+        }
+    }
+
+    /**
+     * Returns endpoint of the connection. Connection is used as an endpoint
+     * if host name is not set.
+     *
+     * @param net Endpoint connection.
+     * @return Endpoint.
+     */
+    private static Object getEndpoint(final GXNet net) {
+        GXNetConfig config = net.getConfig();
+        if (config.getHostName() == null) {
+            return net;
+        }
+        return config;
+    }
+
+    /**
+     * Send the requests of the job and wait the replies.
+     *
+     * @param job Poll job.
+     */
+    private void runJob(final GXPollJob job) {
+        GXNet net = job.getNet();
+        List<byte[]> replies = new ArrayList<>();
+        Exception error = null;
+        boolean opened = false;
+        try {
+            if (!net.isOpen()) {
+                net.open();
+                opened = true;
+            }
+            Object eop = job.getEop();
+            if (eop == null) {
+                eop = net.getEop();
+            }
+            if (eop == null && job.getCount() == 0) {
+                throw new IllegalArgumentException("Either Count or Eop must be set.");
+            }
+            synchronized (net.getExchangeLock()) {
+                synchronized (net.getSynchronous()) {
+                    for (byte[] request : job.getRequests()) {
+                        ReceiveParameters<byte[]> p = new ReceiveParameters<>(byte[].class);
+                        p.setEop(eop);
+                        p.setCount(job.getCount());
+                        p.setWaitTime(job.getWaitTime());
+                        net.send(request, null);
+                        if (!net.receive(p)) {
+                            throw new RuntimeException("Failed to receive reply from the device in given time.");
+                        }
+                        replies.add(p.getReply());
+                    }
+                }
+            }
+        } catch (Exception ex) {
+            error = ex;
+        } finally {
+            if (opened && !job.getKeepOpen()) {
+                net.close();
+            }
+        }
+        long lateness = now() - job.mAbsoluteDeadline;
+        synchronized (this) {
+            job.mPending = false;
+            mBusy.remove(job.mEndpoint);
+            --mRunning;
+            notifyAll();
+        }
+        if (error != null) {
+            mFailed.incrementAndGet();
+            for (IGXPollListener it : mListeners) {
+                it.onError(job, error);
+            }
+        } else {
+            mCompleted.incrementAndGet();
+            for (IGXPollListener it : mListeners) {
+                it.onCompleted(job, replies);
+            }
+        }
+        if (lateness > 0) {
+            mMissed.incrementAndGet();
+            for (IGXPollListener it : mListeners) {
+                it.onDeadlineMissed(job, lateness);
+            }
+        }
+    }
+}
@@ -0,0 +1,216 @@
+//
+// --------------------------------------------------------------------------
+//  Gurux Ltd
+// 
+//
+//
+// Filename:        $HeadURL$
+//
+// Version:         $Revision$,
+//                  $Date$
+//                  $Author$
+//
+// Copyright (c) Gurux Ltd
+//
+//---------------------------------------------------------------------------
+//
+//  DESCRIPTION
+//
+// This file is a part of Gurux Device Framework.
+//
+// Gurux Device Framework is Open Source software; you can redistribute it
+// and/or modify it under the terms of the GNU General Public License 
+// as published by the Free Software Foundation; version 2 of the License.
+// Gurux Device Framework is distributed mInput the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of 
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+// See the GNU General Public License for more details.
+//
+// More information of Gurux products: http://www.gurux.org
+//
+// This code is licensed under the GNU General Public License v2. 
+// Full text may be retrieved at http://www.gnu.org/licenses/gpl-2.0.txt
+//---------------------------------------------------------------------------
+
+package gurux.net;
+
+import gurux.common.GXSynchronousMediaBase;
+import gurux.common.ReceiveEventArgs;
+import gurux.common.TraceEventArgs;
+import gurux.common.enums.TraceLevel;
+import gurux.common.enums.TraceTypes;
+
+/**
+ * Receive dispatcher sends data that the network transport has received to
+ * the listeners of the media.
+ * <p>
+ * Methods are called from the threads of the transport.
+ * </p>
+ *
+ * @author Gurux Ltd.
+ */
+class GXReceiveDispatcher implements IGXTransportListener {
+
+    /**
+     * Parent component where notifies are send.
+     */
+    private final GXNet mParentMedia;
+
+    /**
+     * Received data that is reused in zero-garbage receive mode.
+     */
+    private final GXReceivedData mReceivedData = new GXReceivedData();
+
+    /**
+     * Constructor.
+     *
+     * @param parent Parent component.
+     */
+    GXReceiveDispatcher(final GXNet parent) {
+        mParentMedia = parent;
+    }
+
+    @Override
+    public final void onReceived(final byte[] buffer, final int length, final String info) {
+        GXIdleMonitor idle = mParentMedia.getIdleMonitor();
+        if (idle != null) {
+            idle.onRead();
+        }
+        GXNetMultiplexer multiplexer = mParentMedia.getMultiplexer();
+        if (multiplexer != null) {
+            multiplexer.handleReceivedData(buffer, length, info);
+            return;
+        }
+        dispatch(buffer, length, info);
+    }
+
+    /**
+     * Give received data to the synchronous receiver, receive handler or
+     * listeners.
+     *
+     * @param buffer Received data.
+     * @param length Length of received data.
+     * @param info   Sender information.
+     */
+    final void dispatch(final byte[] buffer, final int length, final String info) {
+        if (!mParentMedia.getIsSynchronous()) {
+            // Synchronous receive measures the round-trip time itself.
+            mParentMedia.onReplyReceived();
+        }
+        IGXReceiveHandler handler = mParentMedia.getReceiveHandler();
+        if (handler != null && !mParentMedia.getIsSynchronous()) {
+            if (mParentMedia.getTrace() == TraceLevel.VERBOSE
+                    && mParentMedia.hasTraceListeners(TraceTypes.RECEIVED)) {
+                mParentMedia.notifyTrace(new gurux.common.TraceEventArgs(
+                        TraceTypes.RECEIVED, buffer, 0, length));
+            }
+            // Reused data is handled in the receive thread without copying.
+            mReceivedData.set(buffer, length, info);
+            handler.onReceived(mParentMedia, mReceivedData);
+            return;
+        }
+        Object eop = mParentMedia.getEop();
+        GXByteRing ring = mParentMedia.getRing();
+        int totalCount = 0;
+        if (ring != null && mParentMedia.getIsSynchronous()) {
+            if (mParentMedia.getTrace() == TraceLevel.VERBOSE
+                    && mParentMedia.hasTraceListeners(TraceTypes.RECEIVED)) {
+                mParentMedia.notifyTrace(new gurux.common.TraceEventArgs(
+                        TraceTypes.RECEIVED, buffer, 0, length));
+            }
+            try {
+                if (!ring.write(buffer, 0, length)) {
+                    // Nobody is reading the data.
+                    mParentMedia.notifyError(
+                            new RuntimeException("Receive buffer overflow."));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        } else if (mParentMedia.getIsSynchronous()) {
+            TraceEventArgs arg = null;
+            synchronized (mParentMedia.getSyncBase().getSync()) {
+                mParentMedia.getSyncBase().appendData(buffer, 0, length);
+                // Search end of packet if it is given.
+                if (eop != null) {
+                    if (eop instanceof Object[]) {
+                        for (Object it : (Object[]) eop) {
+                            totalCount = GXSynchronousMediaBase.indexOf(buffer,
+                                    GXSynchronousMediaBase.getAsByteArray(it),
+                                    0, length);
+                            if (totalCount != -1) {
+                                break;
+                            }
+                        }
+                    } else {
+                        totalCount = GXSynchronousMediaBase.indexOf(buffer,
+                                GXSynchronousMediaBase.getAsByteArray(eop), 0,
+                                length);
+                    }
+                }
+                if (totalCount != -1) {
+                    if (mParentMedia.getTrace() == TraceLevel.VERBOSE
+                            && mParentMedia.hasTraceListeners(TraceTypes.RECEIVED)) {
+                        arg = new gurux.common.TraceEventArgs(
+                                TraceTypes.RECEIVED, buffer, 0, totalCount + 1);
+                    }
+                    mParentMedia.getSyncBase().setReceived();
+                }
+            }
+            if (arg != null) {
+                mParentMedia.notifyTrace(arg);
+            }
+        } else {
+            mParentMedia.getSyncBase().resetReceivedSize();
+            boolean traced = mParentMedia.getTrace() == TraceLevel.VERBOSE
+                    && mParentMedia.hasTraceListeners(TraceTypes.RECEIVED);
+            if (!traced && !mParentMedia.hasReceivedListeners()
+                    && !mParentMedia.getPublisher().hasSubscriber()) {
+                // Nobody is interested in the received data.
+                return;
+            }
+            byte[] data = new byte[length];
+            System.arraycopy(buffer, 0, data, 0, length);
+            if (traced) {
+                mParentMedia.notifyTrace(new gurux.common.TraceEventArgs(
+                        TraceTypes.RECEIVED, data));
+            }
+            if (mParentMedia.hasReceivedListeners()) {
+                mParentMedia.notifyReceived(new ReceiveEventArgs(data, info));
+            }
+            mParentMedia.getPublisher().publish(data);
+        }
+    }
+
+    @Override
+    public final void onError(final Exception ex) {
+        mParentMedia.notifyError(new RuntimeException(ex.getMessage()));
+    }
+
+    @Override
+    public final void onPeerClosed() {
+        mParentMedia.close();
+    }
+
+    @Override
+    public final void awaitDemand() throws InterruptedException {
+        // Reading is paused while the subscriber has no demand.
+        mParentMedia.getPublisher().awaitDemand();
+    }
+
+    @Override
+    public final void onWriteStarted() {
+        GXIdleMonitor idle = mParentMedia.getIdleMonitor();
+        if (idle != null) {
+            idle.onWriteStarted();
+        }
+    }
+
+    @Override
+    public final void onWriteCompleted() {
+        GXIdleMonitor idle = mParentMedia.getIdleMonitor();
+        if (idle != null) {
+            idle.onWriteCompleted();
+        }
+    }
+}
@@ -0,0 +1,313 @@
+//
+// --------------------------------------------------------------------------
+//  Gurux Ltd
+// 
+//
+//
+// Filename:        $HeadURL$
+//
+// Version:         $Revision$,
+//                  $Date$
+//                  $Author$
+//
+// Copyright (c) Gurux Ltd
+//
+//---------------------------------------------------------------------------
+//
+//  DESCRIPTION
+//
+// This file is a part of Gurux Device Framework.
+//
+// Gurux Device Framework is Open Source software; you can redistribute it
+// and/or modify it under the terms of the GNU General Public License 
+// as published by the Free Software Foundation; version 2 of the License.
+// Gurux Device Framework is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of 
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+// See the GNU General Public License for more details.
+//
+// More information of Gurux products: http://www.gurux.org
+//
+// This code is licensed under the GNU General Public License v2. 
+// Full text may be retrieved at http://www.gnu.org/licenses/gpl-2.0.txt
+//---------------------------------------------------------------------------
+
+package gurux.net;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Publisher that sends received data to the subscriber.
+ * <p>
+ * Demand of the subscriber controls how fast the data is read from the
+ * connection. When the subscriber has no demand, receive thread stops
+ * reading and TCP flow control slows down the sender. Items are sent from
+ * the receive thread. Only one subscriber can be active at the time.
+ * Subscription is completed when the connection is closed.
+ * </p>
+ * <p>
+ * Signals are serialized so that the subscriber never receives them
+ * concurrently, even if the connection is closed while an item is sent.
+ * </p>
+ * <p>
+ * Demand is not used while the connection is used synchronously.
+ * </p>
+ */
+public final class GXReceivePublisher {
+
+    /**
+     * Parent component.
+     */
+    private final GXNet mParent;
+
+    /**
+     * Active subscription or null.
+     */
+    private volatile Subscription mSubscription;
+
+    /**
+     * Constructor.
+     *
+     * @param parent Parent component.
+     */
+    GXReceivePublisher(final GXNet parent) {
+        mParent = parent;
+    }
+
+    /**
+     * Subscribe received data.
+     *
+     * @param subscriber Subscriber.
+     */
+    public void subscribe(final IGXSubscriber<byte[]> subscriber) {
+        if (subscriber == null) {
+            throw new IllegalArgumentException("subscriber");
+        }
+        Subscription subscription = new Subscription(subscriber);
+        boolean added;
+        synchronized (this) {
+            added = mSubscription == null;
+            if (added) {
+                mSubscription = subscription;
+            }
+        }
+        subscriber.onSubscribe(subscription);
+        if (!added) {
+            subscription.mCancelled = true;
+            subscription.terminate(
+                    new IllegalStateException("Publisher has already a subscriber."));
+        }
+    }
+
+    /**
+     * Is there an active subscriber.
+     *
+     * @return True, if subscriber is active.
+     */
+    public boolean hasSubscriber() {
+        return mSubscription != null;
+    }
+
+    /**
+     * Wait until the subscriber has demand. This is called from the receive
+     * thread before data is read.
+     *
+     * @throws InterruptedException Receive thread is stopped.
+     */
+    void awaitDemand() throws InterruptedException {
+        Subscription s = mSubscription;
+        if (s == null) {
+            return;
+        }
+        synchronized (this) {
+            while (s == mSubscription && !s.mCancelled
+                    && s.mDemand == 0 && !mParent.getIsSynchronous()) {
+                wait();
+            }
+        }
+        if (s.mCancelled) {
+            synchronized (this) {
+                if (mSubscription == s) {
+                    mSubscription = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Send received data to the subscriber.
+     *
+     * @param data Received data.
+     */
+    void publish(final byte[] data) {
+        Subscription s = mSubscription;
+        if (s != null && !s.mCancelled && s.mDemand != 0) {
+            synchronized (this) {
+                if (s.mDemand != Long.MAX_VALUE) {
+                    --s.mDemand;
+                }
+            }
+            s.next(data);
+        }
+    }
+
+    /**
+     * Complete the subscription when the connection is closed.
+     */
+    void complete() {
+        Subscription s;
+        synchronized (this) {
+            s = mSubscription;
+            mSubscription = null;
+            notifyAll();
+        }
+        if (s != null && !s.mCancelled) {
+            s.mCancelled = true;
+            s.terminate(COMPLETE);
+        }
+    }
+
+    /**
+     * Wake up the receive thread when demand or the state of the
+     * connection changes.
+     */
+    synchronized void wakeUp() {
+        notifyAll();
+    }
+
+    /**
+     * Terminal signal of the completed subscription.
+     */
+    private static final Object COMPLETE = new Object();
+
+    /**
+     * Subscription of the received data.
+     */
+    private final class Subscription implements IGXSubscription {
+        /**
+         * Subscriber.
+         */
+        private final IGXSubscriber<byte[]> mSubscriber;
+
+        /**
+         * Requested items. Guarded by the publisher.
+         */
+        private volatile long mDemand;
+
+        /**
+         * Is subscription cancelled.
+         */
+        private volatile boolean mCancelled;
+
+        /**
+         * Terminal signal. Either {@link #COMPLETE} or an error.
+         */
+        private final AtomicReference<Object> mTerminal =
+                new AtomicReference<Object>();
+
+        /**
+         * Amount of signals that are waiting to be sent.
+         */
+        private final AtomicInteger mWip = new AtomicInteger();
+
+        /**
+         * Is terminal signal sent. This is accessed only from the thread
+         * that sends the signals.
+         */
+        private boolean mDone;
+
+        /**
+         * Constructor.
+         *
+         * @param subscriber Subscriber.
+         */
+        Subscription(final IGXSubscriber<byte[]> subscriber) {
+            mSubscriber = subscriber;
+        }
+
+        @Override
+        public void request(final long count) {
+            if (count <= 0) {
+                mCancelled = true;
+                synchronized (GXReceivePublisher.this) {
+                    if (mSubscription == this) {
+                        mSubscription = null;
+                    }
+                    GXReceivePublisher.this.notifyAll();
+                }
+                terminate(new IllegalArgumentException(
+                        "Amount of requested items must be positive."));
+                return;
+            }
+            synchronized (GXReceivePublisher.this) {
+                long value = mDemand + count;
+                if (value < 0) {
+                    value = Long.MAX_VALUE;
+                }
+                mDemand = value;
+                GXReceivePublisher.this.notifyAll();
+            }
+        }
+
+        @Override
+        public void cancel() {
+            mCancelled = true;
+            synchronized (GXReceivePublisher.this) {
+                if (mSubscription == this) {
+                    mSubscription = null;
+                }
+                GXReceivePublisher.this.notifyAll();
+            }
+        }
+
+        /**
+         * Send item to the subscriber. Item is dropped if a terminal
+         * signal is sent at the same time from another thread.
+         *
+         * @param data Received data.
+         */
+        void next(final byte[] data) {
+            if (mWip.getAndIncrement() == 0) {
+                if (mTerminal.get() == null) {
+                    mSubscriber.onNext(data);
+                }
+                drain();
+            }
+        }
+
+        /**
+         * Send terminal signal to the subscriber. Only the first terminal
+         * signal is sent.
+         *
+         * @param signal {@link #COMPLETE} or an error.
+         */
+        void terminate(final Object signal) {
+            if (mTerminal.compareAndSet(null, signal)
+                    && mWip.getAndIncrement() == 0) {
+                drain();
+            }
+        }
+
+        /**
+         * Send the terminal signal if it's set. Thread that has increased
+         * the work counter from zero sends the signals until there is
+         * nothing to send.
+         */
+        private void drain() {
+            int missed = 1;
+            do {
+                Object signal = mTerminal.get();
+                if (signal != null && !mDone) {
+                    mDone = true;
+                    if (signal == COMPLETE) {
+                        mSubscriber.onComplete();
+                    } else {
+                        mSubscriber.onError((Throwable) signal);
+                    }
+                }
+                missed = mWip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+//
+// --------------------------------------------------------------------------
+//  Gurux Ltd
+// 
+//
+//
+// Filename:        $HeadURL$
+//
+// Version:         $Revision$,
+//                  $Date$
+//                  $Author$
+//
+// Copyright (c) Gurux Ltd
+//
+//---------------------------------------------------------------------------
+//
+//  DESCRIPTION
+//
+// This file is a part of Gurux Device Framework.
+//
+// Gurux Device Framework is Open Source software; you can redistribute it
+// and/or modify it under the terms of the GNU General Public License 
+// as published by the Free Software Foundation; version 2 of the License.
+// Gurux Device Framework is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of 
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+// See the GNU General Public License for more details.
+//
+// More information of Gurux products: http://www.gurux.org
+//
+// This code is licensed under the GNU General Public License v2. 
+// Full text may be retrieved at http://www.gnu.org/licenses/gpl-2.0.txt
+//---------------------------------------------------------------------------
+
+package gurux.net;
+
+import gurux.common.ReceiveEventArgs;
+
+/**
+ * Received data that is reused for each received chunk.
+ * <p>
+ * Object and its buffer are valid only during the
+ * {@link IGXReceiveHandler#onReceived(GXNet, GXReceivedData)} call. Data is
+ * overwritten when the next chunk is read, so handler must copy the data if
+ * it's needed later.
+ * </p>
+ */
+public final class GXReceivedData {
+
+    /**
+     * Receive buffer.
+     */
+    private byte[] mBuffer;
+
+    /**
+     * Amount of received bytes.
+     */
+    private int mCount;
+
+    /**
+     * Sender information.
+     */
+    private String mSenderInfo;
+
+    /**
+     * Constructor.
+     */
+    GXReceivedData() {
+    }
+
+    /**
+     * Update received data.
+     *
+     * @param buffer     Receive buffer.
+     * @param count      Amount of received bytes.
+     * @param senderInfo Sender information.
+     */
+    void set(final byte[] buffer, final int count, final String senderInfo) {
+        mBuffer = buffer;
+        mCount = count;
+        mSenderInfo = senderInfo;
+    }
+
+    /**
+     * Returns receive buffer. Received data starts from the beginning of
+     * the buffer.
+     *
+     * @return Receive buffer.
+     */
+    public byte[] getBuffer() {
+        return mBuffer;
+    }
+
+    /**
+     * Returns amount of received bytes.
+     *
+     * @return Amount of received bytes.
+     */
+    public int getCount() {
+        return mCount;
+    }
+
+    /**
+     * Returns sender information.
+     *
+     * @return Sender information.
+     */
+    public String getSenderInfo() {
+        return mSenderInfo;
+    }
+
+    /**
+     * Copy received bytes.
+     *
+     * @return Received bytes.
+     */
+    public byte[] toArray() {
+        byte[] data = new byte[mCount];
+        System.arraycopy(mBuffer, 0, data, 0, mCount);
+        return data;
+    }
+
+    /**
+     * Copy received data to receive event.
+     *
+     * @return Receive event.
+     */
+    public ReceiveEventArgs toEventArgs() {
+        return new ReceiveEventArgs(toArray(), mSenderInfo);
+    }
+}
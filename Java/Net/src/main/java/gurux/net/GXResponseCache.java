@@ -0,0 +1,508 @@
+//
+// --------------------------------------------------------------------------
+//  Gurux Ltd
+// 
+//
+//
+// Filename:        $HeadURL$
+//
+// Version:         $Revision$,
+//                  $Date$
+//                  $Author$
+//
+// Copyright (c) Gurux Ltd
+//
+//---------------------------------------------------------------------------
+//
+//  DESCRIPTION
+//
+// This file is a part of Gurux Device Framework.
+//
+// Gurux Device Framework is Open Source software; you can redistribute it
+// and/or modify it under the terms of the GNU General Public License 
+// as published by the Free Software Foundation; version 2 of the License.
+// Gurux Device Framework is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of 
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+// See the GNU General Public License for more details.
+//
+// More information of Gurux products: http://www.gurux.org
+//
+// This code is licensed under the GNU General Public License v2. 
+// Full text may be retrieved at http://www.gnu.org/licenses/gpl-2.0.txt
+//---------------------------------------------------------------------------
+
+package gurux.net;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import gurux.common.ReceiveParameters;
+
+/**
+ * Cache of the replies of idempotent requests.
+ * <p>
+ * Replies are cached by the endpoint and the request bytes for the time to
+ * live. Least recently used replies are removed when the amount of replies
+ * or their total size exceeds the limit. When the same request is already
+ * sent to the same endpoint, caller waits that reply instead of sending the
+ * request again. Use the cache only for read-only requests, because the
+ * reply of the cached request is returned without sending it.
+ * </p>
+ * <pre>
+ * GXResponseCache cache = new GXResponseCache();
+ * ReceiveParameters&lt;byte[]&gt; p = new ReceiveParameters&lt;&gt;(byte[].class);
+ * p.setEop(net.getEop());
+ * p.setWaitTime(5000);
+ * byte[] clock = cache.request(net, readClock, p);
+ * </pre>
+ */
+public class GXResponseCache {
+
+    /**
+     * Cache key.
+     */
+    private static final class Key {
+        /**
+         * Endpoint name.
+         */
+        private final String mEndpoint;
+
+        /**
+         * Request bytes.
+         */
+        private final byte[] mRequest;
+
+        /**
+         * Hash code.
+         */
+        private final int mHash;
+
+        /**
+         * Constructor.
+         *
+         * @param endpoint Endpoint name.
+         * @param request  Request bytes.
+         */
+        Key(final String endpoint, final byte[] request) {
+            mEndpoint = endpoint;
+            mRequest = request;
+            mHash = 31 * endpoint.hashCode() + Arrays.hashCode(request);
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return mHash == other.mHash && mEndpoint.equals(other.mEndpoint)
+                    && Arrays.equals(mRequest, other.mRequest);
+        }
+
+        @Override
+        public int hashCode() {
+            return mHash;
+        }
+    }
+
+    /**
+     * Cached reply.
+     */
+    private static final class Entry {
+        /**
+         * Reply bytes.
+         */
+        private final byte[] mReply;
+
+        /**
+         * Expiration time in nanoseconds.
+         */
+        private final long mExpires;
+
+        /**
+         * Constructor.
+         *
+         * @param reply   Reply bytes.
+         * @param expires Expiration time in nanoseconds.
+         */
+        Entry(final byte[] reply, final long expires) {
+            mReply = reply;
+            mExpires = expires;
+        }
+    }
+
+    /**
+     * Request that is sent and its reply is waited.
+     */
+    private static final class Pending {
+        /**
+         * Signaled when the reply is received or request fails.
+         */
+        private final CountDownLatch mDone = new CountDownLatch(1);
+
+        /**
+         * Reply bytes.
+         */
+        private byte[] mReply;
+
+        /**
+         * Occurred error.
+         */
+        private Exception mError;
+    }
+
+    /**
+     * Cached replies in least recently used order.
+     */
+    private final LinkedHashMap<Key, Entry> mEntries = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Requests that are waiting the reply.
+     */
+    private final Map<Key, Pending> mPending = new HashMap<>();
+
+    /**
+     * Time to live in milliseconds.
+     */
+    private int mTimeToLive = 5000;
+
+    /**
+     * Maximum amount of cached replies.
+     */
+    private int mMaxCount = 256;
+
+    /**
+     * Maximum total size of cached replies in bytes.
+     */
+    private int mMaxSize = 0x100000;
+
+    /**
+     * Total size of cached replies in bytes.
+     */
+    private int mSize;
+
+    /**
+     * Amount of cache hits.
+     */
+    private long mHits;
+
+    /**
+     * Amount of cache misses.
+     */
+    private long mMisses;
+
+    /**
+     * Amount of requests that shared the reply of the sent request.
+     */
+    private long mShared;
+
+    /**
+     * Amount of removed replies.
+     */
+    private long mEvictions;
+
+    /**
+     * Returns time to live of the cached reply.
+     *
+     * @return Time to live in milliseconds.
+     */
+    public final synchronized int getTimeToLive() {
+        return mTimeToLive;
+    }
+
+    /**
+     * Set time to live of the cached reply. New value is used for the
+     * replies that are received after this call.
+     *
+     * @param value Time to live in milliseconds.
+     */
+    public final synchronized void setTimeToLive(final int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("timeToLive");
+        }
+        mTimeToLive = value;
+    }
+
+    /**
+     * Returns maximum amount of cached replies.
+     *
+     * @return Maximum amount of cached replies.
+     */
+    public final synchronized int getMaxCount() {
+        return mMaxCount;
+    }
+
+    /**
+     * Set maximum amount of cached replies.
+     *
+     * @param value Maximum amount of cached replies.
+     */
+    public final synchronized void setMaxCount(final int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("maxCount");
+        }
+        mMaxCount = value;
+        evict();
+    }
+
+    /**
+     * Returns maximum total size of cached replies.
+     *
+     * @return Maximum size in bytes.
+     */
+    public final synchronized int getMaxSize() {
+        return mMaxSize;
+    }
+
+    /**
+     * Set maximum total size of cached replies.
+     *
+     * @param value Maximum size in bytes.
+     */
+    public final synchronized void setMaxSize(final int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("maxSize");
+        }
+        mMaxSize = value;
+        evict();
+    }
+
+    /**
+     * Returns amount of cached replies.
+     *
+     * @return Amount of cached replies.
+     */
+    public final synchronized int getCount() {
+        return mEntries.size();
+    }
+
+    /**
+     * Returns total size of cached replies.
+     *
+     * @return Size in bytes.
+     */
+    public final synchronized int getSize() {
+        return mSize;
+    }
+
+    /**
+     * Returns amount of requests that were answered from the cache.
+     *
+     * @return Amount of cache hits.
+     */
+    public final synchronized long getHits() {
+        return mHits;
+    }
+
+    /**
+     * Returns amount of requests that were sent to the endpoint.
+     *
+     * @return Amount of cache misses.
+     */
+    public final synchronized long getMisses() {
+        return mMisses;
+    }
+
+    /**
+     * Returns amount of requests that waited the reply of the same request
+     * that was already sent.
+     *
+     * @return Amount of shared requests.
+     */
+    public final synchronized long getShared() {
+        return mShared;
+    }
+
+    /**
+     * Returns amount of replies that are removed because cache was full.
+     *
+     * @return Amount of removed replies.
+     */
+    public final synchronized long getEvictions() {
+        return mEvictions;
+    }
+
+    /**
+     * Returns share of the requests that were not sent to the endpoint.
+     * Shared requests are counted as hits.
+     *
+     * @return Hit rate between 0 and 1.
+     */
+    public final synchronized double getHitRate() {
+        long total = mHits + mShared + mMisses;
+        if (total == 0) {
+            return 0;
+        }
+        return (double) (mHits + mShared) / total;
+    }
+
+    /**
+     * Reset statistics.
+     */
+    public final synchronized void resetStatistics() {
+        mHits = 0;
+        mMisses = 0;
+        mShared = 0;
+        mEvictions = 0;
+    }
+
+    /**
+     * Remove cached replies of the endpoint.
+     *
+     * @param net Endpoint connection.
+     */
+    public final synchronized void invalidate(final GXNet net) {
+        String endpoint = net.getName();
+        Iterator<Map.Entry<Key, Entry>> it = mEntries.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Key, Entry> e = it.next();
+            if (e.getKey().mEndpoint.equals(endpoint)) {
+                mSize -= e.getValue().mReply.length;
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Remove all cached replies.
+     */
+    public final synchronized void clear() {
+        mEntries.clear();
+        mSize = 0;
+    }
+
+    /**
+     * Send the request and wait the reply. Cached reply is returned if it's
+     * not expired. If the same request is already sent to the endpoint,
+     * reply of that request is waited at most the wait time of the receive
+     * parameters.
+     *
+     * @param net     Endpoint connection.
+     * @param request Request bytes.
+     * @param args    Receive parameters. Reply type must be byte array.
+     * @return Reply bytes.
+     * @throws Exception Request failed.
+     */
+    public final byte[] request(final GXNet net, final byte[] request,
+                                final ReceiveParameters<byte[]> args) throws Exception {
+        if (net == null) {
+            throw new IllegalArgumentException("net");
+        }
+        if (request == null) {
+            throw new IllegalArgumentException("request");
+        }
+        if (args == null) {
+            throw new IllegalArgumentException("args");
+        }
+        Key key = new Key(net.getName(), request.clone());
+        Pending pending;
+        boolean owner = false;
+        synchronized (this) {
+            Entry entry = mEntries.get(key);
+            if (entry != null) {
+                if (entry.mExpires - System.nanoTime() > 0) {
+                    ++mHits;
+                    byte[] reply = entry.mReply.clone();
+                    args.setReply(reply);
+                    return reply;
+                }
+                mEntries.remove(key);
+                mSize -= entry.mReply.length;
+            }
+            pending = mPending.get(key);
+            if (pending != null) {
+                ++mShared;
+            } else {
+                ++mMisses;
+                pending = new Pending();
+                mPending.put(key, pending);
+                owner = true;
+            }
+        }
+        if (!owner) {
+            // Same request is already sent. Its reply is shared, but it's
+            // not waited longer than the caller's wait time.
+            if (args.getWaitTime() > 0) {
+                if (!pending.mDone.await(args.getWaitTime(), TimeUnit.MILLISECONDS)) {
+                    throw new RuntimeException(
+                            "Failed to receive reply from the device in given time.");
+                }
+            } else {
+                pending.mDone.await();
+            }
+            if (pending.mError != null) {
+                throw pending.mError;
+            }
+            byte[] reply = pending.mReply.clone();
+            args.setReply(reply);
+            return reply;
+        }
+        try {
+            byte[] reply;
+            synchronized (net.getExchangeLock()) {
+                synchronized (net.getSynchronous()) {
+                    args.setReply(null);
+                    net.send(request, null);
+                    if (!net.receive(args)) {
+                        throw new RuntimeException(
+                                "Failed to receive reply from the device in given time.");
+                    }
+                    reply = args.getReply();
+                }
+            }
+            // Caller owns the reply in args, so shared and cached reply is
+            // a copy of it.
+            reply = reply.clone();
+            pending.mReply = reply;
+            add(key, reply);
+            return args.getReply();
+        } catch (Exception ex) {
+            // Failed requests are not cached.
+            pending.mError = ex;
+            throw ex;
+        } finally {
+            synchronized (this) {
+                mPending.remove(key);
+            }
+            pending.mDone.countDown();
+        }
+    }
+
+    /**
+     * Add received reply to the cache.
+     *
+     * @param key   Cache key.
+     * @param reply Reply bytes.
+     */
+    private synchronized void add(final Key key, final byte[] reply) {
+        if (mTimeToLive == 0 || reply.length > mMaxSize) {
+            return;
+        }
+        Entry old = mEntries.put(key,
+                new Entry(reply, System.nanoTime() + mTimeToLive * 1000000L));
+        if (old != null) {
+            mSize -= old.mReply.length;
+        }
+        mSize += reply.length;
+        evict();
+    }
+
+    /**
+     * Remove least recently used replies until the cache is within the
+     * limits.
+     */
+    private void evict() {
+        Iterator<Entry> it = mEntries.values().iterator();
+        while (it.hasNext() && (mEntries.size() > mMaxCount || mSize > mMaxSize)) {
+            mSize -= it.next().mReply.length;
+            it.remove();
+            ++mEvictions;
+        }
+    }
+}
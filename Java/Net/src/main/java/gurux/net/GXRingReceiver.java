@@ -0,0 +1,265 @@
+//
+// --------------------------------------------------------------------------
+//  Gurux Ltd
+// 
+//
+//
+// Filename:        $HeadURL$
+//
+// Version:         $Revision$,
+//                  $Date$
+//                  $Author$
+//
+// Copyright (c) Gurux Ltd
+//
+//---------------------------------------------------------------------------
+//
+//  DESCRIPTION
+//
+// This file is a part of Gurux Device Framework.
+//
+// Gurux Device Framework is Open Source software; you can redistribute it
+// and/or modify it under the terms of the GNU General Public License 
+// as published by the Free Software Foundation; version 2 of the License.
+// Gurux Device Framework is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of 
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+// See the GNU General Public License for more details.
+//
+// More information of Gurux products: http://www.gurux.org
+//
+// This code is licensed under the GNU General Public License v2. 
+// Full text may be retrieved at http://www.gnu.org/licenses/gpl-2.0.txt
+//---------------------------------------------------------------------------
+
+package gurux.net;
+
+import gurux.common.GXSynchronousMediaBase;
+import gurux.common.ReceiveParameters;
+
+/**
+ * Synchronous receiver that reads the data from the lock-free byte ring.
+ * <p>
+ * Receive thread writes received bytes to the ring and the waiting thread
+ * moves them to its own pending buffer where end of packet is searched.
+ * Pending buffer is accessed only from the waiting thread so no monitors
+ * are needed. Other threads ask reset with flags that the waiting thread
+ * applies before it receives the next time.
+ * </p>
+ *
+ * @author Gurux Ltd.
+ */
+final class GXRingReceiver {
+
+    /**
+     * Ring where receive thread writes the data.
+     */
+    private final GXByteRing mRing;
+
+    /**
+     * Bytes moved from the ring that are not returned yet.
+     */
+    private byte[] mPending;
+
+    /**
+     * Amount of pending bytes.
+     */
+    private int mPendingSize;
+
+    /**
+     * Position where end of packet is searched next time.
+     */
+    private int mLastPosition;
+
+    /**
+     * Pending data is discarded before next receive.
+     */
+    private volatile boolean mReset;
+
+    /**
+     * End of packet is searched from the beginning before next receive.
+     */
+    private volatile boolean mRewind;
+
+    /**
+     * Constructor.
+     *
+     * @param capacity Ring capacity in bytes.
+     */
+    GXRingReceiver(final int capacity) {
+        mRing = new GXByteRing(capacity);
+        mPending = new byte[mRing.capacity()];
+    }
+
+    /**
+     * Get the ring where the receive thread writes the data.
+     *
+     * @return Byte ring.
+     */
+    GXByteRing getRing() {
+        return mRing;
+    }
+
+    /**
+     * Search end of packet from the beginning of the pending data. This can
+     * be called from any thread.
+     */
+    void resetLastPosition() {
+        mRewind = true;
+    }
+
+    /**
+     * Discard all received data. This can be called from any thread.
+     */
+    void reset() {
+        mRing.discard();
+        mReset = true;
+    }
+
+    /**
+     * Apply reset that other threads have asked.
+     */
+    private void applyReset() {
+        if (mReset) {
+            mReset = false;
+            mPendingSize = 0;
+            mLastPosition = 0;
+        }
+        if (mRewind) {
+            mRewind = false;
+            mLastPosition = 0;
+        }
+    }
+
+    /**
+     * Wait until reply is received.
+     * <p>
+     * Reply is returned as a byte array. If reply already contains data,
+     * new data is appended to it. End of packet is searched after Count
+     * bytes are received. Reply type must be byte array.
+     * </p>
+     *
+     * @param args Receive parameters.
+     * @param <T>  Reply type.
+     * @return True, if reply is received.
+     */
+    @SuppressWarnings("unchecked")
+    <T> boolean receive(final ReceiveParameters<T> args) {
+        if (args.getEop() == null && args.getCount() == 0) {
+            throw new IllegalArgumentException("Either Count or Eop must be set.");
+        }
+        if (args.getReplyType() != byte[].class) {
+            // Caller would get ClassCastException later.
+            throw new IllegalArgumentException(
+                    "Lock-free receive supports only byte array replies.");
+        }
+        byte[][] terminators = getTerminators(args.getEop());
+        applyReset();
+        long deadline = 0;
+        if (args.getWaitTime() > 0) {
+            deadline = System.nanoTime() + args.getWaitTime() * 1000000L;
+            if (deadline == 0) {
+                deadline = 1;
+            }
+        }
+        int size;
+        while (true) {
+            drain();
+            size = find(terminators, args.getCount());
+            if (size != -1) {
+                break;
+            }
+            if (!mRing.awaitData(deadline)) {
+                return false;
+            }
+        }
+        if (args.getAllData()) {
+            size = mPendingSize;
+        }
+        byte[] reply;
+        Object old = args.getReply();
+        if (old instanceof byte[]) {
+            byte[] tmp = (byte[]) old;
+            reply = new byte[tmp.length + size];
+            System.arraycopy(tmp, 0, reply, 0, tmp.length);
+            System.arraycopy(mPending, 0, reply, tmp.length, size);
+        } else {
+            reply = new byte[size];
+            System.arraycopy(mPending, 0, reply, 0, size);
+        }
+        args.setReply((T) reply);
+        if (!args.getPeek()) {
+            mPendingSize -= size;
+            System.arraycopy(mPending, size, mPending, 0, mPendingSize);
+            mLastPosition = 0;
+        }
+        return true;
+    }
+
+    /**
+     * Move available bytes from the ring to the pending buffer.
+     */
+    private void drain() {
+        int available = mRing.available();
+        if (available != 0) {
+            if (mPendingSize + available > mPending.length) {
+                byte[] tmp = new byte[Math.max(2 * mPending.length,
+                        mPendingSize + available)];
+                System.arraycopy(mPending, 0, tmp, 0, mPendingSize);
+                mPending = tmp;
+            }
+            mPendingSize += mRing.read(mPending, mPendingSize, available);
+        }
+    }
+
+    /**
+     * Find the size of the reply from the pending data.
+     *
+     * @param terminators End of packet terminators or null.
+     * @param count       Minimum amount of bytes.
+     * @return Reply size or -1 if reply is not received yet.
+     */
+    private int find(final byte[][] terminators, final int count) {
+        if (mPendingSize < count) {
+            return -1;
+        }
+        if (terminators == null) {
+            return count;
+        }
+        int maxLength = 0;
+        for (byte[] it : terminators) {
+            int start = Math.max(mLastPosition, count - it.length);
+            int index = GXSynchronousMediaBase.indexOf(mPending, it,
+                    Math.max(0, start), mPendingSize);
+            if (index != -1) {
+                return index + it.length;
+            }
+            maxLength = Math.max(maxLength, it.length);
+        }
+        // Terminator might be split between two chunks.
+        mLastPosition = Math.max(0, mPendingSize - maxLength + 1);
+        return -1;
+    }
+
+    /**
+     * Convert end of packet to byte arrays.
+     *
+     * @param eop End of packet.
+     * @return End of packet terminators or null if end of packet is not
+     * used.
+     */
+    private static byte[][] getTerminators(final Object eop) {
+        if (eop == null) {
+            return null;
+        }
+        if (eop instanceof Object[]) {
+            Object[] tmp = (Object[]) eop;
+            byte[][] list = new byte[tmp.length][];
+            for (int pos = 0; pos != tmp.length; ++pos) {
+                list[pos] = GXSynchronousMediaBase.getAsByteArray(tmp[pos]);
+            }
+            return list;
+        }
+        return new byte[][]{GXSynchronousMediaBase.getAsByteArray(eop)};
+    }
+}
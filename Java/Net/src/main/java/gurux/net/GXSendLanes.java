@@ -0,0 +1,568 @@
+//
+// --------------------------------------------------------------------------
+//  Gurux Ltd
+// 
+//
+//
+// Filename:        $HeadURL$
+//
+// Version:         $Revision$,
+//                  $Date$
+//                  $Author$
+//
+// Copyright (c) Gurux Ltd
+//
+//---------------------------------------------------------------------------
+//
+//  DESCRIPTION
+//
+// This file is a part of Gurux Device Framework.
+//
+// Gurux Device Framework is Open Source software; you can redistribute it
+// and/or modify it under the terms of the GNU General Public License 
+// as published by the Free Software Foundation; version 2 of the License.
+// Gurux Device Framework is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of 
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+// See the GNU General Public License for more details.
+//
+// More information of Gurux products: http://www.gurux.org
+//
+// This code is licensed under the GNU General Public License v2. 
+// Full text may be retrieved at http://www.gnu.org/licenses/gpl-2.0.txt
+//---------------------------------------------------------------------------
+
+package gurux.net;
+
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.concurrent.CountDownLatch;
+
+import gurux.net.enums.SendScheduling;
+
+/**
+ * Priority lanes of the sent frames.
+ * <p>
+ * Each sent frame is queued to a lane and one writer sends the queued
+ * frames one at a time. Next frame is selected at the frame boundary, so an
+ * urgent command waits at most one frame even when bulk data is queued.
+ * Lane 0 has the highest priority. With strict scheduling higher priority
+ * lanes are always served first. With weighted scheduling lanes are served
+ * in proportion to their weights, so low priority lanes are not starved.
+ * Each frame is written to the connection that queued it. Files are sent
+ * in chunks through the lanes, so an urgent command waits at most one chunk
+ * while a file is sent. Each chunk is counted as a frame in the statistics.
+ * </p>
+ * <pre>
+ * GXSendLanes lanes = new GXSendLanes(2);
+ * net.setSendLanes(lanes);
+ * //Bulk traffic uses the default lane.
+ * net.send(profileRequest);
+ * //Control command is sent before the queued bulk frames.
+ * net.send(disconnectRequest, 0);
+ * </pre>
+ */
+public class GXSendLanes {
+
+    /**
+     * Amount of file bytes that are sent at the time.
+     */
+    private static final int FILE_CHUNK_SIZE = 0x10000;
+
+    /**
+     * Queued frames by lane.
+     */
+    private final ArrayDeque<Frame>[] mQueues;
+
+    /**
+     * Weights of the lanes.
+     */
+    private final int[] mWeights;
+
+    /**
+     * Current weights of the weighted scheduling.
+     */
+    private final int[] mCurrent;
+
+    /**
+     * Maximum queue depths of the lanes.
+     */
+    private final int[] mMaxDepths;
+
+    /**
+     * Amount of sent frames by lane.
+     */
+    private final long[] mFrameCounts;
+
+    /**
+     * Total wait time of the sent frames by lane in nanoseconds.
+     */
+    private final long[] mTotalWaits;
+
+    /**
+     * Maximum wait time of the sent frame by lane in nanoseconds.
+     */
+    private final long[] mMaxWaits;
+
+    /**
+     * Used scheduling.
+     */
+    private SendScheduling mScheduling = SendScheduling.STRICT;
+
+    /**
+     * Lane that is used when lane is not given.
+     */
+    private int mDefaultLane;
+
+    /**
+     * Is writer running.
+     */
+    private boolean mWriting;
+
+    /**
+     * Constructor.
+     *
+     * @param count Amount of lanes.
+     */
+    @SuppressWarnings("unchecked")
+    public GXSendLanes(final int count) {
+        if (count < 1) {
+            throw new IllegalArgumentException("count");
+        }
+        mQueues = new ArrayDeque[count];
+        mWeights = new int[count];
+        mCurrent = new int[count];
+        mMaxDepths = new int[count];
+        mFrameCounts = new long[count];
+        mTotalWaits = new long[count];
+        mMaxWaits = new long[count];
+        for (int pos = 0; pos != count; ++pos) {
+            mQueues[pos] = new ArrayDeque<>();
+            // Higher priority lanes get more turns by default.
+            mWeights[pos] = count - pos;
+        }
+        mDefaultLane = count - 1;
+    }
+
+    /**
+     * Returns amount of lanes.
+     *
+     * @return Amount of lanes.
+     */
+    public final int getCount() {
+        return mQueues.length;
+    }
+
+    /**
+     * Returns used scheduling.
+     *
+     * @return Scheduling.
+     */
+    public final synchronized SendScheduling getScheduling() {
+        return mScheduling;
+    }
+
+    /**
+     * Set used scheduling.
+     *
+     * @param value Scheduling.
+     */
+    public final synchronized void setScheduling(final SendScheduling value) {
+        if (value == null) {
+            throw new IllegalArgumentException("scheduling");
+        }
+        mScheduling = value;
+    }
+
+    /**
+     * Returns lane that is used when lane is not given.
+     *
+     * @return Lane index.
+     */
+    public final synchronized int getDefaultLane() {
+        return mDefaultLane;
+    }
+
+    /**
+     * Set lane that is used when lane is not given. The lowest priority
+     * lane is used by default.
+     *
+     * @param value Lane index.
+     */
+    public final synchronized void setDefaultLane(final int value) {
+        checkLane(value);
+        mDefaultLane = value;
+    }
+
+    /**
+     * Returns weight of the lane.
+     *
+     * @param lane Lane index.
+     * @return Weight.
+     */
+    public final synchronized int getWeight(final int lane) {
+        checkLane(lane);
+        return mWeights[lane];
+    }
+
+    /**
+     * Set weight of the lane. Weight is used with weighted scheduling.
+     *
+     * @param lane  Lane index.
+     * @param value Weight.
+     */
+    public final synchronized void setWeight(final int lane, final int value) {
+        checkLane(lane);
+        if (value < 1) {
+            throw new IllegalArgumentException("weight");
+        }
+        mWeights[lane] = value;
+    }
+
+    /**
+     * Returns amount of queued frames in the lane.
+     *
+     * @param lane Lane index.
+     * @return Queue depth.
+     */
+    public final synchronized int getQueueDepth(final int lane) {
+        checkLane(lane);
+        return mQueues[lane].size();
+    }
+
+    /**
+     * Returns maximum amount of queued frames in the lane.
+     *
+     * @param lane Lane index.
+     * @return Maximum queue depth.
+     */
+    public final synchronized int getMaxQueueDepth(final int lane) {
+        checkLane(lane);
+        return mMaxDepths[lane];
+    }
+
+    /**
+     * Returns amount of sent frames in the lane.
+     *
+     * @param lane Lane index.
+     * @return Amount of frames.
+     */
+    public final synchronized long getFrameCount(final int lane) {
+        checkLane(lane);
+        return mFrameCounts[lane];
+    }
+
+    /**
+     * Returns average time that frames of the lane waited in the queue.
+     *
+     * @param lane Lane index.
+     * @return Average wait time in milliseconds.
+     */
+    public final synchronized long getAverageWait(final int lane) {
+        checkLane(lane);
+        if (mFrameCounts[lane] == 0) {
+            return 0;
+        }
+        return mTotalWaits[lane] / mFrameCounts[lane] / 1000000;
+    }
+
+    /**
+     * Returns maximum time that frame of the lane waited in the queue.
+     *
+     * @param lane Lane index.
+     * @return Maximum wait time in milliseconds.
+     */
+    public final synchronized long getMaxWait(final int lane) {
+        checkLane(lane);
+        return mMaxWaits[lane] / 1000000;
+    }
+
+    /**
+     * Reset statistics. Queue depths are not reset.
+     */
+    public final synchronized void resetStatistics() {
+        for (int pos = 0; pos != mQueues.length; ++pos) {
+            mMaxDepths[pos] = mQueues[pos].size();
+            mFrameCounts[pos] = 0;
+            mTotalWaits[pos] = 0;
+            mMaxWaits[pos] = 0;
+        }
+    }
+
+    /**
+     * Check that lane index is valid.
+     *
+     * @param lane Lane index.
+     */
+    private void checkLane(final int lane) {
+        if (lane < 0 || lane >= mQueues.length) {
+            throw new IllegalArgumentException("lane");
+        }
+    }
+
+    /**
+     * Queue the frame and wait until it's sent.
+     *
+     * @param net  Network connection.
+     * @param data Sent frame.
+     * @param lane Lane index.
+     * @return Occurred error or null.
+     * @throws InterruptedException Sender is interrupted.
+     */
+    final Exception send(final GXNet net, final byte[] data, final int lane)
+            throws InterruptedException {
+        Frame frame = new Frame(net, lane);
+        frame.mData = data;
+        return send(frame);
+    }
+
+    /**
+     * Queue the file and wait until it's sent.
+     *
+     * @param net      Network connection.
+     * @param file     Sent file.
+     * @param offset   Position in the file where sending starts.
+     * @param length   Amount of sent bytes.
+     * @param progress Progress listener or null.
+     * @param lane     Lane index.
+     * @return Occurred error or null.
+     * @throws InterruptedException Sender is interrupted.
+     */
+    final Exception sendFile(final GXNet net, final FileChannel file, final long offset,
+                             final long length, final IGXProgressListener progress,
+                             final int lane) throws InterruptedException {
+        Frame frame = new Frame(net, lane);
+        frame.mFile = file;
+        frame.mOffset = offset;
+        frame.mLength = length;
+        frame.mProgress = progress;
+        return send(frame);
+    }
+
+    /**
+     * Queue the frame, start the writer if it's not running and wait until
+     * the frame is sent.
+     *
+     * @param frame Sent frame.
+     * @return Occurred error or null.
+     * @throws InterruptedException Sender is interrupted.
+     */
+    private Exception send(final Frame frame) throws InterruptedException {
+        boolean start;
+        synchronized (this) {
+            checkLane(frame.mLane);
+            ArrayDeque<Frame> queue = mQueues[frame.mLane];
+            queue.add(frame);
+            if (queue.size() > mMaxDepths[frame.mLane]) {
+                mMaxDepths[frame.mLane] = queue.size();
+            }
+            start = !mWriting;
+            mWriting = true;
+        }
+        if (start) {
+            GXNetExecutors executors = frame.mNet.getExecutors();
+            try {
+                executors.execute(executors.getWriteExecutor(), new Runnable() {
+                    @Override
+                    public void run() {
+                        write();
+                    }
+                }, "send");
+            } catch (RuntimeException ex) {
+                // Writer didn't start, so queued frames are failed.
+                fail(ex);
+            }
+        }
+        frame.mSent.await();
+        return frame.mError;
+    }
+
+    /**
+     * Send queued frames until all lanes are empty.
+     */
+    private void write() {
+        Frame frame;
+        while ((frame = next()) != null) {
+            try {
+                if (frame.mFile != null) {
+                    if (writeChunk(frame)) {
+                        continue;
+                    }
+                } else {
+                    GXTrafficShaper shaper = frame.mNet.getTrafficShaper();
+                    if (shaper != null) {
+                        // Frames are shaped in the send order.
+                        shaper.acquire(frame.mData.length);
+                    }
+                    frame.mNet.write(frame.mData);
+                }
+            } catch (Exception ex) {
+                frame.mError = ex;
+            }
+            frame.mSent.countDown();
+        }
+    }
+
+    /**
+     * Send next chunk of the file.
+     *
+     * @param frame File frame.
+     * @return True, if file is not sent yet and frame was queued again.
+     * @throws Exception Send failed.
+     */
+    private boolean writeChunk(final Frame frame) throws Exception {
+        long size = Math.min(FILE_CHUNK_SIZE, frame.mLength - frame.mPosition);
+        if (size != 0) {
+            frame.mNet.writeFile(frame.mFile, frame.mOffset + frame.mPosition, size);
+            frame.mPosition += size;
+            if (frame.mProgress != null) {
+                frame.mProgress.onProgress(frame.mPosition, frame.mLength);
+            }
+        }
+        if (frame.mPosition == frame.mLength) {
+            return false;
+        }
+        synchronized (this) {
+            // Rest of the file is sent after the frames of the higher
+            // priority lanes.
+            frame.mQueued = System.nanoTime();
+            mQueues[frame.mLane].addFirst(frame);
+        }
+        return true;
+    }
+
+    /**
+     * Fail all queued frames and stop the writer.
+     *
+     * @param error Occurred error.
+     */
+    private synchronized void fail(final Exception error) {
+        for (ArrayDeque<Frame> queue : mQueues) {
+            Frame frame;
+            while ((frame = queue.poll()) != null) {
+                frame.mError = error;
+                frame.mSent.countDown();
+            }
+        }
+        mWriting = false;
+    }
+
+    /**
+     * Remove next sent frame from the lanes.
+     *
+     * @return Next frame or null if lanes are empty. Writer is stopped when
+     * null is returned.
+     */
+    private synchronized Frame next() {
+        int lane = -1;
+        if (mScheduling == SendScheduling.STRICT) {
+            for (int pos = 0; pos != mQueues.length; ++pos) {
+                if (!mQueues[pos].isEmpty()) {
+                    lane = pos;
+                    break;
+                }
+            }
+        } else {
+            // Smooth weighted round robin over non-empty lanes.
+            int total = 0;
+            for (int pos = 0; pos != mQueues.length; ++pos) {
+                if (!mQueues[pos].isEmpty()) {
+                    mCurrent[pos] += mWeights[pos];
+                    total += mWeights[pos];
+                    if (lane == -1 || mCurrent[pos] > mCurrent[lane]) {
+                        lane = pos;
+                    }
+                }
+            }
+            if (lane != -1) {
+                mCurrent[lane] -= total;
+            }
+        }
+        if (lane == -1) {
+            mWriting = false;
+            return null;
+        }
+        Frame frame = mQueues[lane].poll();
+        long wait = System.nanoTime() - frame.mQueued;
+        ++mFrameCounts[lane];
+        mTotalWaits[lane] += wait;
+        if (wait > mMaxWaits[lane]) {
+            mMaxWaits[lane] = wait;
+        }
+        if (mQueues[lane].isEmpty()) {
+            mCurrent[lane] = 0;
+        }
+        return frame;
+    }
+
+    /**
+     * Queued frame or file.
+     */
+    private static final class Frame {
+        /**
+         * Network connection where frame is sent.
+         */
+        private final GXNet mNet;
+
+        /**
+         * Lane index.
+         */
+        private final int mLane;
+
+        /**
+         * Sent data or null if file is sent.
+         */
+        private byte[] mData;
+
+        /**
+         * Sent file or null if data is sent.
+         */
+        private FileChannel mFile;
+
+        /**
+         * Position in the file where sending starts.
+         */
+        private long mOffset;
+
+        /**
+         * Amount of sent file bytes.
+         */
+        private long mLength;
+
+        /**
+         * Amount of file bytes that are already sent.
+         */
+        private long mPosition;
+
+        /**
+         * Progress listener or null.
+         */
+        private IGXProgressListener mProgress;
+
+        /**
+         * Time when frame was queued.
+         */
+        private long mQueued = System.nanoTime();
+
+        /**
+         * Signaled when frame is sent.
+         */
+        private final CountDownLatch mSent = new CountDownLatch(1);
+
+        /**
+         * Occurred error.
+         */
+        private Exception mError;
+
+        /**
+         * Constructor.
+         *
+         * @param net  Network connection where frame is sent.
+         * @param lane Lane index.
+         */
+        Frame(final GXNet net, final int lane) {
+            mNet = net;
+            mLane = lane;
+        }
+    }
+}
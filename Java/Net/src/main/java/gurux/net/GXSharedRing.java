@@ -0,0 +1,182 @@
+//
+// --------------------------------------------------------------------------
+//  Gurux Ltd
+// 
+//
+//
+// Filename:        $HeadURL$
+//
+// Version:         $Revision$,
+//                  $Date$
+//                  $Author$
+//
+// Copyright (c) Gurux Ltd
+//
+//---------------------------------------------------------------------------
+//
+//  DESCRIPTION
+//
+// This file is a part of Gurux Device Framework.
+//
+// Gurux Device Framework is Open Source software; you can redistribute it
+// and/or modify it under the terms of the GNU General Public License 
+// as published by the Free Software Foundation; version 2 of the License.
+// Gurux Device Framework is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of 
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+// See the GNU General Public License for more details.
+//
+// More information of Gurux products: http://www.gurux.org
+//
+// This code is licensed under the GNU General Public License v2. 
+// Full text may be retrieved at http://www.gnu.org/licenses/gpl-2.0.txt
+//---------------------------------------------------------------------------
+
+package gurux.net;
+
+import android.os.SharedMemory;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Single producer, single consumer byte ring in shared memory.
+ * <p>
+ * Producer and consumer are in different processes and both map the same
+ * memory. Read and write positions are not stored to the shared memory.
+ * Producer tells the amount of written bytes and consumer the amount of
+ * read bytes with binder calls, and the binder transaction orders the
+ * memory accesses between the processes. Producer never waits for the
+ * consumer.
+ * </p>
+ *
+ * @author Gurux Ltd.
+ */
+final class GXSharedRing {
+
+    /**
+     * Mapped shared memory.
+     */
+    private final ByteBuffer mBuffer;
+
+    /**
+     * Ring capacity in bytes.
+     */
+    private final int mCapacity;
+
+    /**
+     * Next position to read.
+     */
+    private long mHead;
+
+    /**
+     * Next position to write.
+     */
+    private long mTail;
+
+    /**
+     * Is ring closed.
+     */
+    private boolean mClosed;
+
+    /**
+     * Constructor.
+     *
+     * @param buffer Mapped shared memory.
+     */
+    GXSharedRing(final ByteBuffer buffer) {
+        if (buffer == null) {
+            throw new IllegalArgumentException("buffer");
+        }
+        mBuffer = buffer;
+        mCapacity = buffer.capacity();
+    }
+
+    /**
+     * Get ring capacity.
+     *
+     * @return Ring capacity in bytes.
+     */
+    int getCapacity() {
+        return mCapacity;
+    }
+
+    /**
+     * Write bytes to the ring. Nothing is written if all bytes don't fit.
+     *
+     * @param data   Written data.
+     * @param offset Offset of the first written byte.
+     * @param count  Amount of bytes to write.
+     * @return Amount of written bytes, zero if bytes don't fit or -1 if
+     * ring is closed.
+     */
+    synchronized int write(final byte[] data, final int offset, final int count) {
+        if (mClosed) {
+            return -1;
+        }
+        if (count > mCapacity - (mTail - mHead)) {
+            return 0;
+        }
+        int size = count;
+        int index = (int) (mTail % mCapacity);
+        int first = Math.min(size, mCapacity - index);
+        mBuffer.position(index);
+        mBuffer.put(data, offset, first);
+        if (first != size) {
+            mBuffer.position(0);
+            mBuffer.put(data, offset + first, size - first);
+        }
+        mTail += size;
+        return size;
+    }
+
+    /**
+     * Consumer has read bytes from the ring. This is called in the
+     * producer process.
+     *
+     * @param count Amount of read bytes.
+     */
+    synchronized void release(final int count) {
+        if (count < 0 || count > mTail - mHead) {
+            throw new IllegalArgumentException("count");
+        }
+        mHead += count;
+    }
+
+    /**
+     * Read bytes that producer has written to the ring. This is called in
+     * the consumer process.
+     *
+     * @param data   Buffer where bytes are read.
+     * @param offset Offset of the first read byte.
+     * @param count  Amount of bytes to read.
+     * @return False, if ring is closed.
+     */
+    synchronized boolean read(final byte[] data, final int offset, final int count) {
+        if (count < 0 || count > mCapacity) {
+            throw new IllegalArgumentException("count");
+        }
+        if (mClosed) {
+            return false;
+        }
+        int index = (int) (mHead % mCapacity);
+        int first = Math.min(count, mCapacity - index);
+        mBuffer.position(index);
+        mBuffer.get(data, offset, first);
+        if (first != count) {
+            mBuffer.position(0);
+            mBuffer.get(data, offset + first, count - first);
+        }
+        mHead += count;
+        return true;
+    }
+
+    /**
+     * Close the ring and unmap the shared memory.
+     */
+    synchronized void close() {
+        if (!mClosed) {
+            mClosed = true;
+            SharedMemory.unmap(mBuffer);
+        }
+    }
+}
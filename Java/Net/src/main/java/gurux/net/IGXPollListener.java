@@ -0,0 +1,70 @@
+//
+// --------------------------------------------------------------------------
+//  Gurux Ltd
+// 
+//
+//
+// Filename:        $HeadURL$
+//
+// Version:         $Revision$,
+//                  $Date$
+//                  $Author$
+//
+// Copyright (c) Gurux Ltd
+//
+//---------------------------------------------------------------------------
+//
+//  DESCRIPTION
+//
+// This file is a part of Gurux Device Framework.
+//
+// Gurux Device Framework is Open Source software; you can redistribute it
+// and/or modify it under the terms of the GNU General Public License 
+// as published by the Free Software Foundation; version 2 of the License.
+// Gurux Device Framework is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of 
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+// See the GNU General Public License for more details.
+//
+// More information of Gurux products: http://www.gurux.org
+//
+// This code is licensed under the GNU General Public License v2. 
+// Full text may be retrieved at http://www.gnu.org/licenses/gpl-2.0.txt
+//---------------------------------------------------------------------------
+
+package gurux.net;
+
+import java.util.List;
+
+/**
+ * Listener of the poll scheduler. Listener is called from the worker thread
+ * of the scheduler.
+ */
+public interface IGXPollListener {
+
+    /**
+     * Poll job is completed.
+     *
+     * @param job     Poll job.
+     * @param replies Replies of the requests.
+     */
+    void onCompleted(GXPollJob job, List<byte[]> replies);
+
+    /**
+     * Poll job failed.
+     *
+     * @param job Poll job.
+     * @param ex  Occurred error.
+     */
+    void onError(GXPollJob job, Exception ex);
+
+    /**
+     * Poll job missed the deadline.
+     *
+     * @param job      Poll job.
+     * @param lateness How late the job completed in milliseconds. Zero if
+     *                 the job was not started because previous run was
+     *                 still pending.
+     */
+    void onDeadlineMissed(GXPollJob job, long lateness);
+}
@@ -0,0 +1,54 @@
+//
+// --------------------------------------------------------------------------
+//  Gurux Ltd
+// 
+//
+//
+// Filename:        $HeadURL$
+//
+// Version:         $Revision$,
+//                  $Date$
+//                  $Author$
+//
+// Copyright (c) Gurux Ltd
+//
+//---------------------------------------------------------------------------
+//
+//  DESCRIPTION
+//
+// This file is a part of Gurux Device Framework.
+//
+// Gurux Device Framework is Open Source software; you can redistribute it
+// and/or modify it under the terms of the GNU General Public License 
+// as published by the Free Software Foundation; version 2 of the License.
+// Gurux Device Framework is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of 
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+// See the GNU General Public License for more details.
+//
+// More information of Gurux products: http://www.gurux.org
+//
+// This code is licensed under the GNU General Public License v2. 
+// Full text may be retrieved at http://www.gnu.org/licenses/gpl-2.0.txt
+//---------------------------------------------------------------------------
+
+package gurux.net;
+
+/**
+ * Handler of received data in zero-garbage receive mode.
+ * <p>
+ * Handler is called in the receive thread for each received chunk when the
+ * connection is not used synchronously. Received data object is reused, so
+ * it must not be stored.
+ * </p>
+ */
+public interface IGXReceiveHandler {
+
+    /**
+     * Data is received.
+     *
+     * @param sender Network connection.
+     * @param data   Received data. This is valid only during the call.
+     */
+    void onReceived(GXNet sender, GXReceivedData data);
+}
@@ -127,19 +127,11 @@ public class PropertiesFragment extends Fragment {
      */
     private void updateProtocol() {
         AlertDialog.Builder builder = new AlertDialog.Builder(getActivity());
-        String[] values = new String[]{"UDP", "TCP/IP"};
-        int actual = 0;
-        if (mNet.getProtocol() == NetworkType.TCP) {
-            actual = 1;
-        }
+        String[] values = new String[]{"UDP", "TCP/IP", "TLS"};
+        int actual = mNet.getProtocol().ordinal();
         builder.setTitle(R.string.protocol)
                 .setSingleChoiceItems(values, actual, (dialog, which) -> {
-                    NetworkType tmp;
-                    if (which == 0) {
-                        tmp = NetworkType.UDP;
-                    } else {
-                        tmp = NetworkType.TCP;
-                    }
+                    NetworkType tmp = NetworkType.values()[which];
                     mNet.setProtocol(tmp);
                     rows.set(0, getProtocol());
                     ((BaseAdapter) listView.getAdapter()).notifyDataSetChanged();
@@ -0,0 +1,182 @@
+//
+// --------------------------------------------------------------------------
+//  Gurux Ltd
+// 
+//
+//
+// Filename:        $HeadURL$
+//
+// Version:         $Revision$,
+//                  $Date$
+//                  $Author$
+//
+// Copyright (c) Gurux Ltd
+//
+//---------------------------------------------------------------------------
+//
+//  DESCRIPTION
+//
+// This file is a part of Gurux Device Framework.
+//
+// Gurux Device Framework is Open Source software; you can redistribute it
+// and/or modify it under the terms of the GNU General Public License 
+// as published by the Free Software Foundation; version 2 of the License.
+// Gurux Device Framework is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of 
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+// See the GNU General Public License for more details.
+//
+// More information of Gurux products: http://www.gurux.org
+//
+// This code is licensed under the GNU General Public License v2. 
+// Full text may be retrieved at http://www.gnu.org/licenses/gpl-2.0.txt
+//---------------------------------------------------------------------------
+
+
+package gurux.net;
+
+import gurux.common.GXSynchronousMediaBase;
+import gurux.common.ReceiveParameters;
+
+/**
+ * Compares lock-free synchronous receive to the GXSynchronousMediaBase
+ * receive that is used when lock-free receive is not enabled.
+ * <p>
+ * Producer writes the data the same way as the receive thread of GXNet and
+ * the consumer waits the replies with the receive parameters. This is
+ * started from main and it's not run with unit tests.
+ * </p>
+ */
+public final class GXRingReceiverBenchmark {
+
+    /**
+     * Amount of transferred bytes in one round.
+     */
+    private static final int TOTAL = 64 * 1024 * 1024;
+
+    /**
+     * Amount of bytes in one received chunk.
+     */
+    private static final int CHUNK = 256;
+
+    /**
+     * Amount of bytes in one reply.
+     */
+    private static final int REPLY = 4096;
+
+    /**
+     * Ring capacity.
+     */
+    private static final int CAPACITY = 0x10000;
+
+    /**
+     * Constructor.
+     */
+    private GXRingReceiverBenchmark() {
+    }
+
+    /**
+     * Returns receive parameters of one reply.
+     *
+     * @return Receive parameters.
+     */
+    private static ReceiveParameters<byte[]> createArgs() {
+        ReceiveParameters<byte[]> args = new ReceiveParameters<>(byte[].class);
+        args.setCount(REPLY);
+        args.setWaitTime(-1);
+        return args;
+    }
+
+    /**
+     * Transfer bytes through the lock-free ring receiver.
+     *
+     * @return Elapsed time in nanoseconds.
+     * @throws InterruptedException Benchmark is interrupted.
+     */
+    private static long ring() throws InterruptedException {
+        final GXRingReceiver receiver = new GXRingReceiver(CAPACITY);
+        final GXByteRing ring = receiver.getRing();
+        Thread producer = new Thread(() -> {
+            byte[] data = new byte[CHUNK];
+            try {
+                for (int pos = 0; pos < TOTAL; pos += CHUNK) {
+                    ring.write(data, 0, CHUNK);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        ReceiveParameters<byte[]> args = createArgs();
+        long start = System.nanoTime();
+        producer.start();
+        for (int size = 0; size != TOTAL; size += REPLY) {
+            args.setReply(null);
+            receiver.receive(args);
+        }
+        long elapsed = System.nanoTime() - start;
+        producer.join();
+        return elapsed;
+    }
+
+    /**
+     * Transfer bytes through the synchronous media base.
+     *
+     * @return Elapsed time in nanoseconds.
+     * @throws InterruptedException Benchmark is interrupted.
+     */
+    private static long media() throws InterruptedException {
+        final GXSynchronousMediaBase base = new GXSynchronousMediaBase(CAPACITY);
+        Thread producer = new Thread(() -> {
+            byte[] data = new byte[CHUNK];
+            for (int pos = 0; pos < TOTAL; pos += CHUNK) {
+                // Same as the receive thread when end of packet is not used.
+                synchronized (base.getSync()) {
+                    base.appendData(data, 0, CHUNK);
+                    base.setReceived();
+                }
+            }
+        });
+        ReceiveParameters<byte[]> args = createArgs();
+        long start = System.nanoTime();
+        producer.start();
+        for (int size = 0; size != TOTAL; size += REPLY) {
+            args.setReply(null);
+            base.receive(args);
+        }
+        long elapsed = System.nanoTime() - start;
+        producer.join();
+        return elapsed;
+    }
+
+    /**
+     * Print throughput.
+     *
+     * @param name    Benchmark name.
+     * @param elapsed Elapsed time in nanoseconds.
+     */
+    private static void print(final String name, final long elapsed) {
+        double mb = TOTAL / (1024.0 * 1024.0);
+        System.out.println(String.format("%s: %.1f MB/s", name,
+                mb * 1000000000.0 / elapsed));
+    }
+
+    /**
+     * Run the benchmark.
+     *
+     * @param args Command line arguments. Amount of rounds is optional.
+     * @throws InterruptedException Benchmark is interrupted.
+     */
+    public static void main(final String[] args) throws InterruptedException {
+        int rounds = 5;
+        if (args.length != 0) {
+            rounds = Integer.parseInt(args[0]);
+        }
+        // First round warms up the JIT.
+        ring();
+        media();
+        for (int round = 0; round != rounds; ++round) {
+            print("Ring", ring());
+            print("GXSynchronousMediaBase", media());
+        }
+    }
+}
@@ -0,0 +1,111 @@
+//
+// --------------------------------------------------------------------------
+//  Gurux Ltd
+//
+//
+//
+// Filename:        $HeadURL$
+//
+// Version:         $Revision$,
+//                  $Date$
+//                  $Author$
+//
+// Copyright (c) Gurux Ltd
+//
+//---------------------------------------------------------------------------
+//
+//  DESCRIPTION
+//
+// This file is a part of Gurux Device Framework.
+//
+// Gurux Device Framework is Open Source software; you can redistribute it
+// and/or modify it under the terms of the GNU General Public License
+// as published by the Free Software Foundation; version 2 of the License.
+// Gurux Device Framework is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+// See the GNU General Public License for more details.
+//
+// More information of Gurux products: http://www.gurux.org
+//
+// This code is licensed under the GNU General Public License v2.
+// Full text may be retrieved at http://www.gnu.org/licenses/gpl-2.0.txt
+//---------------------------------------------------------------------------
+
+
+// Networking core doesn't depend on Android, so it can be used in plain
+// Java applications.
+plugins {
+    id("java-library")
+    // Fault proxy is shared with the tests of other modules as a test fixture.
+    id("java-test-fixtures")
+    id("maven-publish")
+    id("signing")
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_11
+    targetCompatibility = JavaVersion.VERSION_11
+    withSourcesJar()
+    withJavadocJar()
+}
+
+dependencies {
+    testImplementation(libs.junit)
+}
+
+// Benchmarks are started from main and they are not run as unit tests.
+tasks.test {
+    exclude("**/*Benchmark*")
+}
+
+// Test fixtures are not published.
+val javaComponent = components["java"] as AdhocComponentWithVariants
+javaComponent.withVariantsFromConfiguration(configurations["testFixturesApiElements"]) { skip() }
+javaComponent.withVariantsFromConfiguration(configurations["testFixturesRuntimeElements"]) { skip() }
+
+publishing {
+    publications {
+        create<MavenPublication>("release") {
+            from(components["java"])
+            groupId = "org.gurux"
+            artifactId = "gurux.net.core"
+            version = project.version.toString()
+            pom {
+                name.set("gurux.net.core")
+                description.set("gurux.net.core package implements TCP/IP, TLS and UDP transport for plain Java. Purpose of Gurux Device Framework is help you to read your devices, meters and sensors easier")
+                url.set("https://www.gurux.fi")
+                licenses {
+                    license {
+                        name.set("GNU General Public License, version 2")
+                        url.set("http://www.gnu.org/licenses/gpl-2.0.txt")
+                    }
+                }
+                developers {
+                    developer {
+                        id.set("gurux")
+                        name.set("Gurux ltd")
+                        email.set("gurux@gurux.fi")
+                    }
+                }
+
+                scm {
+                    connection.set("scm:git:https://github.com/gurux/gurux.net.android.git")
+                    developerConnection.set("scm:git:https://github.com/gurux/gurux.net.android.git")
+                    url.set("https://github.com/gurux/gurux.net.android")
+                }
+            }
+            signing {
+                useGpgCmd()
+                sign(this@create)
+            }
+
+            repositories {
+                maven {
+                    name = "staging"
+                    url = layout.buildDirectory.dir("staging-deploy").get().asFile.toURI()
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,357 @@
+//
+// --------------------------------------------------------------------------
+//  Gurux Ltd
+// 
+//
+//
+// Filename:        $HeadURL$
+//
+// Version:         $Revision$,
+//                  $Date$
+//                  $Author$
+//
+// Copyright (c) Gurux Ltd
+//
+//---------------------------------------------------------------------------
+//
+//  DESCRIPTION
+//
+// This file is a part of Gurux Device Framework.
+//
+// Gurux Device Framework is Open Source software; you can redistribute it
+// and/or modify it under the terms of the GNU General Public License 
+// as published by the Free Software Foundation; version 2 of the License.
+// Gurux Device Framework is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of 
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+// See the GNU General Public License for more details.
+//
+// More information of Gurux products: http://www.gurux.org
+//
+// This code is licensed under the GNU General Public License v2. 
+// Full text may be retrieved at http://www.gnu.org/licenses/gpl-2.0.txt
+//---------------------------------------------------------------------------
+
+package gurux.net;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Lock-free single producer, single consumer byte ring.
+ * <p>
+ * Receive thread is the only producer and the thread that is waiting the
+ * reply is the only consumer. Waiting side spins a short moment before it
+ * parks so that replies that are arriving fast are handled without thread
+ * context switches.
+ * </p>
+ * <p>
+ * Producer doesn't wait free space forever. If nobody reads the ring,
+ * bytes that don't fit are dropped after the overflow wait time. Any
+ * thread can discard the received bytes with {@link #discard()} and the
+ * consumer applies the discard before it reads the next time.
+ * </p>
+ *
+ * @author Gurux Ltd.
+ */
+final class GXByteRing {
+
+    /**
+     * Default ring capacity in bytes.
+     */
+    static final int DEFAULT_CAPACITY = 0x10000;
+
+    /**
+     * How many times available data is checked before the thread yields.
+     */
+    private static final int SPIN_COUNT = 200;
+
+    /**
+     * How many times thread yields before it parks.
+     */
+    private static final int YIELD_COUNT = 20;
+
+    /**
+     * How long producer waits free space before bytes are dropped in
+     * milliseconds.
+     */
+    static final int OVERFLOW_WAIT = 1000;
+
+    /**
+     * Ring buffer.
+     */
+    private final byte[] mBuffer;
+
+    /**
+     * Mask used to convert position to buffer index.
+     */
+    private final int mMask;
+
+    /**
+     * Next position to read. Only consumer updates this.
+     */
+    private final AtomicLong mHead = new AtomicLong();
+
+    /**
+     * Next position to write. Only producer updates this.
+     */
+    private final AtomicLong mTail = new AtomicLong();
+
+    /**
+     * Bytes before this position are discarded. Any thread updates this.
+     */
+    private final AtomicLong mDiscard = new AtomicLong();
+
+    /**
+     * Amount of dropped bytes.
+     */
+    private final AtomicLong mDropped = new AtomicLong();
+
+    /**
+     * Last write dropped bytes. Producer doesn't wait again until the
+     * consumer has read. This is accessed only from the producer.
+     */
+    private boolean mOverflow;
+
+    /**
+     * Parked consumer thread or null.
+     */
+    private volatile Thread mConsumer;
+
+    /**
+     * Parked producer thread or null.
+     */
+    private volatile Thread mProducer;
+
+    /**
+     * Constructor.
+     *
+     * @param capacity Ring capacity. Capacity is rounded up to the power of
+     *                 two.
+     */
+    GXByteRing(final int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity");
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        mBuffer = new byte[size];
+        mMask = size - 1;
+    }
+
+    /**
+     * Get ring capacity.
+     *
+     * @return Ring capacity in bytes.
+     */
+    int capacity() {
+        return mBuffer.length;
+    }
+
+    /**
+     * Get amount of bytes that are available to read. This is called only
+     * from the consumer.
+     *
+     * @return Amount of available bytes.
+     */
+    int available() {
+        applyDiscard();
+        return (int) (mTail.get() - mHead.get());
+    }
+
+    /**
+     * Get amount of bytes that are dropped because the ring was full.
+     *
+     * @return Amount of dropped bytes.
+     */
+    long getDropped() {
+        return mDropped.get();
+    }
+
+    /**
+     * Write bytes to the ring. Producer waits if the ring is full. Bytes
+     * that don't fit to the ring during the overflow wait time are dropped.
+     *
+     * @param data   Written data.
+     * @param offset Data offset.
+     * @param count  Amount of written bytes.
+     * @return True, if all bytes were written. False, if bytes were
+     * dropped.
+     * @throws InterruptedException Producer is interrupted while it waits
+     *                              free space.
+     */
+    boolean write(final byte[] data, final int offset, final int count)
+            throws InterruptedException {
+        int pos = offset;
+        int remaining = count;
+        long deadline = 0;
+        while (remaining != 0) {
+            long tail = mTail.get();
+            int free = mBuffer.length - (int) (tail - mHead.get());
+            if (free == 0) {
+                if (mOverflow) {
+                    mDropped.addAndGet(remaining);
+                    return false;
+                }
+                if (deadline == 0) {
+                    deadline = System.nanoTime() + OVERFLOW_WAIT * 1000000L;
+                } else if (deadline - System.nanoTime() <= 0) {
+                    // Nobody is reading the ring.
+                    mOverflow = true;
+                    mDropped.addAndGet(remaining);
+                    return false;
+                }
+                awaitSpace(deadline);
+                continue;
+            }
+            deadline = 0;
+            mOverflow = false;
+            int n = Math.min(free, remaining);
+            int index = (int) tail & mMask;
+            int first = Math.min(n, mBuffer.length - index);
+            System.arraycopy(data, pos, mBuffer, index, first);
+            if (n != first) {
+                System.arraycopy(data, pos + first, mBuffer, 0, n - first);
+            }
+            mTail.set(tail + n);
+            pos += n;
+            remaining -= n;
+            Thread consumer = mConsumer;
+            if (consumer != null) {
+                LockSupport.unpark(consumer);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Read available bytes from the ring.
+     *
+     * @param target Target buffer.
+     * @param offset Target offset.
+     * @param count  Maximum amount of bytes to read.
+     * @return Amount of read bytes.
+     */
+    int read(final byte[] target, final int offset, final int count) {
+        applyDiscard();
+        long head = mHead.get();
+        int n = Math.min(count, (int) (mTail.get() - head));
+        if (n != 0) {
+            int index = (int) head & mMask;
+            int first = Math.min(n, mBuffer.length - index);
+            System.arraycopy(mBuffer, index, target, offset, first);
+            if (n != first) {
+                System.arraycopy(mBuffer, 0, target, offset + first, n - first);
+            }
+            mHead.set(head + n);
+            Thread producer = mProducer;
+            if (producer != null) {
+                LockSupport.unpark(producer);
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Discard bytes that are written to the ring. This can be called from
+     * any thread. Consumer skips the discarded bytes before it reads the
+     * next time.
+     */
+    void discard() {
+        long tail = mTail.get();
+        long old;
+        do {
+            old = mDiscard.get();
+            if (old >= tail) {
+                return;
+            }
+        } while (!mDiscard.compareAndSet(old, tail));
+        Thread consumer = mConsumer;
+        if (consumer != null) {
+            LockSupport.unpark(consumer);
+        }
+    }
+
+    /**
+     * Skip the discarded bytes. This is called only from the consumer.
+     */
+    private void applyDiscard() {
+        long discard = mDiscard.get();
+        if (discard > mHead.get()) {
+            mHead.set(discard);
+            Thread producer = mProducer;
+            if (producer != null) {
+                LockSupport.unpark(producer);
+            }
+        }
+    }
+
+    /**
+     * Wait until there are bytes to read.
+     *
+     * @param deadline Deadline in {@link System#nanoTime()} time or zero if
+     *                 consumer waits forever.
+     * @return True, if data is available. False, if deadline elapsed or
+     * the consumer was interrupted.
+     */
+    boolean awaitData(final long deadline) {
+        int spins = 0;
+        while (available() == 0) {
+            if (spins < SPIN_COUNT) {
+                ++spins;
+                continue;
+            }
+            if (deadline != 0 && deadline - System.nanoTime() <= 0) {
+                return false;
+            }
+            if (spins < SPIN_COUNT + YIELD_COUNT) {
+                ++spins;
+                Thread.yield();
+                continue;
+            }
+            mConsumer = Thread.currentThread();
+            try {
+                // Data is checked again after the consumer is published so
+                // that unpark from the producer is not lost.
+                if (available() == 0) {
+                    if (deadline == 0) {
+                        LockSupport.park(this);
+                    } else {
+                        LockSupport.parkNanos(this, deadline - System.nanoTime());
+                    }
+                }
+            } finally {
+                mConsumer = null;
+            }
+            if (Thread.currentThread().isInterrupted()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Producer waits until there is free space in the ring or the deadline
+     * elapses.
+     *
+     * @param deadline Deadline in {@link System#nanoTime()} time.
+     * @throws InterruptedException Producer is interrupted.
+     */
+    private void awaitSpace(final long deadline) throws InterruptedException {
+        mProducer = Thread.currentThread();
+        try {
+            // Space is checked again after the producer is published so
+            // that unpark from the consumer is not lost.
+            if (mTail.get() - mHead.get() == mBuffer.length) {
+                LockSupport.parkNanos(this, deadline - System.nanoTime());
+            }
+        } finally {
+            mProducer = null;
+        }
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+    }
+}
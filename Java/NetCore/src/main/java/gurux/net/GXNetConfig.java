@@ -0,0 +1,174 @@
+//
+// --------------------------------------------------------------------------
+//  Gurux Ltd
+// 
+//
+//
+// Filename:        $HeadURL$
+//
+// Version:         $Revision$,
+//                  $Date$
+//                  $Author$
+//
+// Copyright (c) Gurux Ltd
+//
+//---------------------------------------------------------------------------
+//
+//  DESCRIPTION
+//
+// This file is a part of Gurux Device Framework.
+//
+// Gurux Device Framework is Open Source software; you can redistribute it
+// and/or modify it under the terms of the GNU General Public License 
+// as published by the Free Software Foundation; version 2 of the License.
+// Gurux Device Framework is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of 
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+// See the GNU General Public License for more details.
+//
+// More information of Gurux products: http://www.gurux.org
+//
+// This code is licensed under the GNU General Public License v2. 
+// Full text may be retrieved at http://www.gnu.org/licenses/gpl-2.0.txt
+//---------------------------------------------------------------------------
+
+package gurux.net;
+
+import gurux.net.enums.NetworkType;
+
+/**
+ * Immutable connection settings.
+ * <p>
+ * Connection publishes settings as one snapshot, so I/O threads read all
+ * settings without locks and never see partially updated settings. Several
+ * settings are changed at once by setting a new snapshot and listeners are
+ * notified only once. Same snapshot can be shared between connections.
+ * </p>
+ * <pre>
+ * GXNetConfig config = new GXNetConfig(NetworkType.TCP, "meter", 4059);
+ * for (GXNet it : connections) {
+ *     it.setConfig(config);
+ * }
+ * </pre>
+ */
+public final class GXNetConfig {
+
+    /**
+     * Default settings.
+     */
+    static final GXNetConfig DEFAULT = new GXNetConfig(NetworkType.TCP, null, 0);
+
+    /**
+     * Used protocol.
+     */
+    private final NetworkType mProtocol;
+
+    /**
+     * Host name.
+     */
+    private final String mHostName;
+
+    /**
+     * Used port.
+     */
+    private final int mPort;
+
+    /**
+     * Constructor.
+     *
+     * @param protocol Used protocol.
+     * @param hostName Host name.
+     * @param port     Used port.
+     */
+    public GXNetConfig(final NetworkType protocol, final String hostName, final int port) {
+        if (protocol == null) {
+            throw new IllegalArgumentException("protocol");
+        }
+        mProtocol = protocol;
+        mHostName = hostName;
+        mPort = port;
+    }
+
+    /**
+     * Returns used protocol.
+     *
+     * @return Protocol in use.
+     */
+    public NetworkType getProtocol() {
+        return mProtocol;
+    }
+
+    /**
+     * Returns name or IP address of the host.
+     *
+     * @return The name of the host.
+     */
+    public String getHostName() {
+        return mHostName;
+    }
+
+    /**
+     * Returns host or server port number.
+     *
+     * @return Port number.
+     */
+    public int getPort() {
+        return mPort;
+    }
+
+    /**
+     * Returns settings with the given protocol.
+     *
+     * @param value Used protocol.
+     * @return New settings.
+     */
+    public GXNetConfig withProtocol(final NetworkType value) {
+        return new GXNetConfig(value, mHostName, mPort);
+    }
+
+    /**
+     * Returns settings with the given host name.
+     *
+     * @param value The name of the host.
+     * @return New settings.
+     */
+    public GXNetConfig withHostName(final String value) {
+        return new GXNetConfig(mProtocol, value, mPort);
+    }
+
+    /**
+     * Returns settings with the given port.
+     *
+     * @param value Port number.
+     * @return New settings.
+     */
+    public GXNetConfig withPort(final int value) {
+        return new GXNetConfig(mProtocol, mHostName, value);
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof GXNetConfig)) {
+            return false;
+        }
+        GXNetConfig other = (GXNetConfig) obj;
+        return mProtocol == other.mProtocol && mPort == other.mPort
+                && (mHostName == null ? other.mHostName == null
+                : mHostName.equals(other.mHostName));
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = mProtocol.hashCode();
+        hash = 31 * hash + (mHostName == null ? 0 : mHostName.hashCode());
+        return 31 * hash + mPort;
+    }
+
+    @Override
+    public String toString() {
+        return mProtocol + " " + mHostName + ":" + mPort;
+    }
+}
@@ -0,0 +1,280 @@
+//
+// --------------------------------------------------------------------------
+//  Gurux Ltd
+// 
+//
+//
+// Filename:        $HeadURL$
+//
+// Version:         $Revision$,
+//                  $Date$
+//                  $Author$
+//
+// Copyright (c) Gurux Ltd
+//
+//---------------------------------------------------------------------------
+//
+//  DESCRIPTION
+//
+// This file is a part of Gurux Device Framework.
+//
+// Gurux Device Framework is Open Source software; you can redistribute it
+// and/or modify it under the terms of the GNU General Public License 
+// as published by the Free Software Foundation; version 2 of the License.
+// Gurux Device Framework is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of 
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+// See the GNU General Public License for more details.
+//
+// More information of Gurux products: http://www.gurux.org
+//
+// This code is licensed under the GNU General Public License v2. 
+// Full text may be retrieved at http://www.gnu.org/licenses/gpl-2.0.txt
+//---------------------------------------------------------------------------
+
+package gurux.net;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executors and thread factory that GXNet uses for the background work.
+ * <p>
+ * Same instance can be shared between several connections to keep them
+ * inside of the fixed thread budget. If executor is not set, a new thread
+ * is created with the thread factory for each task. Received data is read
+ * with blocking sockets, so read executor must have at least one thread for
+ * each open connection.
+ * </p>
+ * <p>
+ * Send waits in the calling thread until the write executor has written
+ * the data. Because listeners can send from the dispatch executor, same
+ * executor can't be used to notify the listeners and to write the data.
+ * Dispatch executor can have several threads. Events of one connection are
+ * still notified one at the time in the order they occurred.
+ * </p>
+ */
+public class GXNetExecutors {
+
+    /**
+     * Executors that are used if the application has not set own executors.
+     */
+    private static final GXNetExecutors DEFAULT = new GXNetExecutors(true);
+
+    /**
+     * Default thread factory.
+     */
+    private static final ThreadFactory DEFAULT_THREAD_FACTORY = new ThreadFactory() {
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(final Runnable r) {
+            return new Thread(r, "GXNet-" + mCount.incrementAndGet());
+        }
+    };
+
+    /**
+     * Thread factory.
+     */
+    private volatile ThreadFactory mThreadFactory;
+
+    /**
+     * Executor used to establish the connection.
+     */
+    private volatile Executor mConnectExecutor;
+
+    /**
+     * Executor used to write the data.
+     */
+    private volatile Executor mWriteExecutor;
+
+    /**
+     * Executor used to read the data.
+     */
+    private volatile Executor mReadExecutor;
+
+    /**
+     * Executor used to notify the listeners.
+     */
+    private volatile Executor mDispatchExecutor;
+
+    /**
+     * Are executors read-only.
+     */
+    private final boolean mReadOnly;
+
+    /**
+     * Constructor.
+     */
+    public GXNetExecutors() {
+        this(false);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param readOnly Are executors read-only.
+     */
+    private GXNetExecutors(final boolean readOnly) {
+        mReadOnly = readOnly;
+    }
+
+    /**
+     * Returns executors that are used if the application has not set own
+     * executors. Default executors create a new thread for each task and
+     * they can't be modified. Create a new instance to use own executors.
+     *
+     * @return Default executors.
+     */
+    public static GXNetExecutors getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Returns thread factory that is used when executor is not set.
+     *
+     * @return Thread factory.
+     */
+    public final ThreadFactory getThreadFactory() {
+        ThreadFactory value = mThreadFactory;
+        if (value == null) {
+            return DEFAULT_THREAD_FACTORY;
+        }
+        return value;
+    }
+
+    /**
+     * Set thread factory that is used when executor is not set.
+     *
+     * @param value Thread factory. Null if default thread factory is used.
+     */
+    public final void setThreadFactory(final ThreadFactory value) {
+        checkReadOnly();
+        mThreadFactory = value;
+    }
+
+    /**
+     * Returns executor used to establish the connection.
+     *
+     * @return Connect executor or null if new thread is created.
+     */
+    public final Executor getConnectExecutor() {
+        return mConnectExecutor;
+    }
+
+    /**
+     * Set executor used to establish the connection.
+     *
+     * @param value Connect executor or null if new thread is created.
+     */
+    public final void setConnectExecutor(final Executor value) {
+        checkReadOnly();
+        mConnectExecutor = value;
+    }
+
+    /**
+     * Returns executor used to write the data.
+     *
+     * @return Write executor or null if new thread is created.
+     */
+    public final Executor getWriteExecutor() {
+        return mWriteExecutor;
+    }
+
+    /**
+     * Set executor used to write the data. Write executor can't be the
+     * same as the dispatch executor.
+     *
+     * @param value Write executor or null if new thread is created.
+     */
+    public final void setWriteExecutor(final Executor value) {
+        checkReadOnly();
+        if (value != null && value == mDispatchExecutor) {
+            throw new IllegalArgumentException(
+                    "Write executor can't be the dispatch executor.");
+        }
+        mWriteExecutor = value;
+    }
+
+    /**
+     * Returns executor used to read the data. Read task is running as long
+     * as the connection is open.
+     *
+     * @return Read executor or null if new thread is created.
+     */
+    public final Executor getReadExecutor() {
+        return mReadExecutor;
+    }
+
+    /**
+     * Set executor used to read the data. Read task is running as long as
+     * the connection is open.
+     *
+     * @param value Read executor or null if new thread is created.
+     */
+    public final void setReadExecutor(final Executor value) {
+        checkReadOnly();
+        mReadExecutor = value;
+    }
+
+    /**
+     * Returns executor used to notify the listeners.
+     *
+     * @return Dispatch executor or null if listeners are notified in UI
+     * thread of the activity or in the thread where event occurred.
+     */
+    public final Executor getDispatchExecutor() {
+        return mDispatchExecutor;
+    }
+
+    /**
+     * Set executor used to notify the listeners. Dispatch executor can't be
+     * the same as the write executor, because listeners wait the write when
+     * they send. Connection gives its events to the executor one at the
+     * time, so thread pool doesn't change the order of received data.
+     *
+     * @param value Dispatch executor or null if listeners are notified in
+     *              UI thread of the activity or in the thread where event
+     *              occurred.
+     */
+    public final void setDispatchExecutor(final Executor value) {
+        checkReadOnly();
+        if (value != null && value == mWriteExecutor) {
+            throw new IllegalArgumentException(
+                    "Dispatch executor can't be the write executor.");
+        }
+        mDispatchExecutor = value;
+    }
+
+    /**
+     * Check that executors can be modified.
+     */
+    private void checkReadOnly() {
+        if (mReadOnly) {
+            throw new IllegalStateException(
+                    "Default executors can't be modified.");
+        }
+    }
+
+    /**
+     * Execute the task.
+     *
+     * @param executor Used executor or null if new thread is created.
+     * @param task     Executed task.
+     * @param name     Name of the thread if default thread factory is used.
+     */
+    final void execute(final Executor executor, final Runnable task,
+                       final String name) {
+        if (executor != null) {
+            executor.execute(task);
+        } else {
+            ThreadFactory factory = getThreadFactory();
+            Thread thread = factory.newThread(task);
+            if (factory == DEFAULT_THREAD_FACTORY) {
+                thread.setName(thread.getName() + "-" + name);
+            }
+            thread.start();
+        }
+    }
+}
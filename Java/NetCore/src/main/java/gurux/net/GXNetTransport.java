@@ -0,0 +1,1027 @@
+//
+// --------------------------------------------------------------------------
+//  Gurux Ltd
+// 
+//
+//
+// Filename:        $HeadURL$
+//
+// Version:         $Revision$,
+//                  $Date$
+//                  $Author$
+//
+// Copyright (c) Gurux Ltd
+//
+//---------------------------------------------------------------------------
+//
+//  DESCRIPTION
+//
+// This file is a part of Gurux Device Framework.
+//
+// Gurux Device Framework is Open Source software; you can redistribute it
+// and/or modify it under the terms of the GNU General Public License 
+// as published by the Free Software Foundation; version 2 of the License.
+// Gurux Device Framework is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of 
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+// See the GNU General Public License for more details.
+//
+// More information of Gurux products: http://www.gurux.org
+//
+// This code is licensed under the GNU General Public License v2. 
+// Full text may be retrieved at http://www.gnu.org/licenses/gpl-2.0.txt
+//---------------------------------------------------------------------------
+
+package gurux.net;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLSocket;
+
+import gurux.net.enums.NetworkType;
+
+/**
+ * Network transport that sends and receives data using TCP/IP, TLS or UDP.
+ * <p>
+ * Transport doesn't depend on Android, so it can be used in plain Java
+ * applications. Received data is given to the transport listener in the
+ * receive thread. GXNet uses the transport and adds media listeners,
+ * synchronous receiving and Android integration on top of it.
+ * </p>
+ * <pre>
+ * GXNetTransport transport = new GXNetTransport(listener);
+ * transport.open(new GXNetConfig(NetworkType.TCP, "localhost", 4059));
+ * transport.write(data);
+ * transport.close();
+ * </pre>
+ */
+public class GXNetTransport {
+
+    /**
+     * Size of receive buffer. Ethernet maximum frame size is 1518 bytes.
+     * This is the initial size of the adaptive TCP receive buffer.
+     */
+    public static final int RECEIVE_BUFFER_SIZE = 1518;
+
+    /**
+     * Maximum size of UDP datagram.
+     */
+    public static final int MAX_DATAGRAM_SIZE = 65535;
+
+    /**
+     * Size of the chunk when file is sent using TCP.
+     */
+    private static final int FILE_CHUNK_SIZE = 0x10000;
+
+    /**
+     * Transport listener.
+     */
+    private final IGXTransportListener mListener;
+
+    /**
+     * Socket or null if transport is closed.
+     */
+    private volatile Closeable mSocket;
+
+    /**
+     * Settings of the open connection.
+     */
+    private volatile GXNetConfig mConfig;
+
+    /**
+     * Receiver or null if transport is closed.
+     */
+    private volatile Receiver mReceiver;
+
+    /**
+     * Executors used for the background work.
+     */
+    private volatile GXNetExecutors mExecutors = new GXNetExecutors();
+
+    /**
+     * TLS context or null if default context is used.
+     */
+    private volatile GXTlsContext mTlsContext;
+
+    /**
+     * Resolver cache or null if default cache is used.
+     */
+    private volatile GXResolverCache mResolverCache;
+
+    /**
+     * Traffic shaper or null if sent data is not shaped.
+     */
+    private volatile GXTrafficShaper mTrafficShaper;
+
+    /**
+     * How long close waits the peer in milliseconds.
+     */
+    private int mCloseTimeout = 5000;
+
+    /**
+     * Maximum size of the datagram when file is sent using UDP.
+     */
+    private int mDatagramSize = 1024;
+
+    /**
+     * Minimum size of the TCP receive buffer.
+     */
+    private int mMinReceiveBufferSize = 64;
+
+    /**
+     * Initial size of the TCP receive buffer.
+     */
+    private int mInitialReceiveBufferSize = RECEIVE_BUFFER_SIZE;
+
+    /**
+     * Maximum size of the TCP receive buffer.
+     */
+    private int mMaxReceiveBufferSize = 0x10000;
+
+    /**
+     * Amount of bytes sent.
+     */
+    private volatile long mBytesSent;
+
+    /**
+     * Amount of bytes received.
+     */
+    private volatile long mBytesReceived;
+
+    /**
+     * Data and files are written one at the time with this lock.
+     */
+    private final Object mWriteLock = new Object();
+
+    /**
+     * Constructor.
+     *
+     * @param listener Transport listener.
+     */
+    public GXNetTransport(final IGXTransportListener listener) {
+        if (listener == null) {
+            throw new IllegalArgumentException("listener");
+        }
+        mListener = listener;
+    }
+
+    /**
+     * Returns executors used for the background work. Each connection has
+     * own executors until shared executors are set.
+     *
+     * @return Executors.
+     */
+    public final GXNetExecutors getExecutors() {
+        return mExecutors;
+    }
+
+    /**
+     * Set executors used for the background work. Same executors can be
+     * shared between several connections. New executors are used for the
+     * tasks that are started after this call.
+     *
+     * @param value Executors.
+     */
+    public final void setExecutors(final GXNetExecutors value) {
+        if (value == null) {
+            throw new IllegalArgumentException("value");
+        }
+        mExecutors = value;
+    }
+
+    /**
+     * Returns TLS context that is used when the protocol is TLS.
+     *
+     * @return TLS context.
+     */
+    public final GXTlsContext getTlsContext() {
+        GXTlsContext value = mTlsContext;
+        if (value == null) {
+            return GXTlsContext.getDefault();
+        }
+        return value;
+    }
+
+    /**
+     * Set TLS context that is used when the protocol is TLS. Same context
+     * can be shared between several connections so that cached sessions
+     * are shared.
+     *
+     * @param value TLS context. Null if default context is used.
+     */
+    public final void setTlsContext(final GXTlsContext value) {
+        mTlsContext = value;
+    }
+
+    /**
+     * Returns cache that is used to resolve host names.
+     *
+     * @return Resolver cache.
+     */
+    public final GXResolverCache getResolverCache() {
+        GXResolverCache value = mResolverCache;
+        if (value == null) {
+            return GXResolverCache.getDefault();
+        }
+        return value;
+    }
+
+    /**
+     * Set cache that is used to resolve host names. Same cache can be
+     * shared between several connections.
+     *
+     * @param value Resolver cache. Null if default cache is used.
+     */
+    public final void setResolverCache(final GXResolverCache value) {
+        mResolverCache = value;
+    }
+
+    /**
+     * Returns traffic shaper that limits how fast files are sent.
+     *
+     * @return Traffic shaper or null if sent data is not shaped.
+     */
+    public final GXTrafficShaper getTrafficShaper() {
+        return mTrafficShaper;
+    }
+
+    /**
+     * Set traffic shaper that limits how fast files are sent. Same shaper
+     * can be shared between several connections.
+     *
+     * @param value Traffic shaper or null if sent data is not shaped.
+     */
+    public final void setTrafficShaper(final GXTrafficShaper value) {
+        mTrafficShaper = value;
+    }
+
+    /**
+     * Returns how long close waits that the peer closes the connection.
+     *
+     * @return Close timeout in milliseconds. Zero if close waits forever.
+     */
+    public final int getCloseTimeout() {
+        return mCloseTimeout;
+    }
+
+    /**
+     * Set how long close waits that the peer closes the connection. After
+     * the timeout connection is reset.
+     *
+     * @param value Close timeout in milliseconds. Zero if close waits
+     *              forever.
+     */
+    public final void setCloseTimeout(final int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("closeTimeout");
+        }
+        mCloseTimeout = value;
+    }
+
+    /**
+     * Returns maximum size of the datagram when file is sent using UDP.
+     *
+     * @return Datagram size in bytes.
+     */
+    public final int getDatagramSize() {
+        return mDatagramSize;
+    }
+
+    /**
+     * Set maximum size of the datagram when file is sent using UDP.
+     *
+     * @param value Datagram size in bytes.
+     */
+    public final void setDatagramSize(final int value) {
+        if (value <= 0 || value > MAX_DATAGRAM_SIZE - 28) {
+            throw new IllegalArgumentException("datagramSize");
+        }
+        mDatagramSize = value;
+    }
+
+    /**
+     * Returns minimum size of the TCP receive buffer.
+     *
+     * @return Minimum size in bytes.
+     */
+    public final int getMinReceiveBufferSize() {
+        return mMinReceiveBufferSize;
+    }
+
+    /**
+     * Returns initial size of the TCP receive buffer.
+     *
+     * @return Initial size in bytes.
+     */
+    public final int getInitialReceiveBufferSize() {
+        return mInitialReceiveBufferSize;
+    }
+
+    /**
+     * Returns maximum size of the TCP receive buffer.
+     *
+     * @return Maximum size in bytes.
+     */
+    public final int getMaxReceiveBufferSize() {
+        return mMaxReceiveBufferSize;
+    }
+
+    /**
+     * Set size bounds of the TCP receive buffer. Buffer grows when reads
+     * fill the buffer and shrinks when reads are small. UDP receive buffer
+     * is always the size of the maximum datagram. New sizes are taken into
+     * use when the connection is opened next time.
+     *
+     * @param minimum Minimum size in bytes.
+     * @param initial Initial size in bytes.
+     * @param maximum Maximum size in bytes.
+     */
+    public final void setReceiveBufferSize(final int minimum, final int initial,
+                                           final int maximum) {
+        if (minimum <= 0 || initial < minimum || maximum < initial) {
+            throw new IllegalArgumentException("Invalid receive buffer size.");
+        }
+        mMinReceiveBufferSize = minimum;
+        mInitialReceiveBufferSize = initial;
+        mMaxReceiveBufferSize = maximum;
+    }
+
+    /**
+     * Returns settings of the open connection.
+     *
+     * @return Connection settings or null if transport is closed.
+     */
+    public final GXNetConfig getConfig() {
+        return mConfig;
+    }
+
+    /**
+     * Is transport open.
+     *
+     * @return True, if transport is open.
+     */
+    public final boolean isOpen() {
+        return mSocket != null;
+    }
+
+    /**
+     * Returns amount of sent bytes.
+     *
+     * @return Amount of sent bytes.
+     */
+    public final long getBytesSent() {
+        return mBytesSent;
+    }
+
+    /**
+     * Returns amount of received bytes.
+     *
+     * @return Amount of received bytes.
+     */
+    public final long getBytesReceived() {
+        return mBytesReceived;
+    }
+
+    /**
+     * Reset amount of sent and received bytes.
+     */
+    public final void resetByteCounters() {
+        mBytesSent = 0;
+        mBytesReceived = 0;
+    }
+
+    /**
+     * Open the connection and start receiving. TCP and TLS connections are
+     * established using the connect executor.
+     *
+     * @param config Connection settings.
+     * @throws Exception Connection failed.
+     */
+    public final void open(final GXNetConfig config) throws Exception {
+        if (config == null) {
+            throw new IllegalArgumentException("config");
+        }
+        if (mSocket != null) {
+            throw new RuntimeException("Transport is already open.");
+        }
+        final Closeable socket;
+        if (config.getProtocol() != NetworkType.UDP) {
+            final GXTlsContext tls;
+            if (config.getProtocol() == NetworkType.TLS) {
+                tls = getTlsContext();
+            } else {
+                tls = null;
+            }
+            final Exception[] exceltionHolder = new Exception[1];
+            final Socket[] socketHolder = new Socket[1];
+            CountDownLatch latch = new CountDownLatch(1);
+            mExecutors.execute(mExecutors.getConnectExecutor(), new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        InetAddress addr = getResolverCache().resolve(config.getHostName());
+                        if (tls != null) {
+                            Socket raw = new Socket(addr, config.getPort());
+                            try {
+                                socketHolder[0] = tls.connect(raw, config.getHostName(),
+                                        config.getPort());
+                            } catch (Exception ex) {
+                                // Handshake failed. Connection is not left open.
+                                raw.close();
+                                throw ex;
+                            }
+                        } else {
+                            // Socket is opened from the channel so that files
+                            // can be sent with FileChannel.transferTo.
+                            socketHolder[0] = SocketChannel.open(
+                                    new InetSocketAddress(addr, config.getPort())).socket();
+                        }
+                    } catch (Exception ex) {
+                        exceltionHolder[0] = ex;
+                    } finally {
+                        latch.countDown();
+                    }
+                }
+            }, "connect");
+            latch.await();
+            if (socketHolder[0] == null || !socketHolder[0].isConnected()) {
+                throw exceltionHolder[0];
+            }
+            socket = socketHolder[0];
+        } else {
+            socket = new DatagramSocket();
+        }
+        mConfig = config;
+        mSocket = socket;
+        mReceiver = new Receiver(socket, new GXReceiveBufferSizer(mMinReceiveBufferSize,
+                mInitialReceiveBufferSize, mMaxReceiveBufferSize));
+        mExecutors.execute(mExecutors.getReadExecutor(), mReceiver,
+                "receive " + config.getHostName() + ":" + config.getPort());
+    }
+
+    /**
+     * Write the data to the socket in the calling thread. Data is not
+     * written while a file is sent.
+     *
+     * @param data Sent data.
+     * @throws IOException Write failed.
+     */
+    public final void write(final byte[] data) throws IOException {
+        synchronized (mWriteLock) {
+            writeData(data);
+        }
+    }
+
+    /**
+     * Write the data to the socket.
+     *
+     * @param data Sent data.
+     * @throws IOException Write failed.
+     */
+    private void writeData(final byte[] data) throws IOException {
+        Closeable socket = mSocket;
+        if (socket == null) {
+            throw new SocketException("Network connection is not open.");
+        }
+        mListener.onWriteStarted();
+        try {
+            if (socket instanceof Socket) {
+                ((Socket) socket).getOutputStream().write(data);
+            } else {
+                GXNetConfig config = mConfig;
+                InetAddress addr = getResolverCache().resolve(config.getHostName());
+                DatagramPacket p =
+                        new DatagramPacket(data, data.length, addr, config.getPort());
+                ((DatagramSocket) socket).send(p);
+            }
+        } finally {
+            mListener.onWriteCompleted();
+        }
+        mBytesSent += data.length;
+    }
+
+    /**
+     * Send part of the file in the calling thread.
+     * <p>
+     * TCP connection sends the file with FileChannel.transferTo, so data is
+     * not copied to the application. TLS connection sends the file in
+     * chunks using one reused buffer. UDP connection sends the file in
+     * datagrams of the datagram size. Other data is not written while the
+     * file is sent.
+     * </p>
+     *
+     * @param file     Sent file.
+     * @param offset   Position in the file where sending starts.
+     * @param length   Amount of sent bytes.
+     * @param progress Progress listener or null.
+     * @throws IOException          Send failed.
+     * @throws InterruptedException Sender is interrupted.
+     */
+    public final void sendFile(final FileChannel file, final long offset, final long length,
+                               final IGXProgressListener progress)
+            throws IOException, InterruptedException {
+        synchronized (mWriteLock) {
+            Closeable socket = mSocket;
+            if (socket instanceof Socket) {
+                transferFile((Socket) socket, file, offset, length, progress);
+            } else if (socket != null) {
+                sendDatagrams((DatagramSocket) socket, file, offset, length, progress);
+            } else {
+                throw new SocketException("Network connection is not open.");
+            }
+        }
+    }
+
+    /**
+     * Send the file using TCP.
+     *
+     * @param socket   Socket.
+     * @param file     Sent file.
+     * @param offset   Position in the file where sending starts.
+     * @param length   Amount of sent bytes.
+     * @param progress Progress listener or null.
+     * @throws IOException          Send failed.
+     * @throws InterruptedException Sender is interrupted.
+     */
+    private void transferFile(final Socket socket, final FileChannel file, final long offset,
+                              final long length, final IGXProgressListener progress)
+            throws IOException, InterruptedException {
+        SocketChannel channel = socket.getChannel();
+        OutputStream out = null;
+        ByteBuffer buff = null;
+        if (channel == null) {
+            out = socket.getOutputStream();
+            buff = ByteBuffer.allocate(FILE_CHUNK_SIZE);
+        }
+        GXTrafficShaper shaper = mTrafficShaper;
+        long sent = 0;
+        while (sent < length) {
+            int size = (int) Math.min(FILE_CHUNK_SIZE, length - sent);
+            if (shaper != null) {
+                shaper.acquire(size);
+            }
+            mListener.onWriteStarted();
+            long count;
+            try {
+                if (channel != null) {
+                    // Data is sent by the kernel without copying.
+                    count = file.transferTo(offset + sent, size, channel);
+                } else {
+                    buff.clear();
+                    buff.limit(size);
+                    count = file.read(buff, offset + sent);
+                    if (count > 0) {
+                        out.write(buff.array(), 0, (int) count);
+                    }
+                }
+            } finally {
+                mListener.onWriteCompleted();
+            }
+            if (count <= 0) {
+                throw new EOFException("Unexpected end of file.");
+            }
+            sent += count;
+            mBytesSent += count;
+            if (progress != null) {
+                progress.onProgress(sent, length);
+            }
+        }
+    }
+
+    /**
+     * Send the file using UDP datagrams.
+     *
+     * @param socket   Socket.
+     * @param file     Sent file.
+     * @param offset   Position in the file where sending starts.
+     * @param length   Amount of sent bytes.
+     * @param progress Progress listener or null.
+     * @throws IOException          Send failed.
+     * @throws InterruptedException Sender is interrupted.
+     */
+    private void sendDatagrams(final DatagramSocket socket, final FileChannel file,
+                               final long offset, final long length,
+                               final IGXProgressListener progress)
+            throws IOException, InterruptedException {
+        ByteBuffer buff = ByteBuffer.allocate(mDatagramSize);
+        GXNetConfig config = mConfig;
+        DatagramPacket packet = new DatagramPacket(buff.array(), 0,
+                getResolverCache().resolve(config.getHostName()), config.getPort());
+        GXTrafficShaper shaper = mTrafficShaper;
+        long sent = 0;
+        while (sent < length) {
+            buff.clear();
+            buff.limit((int) Math.min(buff.capacity(), length - sent));
+            int count = file.read(buff, offset + sent);
+            if (count <= 0) {
+                throw new EOFException("Unexpected end of file.");
+            }
+            if (shaper != null) {
+                // Datagrams are paced, so receiver buffer is not flooded.
+                shaper.acquire(count);
+            }
+            packet.setLength(count);
+            mListener.onWriteStarted();
+            try {
+                socket.send(packet);
+            } finally {
+                mListener.onWriteCompleted();
+            }
+            sent += count;
+            mBytesSent += count;
+            if (progress != null) {
+                progress.onProgress(sent, length);
+            }
+        }
+    }
+
+    /**
+     * Close the connection. TCP connection is half-closed and close waits
+     * until the peer closes the connection or close timeout expires. After
+     * that the connection is reset.
+     *
+     * @throws IOException Close failed.
+     */
+    public final void close() throws IOException {
+        Closeable socket = mSocket;
+        if (socket == null) {
+            return;
+        }
+        Receiver receiver = mReceiver;
+        try {
+            if (socket instanceof SSLSocket) {
+                // TLS don't support half-close. Socket is closed and
+                // receiver stops when close_notify is sent.
+                if (receiver != null) {
+                    receiver.interrupt();
+                }
+                socket.close();
+                if (!joinReceiver()) {
+                    reset((Socket) socket);
+                }
+            } else if (socket instanceof Socket) {
+                if (receiver != null) {
+                    receiver.interrupt();
+                }
+                try {
+                    ((Socket) socket).shutdownOutput();
+                } catch (Exception ignored) {
+                    //This might fail if connection to the server is lost.
+                }
+                // Wait until the server has send ACK.
+                if (!joinReceiver()) {
+                    // Server didn't answer. Connection is reset.
+                    reset((Socket) socket);
+                }
+            } else if (receiver != null) {
+                // Receiver stops when the datagram socket is closed.
+                receiver.interrupt();
+                mReceiver = null;
+            }
+            socket.close();
+        } finally {
+            mSocket = null;
+        }
+    }
+
+    /**
+     * Wait until the receiver is stopped or close timeout expires.
+     *
+     * @return True, if the receiver is stopped.
+     */
+    private boolean joinReceiver() {
+        Receiver receiver = mReceiver;
+        mReceiver = null;
+        if (receiver != null) {
+            try {
+                if (mCloseTimeout == 0) {
+                    receiver.join();
+                } else {
+                    return receiver.join(mCloseTimeout);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reset the connection. Socket is closed without waiting the peer, so
+     * blocked reader is released immediately.
+     *
+     * @param socket Closed socket.
+     */
+    private static void reset(final Socket socket) {
+        try {
+            socket.setSoLinger(true, 0);
+        } catch (IOException ignored) {
+            //Socket is already closed.
+        }
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+            //Socket is already closed.
+        }
+    }
+
+    /**
+     * Close the connection without waiting the peer. This is used when
+     * close doesn't complete in given time.
+     */
+    public final void abort() {
+        Receiver receiver = mReceiver;
+        if (receiver != null) {
+            // Closed socket is not reported as an error.
+            receiver.interrupt();
+        }
+        Closeable socket = mSocket;
+        if (socket instanceof Socket) {
+            reset((Socket) socket);
+        } else if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+                //Socket is already closed.
+            }
+        }
+    }
+
+    /**
+     * Receiver reads the socket until the transport is closed.
+     */
+    private final class Receiver implements Runnable {
+
+        /**
+         * Socket where data is read.
+         */
+        private final Closeable mSocket;
+
+        /**
+         * Adapts the size of the TCP receive buffer.
+         */
+        private final GXReceiveBufferSizer mSizer;
+
+        /**
+         * Address of the last UDP sender.
+         */
+        private InetAddress mLastAddress;
+
+        /**
+         * Port of the last UDP sender.
+         */
+        private int mLastPort;
+
+        /**
+         * Sender information of the last UDP sender.
+         */
+        private String mLastInfo;
+
+        /**
+         * Thread that is executing the receiver.
+         */
+        private volatile Thread mThread;
+
+        /**
+         * Is receiver stopped.
+         */
+        private volatile boolean mStopping;
+
+        /**
+         * Signaled when receiver is stopped.
+         */
+        private final CountDownLatch mStopped = new CountDownLatch(1);
+
+        /**
+         * Constructor.
+         *
+         * @param socket Socket where data is read.
+         * @param sizer  Adapts the size of the TCP receive buffer.
+         */
+        Receiver(final Closeable socket, final GXReceiveBufferSizer sizer) {
+            mSocket = socket;
+            mSizer = sizer;
+        }
+
+        /**
+         * Is receiver reading from the socket channel. Guarded by the
+         * receiver.
+         */
+        private boolean mReading;
+
+        /**
+         * Stop the receiver. Thread is not interrupted while it reads from
+         * the socket channel, because interrupt closes the channel and
+         * close can't wait the peer.
+         */
+        void interrupt() {
+            synchronized (this) {
+                mStopping = true;
+                Thread thread = mThread;
+                if (thread != null && !mReading) {
+                    thread.interrupt();
+                }
+            }
+        }
+
+        /**
+         * Read from the socket.
+         *
+         * @param in      Input stream.
+         * @param buffer  Receive buffer.
+         * @param channel Is socket opened from the channel.
+         * @return Amount of read bytes or -1 if the stream is closed.
+         * @throws IOException Read failed.
+         */
+        private int read(final InputStream in, final byte[] buffer,
+                         final boolean channel) throws IOException {
+            if (!channel) {
+                return in.read(buffer);
+            }
+            synchronized (this) {
+                if (mStopping) {
+                    throw new SocketException();
+                }
+                mReading = true;
+            }
+            try {
+                return in.read(buffer);
+            } finally {
+                synchronized (this) {
+                    mReading = false;
+                }
+            }
+        }
+
+        /**
+         * Wait until the receiver is stopped.
+         *
+         * @throws InterruptedException Waiting thread is interrupted.
+         */
+        void join() throws InterruptedException {
+            // Receiver can close the connection itself.
+            if (Thread.currentThread() != mThread) {
+                mStopped.await();
+            }
+        }
+
+        /**
+         * Wait until the receiver is stopped.
+         *
+         * @param timeout Maximum wait time in milliseconds.
+         * @return True, if receiver is stopped.
+         * @throws InterruptedException Waiting thread is interrupted.
+         */
+        boolean join(final long timeout) throws InterruptedException {
+            if (Thread.currentThread() == mThread) {
+                return true;
+            }
+            return mStopped.await(timeout, TimeUnit.MILLISECONDS);
+        }
+
+        /**
+         * Is receiver stopped.
+         *
+         * @return True, if receiver is stopped.
+         */
+        private boolean isStopping() {
+            return mStopping || Thread.currentThread().isInterrupted();
+        }
+
+        /**
+         * Returns sender information of the datagram. Information is cached
+         * while datagrams are received from the same sender.
+         *
+         * @param packet Received datagram.
+         * @return Sender information.
+         */
+        private String getSenderInfo(final DatagramPacket packet) {
+            InetAddress address = packet.getAddress();
+            int port = packet.getPort();
+            if (mLastInfo == null || port != mLastPort || !address.equals(mLastAddress)) {
+                mLastAddress = address;
+                mLastPort = port;
+                InetSocketAddress socketAddress = new InetSocketAddress(address, port);
+                mLastInfo = socketAddress.getHostName() + ":" + socketAddress.getPort();
+            }
+            return mLastInfo;
+        }
+
+        /**
+         * Give received data to the listener.
+         *
+         * @param buffer Received data.
+         * @param count  Amount of received bytes.
+         * @param info   Sender information.
+         */
+        private void handleReceivedData(final byte[] buffer, final int count,
+                                        final String info) {
+            if (count != 0) {
+                mBytesReceived += count;
+                mListener.onReceived(buffer, count, info);
+            }
+        }
+
+        @Override
+        public void run() {
+            mThread = Thread.currentThread();
+            try {
+                receive();
+            } finally {
+                mThread = null;
+                // Executor thread is reused. Interrupt state is cleared.
+                Thread.interrupted();
+                mStopped.countDown();
+            }
+        }
+
+        /**
+         * Read data until the receiver is stopped.
+         */
+        private void receive() {
+            byte[] buffer;
+            InputStream in = null;
+            boolean channel = false;
+            String info = null;
+            DatagramPacket packet = null;
+            try {
+                if (mSocket instanceof Socket) {
+                    Socket s = (Socket) mSocket;
+                    buffer = new byte[mSizer.getSize()];
+                    // Stream and sender information are same for the whole connection.
+                    in = s.getInputStream();
+                    channel = s.getChannel() != null;
+                    info = s.getRemoteSocketAddress().toString();
+                } else {
+                    // Datagram is truncated if it doesn't fit to the buffer.
+                    buffer = new byte[MAX_DATAGRAM_SIZE];
+                    packet = new DatagramPacket(buffer, buffer.length);
+                }
+            } catch (Exception ex) {
+                if (!isStopping()) {
+                    mListener.onError(ex);
+                }
+                return;
+            }
+            while (!isStopping()) {
+                try {
+                    // Reading is paused while the listener has no demand.
+                    mListener.awaitDemand();
+                    if (isStopping()) {
+                        break;
+                    }
+                    if (in != null) {
+                        int count = read(in, buffer, channel);
+                        if (count == -1) {
+                            in.close();
+                            throw new SocketException();
+                        }
+                        handleReceivedData(buffer, count, info);
+                        mSizer.record(count);
+                        if (buffer.length != mSizer.getSize()) {
+                            buffer = new byte[mSizer.getSize()];
+                        }
+                    } else {
+                        packet.setLength(buffer.length);
+                        ((DatagramSocket) mSocket).receive(packet);
+                        handleReceivedData(buffer, packet.getLength(), getSenderInfo(packet));
+                    }
+                } catch (Exception ex) {
+                    if (!isStopping()) {
+                        if (mSocket instanceof Socket) {
+                            Socket s = (Socket) mSocket;
+                            if (s.isClosed() || ex instanceof SocketException) {
+                                // Connection is closed or reset by the peer.
+                                // Nothing can be read anymore.
+                                mStopping = true;
+                                mListener.onPeerClosed();
+                                break;
+                            } else {
+                                mListener.onError(ex);
+                            }
+                        } else if (((DatagramSocket) mSocket).isClosed()) {
+                            // Nothing can be read from the closed socket.
+                            mStopping = true;
+                            break;
+                        }
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,179 @@
+//
+// --------------------------------------------------------------------------
+//  Gurux Ltd
+// 
+//
+//
+// Filename:        $HeadURL$
+//
+// Version:         $Revision$,
+//                  $Date$
+//                  $Author$
+//
+// Copyright (c) Gurux Ltd
+//
+//---------------------------------------------------------------------------
+//
+//  DESCRIPTION
+//
+// This file is a part of Gurux Device Framework.
+//
+// Gurux Device Framework is Open Source software; you can redistribute it
+// and/or modify it under the terms of the GNU General Public License 
+// as published by the Free Software Foundation; version 2 of the License.
+// Gurux Device Framework is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of 
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+// See the GNU General Public License for more details.
+//
+// More information of Gurux products: http://www.gurux.org
+//
+// This code is licensed under the GNU General Public License v2. 
+// Full text may be retrieved at http://www.gnu.org/licenses/gpl-2.0.txt
+//---------------------------------------------------------------------------
+
+package gurux.net;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Adapts the size of the receive buffer to the observed read sizes.
+ * <p>
+ * Buffer grows fast when reads fill the whole buffer and shrinks slowly
+ * when reads are smaller than the next smaller size two times in a row.
+ * Sizes are increased by 16 bytes up to 512 bytes and after that they are
+ * doubled.
+ * </p>
+ *
+ * @author Gurux Ltd.
+ */
+final class GXReceiveBufferSizer {
+
+    /**
+     * How many steps buffer grows at once.
+     */
+    private static final int INDEX_INCREMENT = 4;
+
+    /**
+     * How many steps buffer shrinks at once.
+     */
+    private static final int INDEX_DECREMENT = 1;
+
+    /**
+     * Available buffer sizes.
+     */
+    private static final int[] SIZE_TABLE;
+
+    static {
+        List<Integer> list = new ArrayList<>();
+        for (int size = 16; size < 512; size += 16) {
+            list.add(size);
+        }
+        for (int size = 512; size > 0; size <<= 1) {
+            list.add(size);
+        }
+        SIZE_TABLE = new int[list.size()];
+        for (int pos = 0; pos != SIZE_TABLE.length; ++pos) {
+            SIZE_TABLE[pos] = list.get(pos);
+        }
+    }
+
+    /**
+     * Minimum index of the size table.
+     */
+    private final int mMinIndex;
+
+    /**
+     * Maximum index of the size table.
+     */
+    private final int mMaxIndex;
+
+    /**
+     * Maximum buffer size.
+     */
+    private final int mMaximum;
+
+    /**
+     * Current index of the size table.
+     */
+    private int mIndex;
+
+    /**
+     * Current buffer size.
+     */
+    private int mSize;
+
+    /**
+     * Is buffer shrunk after next small read.
+     */
+    private boolean mDecreaseNow;
+
+    /**
+     * Constructor.
+     *
+     * @param minimum Minimum buffer size.
+     * @param initial Initial buffer size.
+     * @param maximum Maximum buffer size.
+     */
+    GXReceiveBufferSizer(final int minimum, final int initial, final int maximum) {
+        if (minimum <= 0 || initial < minimum || maximum < initial) {
+            throw new IllegalArgumentException("Invalid receive buffer size.");
+        }
+        mMinIndex = indexOf(minimum);
+        int index = indexOf(maximum);
+        if (SIZE_TABLE[index] > maximum) {
+            --index;
+        }
+        mMaxIndex = Math.max(mMinIndex, index);
+        mMaximum = maximum;
+        mIndex = indexOf(initial);
+        mSize = initial;
+    }
+
+    /**
+     * Find the index of the smallest size that is greater or equal than the
+     * given size.
+     *
+     * @param size Buffer size.
+     * @return Index of the size table.
+     */
+    private static int indexOf(final int size) {
+        for (int pos = 0; pos != SIZE_TABLE.length; ++pos) {
+            if (SIZE_TABLE[pos] >= size) {
+                return pos;
+            }
+        }
+        return SIZE_TABLE.length - 1;
+    }
+
+    /**
+     * Returns size of the next receive buffer.
+     *
+     * @return Buffer size.
+     */
+    int getSize() {
+        return mSize;
+    }
+
+    /**
+     * Update buffer size after read.
+     *
+     * @param count Amount of read bytes.
+     */
+    void record(final int count) {
+        if (count <= SIZE_TABLE[Math.max(0, mIndex - INDEX_DECREMENT)]) {
+            if (mDecreaseNow) {
+                mIndex = Math.max(mIndex - INDEX_DECREMENT, mMinIndex);
+                mSize = SIZE_TABLE[mIndex];
+                mDecreaseNow = false;
+            } else {
+                mDecreaseNow = true;
+            }
+        } else if (count >= mSize) {
+            mIndex = Math.min(mIndex + INDEX_INCREMENT, mMaxIndex);
+            mSize = Math.min(SIZE_TABLE[mIndex], mMaximum);
+            mDecreaseNow = false;
+        }
+    }
+}
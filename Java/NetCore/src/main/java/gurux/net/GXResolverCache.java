@@ -0,0 +1,581 @@
+//
+// --------------------------------------------------------------------------
+//  Gurux Ltd
+// 
+//
+//
+// Filename:        $HeadURL$
+//
+// Version:         $Revision$,
+//                  $Date$
+//                  $Author$
+//
+// Copyright (c) Gurux Ltd
+//
+//---------------------------------------------------------------------------
+//
+//  DESCRIPTION
+//
+// This file is a part of Gurux Device Framework.
+//
+// Gurux Device Framework is Open Source software; you can redistribute it
+// and/or modify it under the terms of the GNU General Public License 
+// as published by the Free Software Foundation; version 2 of the License.
+// Gurux Device Framework is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of 
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+// See the GNU General Public License for more details.
+//
+// More information of Gurux products: http://www.gurux.org
+//
+// This code is licensed under the GNU General Public License v2. 
+// Full text may be retrieved at http://www.gnu.org/licenses/gpl-2.0.txt
+//---------------------------------------------------------------------------
+
+package gurux.net;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Shared cache of resolved host names.
+ * <p>
+ * Resolved addresses are cached for the time to live. Failed resolutions
+ * are cached for the negative time to live. When the entry expires, stale
+ * address is still returned during the stale time and the name is resolved
+ * again in the background. If the background resolution fails, stale
+ * address is used and the name is not resolved again before the negative
+ * time to live expires. Names of the endpoints can be resolved in
+ * parallel with {@link #prefetch(Collection, int)} before the polling
+ * cycle.
+ * </p>
+ * <p>
+ * Only one resolution of each host name is running at the time. Threads
+ * that need the same name at the same time wait the running resolution.
+ * Least recently used names are removed when the cache is full.
+ * </p>
+ */
+public class GXResolverCache {
+
+    /**
+     * Resolver that uses the system resolver.
+     */
+    private static final IGXNameResolver SYSTEM_RESOLVER = new IGXNameResolver() {
+        @Override
+        public InetAddress[] resolve(final String host) throws UnknownHostException {
+            return InetAddress.getAllByName(host);
+        }
+    };
+
+    /**
+     * Default resolver cache. This must be created after the system
+     * resolver.
+     */
+    private static final GXResolverCache DEFAULT = new GXResolverCache();
+
+    /**
+     * Default maximum amount of cached host names.
+     */
+    private static final int MAX_ENTRIES = 1000;
+
+    /**
+     * Cached entries by host name in access order.
+     */
+    private final Map<String, Entry> mEntries =
+            new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(
+                        final Map.Entry<String, Entry> eldest) {
+                    return size() > mMaxEntries;
+                }
+            };
+
+    /**
+     * Maximum amount of cached host names.
+     */
+    private volatile int mMaxEntries = MAX_ENTRIES;
+
+    /**
+     * Running resolutions by host name.
+     */
+    private final Map<String, Lookup> mLookups = new ConcurrentHashMap<>();
+
+    /**
+     * Used resolver.
+     */
+    private volatile IGXNameResolver mResolver = SYSTEM_RESOLVER;
+
+    /**
+     * Executor used to resolve names in the background.
+     */
+    private volatile Executor mExecutor;
+
+    /**
+     * Time to live in milliseconds.
+     */
+    private volatile int mTimeToLive = 60000;
+
+    /**
+     * Time to live of failed resolution in milliseconds.
+     */
+    private volatile int mNegativeTimeToLive = 10000;
+
+    /**
+     * How long expired address can be used while name is resolved again in
+     * milliseconds.
+     */
+    private volatile int mStaleTime = 30000;
+
+    /**
+     * Amount of cache hits.
+     */
+    private final AtomicInteger mHits = new AtomicInteger();
+
+    /**
+     * Amount of cache misses.
+     */
+    private final AtomicInteger mMisses = new AtomicInteger();
+
+    /**
+     * Returns resolver cache that is used if the application has not set
+     * own cache.
+     *
+     * @return Default resolver cache.
+     */
+    public static GXResolverCache getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Returns used resolver.
+     *
+     * @return Name resolver.
+     */
+    public final IGXNameResolver getResolver() {
+        return mResolver;
+    }
+
+    /**
+     * Set used resolver. Cache is cleared.
+     *
+     * @param value Name resolver. Null if system resolver is used.
+     */
+    public final void setResolver(final IGXNameResolver value) {
+        if (value == null) {
+            mResolver = SYSTEM_RESOLVER;
+        } else {
+            mResolver = value;
+        }
+        clear();
+    }
+
+    /**
+     * Returns executor used to resolve names in the background.
+     *
+     * @return Executor.
+     */
+    public final synchronized Executor getExecutor() {
+        if (mExecutor == null) {
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(8, 8, 30,
+                    TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                    GXNetExecutors.getDefault().getThreadFactory());
+            executor.allowCoreThreadTimeOut(true);
+            mExecutor = executor;
+        }
+        return mExecutor;
+    }
+
+    /**
+     * Set executor used to resolve names in the background.
+     *
+     * @param value Executor.
+     */
+    public final synchronized void setExecutor(final Executor value) {
+        mExecutor = value;
+    }
+
+    /**
+     * Returns time to live of resolved address.
+     *
+     * @return Time to live in milliseconds.
+     */
+    public final int getTimeToLive() {
+        return mTimeToLive;
+    }
+
+    /**
+     * Set time to live of resolved address.
+     *
+     * @param value Time to live in milliseconds.
+     */
+    public final void setTimeToLive(final int value) {
+        mTimeToLive = value;
+    }
+
+    /**
+     * Returns time to live of failed resolution.
+     *
+     * @return Time to live in milliseconds.
+     */
+    public final int getNegativeTimeToLive() {
+        return mNegativeTimeToLive;
+    }
+
+    /**
+     * Set time to live of failed resolution.
+     *
+     * @param value Time to live in milliseconds.
+     */
+    public final void setNegativeTimeToLive(final int value) {
+        mNegativeTimeToLive = value;
+    }
+
+    /**
+     * Returns how long expired address is used while name is resolved
+     * again.
+     *
+     * @return Stale time in milliseconds.
+     */
+    public final int getStaleTime() {
+        return mStaleTime;
+    }
+
+    /**
+     * Set how long expired address is used while name is resolved again.
+     *
+     * @param value Stale time in milliseconds.
+     */
+    public final void setStaleTime(final int value) {
+        mStaleTime = value;
+    }
+
+    /**
+     * Returns amount of cache hits.
+     *
+     * @return Amount of cache hits.
+     */
+    public final int getHits() {
+        return mHits.get();
+    }
+
+    /**
+     * Returns amount of cache misses.
+     *
+     * @return Amount of cache misses.
+     */
+    public final int getMisses() {
+        return mMisses.get();
+    }
+
+    /**
+     * Returns maximum amount of cached host names.
+     *
+     * @return Maximum amount of host names.
+     */
+    public final int getMaxEntries() {
+        return mMaxEntries;
+    }
+
+    /**
+     * Set maximum amount of cached host names. Least recently used names
+     * are removed when the cache is full.
+     *
+     * @param value Maximum amount of host names.
+     */
+    public final void setMaxEntries(final int value) {
+        if (value < 1) {
+            throw new IllegalArgumentException("maxEntries");
+        }
+        mMaxEntries = value;
+    }
+
+    /**
+     * Returns amount of cached host names.
+     *
+     * @return Amount of host names.
+     */
+    public final int getEntryCount() {
+        synchronized (mEntries) {
+            return mEntries.size();
+        }
+    }
+
+    /**
+     * Remove all cached entries.
+     */
+    public final void clear() {
+        synchronized (mEntries) {
+            mEntries.clear();
+        }
+    }
+
+    /**
+     * Returns cached entry.
+     *
+     * @param host Host name.
+     * @return Cache entry or null.
+     */
+    private Entry getEntry(final String host) {
+        synchronized (mEntries) {
+            return mEntries.get(host);
+        }
+    }
+
+    /**
+     * Add entry to the cache.
+     *
+     * @param host  Host name.
+     * @param entry Cache entry.
+     */
+    private void putEntry(final String host, final Entry entry) {
+        synchronized (mEntries) {
+            mEntries.put(host, entry);
+        }
+    }
+
+    /**
+     * Resolve host name.
+     *
+     * @param host Host name.
+     * @return Resolved IP address.
+     * @throws UnknownHostException Host name can't be resolved.
+     */
+    public final InetAddress resolve(final String host) throws UnknownHostException {
+        if (host == null || host.isEmpty()) {
+            throw new UnknownHostException("Invalid hostname.");
+        }
+        long now = System.currentTimeMillis();
+        Entry entry = getEntry(host);
+        if (entry != null) {
+            if (now < entry.mExpires) {
+                mHits.incrementAndGet();
+                return entry.getAddress();
+            }
+            if (entry.mAddresses != null && now < entry.mExpires + mStaleTime) {
+                mHits.incrementAndGet();
+                refresh(host, entry);
+                return entry.getAddress();
+            }
+        }
+        mMisses.incrementAndGet();
+        return load(host, null).getAddress();
+    }
+
+    /**
+     * Resolve host names in parallel.
+     *
+     * @param hosts   Host names.
+     * @param timeout Maximum wait time in milliseconds.
+     * @return Amount of host names that are resolved.
+     * @throws InterruptedException Waiting thread is interrupted.
+     */
+    public final int prefetch(final Collection<String> hosts, final int timeout)
+            throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(hosts.size());
+        final AtomicInteger count = new AtomicInteger();
+        Executor executor = getExecutor();
+        for (final String host : hosts) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        Entry entry = getEntry(host);
+                        if (entry == null || System.currentTimeMillis() >= entry.mExpires) {
+                            entry = load(host, null);
+                        }
+                        if (entry.mAddresses != null) {
+                            count.incrementAndGet();
+                        }
+                    } finally {
+                        latch.countDown();
+                    }
+                }
+            });
+        }
+        latch.await(timeout, TimeUnit.MILLISECONDS);
+        return count.get();
+    }
+
+    /**
+     * Resolve host name and update the cache. If the name is already
+     * resolved in another thread, result of that resolution is returned.
+     *
+     * @param host  Host name.
+     * @param stale Stale entry that is kept if resolution fails or null.
+     * @return Cache entry.
+     */
+    private Entry load(final String host, final Entry stale) {
+        Lookup lookup = new Lookup();
+        Lookup running = mLookups.putIfAbsent(host, lookup);
+        if (running != null) {
+            Entry entry = running.await();
+            if (stale != null) {
+                stale.mRefreshing.set(false);
+            }
+            return entry;
+        }
+        Entry entry = null;
+        try {
+            try {
+                entry = new Entry(mResolver.resolve(host), null,
+                        System.currentTimeMillis() + mTimeToLive);
+                putEntry(host, entry);
+            } catch (UnknownHostException ex) {
+                if (stale == null) {
+                    entry = new Entry(null, ex,
+                            System.currentTimeMillis() + mNegativeTimeToLive);
+                    putEntry(host, entry);
+                }
+            }
+        } finally {
+            // Flag is reset also when resolver throws unexpected exception.
+            if (stale != null) {
+                if (entry == null) {
+                    // Stale address is used until stale time expires and
+                    // name is resolved again after negative time to live.
+                    stale.mNextRefresh = System.currentTimeMillis() + mNegativeTimeToLive;
+                    entry = stale;
+                }
+                stale.mRefreshing.set(false);
+            }
+            lookup.mEntry = entry;
+            mLookups.remove(host, lookup);
+            lookup.mDone.countDown();
+        }
+        return entry;
+    }
+
+    /**
+     * Resolve host name again in the background.
+     *
+     * @param host  Host name.
+     * @param entry Stale cache entry.
+     */
+    private void refresh(final String host, final Entry entry) {
+        if (System.currentTimeMillis() >= entry.mNextRefresh
+                && entry.mRefreshing.compareAndSet(false, true)) {
+            try {
+                getExecutor().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        load(host, entry);
+                    }
+                });
+            } catch (RuntimeException ex) {
+                // Executor rejected the task. Name is resolved again later.
+                entry.mNextRefresh = System.currentTimeMillis() + mNegativeTimeToLive;
+                entry.mRefreshing.set(false);
+            }
+        }
+    }
+
+    /**
+     * Running resolution of the host name.
+     */
+    private static final class Lookup {
+        /**
+         * Signaled when the resolution is completed.
+         */
+        private final CountDownLatch mDone = new CountDownLatch(1);
+
+        /**
+         * Resolved entry or null if resolution failed unexpectedly.
+         */
+        private volatile Entry mEntry;
+
+        /**
+         * Wait until the resolution is completed.
+         *
+         * @return Cache entry.
+         */
+        Entry await() {
+            try {
+                mDone.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return new Entry(null,
+                        new UnknownHostException("Name resolution was interrupted."), 0);
+            }
+            Entry entry = mEntry;
+            if (entry == null) {
+                return new Entry(null, new UnknownHostException("Name resolution failed."), 0);
+            }
+            return entry;
+        }
+    }
+
+    /**
+     * Cache entry.
+     */
+    private static final class Entry {
+        /**
+         * Resolved addresses or null if resolution failed.
+         */
+        private final InetAddress[] mAddresses;
+
+        /**
+         * Resolution error.
+         */
+        private final UnknownHostException mError;
+
+        /**
+         * Expiration time.
+         */
+        private final long mExpires;
+
+        /**
+         * Is name resolved again in the background.
+         */
+        private final AtomicBoolean mRefreshing = new AtomicBoolean();
+
+        /**
+         * Name is not resolved again in the background before this time.
+         */
+        private volatile long mNextRefresh;
+
+        /**
+         * Constructor.
+         *
+         * @param addresses Resolved addresses.
+         * @param error     Resolution error.
+         * @param expires   Expiration time.
+         */
+        Entry(final InetAddress[] addresses, final UnknownHostException error,
+              final long expires) {
+            mAddresses = addresses;
+            mError = error;
+            mExpires = expires;
+        }
+
+        /**
+         * Returns resolved address.
+         *
+         * @return Resolved address.
+         * @throws UnknownHostException Host name can't be resolved.
+         */
+        InetAddress getAddress() throws UnknownHostException {
+            if (mAddresses == null || mAddresses.length == 0) {
+                if (mError == null) {
+                    throw new UnknownHostException();
+                }
+                UnknownHostException ex = new UnknownHostException(mError.getMessage());
+                ex.initCause(mError);
+                throw ex;
+            }
+            return mAddresses[0];
+        }
+    }
+}
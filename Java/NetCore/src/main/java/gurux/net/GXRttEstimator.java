@@ -0,0 +1,247 @@
+//
+// --------------------------------------------------------------------------
+//  Gurux Ltd
+// 
+//
+//
+// Filename:        $HeadURL$
+//
+// Version:         $Revision$,
+//                  $Date$
+//                  $Author$
+//
+// Copyright (c) Gurux Ltd
+//
+//---------------------------------------------------------------------------
+//
+//  DESCRIPTION
+//
+// This file is a part of Gurux Device Framework.
+//
+// Gurux Device Framework is Open Source software; you can redistribute it
+// and/or modify it under the terms of the GNU General Public License 
+// as published by the Free Software Foundation; version 2 of the License.
+// Gurux Device Framework is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of 
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+// See the GNU General Public License for more details.
+//
+// More information of Gurux products: http://www.gurux.org
+//
+// This code is licensed under the GNU General Public License v2. 
+// Full text may be retrieved at http://www.gnu.org/licenses/gpl-2.0.txt
+//---------------------------------------------------------------------------
+
+package gurux.net;
+
+/**
+ * Round-trip time estimator of one endpoint.
+ * <p>
+ * Estimator keeps smoothed round-trip time and its variance in the same
+ * way as TCP retransmission timeout is calculated (RFC 6298). Timeout is
+ * the smoothed round-trip time plus four times the variance. Timeout is
+ * doubled after each expired reply until the next measured round-trip.
+ * </p>
+ */
+public class GXRttEstimator {
+
+    /**
+     * Smoothing factor of the round-trip time.
+     */
+    private static final double ALPHA = 0.125;
+
+    /**
+     * Smoothing factor of the variance.
+     */
+    private static final double BETA = 0.25;
+
+    /**
+     * Timer granularity in milliseconds.
+     */
+    private static final int GRANULARITY = 10;
+
+    /**
+     * How many times timeout is doubled at most.
+     */
+    private static final int MAX_BACKOFF = 6;
+
+    /**
+     * Smoothed round-trip time in milliseconds.
+     */
+    private double mSmoothedRtt;
+
+    /**
+     * Round-trip time variance in milliseconds.
+     */
+    private double mRttVariance;
+
+    /**
+     * Amount of measured round-trips.
+     */
+    private long mSampleCount;
+
+    /**
+     * How many times timeout is doubled.
+     */
+    private int mBackoff;
+
+    /**
+     * Minimum timeout in milliseconds.
+     */
+    private int mMinTimeout = 200;
+
+    /**
+     * Maximum timeout in milliseconds.
+     */
+    private int mMaxTimeout = 60000;
+
+    /**
+     * Returns minimum timeout.
+     *
+     * @return Minimum timeout in milliseconds.
+     */
+    public final synchronized int getMinTimeout() {
+        return mMinTimeout;
+    }
+
+    /**
+     * Set minimum timeout.
+     *
+     * @param value Minimum timeout in milliseconds.
+     */
+    public final synchronized void setMinTimeout(final int value) {
+        if (value <= 0 || value > mMaxTimeout) {
+            throw new IllegalArgumentException("minTimeout");
+        }
+        mMinTimeout = value;
+    }
+
+    /**
+     * Returns maximum timeout.
+     *
+     * @return Maximum timeout in milliseconds.
+     */
+    public final synchronized int getMaxTimeout() {
+        return mMaxTimeout;
+    }
+
+    /**
+     * Set maximum timeout.
+     *
+     * @param value Maximum timeout in milliseconds.
+     */
+    public final synchronized void setMaxTimeout(final int value) {
+        if (value < mMinTimeout) {
+            throw new IllegalArgumentException("maxTimeout");
+        }
+        mMaxTimeout = value;
+    }
+
+    /**
+     * Add measured round-trip time.
+     *
+     * @param rtt Round-trip time in milliseconds.
+     */
+    public final synchronized void addSample(final long rtt) {
+        if (rtt < 0) {
+            throw new IllegalArgumentException("rtt");
+        }
+        if (mSampleCount == 0) {
+            mSmoothedRtt = rtt;
+            mRttVariance = rtt / 2.0;
+        } else {
+            mRttVariance = (1 - BETA) * mRttVariance + BETA * Math.abs(mSmoothedRtt - rtt);
+            mSmoothedRtt = (1 - ALPHA) * mSmoothedRtt + ALPHA * rtt;
+        }
+        ++mSampleCount;
+        mBackoff = 0;
+    }
+
+    /**
+     * Reply was not received in time. Timeout is doubled until the next
+     * round-trip is measured.
+     */
+    public final synchronized void backOff() {
+        if (mBackoff < MAX_BACKOFF) {
+            ++mBackoff;
+        }
+    }
+
+    /**
+     * Is round-trip time estimated.
+     *
+     * @return True, if round-trip time is measured or restored.
+     */
+    public final synchronized boolean hasEstimate() {
+        return mSampleCount != 0;
+    }
+
+    /**
+     * Returns amount of measured round-trips.
+     *
+     * @return Amount of measured round-trips.
+     */
+    public final synchronized long getSampleCount() {
+        return mSampleCount;
+    }
+
+    /**
+     * Returns smoothed round-trip time.
+     *
+     * @return Smoothed round-trip time in milliseconds.
+     */
+    public final synchronized int getSmoothedRtt() {
+        return (int) Math.round(mSmoothedRtt);
+    }
+
+    /**
+     * Returns round-trip time variance.
+     *
+     * @return Round-trip time variance in milliseconds.
+     */
+    public final synchronized int getRttVariance() {
+        return (int) Math.round(mRttVariance);
+    }
+
+    /**
+     * Returns how long reply is waited.
+     *
+     * @return Timeout in milliseconds or -1 if round-trip time is not
+     * estimated.
+     */
+    public final synchronized int getTimeout() {
+        if (mSampleCount == 0) {
+            return -1;
+        }
+        long value = Math.round(mSmoothedRtt + Math.max(GRANULARITY, 4 * mRttVariance));
+        value = Math.max(value, mMinTimeout) << mBackoff;
+        return (int) Math.min(value, mMaxTimeout);
+    }
+
+    /**
+     * Restore saved estimate. Restored estimate is handled as one measured
+     * round-trip, so new measurements adjust it quickly.
+     *
+     * @param smoothedRtt Smoothed round-trip time in milliseconds.
+     * @param rttVariance Round-trip time variance in milliseconds.
+     */
+    public final synchronized void restore(final int smoothedRtt, final int rttVariance) {
+        if (smoothedRtt < 0 || rttVariance < 0) {
+            throw new IllegalArgumentException("Invalid round-trip time.");
+        }
+        mSmoothedRtt = smoothedRtt;
+        mRttVariance = rttVariance;
+        mSampleCount = 1;
+        mBackoff = 0;
+    }
+
+    /**
+     * Forget the estimate. This is called when the endpoint changes.
+     */
+    public final synchronized void reset() {
+        mSmoothedRtt = 0;
+        mRttVariance = 0;
+        mSampleCount = 0;
+        mBackoff = 0;
+    }
+}
@@ -0,0 +1,138 @@
+//
+// --------------------------------------------------------------------------
+//  Gurux Ltd
+// 
+//
+//
+// Filename:        $HeadURL$
+//
+// Version:         $Revision$,
+//                  $Date$
+//                  $Author$
+//
+// Copyright (c) Gurux Ltd
+//
+//---------------------------------------------------------------------------
+//
+//  DESCRIPTION
+//
+// This file is a part of Gurux Device Framework.
+//
+// Gurux Device Framework is Open Source software; you can redistribute it
+// and/or modify it under the terms of the GNU General Public License 
+// as published by the Free Software Foundation; version 2 of the License.
+// Gurux Device Framework is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of 
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+// See the GNU General Public License for more details.
+//
+// More information of Gurux products: http://www.gurux.org
+//
+// This code is licensed under the GNU General Public License v2. 
+// Full text may be retrieved at http://www.gnu.org/licenses/gpl-2.0.txt
+//---------------------------------------------------------------------------
+
+
+package gurux.net;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executor that runs tasks one at the time in the order they are given.
+ * <p>
+ * Tasks are run with the wrapped executor, so thread pool can be shared
+ * between several connections while events of one connection are still
+ * notified in order.
+ * </p>
+ *
+ * @author Gurux Ltd.
+ */
+final class GXSerialExecutor implements Executor {
+
+    /**
+     * Wrapped executor.
+     */
+    private final Executor mExecutor;
+
+    /**
+     * Tasks that are not run yet.
+     */
+    private final Queue<Runnable> mTasks = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Amount of added tasks that the drain has not seen yet.
+     */
+    private final AtomicInteger mWip = new AtomicInteger();
+
+    /**
+     * Task that runs the queued tasks.
+     */
+    private final Runnable mDrain = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+
+    /**
+     * Constructor.
+     *
+     * @param executor Wrapped executor.
+     */
+    GXSerialExecutor(final Executor executor) {
+        if (executor == null) {
+            throw new IllegalArgumentException("executor");
+        }
+        mExecutor = executor;
+    }
+
+    /**
+     * Returns wrapped executor.
+     *
+     * @return Wrapped executor.
+     */
+    Executor getExecutor() {
+        return mExecutor;
+    }
+
+    @Override
+    public void execute(final Runnable task) {
+        if (task == null) {
+            throw new IllegalArgumentException("task");
+        }
+        mTasks.add(task);
+        if (mWip.getAndIncrement() == 0) {
+            try {
+                mExecutor.execute(mDrain);
+            } catch (RuntimeException ex) {
+                // Executor is shut down. Queued tasks are never run.
+                mTasks.clear();
+                mWip.set(0);
+                throw ex;
+            }
+        }
+    }
+
+    /**
+     * Run queued tasks until no new tasks are added.
+     */
+    private void drain() {
+        int missed = 1;
+        do {
+            Runnable task;
+            while ((task = mTasks.poll()) != null) {
+                try {
+                    task.run();
+                } catch (RuntimeException ex) {
+                    // Failing task doesn't stop the tasks after it.
+                    Thread thread = Thread.currentThread();
+                    thread.getUncaughtExceptionHandler().uncaughtException(thread, ex);
+                }
+            }
+            missed = mWip.addAndGet(-missed);
+        } while (missed != 0);
+    }
+}
@@ -0,0 +1,379 @@
+//
+// --------------------------------------------------------------------------
+//  Gurux Ltd
+// 
+//
+//
+// Filename:        $HeadURL$
+//
+// Version:         $Revision$,
+//                  $Date$
+//                  $Author$
+//
+// Copyright (c) Gurux Ltd
+//
+//---------------------------------------------------------------------------
+//
+//  DESCRIPTION
+//
+// This file is a part of Gurux Device Framework.
+//
+// Gurux Device Framework is Open Source software; you can redistribute it
+// and/or modify it under the terms of the GNU General Public License 
+// as published by the Free Software Foundation; version 2 of the License.
+// Gurux Device Framework is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of 
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+// See the GNU General Public License for more details.
+//
+// More information of Gurux products: http://www.gurux.org
+//
+// This code is licensed under the GNU General Public License v2. 
+// Full text may be retrieved at http://www.gnu.org/licenses/gpl-2.0.txt
+//---------------------------------------------------------------------------
+
+package gurux.net;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Hashed timing wheel that is shared by the connections.
+ * <p>
+ * Timeouts are added to the bucket of the wheel by the deadline and one
+ * worker thread expires the buckets tick by tick. Adding and cancelling a
+ * timeout is O(1), so thousands of connections can have their own timers
+ * without a scheduled task for each connection. Expired tasks are run in the
+ * worker thread and they must not block. Worker thread waits when there are
+ * no timeouts.
+ * </p>
+ */
+final class GXTimingWheel {
+
+    /**
+     * Default timing wheel.
+     */
+    private static GXTimingWheel sDefault;
+
+    /**
+     * Tick duration in nanoseconds.
+     */
+    private final long mTickDuration;
+
+    /**
+     * Buckets of the wheel.
+     */
+    private final Timeout[] mWheel;
+
+    /**
+     * Mask used to find the bucket.
+     */
+    private final int mMask;
+
+    /**
+     * Start time of the wheel.
+     */
+    private final long mStartTime = System.nanoTime();
+
+    /**
+     * New timeouts that are not added to the wheel yet.
+     */
+    private final Queue<Timeout> mPending = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Cancelled timeouts that are not removed from the wheel yet.
+     */
+    private final Queue<Timeout> mCancelled = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Amount of active timeouts.
+     */
+    private final AtomicInteger mCount = new AtomicInteger();
+
+    /**
+     * Is worker thread started.
+     */
+    private boolean mStarted;
+
+    /**
+     * Current tick. Accessed only from the worker thread.
+     */
+    private long mTick;
+
+    /**
+     * Constructor.
+     *
+     * @param tickDuration Tick duration in milliseconds.
+     * @param wheelSize    Amount of buckets. This is rounded up to the power
+     *                     of two.
+     */
+    GXTimingWheel(final int tickDuration, final int wheelSize) {
+        if (tickDuration <= 0) {
+            throw new IllegalArgumentException("tickDuration");
+        }
+        if (wheelSize <= 0 || wheelSize > 0x40000000) {
+            throw new IllegalArgumentException("wheelSize");
+        }
+        int size = 1;
+        while (size < wheelSize) {
+            size <<= 1;
+        }
+        mTickDuration = TimeUnit.MILLISECONDS.toNanos(tickDuration);
+        mWheel = new Timeout[size];
+        mMask = size - 1;
+    }
+
+    /**
+     * Returns timing wheel that is shared by all connections.
+     *
+     * @return Default timing wheel.
+     */
+    static synchronized GXTimingWheel getDefault() {
+        if (sDefault == null) {
+            sDefault = new GXTimingWheel(100, 512);
+        }
+        return sDefault;
+    }
+
+    /**
+     * Returns amount of active timeouts.
+     *
+     * @return Amount of timeouts.
+     */
+    int getCount() {
+        return mCount.get();
+    }
+
+    /**
+     * Schedule the task.
+     *
+     * @param task  Task that is run when the timeout expires.
+     * @param delay Delay in milliseconds.
+     * @return Timeout that can be used to cancel the task.
+     */
+    Timeout schedule(final Runnable task, final long delay) {
+        Timeout timeout = new Timeout(this, task,
+                System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.max(0, delay))
+                        - mStartTime);
+        mCount.incrementAndGet();
+        mPending.add(timeout);
+        synchronized (this) {
+            if (!mStarted) {
+                mStarted = true;
+                Thread thread = GXNetExecutors.getDefault().getThreadFactory().newThread(
+                        new Runnable() {
+                            @Override
+                            public void run() {
+                                work();
+                            }
+                        });
+                thread.setDaemon(true);
+                thread.start();
+            } else {
+                notifyAll();
+            }
+        }
+        return timeout;
+    }
+
+    /**
+     * Expire the buckets until the thread is interrupted.
+     */
+    private void work() {
+        mTick = (System.nanoTime() - mStartTime) / mTickDuration;
+        try {
+            while (true) {
+                synchronized (this) {
+                    if (mCount.get() == 0) {
+                        while (mCount.get() == 0) {
+                            wait();
+                        }
+                        // Wheel is empty, so it can jump to the current tick.
+                        mTick = (System.nanoTime() - mStartTime) / mTickDuration;
+                    }
+                }
+                long deadline = mTickDuration * (mTick + 1);
+                long sleep = deadline - (System.nanoTime() - mStartTime);
+                if (sleep > 0) {
+                    Thread.sleep(sleep / 1000000, (int) (sleep % 1000000));
+                }
+                removeCancelled();
+                addPending();
+                expire(mTick & mMask, deadline);
+                ++mTick;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Add new timeouts to the buckets.
+     */
+    private void addPending() {
+        Timeout it;
+        while ((it = mPending.poll()) != null) {
+            if (it.mState.get() != Timeout.ST_INIT) {
+                continue;
+            }
+            long ticks = it.mDeadline / mTickDuration;
+            it.mRounds = (ticks - mTick) / mWheel.length;
+            int index = (int) (Math.max(ticks, mTick) & mMask);
+            it.mBucket = index;
+            it.mNext = mWheel[index];
+            if (it.mNext != null) {
+                it.mNext.mPrev = it;
+            }
+            mWheel[index] = it;
+        }
+    }
+
+    /**
+     * Remove cancelled timeouts from the buckets.
+     */
+    private void removeCancelled() {
+        Timeout it;
+        while ((it = mCancelled.poll()) != null) {
+            if (it.mBucket != -1) {
+                remove(it);
+            }
+        }
+    }
+
+    /**
+     * Remove timeout from the bucket.
+     *
+     * @param it Removed timeout.
+     */
+    private void remove(final Timeout it) {
+        if (it.mPrev != null) {
+            it.mPrev.mNext = it.mNext;
+        } else {
+            mWheel[it.mBucket] = it.mNext;
+        }
+        if (it.mNext != null) {
+            it.mNext.mPrev = it.mPrev;
+        }
+        it.mNext = null;
+        it.mPrev = null;
+        it.mBucket = -1;
+    }
+
+    /**
+     * Expire the timeouts of the bucket.
+     *
+     * @param index    Bucket index.
+     * @param deadline Deadline of the current tick.
+     */
+    private void expire(final long index, final long deadline) {
+        Timeout it = mWheel[(int) index];
+        while (it != null) {
+            Timeout next = it.mNext;
+            if (it.mRounds <= 0) {
+                remove(it);
+                if (it.mDeadline <= deadline && it.mState.compareAndSet(Timeout.ST_INIT,
+                        Timeout.ST_EXPIRED)) {
+                    mCount.decrementAndGet();
+                    try {
+                        it.mTask.run();
+                    } catch (RuntimeException ex) {
+                        Logger.getLogger("GXNet").log(Level.SEVERE, "Timer task failed.", ex);
+                    }
+                }
+            } else {
+                --it.mRounds;
+            }
+            it = next;
+        }
+    }
+
+    /**
+     * Scheduled timeout.
+     */
+    static final class Timeout {
+        /**
+         * Timeout is waiting.
+         */
+        static final int ST_INIT = 0;
+        /**
+         * Timeout is cancelled.
+         */
+        static final int ST_CANCELLED = 1;
+        /**
+         * Timeout is expired.
+         */
+        static final int ST_EXPIRED = 2;
+
+        /**
+         * Parent timing wheel.
+         */
+        private final GXTimingWheel mParent;
+
+        /**
+         * Run task.
+         */
+        private final Runnable mTask;
+
+        /**
+         * Deadline in nanoseconds from the start time of the wheel.
+         */
+        private final long mDeadline;
+
+        /**
+         * State of the timeout.
+         */
+        private final AtomicInteger mState = new AtomicInteger(ST_INIT);
+
+        /**
+         * Remaining rounds of the wheel.
+         */
+        private long mRounds;
+
+        /**
+         * Bucket index or -1 if timeout is not in the wheel.
+         */
+        private int mBucket = -1;
+
+        /**
+         * Next timeout in the bucket.
+         */
+        private Timeout mNext;
+
+        /**
+         * Previous timeout in the bucket.
+         */
+        private Timeout mPrev;
+
+        /**
+         * Constructor.
+         *
+         * @param parent   Parent timing wheel.
+         * @param task     Run task.
+         * @param deadline Deadline in nanoseconds from the start time of the
+         *                 wheel.
+         */
+        Timeout(final GXTimingWheel parent, final Runnable task, final long deadline) {
+            mParent = parent;
+            mTask = task;
+            mDeadline = deadline;
+        }
+
+        /**
+         * Cancel the timeout.
+         *
+         * @return True, if the timeout was cancelled before it expired.
+         */
+        boolean cancel() {
+            if (mState.compareAndSet(ST_INIT, ST_CANCELLED)) {
+                mParent.mCount.decrementAndGet();
+                mParent.mCancelled.add(this);
+                return true;
+            }
+            return false;
+        }
+    }
+}
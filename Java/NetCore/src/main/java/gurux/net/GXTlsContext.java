@@ -0,0 +1,413 @@
+//
+// --------------------------------------------------------------------------
+//  Gurux Ltd
+// 
+//
+//
+// Filename:        $HeadURL$
+//
+// Version:         $Revision$,
+//                  $Date$
+//                  $Author$
+//
+// Copyright (c) Gurux Ltd
+//
+//---------------------------------------------------------------------------
+//
+//  DESCRIPTION
+//
+// This file is a part of Gurux Device Framework.
+//
+// Gurux Device Framework is Open Source software; you can redistribute it
+// and/or modify it under the terms of the GNU General Public License 
+// as published by the Free Software Foundation; version 2 of the License.
+// Gurux Device Framework is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of 
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+// See the GNU General Public License for more details.
+//
+// More information of Gurux products: http://www.gurux.org
+//
+// This code is licensed under the GNU General Public License v2. 
+// Full text may be retrieved at http://www.gnu.org/licenses/gpl-2.0.txt
+//---------------------------------------------------------------------------
+
+package gurux.net;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocket;
+
+/**
+ * TLS settings and session cache that are used when the protocol is TLS.
+ * <p>
+ * Client sessions are cached by the endpoint (host and port). When the
+ * connection is opened again to the same endpoint, cached session is
+ * offered to the server and TLS 1.2 session ID, session ticket or TLS 1.3
+ * PSK resumption is used instead of the full handshake. Same context can be
+ * shared between several connections.
+ * </p>
+ * <p>
+ * Session cache settings of the SSL context given by the application are
+ * not changed. Default TLS context uses own SSL context so the settings of
+ * the JVM wide default context are not changed either.
+ * </p>
+ */
+public class GXTlsContext {
+
+    /**
+     * Default session cache size.
+     */
+    private static final int DEFAULT_CACHE_SIZE = 100;
+
+    /**
+     * Default session timeout in seconds.
+     */
+    private static final int DEFAULT_SESSION_TIMEOUT = 24 * 60 * 60;
+
+    /**
+     * Maximum amount of tracked endpoints if session cache is unlimited.
+     */
+    private static final int MAX_ENDPOINTS = 1000;
+
+    /**
+     * Default TLS context.
+     */
+    private static GXTlsContext sDefault;
+
+    /**
+     * Used SSL context.
+     */
+    private final SSLContext mContext;
+
+    /**
+     * Last session of each endpoint. This is used to detect resumed
+     * handshakes. Least recently used endpoints are removed when there
+     * are more endpoints than sessions in the session cache.
+     */
+    private final Map<String, SSLSession> mSessions =
+            new LinkedHashMap<String, SSLSession>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(
+                        final Map.Entry<String, SSLSession> eldest) {
+                    return size() > getMaxEndpoints();
+                }
+            };
+
+    /**
+     * Is host name verified.
+     */
+    private volatile boolean mVerifyHostName = true;
+
+    /**
+     * Amount of full handshakes.
+     */
+    private final AtomicLong mFullHandshakes = new AtomicLong();
+
+    /**
+     * Amount of resumed handshakes.
+     */
+    private final AtomicLong mResumedHandshakes = new AtomicLong();
+
+    /**
+     * Time spent in full handshakes in nanoseconds.
+     */
+    private final AtomicLong mFullHandshakeTime = new AtomicLong();
+
+    /**
+     * Time spent in resumed handshakes in nanoseconds.
+     */
+    private final AtomicLong mResumedHandshakeTime = new AtomicLong();
+
+    /**
+     * Constructor.
+     *
+     * @param context Used SSL context. Own SSL context can be used for
+     *                example with self-signed certificates. Session cache
+     *                settings of the context are not changed.
+     */
+    public GXTlsContext(final SSLContext context) {
+        if (context == null) {
+            throw new IllegalArgumentException("context");
+        }
+        mContext = context;
+    }
+
+    /**
+     * Returns TLS context that is used if the application has not set own
+     * context.
+     *
+     * @return Default TLS context.
+     */
+    public static synchronized GXTlsContext getDefault() {
+        if (sDefault == null) {
+            try {
+                // Own context is used so that the session cache of the JVM
+                // wide default context is not changed.
+                SSLContext context = SSLContext.getInstance("TLS");
+                context.init(null, null, null);
+                SSLSessionContext sessions = context.getClientSessionContext();
+                if (sessions != null) {
+                    sessions.setSessionCacheSize(DEFAULT_CACHE_SIZE);
+                    sessions.setSessionTimeout(DEFAULT_SESSION_TIMEOUT);
+                }
+                sDefault = new GXTlsContext(context);
+            } catch (GeneralSecurityException e) {
+                throw new RuntimeException(e.getMessage());
+            }
+        }
+        return sDefault;
+    }
+
+    /**
+     * Returns used SSL context.
+     *
+     * @return SSL context.
+     */
+    public final SSLContext getContext() {
+        return mContext;
+    }
+
+    /**
+     * Is host name of the server certificate verified.
+     *
+     * @return True, if host name is verified.
+     */
+    public final boolean isVerifyHostName() {
+        return mVerifyHostName;
+    }
+
+    /**
+     * Set is host name of the server certificate verified.
+     *
+     * @param value Is host name verified.
+     */
+    public final void setVerifyHostName(final boolean value) {
+        mVerifyHostName = value;
+    }
+
+    /**
+     * Returns maximum amount of cached sessions.
+     *
+     * @return Session cache size.
+     */
+    public final int getSessionCacheSize() {
+        return mContext.getClientSessionContext().getSessionCacheSize();
+    }
+
+    /**
+     * Set maximum amount of cached sessions.
+     *
+     * @param value Session cache size. Zero is unlimited.
+     */
+    public final void setSessionCacheSize(final int value) {
+        mContext.getClientSessionContext().setSessionCacheSize(value);
+    }
+
+    /**
+     * Returns how long cached session can be resumed.
+     *
+     * @return Session timeout in seconds.
+     */
+    public final int getSessionTimeout() {
+        return mContext.getClientSessionContext().getSessionTimeout();
+    }
+
+    /**
+     * Set how long cached session can be resumed.
+     *
+     * @param value Session timeout in seconds. Zero is unlimited.
+     */
+    public final void setSessionTimeout(final int value) {
+        mContext.getClientSessionContext().setSessionTimeout(value);
+    }
+
+    /**
+     * Returns amount of full handshakes.
+     *
+     * @return Amount of full handshakes.
+     */
+    public final long getFullHandshakes() {
+        return mFullHandshakes.get();
+    }
+
+    /**
+     * Returns amount of resumed handshakes.
+     *
+     * @return Amount of resumed handshakes.
+     */
+    public final long getResumedHandshakes() {
+        return mResumedHandshakes.get();
+    }
+
+    /**
+     * Returns time spent in full handshakes.
+     *
+     * @return Time in milliseconds.
+     */
+    public final long getFullHandshakeTime() {
+        return mFullHandshakeTime.get() / 1000000;
+    }
+
+    /**
+     * Returns time spent in resumed handshakes.
+     *
+     * @return Time in milliseconds.
+     */
+    public final long getResumedHandshakeTime() {
+        return mResumedHandshakeTime.get() / 1000000;
+    }
+
+    /**
+     * Reset handshake counters.
+     */
+    public final void resetCounters() {
+        mFullHandshakes.set(0);
+        mResumedHandshakes.set(0);
+        mFullHandshakeTime.set(0);
+        mResumedHandshakeTime.set(0);
+    }
+
+    /**
+     * Remove cached sessions. Next connection to each endpoint makes a full
+     * handshake.
+     */
+    public final void clearSessions() {
+        synchronized (mSessions) {
+            for (SSLSession it : mSessions.values()) {
+                it.invalidate();
+            }
+            mSessions.clear();
+        }
+    }
+
+    /**
+     * Returns amount of endpoints whose last session is tracked.
+     *
+     * @return Amount of endpoints.
+     */
+    final int getEndpointCount() {
+        synchronized (mSessions) {
+            return mSessions.size();
+        }
+    }
+
+    /**
+     * Returns maximum amount of tracked endpoints. Endpoints are removed
+     * together with the sessions of the session cache.
+     *
+     * @return Maximum amount of endpoints.
+     */
+    private int getMaxEndpoints() {
+        SSLSessionContext sessions = mContext.getClientSessionContext();
+        if (sessions == null || sessions.getSessionCacheSize() <= 0) {
+            return MAX_ENDPOINTS;
+        }
+        return Math.min(MAX_ENDPOINTS, sessions.getSessionCacheSize());
+    }
+
+    /**
+     * Connect to the server and make the TLS handshake.
+     *
+     * @param host Host name.
+     * @param port Port number.
+     * @return Connected TLS socket.
+     * @throws IOException Connection or handshake failed.
+     */
+    final SSLSocket connect(final String host, final int port) throws IOException {
+        return handshake((SSLSocket) mContext.getSocketFactory().createSocket(host, port),
+                host, port);
+    }
+
+    /**
+     * Start TLS on the connected socket and make the TLS handshake.
+     *
+     * @param socket Connected socket.
+     * @param host   Host name. This is used to select cached session and to
+     *               verify the server certificate.
+     * @param port   Port number.
+     * @return Connected TLS socket.
+     * @throws IOException Handshake failed.
+     */
+    final SSLSocket connect(final Socket socket, final String host, final int port)
+            throws IOException {
+        return handshake((SSLSocket) mContext.getSocketFactory().createSocket(socket,
+                host, port, true), host, port);
+    }
+
+    /**
+     * Make the TLS handshake and update handshake counters.
+     *
+     * @param socket TLS socket.
+     * @param host   Host name.
+     * @param port   Port number.
+     * @return Connected TLS socket.
+     * @throws IOException Handshake failed.
+     */
+    private SSLSocket handshake(final SSLSocket socket, final String host,
+                                final int port) throws IOException {
+        try {
+            if (mVerifyHostName) {
+                SSLParameters params = socket.getSSLParameters();
+                params.setEndpointIdentificationAlgorithm("HTTPS");
+                socket.setSSLParameters(params);
+            }
+            long start = System.nanoTime();
+            socket.startHandshake();
+            long elapsed = System.nanoTime() - start;
+            SSLSession session = socket.getSession();
+            if (!session.isValid()) {
+                throw new IOException("TLS handshake failed.");
+            }
+            String endpoint = host + ":" + port;
+            SSLSession last;
+            synchronized (mSessions) {
+                last = mSessions.put(endpoint, session);
+            }
+            if (isResumed(last, session)) {
+                mResumedHandshakes.incrementAndGet();
+                mResumedHandshakeTime.addAndGet(elapsed);
+            } else {
+                mFullHandshakes.incrementAndGet();
+                mFullHandshakeTime.addAndGet(elapsed);
+            }
+            return socket;
+        } catch (IOException | RuntimeException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Check is session resumed from the last session of the endpoint.
+     *
+     * @param last    Last session of the endpoint.
+     * @param session New session.
+     * @return True, if session is resumed.
+     */
+    private static boolean isResumed(final SSLSession last, final SSLSession session) {
+        if (last == null) {
+            return false;
+        }
+        if (last == session) {
+            return true;
+        }
+        // Resumed session keeps the identity and the creation time of the
+        // original session.
+        byte[] id = session.getId();
+        return (id != null && id.length != 0 && Arrays.equals(id, last.getId()))
+                || last.getCreationTime() == session.getCreationTime();
+    }
+}
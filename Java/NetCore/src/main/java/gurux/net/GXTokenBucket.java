@@ -0,0 +1,146 @@
+//
+// --------------------------------------------------------------------------
+//  Gurux Ltd
+// 
+//
+//
+// Filename:        $HeadURL$
+//
+// Version:         $Revision$,
+//                  $Date$
+//                  $Author$
+//
+// Copyright (c) Gurux Ltd
+//
+//---------------------------------------------------------------------------
+//
+//  DESCRIPTION
+//
+// This file is a part of Gurux Device Framework.
+//
+// Gurux Device Framework is Open Source software; you can redistribute it
+// and/or modify it under the terms of the GNU General Public License 
+// as published by the Free Software Foundation; version 2 of the License.
+// Gurux Device Framework is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of 
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+// See the GNU General Public License for more details.
+//
+// More information of Gurux products: http://www.gurux.org
+//
+// This code is licensed under the GNU General Public License v2. 
+// Full text may be retrieved at http://www.gnu.org/licenses/gpl-2.0.txt
+//---------------------------------------------------------------------------
+
+package gurux.net;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket.
+ * <p>
+ * Bucket is implemented with the generic cell rate algorithm. Caller
+ * reserves tokens and gets the time it must wait before the tokens can be
+ * used. Reservation never blocks so buckets can be shared between
+ * connections.
+ * </p>
+ *
+ * @author Gurux Ltd.
+ */
+final class GXTokenBucket {
+
+    /**
+     * Nanoseconds in one second.
+     */
+    private static final long NANOS_PER_SECOND = 1000000000L;
+
+    /**
+     * Tokens per second. Zero if bucket is not limited.
+     */
+    private volatile long mRate;
+
+    /**
+     * Burst size in tokens.
+     */
+    private volatile long mBurst;
+
+    /**
+     * Theoretical arrival time of the next token in nanoseconds.
+     */
+    private final AtomicLong mArrival = new AtomicLong(Long.MIN_VALUE);
+
+    /**
+     * Returns tokens per second.
+     *
+     * @return Tokens per second. Zero if bucket is not limited.
+     */
+    long getRate() {
+        return mRate;
+    }
+
+    /**
+     * Returns burst size.
+     *
+     * @return Burst size in tokens.
+     */
+    long getBurst() {
+        return mBurst;
+    }
+
+    /**
+     * Set rate and burst size of the bucket.
+     *
+     * @param rate  Tokens per second. Zero if bucket is not limited.
+     * @param burst Burst size in tokens.
+     */
+    void set(final long rate, final long burst) {
+        if (rate < 0 || rate > Long.MAX_VALUE / NANOS_PER_SECOND) {
+            throw new IllegalArgumentException("rate");
+        }
+        if (burst < 0) {
+            throw new IllegalArgumentException("burst");
+        }
+        mRate = rate;
+        mBurst = burst;
+        mArrival.set(Long.MIN_VALUE);
+    }
+
+    /**
+     * Reserve tokens.
+     *
+     * @param tokens Amount of reserved tokens.
+     * @param now    Current time from {@link System#nanoTime()}.
+     * @return Time in nanoseconds that caller must wait before tokens can
+     * be used.
+     */
+    long reserve(final long tokens, final long now) {
+        long rate = mRate;
+        if (rate == 0 || tokens == 0) {
+            return 0;
+        }
+        // Interval of one token is not rounded, so high rates are exact.
+        long cost = toNanos(tokens, rate);
+        long tolerance = toNanos(mBurst, rate);
+        while (true) {
+            long arrival = mArrival.get();
+            long start = arrival == Long.MIN_VALUE ? now : Math.max(arrival, now);
+            long next = start + cost;
+            if (mArrival.compareAndSet(arrival, next)) {
+                return Math.max(0, next - tolerance - now);
+            }
+        }
+    }
+
+    /**
+     * Returns time that it takes to get the tokens.
+     *
+     * @param tokens Amount of tokens.
+     * @param rate   Tokens per second.
+     * @return Time in nanoseconds.
+     */
+    private static long toNanos(final long tokens, final long rate) {
+        // Calculated in two parts so that multiplication doesn't overflow.
+        return tokens / rate * NANOS_PER_SECOND
+                + tokens % rate * NANOS_PER_SECOND / rate;
+    }
+}
@@ -0,0 +1,268 @@
+//
+// --------------------------------------------------------------------------
+//  Gurux Ltd
+// 
+//
+//
+// Filename:        $HeadURL$
+//
+// Version:         $Revision$,
+//                  $Date$
+//                  $Author$
+//
+// Copyright (c) Gurux Ltd
+//
+//---------------------------------------------------------------------------
+//
+//  DESCRIPTION
+//
+// This file is a part of Gurux Device Framework.
+//
+// Gurux Device Framework is Open Source software; you can redistribute it
+// and/or modify it under the terms of the GNU General Public License 
+// as published by the Free Software Foundation; version 2 of the License.
+// Gurux Device Framework is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of 
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+// See the GNU General Public License for more details.
+//
+// More information of Gurux products: http://www.gurux.org
+//
+// This code is licensed under the GNU General Public License v2. 
+// Full text may be retrieved at http://www.gnu.org/licenses/gpl-2.0.txt
+//---------------------------------------------------------------------------
+
+package gurux.net;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Traffic shaper that limits how fast data is sent.
+ * <p>
+ * Shaper has token buckets for bytes per second and frames per second.
+ * Sender waits in its own thread until the frame can be sent, so shaping
+ * doesn't block other connections. Shaper can be set for one connection or
+ * the same shaper can be shared between several connections. Parent shaper
+ * can be used to set global limits on top of the connection limits.
+ * </p>
+ * <pre>
+ * GXTrafficShaper global = new GXTrafficShaper();
+ * global.setBytesPerSecond(64000, 4096);
+ * GXTrafficShaper shaper = new GXTrafficShaper(global);
+ * shaper.setFramesPerSecond(10, 2);
+ * net.setTrafficShaper(shaper);
+ * </pre>
+ */
+public class GXTrafficShaper {
+
+    /**
+     * Parent shaper or null.
+     */
+    private final GXTrafficShaper mParent;
+
+    /**
+     * Bytes per second bucket.
+     */
+    private final GXTokenBucket mBytes = new GXTokenBucket();
+
+    /**
+     * Frames per second bucket.
+     */
+    private final GXTokenBucket mFrames = new GXTokenBucket();
+
+    /**
+     * Amount of shaped frames.
+     */
+    private final AtomicLong mFrameCount = new AtomicLong();
+
+    /**
+     * Amount of delayed frames.
+     */
+    private final AtomicLong mDelayedFrames = new AtomicLong();
+
+    /**
+     * Total delay in nanoseconds.
+     */
+    private final AtomicLong mTotalDelay = new AtomicLong();
+
+    /**
+     * Maximum delay in nanoseconds.
+     */
+    private final AtomicLong mMaxDelay = new AtomicLong();
+
+    /**
+     * Constructor.
+     */
+    public GXTrafficShaper() {
+        this(null);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param parent Parent shaper that sets global limits or null.
+     */
+    public GXTrafficShaper(final GXTrafficShaper parent) {
+        mParent = parent;
+    }
+
+    /**
+     * Returns parent shaper.
+     *
+     * @return Parent shaper or null.
+     */
+    public final GXTrafficShaper getParent() {
+        return mParent;
+    }
+
+    /**
+     * Returns bytes per second.
+     *
+     * @return Bytes per second. Zero if bytes are not limited.
+     */
+    public final long getBytesPerSecond() {
+        return mBytes.getRate();
+    }
+
+    /**
+     * Returns how many bytes can be sent at once.
+     *
+     * @return Burst size in bytes.
+     */
+    public final long getByteBurst() {
+        return mBytes.getBurst();
+    }
+
+    /**
+     * Set how many bytes can be sent in second.
+     *
+     * @param rate  Bytes per second. Zero if bytes are not limited.
+     * @param burst How many bytes can be sent at once.
+     */
+    public final void setBytesPerSecond(final long rate, final long burst) {
+        mBytes.set(rate, burst);
+    }
+
+    /**
+     * Returns frames per second.
+     *
+     * @return Frames per second. Zero if frames are not limited.
+     */
+    public final long getFramesPerSecond() {
+        return mFrames.getRate();
+    }
+
+    /**
+     * Returns how many frames can be sent at once.
+     *
+     * @return Burst size in frames.
+     */
+    public final long getFrameBurst() {
+        return mFrames.getBurst();
+    }
+
+    /**
+     * Set how many frames can be sent in second.
+     *
+     * @param rate  Frames per second. Zero if frames are not limited.
+     * @param burst How many frames can be sent at once.
+     */
+    public final void setFramesPerSecond(final long rate, final long burst) {
+        mFrames.set(rate, burst);
+    }
+
+    /**
+     * Returns amount of shaped frames.
+     *
+     * @return Amount of frames.
+     */
+    public final long getFrameCount() {
+        return mFrameCount.get();
+    }
+
+    /**
+     * Returns amount of delayed frames.
+     *
+     * @return Amount of delayed frames.
+     */
+    public final long getDelayedFrameCount() {
+        return mDelayedFrames.get();
+    }
+
+    /**
+     * Returns total delay of the frames.
+     *
+     * @return Total delay in milliseconds.
+     */
+    public final long getTotalDelay() {
+        return mTotalDelay.get() / 1000000;
+    }
+
+    /**
+     * Returns maximum delay of the frame.
+     *
+     * @return Maximum delay in milliseconds.
+     */
+    public final long getMaxDelay() {
+        return mMaxDelay.get() / 1000000;
+    }
+
+    /**
+     * Reset statistics.
+     */
+    public final void resetStatistics() {
+        mFrameCount.set(0);
+        mDelayedFrames.set(0);
+        mTotalDelay.set(0);
+        mMaxDelay.set(0);
+    }
+
+    /**
+     * Reserve send time for the frame.
+     *
+     * @param size Size of the frame in bytes.
+     * @return Time in nanoseconds that sender must wait before the frame is
+     * sent.
+     */
+    final long reserve(final int size) {
+        return reserve(size, System.nanoTime());
+    }
+
+    /**
+     * Reserve send time for the frame.
+     *
+     * @param size Size of the frame in bytes.
+     * @param now  Current time from {@link System#nanoTime()}.
+     * @return Time in nanoseconds that sender must wait before the frame is
+     * sent.
+     */
+    final long reserve(final int size, final long now) {
+        long delay = Math.max(mBytes.reserve(size, now), mFrames.reserve(1, now));
+        if (mParent != null) {
+            delay = Math.max(delay, mParent.reserve(size, now));
+        }
+        mFrameCount.incrementAndGet();
+        if (delay != 0) {
+            mDelayedFrames.incrementAndGet();
+            mTotalDelay.addAndGet(delay);
+            long max;
+            do {
+                max = mMaxDelay.get();
+            } while (delay > max && !mMaxDelay.compareAndSet(max, delay));
+        }
+        return delay;
+    }
+
+    /**
+     * Wait until the frame can be sent.
+     *
+     * @param size Size of the frame in bytes.
+     * @throws InterruptedException Sender is interrupted.
+     */
+    final void acquire(final int size) throws InterruptedException {
+        long delay = reserve(size);
+        if (delay != 0) {
+            Thread.sleep(delay / 1000000, (int) (delay % 1000000));
+        }
+    }
+}
@@ -0,0 +1,105 @@
+//
+// --------------------------------------------------------------------------
+//  Gurux Ltd
+// 
+//
+//
+// Filename:        $HeadURL$
+//
+// Version:         $Revision$,
+//                  $Date$
+//                  $Author$
+//
+// Copyright (c) Gurux Ltd
+//
+//---------------------------------------------------------------------------
+//
+//  DESCRIPTION
+//
+// This file is a part of Gurux Device Framework.
+//
+// Gurux Device Framework is Open Source software; you can redistribute it
+// and/or modify it under the terms of the GNU General Public License 
+// as published by the Free Software Foundation; version 2 of the License.
+// Gurux Device Framework is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of 
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+// See the GNU General Public License for more details.
+//
+// More information of Gurux products: http://www.gurux.org
+//
+// This code is licensed under the GNU General Public License v2. 
+// Full text may be retrieved at http://www.gnu.org/licenses/gpl-2.0.txt
+//---------------------------------------------------------------------------
+
+package gurux.net;
+
+/**
+ * Channel resolver for DLMS WRAPPER frames.
+ * <p>
+ * WRAPPER header contains version, source port, target port and length of
+ * the payload. Each of them is two bytes. Channel key is created from the
+ * client and server ports with {@link #getKey(int, int)}.
+ * </p>
+ */
+public class GXWrapperChannelResolver implements IGXChannelResolver {
+
+    /**
+     * Size of WRAPPER header.
+     */
+    private static final int HEADER_SIZE = 8;
+
+    /**
+     * WRAPPER version.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * Returns channel key for the client and server ports.
+     *
+     * @param client Client port.
+     * @param server Server port.
+     * @return Channel key.
+     */
+    public static Object getKey(final int client, final int server) {
+        return ((client & 0xFFFF) << 16) | (server & 0xFFFF);
+    }
+
+    /**
+     * Get unsigned 16 bit value.
+     *
+     * @param data  Data.
+     * @param index Index of the value.
+     * @return Unsigned 16 bit value.
+     */
+    private static int getUInt16(final byte[] data, final int index) {
+        return ((data[index] & 0xFF) << 8) | (data[index + 1] & 0xFF);
+    }
+
+    @Override
+    public int getFrameSize(final byte[] data, final int index, final int count) {
+        if (count < 2) {
+            return 0;
+        }
+        if (getUInt16(data, index) != VERSION) {
+            // Frame is corrupted.
+            return -1;
+        }
+        if (count < HEADER_SIZE) {
+            return 0;
+        }
+        int size = HEADER_SIZE + getUInt16(data, index + 6);
+        if (count < size) {
+            return 0;
+        }
+        return size;
+    }
+
+    @Override
+    public Object getKey(final byte[] data, final int index, final int count) {
+        // Meter is the source and the client is the target.
+        int server = getUInt16(data, index + 2);
+        int client = getUInt16(data, index + 4);
+        return getKey(client, server);
+    }
+}
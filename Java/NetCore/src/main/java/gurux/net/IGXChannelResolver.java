@@ -0,0 +1,64 @@
+//
+// --------------------------------------------------------------------------
+//  Gurux Ltd
+// 
+//
+//
+// Filename:        $HeadURL$
+//
+// Version:         $Revision$,
+//                  $Date$
+//                  $Author$
+//
+// Copyright (c) Gurux Ltd
+//
+//---------------------------------------------------------------------------
+//
+//  DESCRIPTION
+//
+// This file is a part of Gurux Device Framework.
+//
+// Gurux Device Framework is Open Source software; you can redistribute it
+// and/or modify it under the terms of the GNU General Public License 
+// as published by the Free Software Foundation; version 2 of the License.
+// Gurux Device Framework is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of 
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+// See the GNU General Public License for more details.
+//
+// More information of Gurux products: http://www.gurux.org
+//
+// This code is licensed under the GNU General Public License v2. 
+// Full text may be retrieved at http://www.gnu.org/licenses/gpl-2.0.txt
+//---------------------------------------------------------------------------
+
+package gurux.net;
+
+/**
+ * Resolves frames and channel keys from the data that is received from the
+ * multiplexed connection.
+ */
+public interface IGXChannelResolver {
+
+    /**
+     * Returns size of the frame that starts from the given index.
+     *
+     * @param data  Received data.
+     * @param index Start index of the frame.
+     * @param count Amount of available bytes.
+     * @return Size of the frame, zero if the frame is not received yet or
+     * -1 if the frame is invalid. Multiplexer skips one byte of invalid
+     * frame and searches the next frame.
+     */
+    int getFrameSize(byte[] data, int index, int count);
+
+    /**
+     * Returns channel key of the received frame.
+     *
+     * @param data  Received data.
+     * @param index Start index of the frame.
+     * @param count Size of the frame.
+     * @return Channel key.
+     */
+    Object getKey(byte[] data, int index, int count);
+}
@@ -0,0 +1,74 @@
+//
+// --------------------------------------------------------------------------
+//  Gurux Ltd
+// 
+//
+//
+// Filename:        $HeadURL$
+//
+// Version:         $Revision$,
+//                  $Date$
+//                  $Author$
+//
+// Copyright (c) Gurux Ltd
+//
+//---------------------------------------------------------------------------
+//
+//  DESCRIPTION
+//
+// This file is a part of Gurux Device Framework.
+//
+// Gurux Device Framework is Open Source software; you can redistribute it
+// and/or modify it under the terms of the GNU General Public License 
+// as published by the Free Software Foundation; version 2 of the License.
+// Gurux Device Framework is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of 
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+// See the GNU General Public License for more details.
+//
+// More information of Gurux products: http://www.gurux.org
+//
+// This code is licensed under the GNU General Public License v2. 
+// Full text may be retrieved at http://www.gnu.org/licenses/gpl-2.0.txt
+//---------------------------------------------------------------------------
+
+package gurux.net;
+
+/**
+ * Subscriber that receives data from the publisher.
+ * <p>
+ * Methods are called serially. Data is not sent before the subscriber has
+ * requested it with {@link IGXSubscription#request(long)}.
+ * </p>
+ *
+ * @param <T> Type of the received items.
+ */
+public interface IGXSubscriber<T> {
+
+    /**
+     * Subscription is started.
+     *
+     * @param subscription Subscription that is used to request items or to
+     *                     cancel the subscription.
+     */
+    void onSubscribe(IGXSubscription subscription);
+
+    /**
+     * New item is received.
+     *
+     * @param item Received item.
+     */
+    void onNext(T item);
+
+    /**
+     * Subscription failed. No more items are sent.
+     *
+     * @param ex Occurred error.
+     */
+    void onError(Throwable ex);
+
+    /**
+     * Subscription is completed. No more items are sent.
+     */
+    void onComplete();
+}
@@ -0,0 +1,86 @@
+//
+// --------------------------------------------------------------------------
+//  Gurux Ltd
+// 
+//
+//
+// Filename:        $HeadURL$
+//
+// Version:         $Revision$,
+//                  $Date$
+//                  $Author$
+//
+// Copyright (c) Gurux Ltd
+//
+//---------------------------------------------------------------------------
+//
+//  DESCRIPTION
+//
+// This file is a part of Gurux Device Framework.
+//
+// Gurux Device Framework is Open Source software; you can redistribute it
+// and/or modify it under the terms of the GNU General Public License 
+// as published by the Free Software Foundation; version 2 of the License.
+// Gurux Device Framework is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of 
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+// See the GNU General Public License for more details.
+//
+// More information of Gurux products: http://www.gurux.org
+//
+// This code is licensed under the GNU General Public License v2. 
+// Full text may be retrieved at http://www.gnu.org/licenses/gpl-2.0.txt
+//---------------------------------------------------------------------------
+
+package gurux.net;
+
+/**
+ * Listener of the network transport.
+ * <p>
+ * Methods are called from the threads of the transport, so they must not
+ * block longer than needed.
+ * </p>
+ */
+public interface IGXTransportListener {
+
+    /**
+     * Data is received. This is called from the receive thread.
+     *
+     * @param buffer Receive buffer. Buffer is reused after the call, so
+     *               data must be copied if it's used later.
+     * @param count  Amount of received bytes.
+     * @param info   Sender information.
+     */
+    void onReceived(byte[] buffer, int count, String info);
+
+    /**
+     * Receiving failed.
+     *
+     * @param ex Occurred error.
+     */
+    void onError(Exception ex);
+
+    /**
+     * Connection is closed or reset by the peer. This is called from the
+     * receive thread and the listener is expected to close the transport.
+     */
+    void onPeerClosed();
+
+    /**
+     * Wait until more data can be read. This is called before each read, so
+     * the listener can pause reading.
+     *
+     * @throws InterruptedException Receiver is stopped.
+     */
+    void awaitDemand() throws InterruptedException;
+
+    /**
+     * Writing of the data is started.
+     */
+    void onWriteStarted();
+
+    /**
+     * Writing of the data is completed or failed.
+     */
+    void onWriteCompleted();
+}
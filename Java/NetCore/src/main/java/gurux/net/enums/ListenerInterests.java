@@ -0,0 +1,153 @@
+//
+// --------------------------------------------------------------------------
+//  Gurux Ltd
+// 
+//
+//
+// Filename:        $HeadURL$
+//
+// Version:         $Revision$,
+//                  $Date$
+//                  $Author$
+//
+// Copyright (c) Gurux Ltd
+//
+//---------------------------------------------------------------------------
+//
+//  DESCRIPTION
+//
+// This file is a part of Gurux Device Framework.
+//
+// Gurux Device Framework is Open Source software; you can redistribute it
+// and/or modify it under the terms of the GNU General Public License 
+// as published by the Free Software Foundation; version 2 of the License.
+// Gurux Device Framework is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of 
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+// See the GNU General Public License for more details.
+//
+// More information of Gurux products: http://www.gurux.org
+//
+// This code is licensed under the GNU General Public License v2. 
+// Full text may be retrieved at http://www.gnu.org/licenses/gpl-2.0.txt
+//---------------------------------------------------------------------------
+
+package gurux.net.enums;
+
+import java.util.HashMap;
+
+/**
+ * Event types that the media listener is interested in. Values can be
+ * combined. Events are not created if no listener is interested in them.
+ */
+public enum ListenerInterests {
+    /**
+     * All events.
+     */
+    ALL(-1),
+
+    /**
+     * Received data.
+     */
+    RECEIVED(0x1),
+
+    /**
+     * Errors.
+     */
+    ERROR(0x2),
+
+    /**
+     * Media state changes.
+     */
+    MEDIA_STATE(0x4),
+
+    /**
+     * Property changes.
+     */
+    PROPERTY_CHANGED(0x8),
+
+    /**
+     * Error traces.
+     */
+    TRACE_ERROR(0x10),
+
+    /**
+     * Warning traces.
+     */
+    TRACE_WARNING(0x20),
+
+    /**
+     * Info traces.
+     */
+    TRACE_INFO(0x40),
+
+    /**
+     * Sent data traces.
+     */
+    TRACE_SENT(0x80),
+
+    /**
+     * Received data traces.
+     */
+    TRACE_RECEIVED(0x100),
+
+    /**
+     * All traces.
+     */
+    TRACE(0x1F0);
+
+    /**
+     * Integer value of enumeration.
+     */
+    private int intValue;
+
+    /**
+     * Collection of integer and enumeration values.
+     */
+    private static java.util.HashMap<Integer, ListenerInterests> mappings;
+
+    /**
+     * Get mappings.
+     *
+     * @return Hash map of enumeration and integer values.
+     */
+    private static HashMap<Integer, ListenerInterests> getMappings() {
+        synchronized (ListenerInterests.class) {
+            if (mappings == null) {
+                mappings = new HashMap<Integer, ListenerInterests>();
+            }
+        }
+        return mappings;
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param value Integer value for enumerator.
+     */
+    ListenerInterests(final int value) {
+        intValue = value;
+        synchronized (ListenerInterests.class) {
+            getMappings().put(value, this);
+        }
+    }
+
+    /**
+     * Get enemerator's integer value.
+     *
+     * @return Integer value of enumerator.
+     */
+    public int getValue() {
+        return intValue;
+    }
+
+    /**
+     * Get enumerator from integer value.
+     *
+     * @param value integer value.
+     * @return Enumerator value.
+     */
+    public static ListenerInterests forValue(final int value) {
+        return getMappings().get(value);
+    }
+}
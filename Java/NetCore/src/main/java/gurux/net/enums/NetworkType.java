@@ -46,5 +46,10 @@ public enum NetworkType {
     /**
      * TCP/IP protocol.
      */
-    TCP;
+    TCP,
+
+    /**
+     * TLS over TCP/IP.
+     */
+    TLS;
 }
\ No newline at end of file
@@ -0,0 +1,107 @@
+//
+// --------------------------------------------------------------------------
+//  Gurux Ltd
+// 
+//
+//
+// Filename:        $HeadURL$
+//
+// Version:         $Revision$,
+//                  $Date$
+//                  $Author$
+//
+// Copyright (c) Gurux Ltd
+//
+//---------------------------------------------------------------------------
+//
+//  DESCRIPTION
+//
+// This file is a part of Gurux Device Framework.
+//
+// Gurux Device Framework is Open Source software; you can redistribute it
+// and/or modify it under the terms of the GNU General Public License 
+// as published by the Free Software Foundation; version 2 of the License.
+// Gurux Device Framework is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of 
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+// See the GNU General Public License for more details.
+//
+// More information of Gurux products: http://www.gurux.org
+//
+// This code is licensed under the GNU General Public License v2. 
+// Full text may be retrieved at http://www.gnu.org/licenses/gpl-2.0.txt
+//---------------------------------------------------------------------------
+
+package gurux.net.enums;
+
+import java.util.HashMap;
+
+/**
+ * How frames are selected from the send lanes.
+ */
+public enum SendScheduling {
+    /**
+     * Frames of the higher priority lane are always sent first.
+     */
+    STRICT(0),
+
+    /**
+     * Lanes are served in proportion to their weights.
+     */
+    WEIGHTED(1);
+
+    /**
+     * Integer value of enumeration.
+     */
+    private int intValue;
+
+    /**
+     * Collection of integer and enumeration values.
+     */
+    private static java.util.HashMap<Integer, SendScheduling> mappings;
+
+    /**
+     * Get mappings.
+     *
+     * @return Hash map of enumeration and integer values.
+     */
+    private static HashMap<Integer, SendScheduling> getMappings() {
+        synchronized (SendScheduling.class) {
+            if (mappings == null) {
+                mappings = new HashMap<Integer, SendScheduling>();
+            }
+        }
+        return mappings;
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param value Integer value for enumerator.
+     */
+    SendScheduling(final int value) {
+        intValue = value;
+        synchronized (SendScheduling.class) {
+            getMappings().put(value, this);
+        }
+    }
+
+    /**
+     * Get enemerator's integer value.
+     *
+     * @return Integer value of enumerator.
+     */
+    public int getValue() {
+        return intValue;
+    }
+
+    /**
+     * Get enumerator from integer value.
+     *
+     * @param value integer value.
+     * @return Enumerator value.
+     */
+    public static SendScheduling forValue(final int value) {
+        return getMappings().get(value);
+    }
+}
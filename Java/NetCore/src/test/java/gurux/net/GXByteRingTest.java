@@ -0,0 +1,156 @@
+//
+// --------------------------------------------------------------------------
+//  Gurux Ltd
+// 
+//
+//
+// Filename:        $HeadURL$
+//
+// Version:         $Revision$,
+//                  $Date$
+//                  $Author$
+//
+// Copyright (c) Gurux Ltd
+//
+//---------------------------------------------------------------------------
+//
+//  DESCRIPTION
+//
+// This file is a part of Gurux Device Framework.
+//
+// Gurux Device Framework is Open Source software; you can redistribute it
+// and/or modify it under the terms of the GNU General Public License 
+// as published by the Free Software Foundation; version 2 of the License.
+// Gurux Device Framework is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of 
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+// See the GNU General Public License for more details.
+//
+// More information of Gurux products: http://www.gurux.org
+//
+// This code is licensed under the GNU General Public License v2. 
+// Full text may be retrieved at http://www.gnu.org/licenses/gpl-2.0.txt
+//---------------------------------------------------------------------------
+
+package gurux.net;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Byte ring tests.
+ */
+public class GXByteRingTest {
+
+    /**
+     * Capacity is rounded up to power of two.
+     */
+    @Test
+    public void capacity() {
+        assertEquals(1024, new GXByteRing(1000).capacity());
+        assertEquals(16, new GXByteRing(16).capacity());
+    }
+
+    /**
+     * Data is read in the same order as it's written over the ring end.
+     */
+    @Test
+    public void wrap() throws InterruptedException {
+        GXByteRing ring = new GXByteRing(16);
+        byte[] target = new byte[16];
+        for (int round = 0; round != 10; ++round) {
+            byte[] data = new byte[11];
+            for (int pos = 0; pos != data.length; ++pos) {
+                data[pos] = (byte) (round + pos);
+            }
+            assertTrue(ring.write(data, 0, data.length));
+            assertEquals(data.length, ring.available());
+            assertEquals(data.length, ring.read(target, 0, target.length));
+            for (int pos = 0; pos != data.length; ++pos) {
+                assertEquals(data[pos], target[pos]);
+            }
+        }
+    }
+
+    /**
+     * Discard from other thread is applied before the next read.
+     */
+    @Test
+    public void discard() throws Exception {
+        final GXByteRing ring = new GXByteRing(16);
+        assertTrue(ring.write(new byte[]{1, 2, 3}, 0, 3));
+        Thread t = new Thread(ring::discard);
+        t.start();
+        t.join();
+        assertTrue(ring.write(new byte[]{4, 5}, 0, 2));
+        byte[] target = new byte[16];
+        assertEquals(2, ring.read(target, 0, target.length));
+        assertEquals(4, target[0]);
+        assertEquals(5, target[1]);
+    }
+
+    /**
+     * Producer drops the data if nobody reads the full ring.
+     */
+    @Test(timeout = 10000)
+    public void overflow() throws InterruptedException {
+        GXByteRing ring = new GXByteRing(16);
+        byte[] data = new byte[10];
+        assertTrue(ring.write(data, 0, data.length));
+        long start = System.nanoTime();
+        assertFalse(ring.write(data, 0, data.length));
+        assertTrue(System.nanoTime() - start
+                >= (GXByteRing.OVERFLOW_WAIT - 50) * 1000000L);
+        assertEquals(4, ring.getDropped());
+        // Producer doesn't wait again until the consumer has read.
+        start = System.nanoTime();
+        assertFalse(ring.write(data, 0, data.length));
+        assertTrue(System.nanoTime() - start
+                < GXByteRing.OVERFLOW_WAIT * 1000000L);
+        assertEquals(14, ring.getDropped());
+        assertEquals(16, ring.read(new byte[16], 0, 16));
+        assertTrue(ring.write(data, 0, data.length));
+    }
+
+    /**
+     * Consumer receives all bytes when producer is faster than consumer.
+     */
+    @Test(timeout = 10000)
+    public void producerConsumer() throws Exception {
+        final GXByteRing ring = new GXByteRing(64);
+        final int count = 100000;
+        Thread producer = new Thread(() -> {
+            byte[] data = new byte[7];
+            try {
+                for (int pos = 0; pos < count; pos += data.length) {
+                    int n = Math.min(data.length, count - pos);
+                    for (int i = 0; i != n; ++i) {
+                        data[i] = (byte) (pos + i);
+                    }
+                    ring.write(data, 0, n);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        producer.start();
+        byte[] received = new byte[count];
+        int size = 0;
+        long deadline = System.nanoTime() + 5000000000L;
+        while (size != count) {
+            assertTrue(ring.awaitData(deadline));
+            size += ring.read(received, size, count - size);
+        }
+        producer.join();
+        byte[] expected = new byte[count];
+        for (int pos = 0; pos != count; ++pos) {
+            expected[pos] = (byte) pos;
+        }
+        assertArrayEquals(expected, received);
+        assertEquals(0, ring.getDropped());
+    }
+}
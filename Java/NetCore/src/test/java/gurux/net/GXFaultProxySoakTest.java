@@ -0,0 +1,407 @@
+//
+// --------------------------------------------------------------------------
+//  Gurux Ltd
+// 
+//
+//
+// Filename:        $HeadURL$
+//
+// Version:         $Revision$,
+//                  $Date$
+//                  $Author$
+//
+// Copyright (c) Gurux Ltd
+//
+//---------------------------------------------------------------------------
+//
+//  DESCRIPTION
+//
+// This file is a part of Gurux Device Framework.
+//
+// Gurux Device Framework is Open Source software; you can redistribute it
+// and/or modify it under the terms of the GNU General Public License 
+// as published by the Free Software Foundation; version 2 of the License.
+// Gurux Device Framework is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of 
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+// See the GNU General Public License for more details.
+//
+// More information of Gurux products: http://www.gurux.org
+//
+// This code is licensed under the GNU General Public License v2. 
+// Full text may be retrieved at http://www.gnu.org/licenses/gpl-2.0.txt
+//---------------------------------------------------------------------------
+
+package gurux.net;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Test;
+
+import gurux.net.enums.NetworkType;
+
+/**
+ * Soak tests that run the transport through the fault proxy against a
+ * local echo server.
+ * <p>
+ * Duration of the soak test is set in seconds with the
+ * gurux.net.soakSeconds system property.
+ * </p>
+ */
+public class GXFaultProxySoakTest {
+
+    /**
+     * Maximum wait time of the echo in milliseconds.
+     */
+    private static final int WAIT_TIME = 10000;
+
+    /**
+     * Collects received data and chunk boundaries.
+     */
+    private static final class Listener implements IGXTransportListener {
+        /**
+         * Received data.
+         */
+        private final ByteArrayOutputStream mReceived = new ByteArrayOutputStream();
+
+        /**
+         * Positions where received chunks end.
+         */
+        private final List<Integer> mBoundaries = new ArrayList<Integer>();
+
+        /**
+         * Is peer closed the connection.
+         */
+        private boolean mPeerClosed;
+
+        @Override
+        public synchronized void onReceived(final byte[] buffer, final int count,
+                                            final String info) {
+            mReceived.write(buffer, 0, count);
+            mBoundaries.add(mReceived.size());
+            notifyAll();
+        }
+
+        @Override
+        public void onError(final Exception ex) {
+            // Errors are seen as missing data.
+        }
+
+        @Override
+        public synchronized void onPeerClosed() {
+            mPeerClosed = true;
+            notifyAll();
+        }
+
+        @Override
+        public void awaitDemand() {
+            // Data is always read.
+        }
+
+        @Override
+        public void onWriteStarted() {
+            // Write times are not used.
+        }
+
+        @Override
+        public void onWriteCompleted() {
+            // Write times are not used.
+        }
+
+        /**
+         * Wait until given amount of bytes is received.
+         *
+         * @param size Amount of bytes.
+         * @return Received data.
+         */
+        synchronized byte[] await(final int size) throws InterruptedException {
+            long end = System.currentTimeMillis() + WAIT_TIME;
+            while (mReceived.size() < size) {
+                long wait = end - System.currentTimeMillis();
+                if (wait <= 0) {
+                    break;
+                }
+                wait(wait);
+            }
+            return mReceived.toByteArray();
+        }
+
+        /**
+         * Wait until the peer closes the connection.
+         *
+         * @return True, if peer closed the connection.
+         */
+        synchronized boolean awaitPeerClosed() throws InterruptedException {
+            long end = System.currentTimeMillis() + WAIT_TIME;
+            while (!mPeerClosed && System.currentTimeMillis() < end) {
+                wait(Math.max(1, end - System.currentTimeMillis()));
+            }
+            return mPeerClosed;
+        }
+    }
+
+    /**
+     * Echo server socket.
+     */
+    private Closeable mServer;
+
+    /**
+     * Fault proxy.
+     */
+    private GXFaultProxy mProxy;
+
+    /**
+     * Transport.
+     */
+    private GXNetTransport mTransport;
+
+    /**
+     * Closeable that doesn't throw checked exceptions.
+     */
+    private interface Closeable {
+        /**
+         * Close the resource.
+         */
+        void close();
+    }
+
+    /**
+     * Close transport, proxy and echo server.
+     */
+    @After
+    public void tearDown() throws IOException {
+        if (mTransport != null) {
+            mTransport.abort();
+        }
+        if (mProxy != null) {
+            mProxy.stop();
+        }
+        if (mServer != null) {
+            mServer.close();
+        }
+    }
+
+    /**
+     * Start TCP echo server.
+     *
+     * @return Server port.
+     */
+    private int startTcpEcho() throws IOException {
+        final ServerSocket server = new ServerSocket(0, 10, InetAddress.getLoopbackAddress());
+        mServer = () -> {
+            try {
+                server.close();
+            } catch (IOException e) {
+                // Server is already closed.
+            }
+        };
+        Thread thread = new Thread(() -> {
+            while (!server.isClosed()) {
+                try {
+                    final Socket socket = server.accept();
+                    Thread echo = new Thread(() -> {
+                        byte[] buffer = new byte[4096];
+                        try (Socket s = socket) {
+                            InputStream in = s.getInputStream();
+                            OutputStream out = s.getOutputStream();
+                            int count;
+                            while ((count = in.read(buffer)) != -1) {
+                                out.write(buffer, 0, count);
+                            }
+                        } catch (IOException e) {
+                            // Connection is closed.
+                        }
+                    }, "echo");
+                    echo.setDaemon(true);
+                    echo.start();
+                } catch (IOException e) {
+                    // Server is closed.
+                }
+            }
+        }, "echo server");
+        thread.setDaemon(true);
+        thread.start();
+        return server.getLocalPort();
+    }
+
+    /**
+     * Start UDP echo server.
+     *
+     * @return Server port.
+     */
+    private int startUdpEcho() throws IOException {
+        final DatagramSocket server = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+        mServer = server::close;
+        Thread thread = new Thread(() -> {
+            byte[] buffer = new byte[GXNetTransport.MAX_DATAGRAM_SIZE];
+            DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+            while (!server.isClosed()) {
+                try {
+                    packet.setLength(buffer.length);
+                    server.receive(packet);
+                    server.send(new DatagramPacket(buffer, packet.getLength(),
+                            packet.getSocketAddress()));
+                } catch (IOException e) {
+                    // Server is closed.
+                }
+            }
+        }, "echo server");
+        thread.setDaemon(true);
+        thread.start();
+        return server.getLocalPort();
+    }
+
+    /**
+     * Start the proxy and open the transport to it.
+     *
+     * @param protocol Used protocol.
+     * @param listener Transport listener.
+     */
+    private void open(final NetworkType protocol, final Listener listener)
+            throws Exception {
+        mProxy.start();
+        mTransport = new GXNetTransport(listener);
+        mTransport.setCloseTimeout(1000);
+        mTransport.open(new GXNetConfig(protocol, "127.0.0.1", mProxy.getLocalPort()));
+    }
+
+    /**
+     * Data stays intact and in order when latency, jitter, segment
+     * splitting and bandwidth limit are applied for the soak duration.
+     */
+    @Test(timeout = 600000)
+    public void tcpSoak() throws Exception {
+        int seconds = Integer.getInteger("gurux.net.soakSeconds", 2);
+        int port = startTcpEcho();
+        mProxy = new GXFaultProxy(NetworkType.TCP, 0, "127.0.0.1", port);
+        mProxy.setSeed(1);
+        mProxy.setLatency(2, 3);
+        mProxy.setMaxSegmentSize(7);
+        mProxy.setSplitEop(new byte[]{0x7E});
+        mProxy.setBytesPerSecond(1000000);
+        Listener listener = new Listener();
+        open(NetworkType.TCP, listener);
+        Random random = new Random(1);
+        ByteArrayOutputStream sent = new ByteArrayOutputStream();
+        long end = System.currentTimeMillis() + seconds * 1000L;
+        while (System.currentTimeMillis() < end) {
+            byte[] frame = new byte[1 + random.nextInt(200)];
+            random.nextBytes(frame);
+            frame[frame.length - 1] = 0x7E;
+            mTransport.write(frame);
+            sent.write(frame);
+            // Each frame is echoed before the next one is sent.
+            assertEquals(sent.size(), listener.await(sent.size()).length);
+        }
+        assertArrayEquals(sent.toByteArray(), listener.await(sent.size()));
+        assertTrue(mProxy.getForwardedBytes() >= 2L * sent.size());
+    }
+
+    /**
+     * Bandwidth limit is applied to small segments.
+     */
+    @Test(timeout = 30000)
+    public void bandwidthOfSmallSegments() throws Exception {
+        int port = startTcpEcho();
+        mProxy = new GXFaultProxy(NetworkType.TCP, 0, "127.0.0.1", port);
+        mProxy.setMaxSegmentSize(10);
+        mProxy.setBytesPerSecond(10000);
+        Listener listener = new Listener();
+        open(NetworkType.TCP, listener);
+        byte[] data = new byte[2000];
+        long start = System.currentTimeMillis();
+        mTransport.write(data);
+        assertEquals(data.length, listener.await(data.length).length);
+        // 2000 bytes are forwarded in both directions at 10000 bytes/s.
+        assertTrue(System.currentTimeMillis() - start >= 300);
+    }
+
+    /**
+     * Segment is split inside of the whole end of packet, not at the first
+     * byte that matches the end of packet.
+     */
+    @Test(timeout = 30000)
+    public void splitAtWholeEop() throws Exception {
+        int port = startTcpEcho();
+        mProxy = new GXFaultProxy(NetworkType.TCP, 0, "127.0.0.1", port);
+        mProxy.setSplitEop(new byte[]{0x7E, 0x01});
+        Listener listener = new Listener();
+        open(NetworkType.TCP, listener);
+        byte[] data = new byte[]{0x7E, 0x02, 0x03, 0x7E, 0x01};
+        mTransport.write(data);
+        assertArrayEquals(data, listener.await(data.length));
+        synchronized (listener) {
+            assertFalse(listener.mBoundaries.contains(1));
+        }
+    }
+
+    /**
+     * Reordered datagram is sent even if the next datagram doesn't arrive.
+     */
+    @Test(timeout = 30000)
+    public void udpReorderIsNotLoss() throws Exception {
+        int port = startUdpEcho();
+        mProxy = new GXFaultProxy(NetworkType.UDP, 0, "127.0.0.1", port);
+        mProxy.setReorderRate(1);
+        Listener listener = new Listener();
+        open(NetworkType.UDP, listener);
+        byte[] data = new byte[]{1, 2, 3};
+        mTransport.write(data);
+        assertArrayEquals(data, listener.await(data.length));
+        assertEquals(0, mProxy.getDroppedCount());
+        assertTrue(mProxy.getReorderedCount() >= 1);
+    }
+
+    /**
+     * Latency delays each datagram, but it doesn't limit the throughput.
+     */
+    @Test(timeout = 30000)
+    public void udpLatencyThroughput() throws Exception {
+        int port = startUdpEcho();
+        mProxy = new GXFaultProxy(NetworkType.UDP, 0, "127.0.0.1", port);
+        mProxy.setLatency(300, 0);
+        Listener listener = new Listener();
+        open(NetworkType.UDP, listener);
+        long start = System.currentTimeMillis();
+        for (int pos = 0; pos != 20; ++pos) {
+            mTransport.write(new byte[]{(byte) pos});
+        }
+        assertEquals(20, listener.await(20).length);
+        // Datagrams are delayed in both directions.
+        long elapsed = System.currentTimeMillis() - start;
+        assertTrue(elapsed >= 600);
+        assertTrue(elapsed < 3000);
+    }
+
+    /**
+     * Reset connection is seen as peer close.
+     */
+    @Test(timeout = 30000)
+    public void reset() throws Exception {
+        int port = startTcpEcho();
+        mProxy = new GXFaultProxy(NetworkType.TCP, 0, "127.0.0.1", port);
+        mProxy.setResetRate(1);
+        Listener listener = new Listener();
+        open(NetworkType.TCP, listener);
+        mTransport.write(new byte[]{1});
+        assertTrue(listener.awaitPeerClosed());
+        assertEquals(1, mProxy.getResetCount());
+    }
+}
@@ -0,0 +1,200 @@
+//
+// --------------------------------------------------------------------------
+//  Gurux Ltd
+// 
+//
+//
+// Filename:        $HeadURL$
+//
+// Version:         $Revision$,
+//                  $Date$
+//                  $Author$
+//
+// Copyright (c) Gurux Ltd
+//
+//---------------------------------------------------------------------------
+//
+//  DESCRIPTION
+//
+// This file is a part of Gurux Device Framework.
+//
+// Gurux Device Framework is Open Source software; you can redistribute it
+// and/or modify it under the terms of the GNU General Public License 
+// as published by the Free Software Foundation; version 2 of the License.
+// Gurux Device Framework is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of 
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+// See the GNU General Public License for more details.
+//
+// More information of Gurux products: http://www.gurux.org
+//
+// This code is licensed under the GNU General Public License v2. 
+// Full text may be retrieved at http://www.gnu.org/licenses/gpl-2.0.txt
+//---------------------------------------------------------------------------
+
+package gurux.net;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+/**
+ * Compares fixed receive buffers to the adaptive receive buffer.
+ * <p>
+ * Local server sends a traffic mix of small frames and large bursts over
+ * the loopback connection. For each buffer strategy throughput, amount of
+ * reads, allocated bytes and average buffer size are printed. This is
+ * started from main and it's not run with unit tests.
+ * </p>
+ */
+public final class GXReceiveBufferBenchmark {
+
+    /**
+     * Amount of bytes that the server sends.
+     */
+    private static final int TOTAL = 128 * 1024 * 1024;
+
+    /**
+     * Size of the small frame.
+     */
+    private static final int SMALL = 64;
+
+    /**
+     * Size of the burst.
+     */
+    private static final int BURST = 256 * 1024;
+
+    /**
+     * Constructor.
+     */
+    private GXReceiveBufferBenchmark() {
+    }
+
+    /**
+     * Buffer strategy.
+     */
+    private interface Strategy {
+        /**
+         * Returns buffer for the next read.
+         *
+         * @param last Buffer of the last read.
+         * @param count Amount of bytes in the last read.
+         * @return Buffer.
+         */
+        byte[] next(byte[] last, int count);
+    }
+
+    /**
+     * Returns bytes allocated by the current thread or -1 if the JVM
+     * doesn't support it.
+     *
+     * @return Allocated bytes.
+     */
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean)
+                    .getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    /**
+     * Start server that sends the traffic mix to one client.
+     *
+     * @param server Server socket.
+     */
+    private static void startServer(final ServerSocket server) {
+        Thread thread = new Thread(() -> {
+            try (Socket socket = server.accept()) {
+                OutputStream out = socket.getOutputStream();
+                byte[] small = new byte[SMALL];
+                byte[] burst = new byte[BURST];
+                int sent = 0;
+                while (sent < TOTAL) {
+                    // Hundred small frames are followed by one burst.
+                    for (int pos = 0; pos != 100 && sent < TOTAL; ++pos) {
+                        out.write(small);
+                        sent += small.length;
+                    }
+                    out.write(burst, 0, Math.min(burst.length, TOTAL - sent));
+                    sent += Math.min(burst.length, TOTAL - sent);
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }, "Benchmark server");
+        thread.start();
+    }
+
+    /**
+     * Receive all the data with the given strategy and print the results.
+     *
+     * @param name     Strategy name.
+     * @param initial  Initial buffer.
+     * @param strategy Buffer strategy.
+     */
+    private static void run(final String name, final byte[] initial,
+                            final Strategy strategy) throws IOException {
+        try (ServerSocket server = new ServerSocket(0, 1,
+                InetAddress.getLoopbackAddress())) {
+            startServer(server);
+            try (Socket socket = new Socket(InetAddress.getLoopbackAddress(),
+                    server.getLocalPort())) {
+                InputStream in = socket.getInputStream();
+                byte[] buffer = initial;
+                long reads = 0;
+                long bufferBytes = 0;
+                long received = 0;
+                long allocated = allocatedBytes();
+                long start = System.nanoTime();
+                int count;
+                while ((count = in.read(buffer)) > 0) {
+                    ++reads;
+                    bufferBytes += buffer.length;
+                    received += count;
+                    buffer = strategy.next(buffer, count);
+                }
+                long elapsed = System.nanoTime() - start;
+                allocated = allocatedBytes() - allocated;
+                System.out.println(String.format(
+                        "%s: %.1f MB/s, %d reads, %d KB allocated, %d B average buffer",
+                        name, received * 1000000000.0 / elapsed / (1024 * 1024),
+                        reads, allocated / 1024, bufferBytes / reads));
+            }
+        }
+    }
+
+    /**
+     * Run the benchmark.
+     *
+     * @param args Command line arguments. Amount of rounds is optional.
+     * @throws IOException Connection failed.
+     */
+    public static void main(final String[] args) throws IOException {
+        int rounds = 3;
+        if (args.length != 0) {
+            rounds = Integer.parseInt(args[0]);
+        }
+        for (int round = 0; round != rounds; ++round) {
+            run("Fixed " + GXNetTransport.RECEIVE_BUFFER_SIZE,
+                    new byte[GXNetTransport.RECEIVE_BUFFER_SIZE], (last, count) -> last);
+            run("Fixed 65536", new byte[65536], (last, count) -> last);
+            final GXReceiveBufferSizer sizer = new GXReceiveBufferSizer(64,
+                    GXNetTransport.RECEIVE_BUFFER_SIZE, 65536);
+            // Buffer is reallocated only when the size changes, as in the
+            // receive thread.
+            run("Adaptive", new byte[sizer.getSize()], (last, count) -> {
+                sizer.record(count);
+                if (last.length != sizer.getSize()) {
+                    return new byte[sizer.getSize()];
+                }
+                return last;
+            });
+        }
+    }
+}
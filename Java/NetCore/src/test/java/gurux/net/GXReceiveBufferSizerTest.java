@@ -0,0 +1,88 @@
+//
+// --------------------------------------------------------------------------
+//  Gurux Ltd
+// 
+//
+//
+// Filename:        $HeadURL$
+//
+// Version:         $Revision$,
+//                  $Date$
+//                  $Author$
+//
+// Copyright (c) Gurux Ltd
+//
+//---------------------------------------------------------------------------
+//
+//  DESCRIPTION
+//
+// This file is a part of Gurux Device Framework.
+//
+// Gurux Device Framework is Open Source software; you can redistribute it
+// and/or modify it under the terms of the GNU General Public License 
+// as published by the Free Software Foundation; version 2 of the License.
+// Gurux Device Framework is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of 
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+// See the GNU General Public License for more details.
+//
+// More information of Gurux products: http://www.gurux.org
+//
+// This code is licensed under the GNU General Public License v2. 
+// Full text may be retrieved at http://www.gnu.org/licenses/gpl-2.0.txt
+//---------------------------------------------------------------------------
+
+package gurux.net;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Adaptive receive buffer size tests.
+ */
+public class GXReceiveBufferSizerTest {
+
+    /**
+     * Buffer grows when reads fill the buffer and it stays inside the
+     * maximum size.
+     */
+    @Test
+    public void grow() {
+        GXReceiveBufferSizer sizer = new GXReceiveBufferSizer(64, 1518, 65536);
+        int last = sizer.getSize();
+        for (int pos = 0; pos != 20; ++pos) {
+            sizer.record(sizer.getSize());
+            assertTrue(sizer.getSize() >= last);
+            last = sizer.getSize();
+        }
+        assertEquals(65536, sizer.getSize());
+    }
+
+    /**
+     * Buffer shrinks only after two small reads in a row and it stays
+     * inside the minimum size.
+     */
+    @Test
+    public void shrink() {
+        GXReceiveBufferSizer sizer = new GXReceiveBufferSizer(64, 1518, 65536);
+        int initial = sizer.getSize();
+        sizer.record(10);
+        assertEquals(initial, sizer.getSize());
+        sizer.record(10);
+        assertTrue(sizer.getSize() < initial);
+        for (int pos = 0; pos != 200; ++pos) {
+            sizer.record(10);
+        }
+        assertEquals(64, sizer.getSize());
+    }
+
+    /**
+     * Invalid limits are rejected.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidLimits() {
+        new GXReceiveBufferSizer(1000, 100, 10000);
+    }
+}
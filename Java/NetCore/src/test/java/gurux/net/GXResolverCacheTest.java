@@ -0,0 +1,323 @@
+//
+// --------------------------------------------------------------------------
+//  Gurux Ltd
+// 
+//
+//
+// Filename:        $HeadURL$
+//
+// Version:         $Revision$,
+//                  $Date$
+//                  $Author$
+//
+// Copyright (c) Gurux Ltd
+//
+//---------------------------------------------------------------------------
+//
+//  DESCRIPTION
+//
+// This file is a part of Gurux Device Framework.
+//
+// Gurux Device Framework is Open Source software; you can redistribute it
+// and/or modify it under the terms of the GNU General Public License 
+// as published by the Free Software Foundation; version 2 of the License.
+// Gurux Device Framework is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of 
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+// See the GNU General Public License for more details.
+//
+// More information of Gurux products: http://www.gurux.org
+//
+// This code is licensed under the GNU General Public License v2. 
+// Full text may be retrieved at http://www.gnu.org/licenses/gpl-2.0.txt
+//---------------------------------------------------------------------------
+
+package gurux.net;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Resolver cache tests. Stub resolver is used instead of the system
+ * resolver.
+ */
+public class GXResolverCacheTest {
+
+    /**
+     * Stub resolver that counts resolutions.
+     */
+    private static final class StubResolver implements IGXNameResolver {
+        /**
+         * Amount of resolutions.
+         */
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        /**
+         * Resolver waits this before it returns.
+         */
+        private volatile CountDownLatch mRelease;
+
+        /**
+         * Signaled when resolution is started.
+         */
+        private final CountDownLatch mStarted = new CountDownLatch(1);
+
+        /**
+         * Does resolution fail.
+         */
+        private volatile boolean mFail;
+
+        /**
+         * Does resolver throw unexpected exception.
+         */
+        private volatile boolean mThrow;
+
+        /**
+         * Returned address.
+         */
+        private volatile InetAddress mAddress;
+
+        @Override
+        public InetAddress[] resolve(final String host) throws UnknownHostException {
+            mCount.incrementAndGet();
+            mStarted.countDown();
+            CountDownLatch release = mRelease;
+            if (release != null) {
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if (mFail) {
+                throw new UnknownHostException(host);
+            }
+            if (mThrow) {
+                throw new SecurityException(host);
+            }
+            return new InetAddress[]{mAddress};
+        }
+    }
+
+    /**
+     * Stub resolver.
+     */
+    private StubResolver mStub;
+
+    /**
+     * Tested cache.
+     */
+    private GXResolverCache mCache;
+
+    /**
+     * Create cache with the stub resolver.
+     */
+    @Before
+    public void setUp() throws Exception {
+        mStub = new StubResolver();
+        mStub.mAddress = InetAddress.getByAddress("meter", new byte[]{10, 0, 0, 1});
+        mCache = new GXResolverCache();
+        mCache.setResolver(mStub);
+        // Background resolutions are run in the calling thread.
+        mCache.setExecutor(new Executor() {
+            @Override
+            public void execute(final Runnable command) {
+                command.run();
+            }
+        });
+    }
+
+    /**
+     * Resolved address is cached for the time to live.
+     */
+    @Test
+    public void hit() throws Exception {
+        assertSame(mStub.mAddress, mCache.resolve("meter"));
+        assertSame(mStub.mAddress, mCache.resolve("meter"));
+        assertEquals(1, mStub.mCount.get());
+        assertEquals(1, mCache.getHits());
+        assertEquals(1, mCache.getMisses());
+    }
+
+    /**
+     * Failed resolution is cached for the negative time to live.
+     */
+    @Test
+    public void negative() {
+        mStub.mFail = true;
+        for (int pos = 0; pos != 2; ++pos) {
+            try {
+                mCache.resolve("meter");
+                fail();
+            } catch (UnknownHostException e) {
+                // Expected.
+            }
+        }
+        assertEquals(1, mStub.mCount.get());
+    }
+
+    /**
+     * Concurrent misses of the same name start only one resolution.
+     */
+    @Test(timeout = 10000)
+    public void concurrentMisses() throws Exception {
+        mStub.mRelease = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(2);
+        final InetAddress[] results = new InetAddress[2];
+        for (int pos = 0; pos != 2; ++pos) {
+            final int index = pos;
+            new Thread(() -> {
+                try {
+                    results[index] = mCache.resolve("meter");
+                } catch (UnknownHostException e) {
+                    // Result stays null.
+                } finally {
+                    done.countDown();
+                }
+            }).start();
+        }
+        mStub.mStarted.await();
+        // Give the second thread time to find the running resolution.
+        Thread.sleep(100);
+        mStub.mRelease.countDown();
+        done.await();
+        assertEquals(1, mStub.mCount.get());
+        assertSame(mStub.mAddress, results[0]);
+        assertSame(mStub.mAddress, results[1]);
+    }
+
+    /**
+     * Stale address is returned while the name is resolved again and
+     * failed background resolution is not retried before the negative time
+     * to live expires.
+     */
+    @Test
+    public void staleRefreshBackOff() throws Exception {
+        mCache.setTimeToLive(0);
+        mCache.setStaleTime(60000);
+        mCache.setNegativeTimeToLive(60000);
+        InetAddress first = mStub.mAddress;
+        mCache.resolve("meter");
+        mStub.mFail = true;
+        Thread.sleep(1);
+        for (int pos = 0; pos != 5; ++pos) {
+            assertSame(first, mCache.resolve("meter"));
+        }
+        // First stale hit resolved again and failed. Others backed off.
+        assertEquals(2, mStub.mCount.get());
+    }
+
+    /**
+     * Successful background resolution replaces the stale address.
+     */
+    @Test
+    public void staleRefresh() throws Exception {
+        mCache.setTimeToLive(0);
+        mCache.setStaleTime(60000);
+        InetAddress first = mStub.mAddress;
+        mCache.resolve("meter");
+        mStub.mAddress = InetAddress.getByAddress("meter", new byte[]{10, 0, 0, 2});
+        Thread.sleep(1);
+        // Stale address is returned and the name is resolved again.
+        assertSame(first, mCache.resolve("meter"));
+        assertEquals(2, mStub.mCount.get());
+        Thread.sleep(1);
+        assertSame(mStub.mAddress, mCache.resolve("meter"));
+    }
+
+    /**
+     * Names are resolved in parallel.
+     */
+    @Test(timeout = 10000)
+    public void prefetch() throws Exception {
+        mCache.setExecutor(null);
+        assertEquals(3, mCache.prefetch(Arrays.asList("a", "b", "c"), 5000));
+        assertEquals(3, mStub.mCount.get());
+        mCache.resolve("a");
+        assertEquals(3, mStub.mCount.get());
+    }
+
+    /**
+     * Unexpected exception of the background resolution doesn't stop the
+     * next background resolutions.
+     */
+    @Test
+    public void staleRefreshAfterException() throws Exception {
+        mCache.setTimeToLive(0);
+        mCache.setStaleTime(60000);
+        mCache.setNegativeTimeToLive(0);
+        InetAddress first = mStub.mAddress;
+        mCache.resolve("meter");
+        mStub.mThrow = true;
+        Thread.sleep(1);
+        assertSame(first, mCache.resolve("meter"));
+        mStub.mThrow = false;
+        mStub.mAddress = InetAddress.getByAddress("meter", new byte[]{10, 0, 0, 2});
+        Thread.sleep(1);
+        assertSame(first, mCache.resolve("meter"));
+        assertEquals(3, mStub.mCount.get());
+        Thread.sleep(1);
+        assertSame(mStub.mAddress, mCache.resolve("meter"));
+    }
+
+    /**
+     * Rejected background resolution doesn't stop the next background
+     * resolutions.
+     */
+    @Test
+    public void staleRefreshRejected() throws Exception {
+        mCache.setTimeToLive(0);
+        mCache.setStaleTime(60000);
+        mCache.setNegativeTimeToLive(0);
+        InetAddress first = mStub.mAddress;
+        mCache.resolve("meter");
+        mCache.setExecutor(new Executor() {
+            @Override
+            public void execute(final Runnable command) {
+                throw new RejectedExecutionException();
+            }
+        });
+        Thread.sleep(1);
+        assertSame(first, mCache.resolve("meter"));
+        mCache.setExecutor(new Executor() {
+            @Override
+            public void execute(final Runnable command) {
+                command.run();
+            }
+        });
+        Thread.sleep(1);
+        assertSame(first, mCache.resolve("meter"));
+        assertEquals(2, mStub.mCount.get());
+    }
+
+    /**
+     * Least recently used name is removed when the cache is full.
+     */
+    @Test
+    public void maxEntries() throws Exception {
+        mCache.setMaxEntries(2);
+        mCache.resolve("a");
+        mCache.resolve("b");
+        mCache.resolve("a");
+        mCache.resolve("c");
+        assertEquals(2, mCache.getEntryCount());
+        assertEquals(3, mStub.mCount.get());
+        mCache.resolve("a");
+        assertEquals(3, mStub.mCount.get());
+        mCache.resolve("b");
+        assertEquals(4, mStub.mCount.get());
+    }
+}
@@ -0,0 +1,212 @@
+//
+// --------------------------------------------------------------------------
+//  Gurux Ltd
+// 
+//
+//
+// Filename:        $HeadURL$
+//
+// Version:         $Revision$,
+//                  $Date$
+//                  $Author$
+//
+// Copyright (c) Gurux Ltd
+//
+//---------------------------------------------------------------------------
+//
+//  DESCRIPTION
+//
+// This file is a part of Gurux Device Framework.
+//
+// Gurux Device Framework is Open Source software; you can redistribute it
+// and/or modify it under the terms of the GNU General Public License 
+// as published by the Free Software Foundation; version 2 of the License.
+// Gurux Device Framework is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of 
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+// See the GNU General Public License for more details.
+//
+// More information of Gurux products: http://www.gurux.org
+//
+// This code is licensed under the GNU General Public License v2. 
+// Full text may be retrieved at http://www.gnu.org/licenses/gpl-2.0.txt
+//---------------------------------------------------------------------------
+
+
+package gurux.net;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Round-trip time estimator tests.
+ */
+public class GXRttEstimatorTest {
+
+    /**
+     * Timeout is not known before the first round-trip.
+     */
+    @Test
+    public void noEstimate() {
+        GXRttEstimator rtt = new GXRttEstimator();
+        assertFalse(rtt.hasEstimate());
+        assertEquals(-1, rtt.getTimeout());
+    }
+
+    /**
+     * First round-trip sets the variance to half of it and the next
+     * round-trips are smoothed as in RFC 6298.
+     */
+    @Test
+    public void update() {
+        GXRttEstimator rtt = new GXRttEstimator();
+        rtt.addSample(100);
+        assertTrue(rtt.hasEstimate());
+        assertEquals(100, rtt.getSmoothedRtt());
+        assertEquals(50, rtt.getRttVariance());
+        assertEquals(300, rtt.getTimeout());
+        rtt.addSample(200);
+        // Variance = 3/4 * 50 + 1/4 * |100 - 200| = 62.5.
+        // Smoothed = 7/8 * 100 + 1/8 * 200 = 112.5.
+        assertEquals(2, rtt.getSampleCount());
+        assertEquals(113, rtt.getSmoothedRtt());
+        assertEquals(63, rtt.getRttVariance());
+        assertEquals(363, rtt.getTimeout());
+    }
+
+    /**
+     * Timeout is doubled after each expired reply up to six times and the
+     * next round-trip clears the backoff.
+     */
+    @Test
+    public void backOff() {
+        GXRttEstimator rtt = new GXRttEstimator();
+        rtt.addSample(100);
+        int expected = 300;
+        for (int pos = 0; pos != 6; ++pos) {
+            rtt.backOff();
+            expected *= 2;
+            assertEquals(expected, rtt.getTimeout());
+        }
+        rtt.backOff();
+        assertEquals(300 << 6, rtt.getTimeout());
+        rtt.addSample(100);
+        assertTrue(rtt.getTimeout() < 300 << 1);
+    }
+
+    /**
+     * Backed off timeout doesn't exceed the maximum timeout.
+     */
+    @Test
+    public void backOffMaxTimeout() {
+        GXRttEstimator rtt = new GXRttEstimator();
+        rtt.setMaxTimeout(1000);
+        rtt.addSample(100);
+        rtt.backOff();
+        assertEquals(600, rtt.getTimeout());
+        rtt.backOff();
+        assertEquals(1000, rtt.getTimeout());
+    }
+
+    /**
+     * Timeout is clamped between the minimum and the maximum timeout.
+     */
+    @Test
+    public void clamp() {
+        GXRttEstimator rtt = new GXRttEstimator();
+        rtt.addSample(10);
+        assertEquals(200, rtt.getTimeout());
+        rtt.setMinTimeout(20);
+        assertEquals(30, rtt.getTimeout());
+        rtt.reset();
+        rtt.addSample(100000);
+        assertEquals(60000, rtt.getTimeout());
+    }
+
+    /**
+     * Variance adds at least the timer granularity.
+     */
+    @Test
+    public void granularity() {
+        GXRttEstimator rtt = new GXRttEstimator();
+        rtt.setMinTimeout(1);
+        rtt.restore(100, 0);
+        assertEquals(110, rtt.getTimeout());
+    }
+
+    /**
+     * Minimum timeout must be positive.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidMinTimeout() {
+        new GXRttEstimator().setMinTimeout(0);
+    }
+
+    /**
+     * Maximum timeout can't be less than the minimum timeout.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidMaxTimeout() {
+        GXRttEstimator rtt = new GXRttEstimator();
+        rtt.setMaxTimeout(rtt.getMinTimeout() - 1);
+    }
+
+    /**
+     * Round-trip time can't be negative.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidSample() {
+        new GXRttEstimator().addSample(-1);
+    }
+
+    /**
+     * Restored round-trip time can't be negative.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidRestore() {
+        new GXRttEstimator().restore(-1, 0);
+    }
+
+    /**
+     * Restored estimate is handled as one round-trip and it clears the
+     * backoff.
+     */
+    @Test
+    public void restore() {
+        GXRttEstimator rtt = new GXRttEstimator();
+        rtt.addSample(100);
+        rtt.backOff();
+        rtt.restore(500, 100);
+        assertEquals(1, rtt.getSampleCount());
+        assertEquals(900, rtt.getTimeout());
+        rtt.addSample(500);
+        // Variance = 3/4 * 100 + 1/4 * |500 - 500| = 75.
+        assertEquals(500, rtt.getSmoothedRtt());
+        assertEquals(75, rtt.getRttVariance());
+        assertEquals(800, rtt.getTimeout());
+    }
+
+    /**
+     * Reset forgets the estimate and the next round-trip is handled as
+     * the first one.
+     */
+    @Test
+    public void reset() {
+        GXRttEstimator rtt = new GXRttEstimator();
+        rtt.addSample(100);
+        rtt.addSample(300);
+        rtt.backOff();
+        rtt.reset();
+        assertFalse(rtt.hasEstimate());
+        assertEquals(0, rtt.getSampleCount());
+        assertEquals(0, rtt.getSmoothedRtt());
+        assertEquals(-1, rtt.getTimeout());
+        rtt.addSample(200);
+        assertEquals(200, rtt.getSmoothedRtt());
+        assertEquals(100, rtt.getRttVariance());
+        assertEquals(600, rtt.getTimeout());
+    }
+}
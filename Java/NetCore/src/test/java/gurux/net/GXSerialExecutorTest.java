@@ -0,0 +1,156 @@
+//
+// --------------------------------------------------------------------------
+//  Gurux Ltd
+// 
+//
+//
+// Filename:        $HeadURL$
+//
+// Version:         $Revision$,
+//                  $Date$
+//                  $Author$
+//
+// Copyright (c) Gurux Ltd
+//
+//---------------------------------------------------------------------------
+//
+//  DESCRIPTION
+//
+// This file is a part of Gurux Device Framework.
+//
+// Gurux Device Framework is Open Source software; you can redistribute it
+// and/or modify it under the terms of the GNU General Public License 
+// as published by the Free Software Foundation; version 2 of the License.
+// Gurux Device Framework is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of 
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+// See the GNU General Public License for more details.
+//
+// More information of Gurux products: http://www.gurux.org
+//
+// This code is licensed under the GNU General Public License v2. 
+// Full text may be retrieved at http://www.gnu.org/licenses/gpl-2.0.txt
+//---------------------------------------------------------------------------
+
+
+package gurux.net;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * Serial executor tests.
+ */
+public class GXSerialExecutorTest {
+
+    /**
+     * Amount of tasks.
+     */
+    private static final int COUNT = 10000;
+
+    /**
+     * Tasks are run in order and one at the time with a thread pool.
+     *
+     * @throws InterruptedException Test is interrupted.
+     */
+    @Test
+    public void order() throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            GXSerialExecutor serial = new GXSerialExecutor(pool);
+            final List<Integer> list = new ArrayList<>();
+            final AtomicInteger running = new AtomicInteger();
+            final AtomicInteger overlaps = new AtomicInteger();
+            final CountDownLatch done = new CountDownLatch(COUNT);
+            for (int pos = 0; pos != COUNT; ++pos) {
+                final int value = pos;
+                serial.execute(() -> {
+                    if (running.incrementAndGet() != 1) {
+                        overlaps.incrementAndGet();
+                    }
+                    list.add(value);
+                    running.decrementAndGet();
+                    done.countDown();
+                });
+            }
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+            assertEquals(0, overlaps.get());
+            for (int pos = 0; pos != COUNT; ++pos) {
+                assertEquals(pos, (int) list.get(pos));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Failing task doesn't stop the tasks after it.
+     *
+     * @throws InterruptedException Test is interrupted.
+     */
+    @Test
+    public void failingTask() throws InterruptedException {
+        ExecutorService pool = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r);
+            thread.setUncaughtExceptionHandler((t, e) -> {
+                //Exception is expected.
+            });
+            return thread;
+        });
+        try {
+            GXSerialExecutor serial = new GXSerialExecutor(pool);
+            CountDownLatch done = new CountDownLatch(1);
+            serial.execute(() -> {
+                throw new IllegalStateException("test");
+            });
+            serial.execute(done::countDown);
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Rejected executor doesn't leave the serial executor stuck.
+     *
+     * @throws InterruptedException Test is interrupted.
+     */
+    @Test
+    public void rejected() throws InterruptedException {
+        final AtomicInteger rejects = new AtomicInteger(1);
+        final ExecutorService pool = Executors.newSingleThreadExecutor();
+        try {
+            GXSerialExecutor serial = new GXSerialExecutor(task -> {
+                if (rejects.getAndDecrement() > 0) {
+                    throw new RejectedExecutionException();
+                }
+                pool.execute(task);
+            });
+            final AtomicInteger runs = new AtomicInteger();
+            try {
+                serial.execute(runs::incrementAndGet);
+                fail("Task is rejected.");
+            } catch (RejectedExecutionException ex) {
+                //Expected.
+            }
+            CountDownLatch done = new CountDownLatch(1);
+            serial.execute(done::countDown);
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+            assertEquals(0, runs.get());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
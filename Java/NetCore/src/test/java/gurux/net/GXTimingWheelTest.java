@@ -0,0 +1,221 @@
+//
+// --------------------------------------------------------------------------
+//  Gurux Ltd
+// 
+//
+//
+// Filename:        $HeadURL$
+//
+// Version:         $Revision$,
+//                  $Date$
+//                  $Author$
+//
+// Copyright (c) Gurux Ltd
+//
+//---------------------------------------------------------------------------
+//
+//  DESCRIPTION
+//
+// This file is a part of Gurux Device Framework.
+//
+// Gurux Device Framework is Open Source software; you can redistribute it
+// and/or modify it under the terms of the GNU General Public License 
+// as published by the Free Software Foundation; version 2 of the License.
+// Gurux Device Framework is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of 
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+// See the GNU General Public License for more details.
+//
+// More information of Gurux products: http://www.gurux.org
+//
+// This code is licensed under the GNU General Public License v2. 
+// Full text may be retrieved at http://www.gnu.org/licenses/gpl-2.0.txt
+//---------------------------------------------------------------------------
+
+
+package gurux.net;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+/**
+ * Timing wheel tests. Small wheel is used, so timeouts go around the wheel
+ * several rounds.
+ */
+public class GXTimingWheelTest {
+
+    /**
+     * Tick duration in milliseconds.
+     */
+    private static final int TICK = 10;
+
+    /**
+     * Allowed extra delay in milliseconds, because the worker thread can
+     * be late on a loaded machine.
+     */
+    private static final long SLACK = 500;
+
+    /**
+     * Task that records when it was run.
+     */
+    private static final class Task implements Runnable {
+        /**
+         * Time when task was scheduled.
+         */
+        private final long mStart = System.nanoTime();
+
+        /**
+         * Delay from the schedule to the run in milliseconds.
+         */
+        private volatile long mDelay = -1;
+
+        /**
+         * Signaled when task is run.
+         */
+        private final CountDownLatch mDone = new CountDownLatch(1);
+
+        @Override
+        public void run() {
+            mDelay = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - mStart);
+            mDone.countDown();
+        }
+
+        /**
+         * Wait until task is run and check that it was run in time.
+         *
+         * @param delay Scheduled delay in milliseconds.
+         * @throws InterruptedException Test is interrupted.
+         */
+        void check(final long delay) throws InterruptedException {
+            assertTrue(mDone.await(delay + SLACK, TimeUnit.MILLISECONDS));
+            assertTrue("Run too early: " + mDelay, mDelay >= delay);
+            assertTrue("Run too late: " + mDelay, mDelay <= delay + SLACK);
+        }
+    }
+
+    /**
+     * Timeouts in the same and later rounds of the wheel expire at their
+     * deadlines.
+     *
+     * @throws InterruptedException Test is interrupted.
+     */
+    @Test(timeout = 10000)
+    public void rounds() throws InterruptedException {
+        // Wheel goes around in 40 ms.
+        GXTimingWheel wheel = new GXTimingWheel(TICK, 4);
+        long[] delays = {5, 15, 40, 55, 125, 300};
+        Task[] tasks = new Task[delays.length];
+        for (int pos = 0; pos != delays.length; ++pos) {
+            tasks[pos] = new Task();
+            wheel.schedule(tasks[pos], delays[pos]);
+        }
+        for (int pos = 0; pos != delays.length; ++pos) {
+            tasks[pos].check(delays[pos]);
+        }
+        assertEquals(0, wheel.getCount());
+    }
+
+    /**
+     * Wheel size is rounded up to the power of two.
+     *
+     * @throws InterruptedException Test is interrupted.
+     */
+    @Test(timeout = 10000)
+    public void wheelSize() throws InterruptedException {
+        GXTimingWheel wheel = new GXTimingWheel(TICK, 3);
+        Task task = new Task();
+        wheel.schedule(task, 70);
+        task.check(70);
+    }
+
+    /**
+     * Timeout that is cancelled before the worker adds it to the wheel is
+     * never run and it doesn't affect other timeouts.
+     *
+     * @throws InterruptedException Test is interrupted.
+     */
+    @Test(timeout = 10000)
+    public void cancelBeforeAdd() throws InterruptedException {
+        GXTimingWheel wheel = new GXTimingWheel(TICK, 4);
+        final AtomicBoolean run = new AtomicBoolean();
+        GXTimingWheel.Timeout timeout = wheel.schedule(() -> run.set(true), 20);
+        assertTrue(timeout.cancel());
+        assertFalse(timeout.cancel());
+        assertEquals(0, wheel.getCount());
+        Task task = new Task();
+        wheel.schedule(task, 60);
+        task.check(60);
+        assertFalse(run.get());
+    }
+
+    /**
+     * Timeout that is cancelled after it's added to the wheel is not run.
+     *
+     * @throws InterruptedException Test is interrupted.
+     */
+    @Test(timeout = 10000)
+    public void cancelInWheel() throws InterruptedException {
+        GXTimingWheel wheel = new GXTimingWheel(TICK, 4);
+        final AtomicBoolean run = new AtomicBoolean();
+        GXTimingWheel.Timeout timeout = wheel.schedule(() -> run.set(true), 100);
+        Thread.sleep(30);
+        assertTrue(timeout.cancel());
+        Task task = new Task();
+        wheel.schedule(task, 150);
+        task.check(150);
+        assertFalse(run.get());
+    }
+
+    /**
+     * Timeout whose deadline has already passed is run on the next tick.
+     *
+     * @throws InterruptedException Test is interrupted.
+     */
+    @Test(timeout = 10000)
+    public void late() throws InterruptedException {
+        GXTimingWheel wheel = new GXTimingWheel(TICK, 4);
+        Task zero = new Task();
+        wheel.schedule(zero, 0);
+        Task negative = new Task();
+        wheel.schedule(negative, -1000);
+        zero.check(0);
+        negative.check(0);
+        // Expired timeout can't be cancelled.
+        Task task = new Task();
+        GXTimingWheel.Timeout timeout = wheel.schedule(task, 0);
+        task.check(0);
+        assertFalse(timeout.cancel());
+    }
+
+    /**
+     * Wheel jumps to the current tick after it has been empty, so new
+     * timeouts are not expired early while old ticks are caught up.
+     *
+     * @throws InterruptedException Test is interrupted.
+     */
+    @Test(timeout = 10000)
+    public void emptyWheel() throws InterruptedException {
+        GXTimingWheel wheel = new GXTimingWheel(TICK, 4);
+        Task first = new Task();
+        wheel.schedule(first, 10);
+        first.check(10);
+        // Wheel is empty for many rounds.
+        Thread.sleep(300);
+        long[] delays = {0, 30, 90};
+        Task[] tasks = new Task[delays.length];
+        for (int pos = 0; pos != delays.length; ++pos) {
+            tasks[pos] = new Task();
+            wheel.schedule(tasks[pos], delays[pos]);
+        }
+        for (int pos = 0; pos != delays.length; ++pos) {
+            tasks[pos].check(delays[pos]);
+        }
+    }
+}
@@ -0,0 +1,212 @@
+//
+// --------------------------------------------------------------------------
+//  Gurux Ltd
+// 
+//
+//
+// Filename:        $HeadURL$
+//
+// Version:         $Revision$,
+//                  $Date$
+//                  $Author$
+//
+// Copyright (c) Gurux Ltd
+//
+//---------------------------------------------------------------------------
+//
+//  DESCRIPTION
+//
+// This file is a part of Gurux Device Framework.
+//
+// Gurux Device Framework is Open Source software; you can redistribute it
+// and/or modify it under the terms of the GNU General Public License 
+// as published by the Free Software Foundation; version 2 of the License.
+// Gurux Device Framework is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of 
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+// See the GNU General Public License for more details.
+//
+// More information of Gurux products: http://www.gurux.org
+//
+// This code is licensed under the GNU General Public License v2. 
+// Full text may be retrieved at http://www.gnu.org/licenses/gpl-2.0.txt
+//---------------------------------------------------------------------------
+
+package gurux.net;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.security.KeyStore;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLServerSocket;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.TrustManagerFactory;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * TLS context tests. Local TLS server with a self-signed certificate is
+ * used instead of a real server.
+ */
+public class GXTlsContextTest {
+
+    /**
+     * Password of the test key store.
+     */
+    private static final char[] PASSWORD = "gurux.net".toCharArray();
+
+    /**
+     * Key store of the local server.
+     */
+    private KeyStore mKeyStore;
+
+    /**
+     * Local TLS servers.
+     */
+    private final List<SSLServerSocket> mServers =
+            new ArrayList<SSLServerSocket>();
+
+    /**
+     * Load the test key store.
+     */
+    @Before
+    public void setUp() throws Exception {
+        mKeyStore = KeyStore.getInstance("PKCS12");
+        try (InputStream in = getClass().getResourceAsStream("localhost.p12")) {
+            mKeyStore.load(in, PASSWORD);
+        }
+    }
+
+    /**
+     * Close local servers.
+     */
+    @After
+    public void tearDown() throws IOException {
+        for (SSLServerSocket it : mServers) {
+            it.close();
+        }
+    }
+
+    /**
+     * Start local TLS server that accepts connections and sends one byte
+     * to each client.
+     *
+     * @return Server port.
+     */
+    private int startServer() throws Exception {
+        KeyManagerFactory kmf = KeyManagerFactory.getInstance(
+                KeyManagerFactory.getDefaultAlgorithm());
+        kmf.init(mKeyStore, PASSWORD);
+        SSLContext context = SSLContext.getInstance("TLS");
+        context.init(kmf.getKeyManagers(), null, null);
+        final SSLServerSocket server = (SSLServerSocket) context
+                .getServerSocketFactory().createServerSocket(0, 10,
+                        InetAddress.getLoopbackAddress());
+        mServers.add(server);
+        Thread thread = new Thread(() -> {
+            while (!server.isClosed()) {
+                try (SSLSocket socket = (SSLSocket) server.accept()) {
+                    socket.getOutputStream().write(1);
+                    socket.getOutputStream().flush();
+                    socket.getInputStream().read();
+                } catch (IOException e) {
+                    // Client closed the connection or server is closed.
+                }
+            }
+        }, "TLS server");
+        thread.setDaemon(true);
+        thread.start();
+        return server.getLocalPort();
+    }
+
+    /**
+     * Create client context that trusts the local server.
+     *
+     * @return SSL context.
+     */
+    private SSLContext createClientContext() throws Exception {
+        TrustManagerFactory tmf = TrustManagerFactory.getInstance(
+                TrustManagerFactory.getDefaultAlgorithm());
+        tmf.init(mKeyStore);
+        SSLContext context = SSLContext.getInstance("TLS");
+        context.init(null, tmf.getTrustManagers(), null);
+        return context;
+    }
+
+    /**
+     * Connect to the local server and read the byte that server sends.
+     * Session ticket of TLS 1.3 is received after the handshake.
+     *
+     * @param tls  TLS context.
+     * @param port Server port.
+     */
+    private static void connect(final GXTlsContext tls, final int port)
+            throws IOException {
+        try (SSLSocket socket = tls.connect("localhost", port)) {
+            assertEquals(1, socket.getInputStream().read());
+        }
+    }
+
+    /**
+     * Session cache settings of the application context are not changed.
+     */
+    @Test
+    public void callerContextNotChanged() throws Exception {
+        SSLContext context = createClientContext();
+        SSLSessionContext sessions = context.getClientSessionContext();
+        sessions.setSessionCacheSize(7);
+        sessions.setSessionTimeout(33);
+        new GXTlsContext(context);
+        assertEquals(7, sessions.getSessionCacheSize());
+        assertEquals(33, sessions.getSessionTimeout());
+    }
+
+    /**
+     * Default TLS context doesn't use JVM wide default context.
+     */
+    @Test
+    public void defaultContextIsPrivate() throws Exception {
+        assertNotSame(SSLContext.getDefault(),
+                GXTlsContext.getDefault().getContext());
+    }
+
+    /**
+     * Second connection to the same endpoint resumes the session.
+     */
+    @Test(timeout = 20000)
+    public void resume() throws Exception {
+        int port = startServer();
+        GXTlsContext tls = new GXTlsContext(createClientContext());
+        connect(tls, port);
+        connect(tls, port);
+        assertEquals(1, tls.getFullHandshakes());
+        assertEquals(1, tls.getResumedHandshakes());
+        tls.clearSessions();
+        connect(tls, port);
+        assertEquals(2, tls.getFullHandshakes());
+    }
+
+    /**
+     * Tracked endpoints are limited by the session cache size.
+     */
+    @Test(timeout = 20000)
+    public void endpointsAreBounded() throws Exception {
+        GXTlsContext tls = new GXTlsContext(createClientContext());
+        tls.setSessionCacheSize(2);
+        for (int pos = 0; pos != 3; ++pos) {
+            connect(tls, startServer());
+        }
+        assertEquals(2, tls.getEndpointCount());
+    }
+}
@@ -0,0 +1,128 @@
+//
+// --------------------------------------------------------------------------
+//  Gurux Ltd
+// 
+//
+//
+// Filename:        $HeadURL$
+//
+// Version:         $Revision$,
+//                  $Date$
+//                  $Author$
+//
+// Copyright (c) Gurux Ltd
+//
+//---------------------------------------------------------------------------
+//
+//  DESCRIPTION
+//
+// This file is a part of Gurux Device Framework.
+//
+// Gurux Device Framework is Open Source software; you can redistribute it
+// and/or modify it under the terms of the GNU General Public License 
+// as published by the Free Software Foundation; version 2 of the License.
+// Gurux Device Framework is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of 
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+// See the GNU General Public License for more details.
+//
+// More information of Gurux products: http://www.gurux.org
+//
+// This code is licensed under the GNU General Public License v2. 
+// Full text may be retrieved at http://www.gnu.org/licenses/gpl-2.0.txt
+//---------------------------------------------------------------------------
+
+
+package gurux.net;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Token bucket tests.
+ */
+public class GXTokenBucketTest {
+
+    /**
+     * Nanoseconds in one millisecond.
+     */
+    private static final long MS = 1000000L;
+
+    /**
+     * Start time of the tests.
+     */
+    private static final long NOW = 1000000000000L;
+
+    /**
+     * Burst is sent without delay and the next token waits one interval.
+     */
+    @Test
+    public void burst() {
+        GXTokenBucket bucket = new GXTokenBucket();
+        bucket.set(1000, 10);
+        for (int pos = 0; pos != 10; ++pos) {
+            assertEquals(0, bucket.reserve(1, NOW));
+        }
+        assertEquals(MS, bucket.reserve(1, NOW));
+    }
+
+    /**
+     * Tokens are sent at the sustained rate after the burst.
+     */
+    @Test
+    public void sustainedRate() {
+        GXTokenBucket bucket = new GXTokenBucket();
+        bucket.set(1000, 1);
+        long delay = 0;
+        for (int pos = 0; pos != 1001; ++pos) {
+            delay = bucket.reserve(1, NOW);
+        }
+        assertEquals(1000 * MS, delay);
+        // Tokens are refilled when time passes.
+        assertEquals(0, bucket.reserve(1, NOW + 1002 * MS));
+    }
+
+    /**
+     * Frame that is larger than the burst waits for the tokens that exceed
+     * the burst.
+     */
+    @Test
+    public void frameLargerThanBurst() {
+        GXTokenBucket bucket = new GXTokenBucket();
+        bucket.set(1000, 10);
+        assertEquals(10 * MS, bucket.reserve(20, NOW));
+        assertEquals(11 * MS, bucket.reserve(1, NOW));
+    }
+
+    /**
+     * Interval of one token is not truncated at high rates.
+     */
+    @Test
+    public void highRate() {
+        GXTokenBucket bucket = new GXTokenBucket();
+        bucket.set(300000000, 0);
+        assertEquals(1000 * MS, bucket.reserve(300000000, NOW));
+        bucket.set(2000000000, 1000);
+        // Burst of 1000 tokens is 500 ns.
+        assertEquals(0, bucket.reserve(1000, NOW));
+        assertEquals(1000 * MS, bucket.reserve(2000000000, NOW));
+    }
+
+    /**
+     * Unlimited bucket never delays.
+     */
+    @Test
+    public void unlimited() {
+        GXTokenBucket bucket = new GXTokenBucket();
+        assertEquals(0, bucket.reserve(Integer.MAX_VALUE, NOW));
+    }
+
+    /**
+     * Invalid rate is rejected.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidRate() {
+        new GXTokenBucket().set(-1, 0);
+    }
+}
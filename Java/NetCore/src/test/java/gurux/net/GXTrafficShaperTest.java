@@ -0,0 +1,107 @@
+//
+// --------------------------------------------------------------------------
+//  Gurux Ltd
+// 
+//
+//
+// Filename:        $HeadURL$
+//
+// Version:         $Revision$,
+//                  $Date$
+//                  $Author$
+//
+// Copyright (c) Gurux Ltd
+//
+//---------------------------------------------------------------------------
+//
+//  DESCRIPTION
+//
+// This file is a part of Gurux Device Framework.
+//
+// Gurux Device Framework is Open Source software; you can redistribute it
+// and/or modify it under the terms of the GNU General Public License 
+// as published by the Free Software Foundation; version 2 of the License.
+// Gurux Device Framework is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of 
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+// See the GNU General Public License for more details.
+//
+// More information of Gurux products: http://www.gurux.org
+//
+// This code is licensed under the GNU General Public License v2. 
+// Full text may be retrieved at http://www.gnu.org/licenses/gpl-2.0.txt
+//---------------------------------------------------------------------------
+
+
+package gurux.net;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Traffic shaper tests.
+ */
+public class GXTrafficShaperTest {
+
+    /**
+     * Nanoseconds in one millisecond.
+     */
+    private static final long MS = 1000000L;
+
+    /**
+     * Start time of the tests.
+     */
+    private static final long NOW = 1000000000000L;
+
+    /**
+     * Longer delay of the byte and frame limits is used.
+     */
+    @Test
+    public void bytesAndFrames() {
+        GXTrafficShaper shaper = new GXTrafficShaper();
+        shaper.setBytesPerSecond(1000, 100);
+        shaper.setFramesPerSecond(10, 1);
+        assertEquals(0, shaper.reserve(10, NOW));
+        // Frame limit waits 100 ms before the second frame.
+        assertEquals(100 * MS, shaper.reserve(10, NOW));
+        // Byte limit waits for 200 bytes that exceed the burst.
+        assertEquals(200 * MS, shaper.reserve(280, NOW));
+        assertEquals(3, shaper.getFrameCount());
+        assertEquals(2, shaper.getDelayedFrameCount());
+        assertEquals(200, shaper.getMaxDelay());
+        assertEquals(300, shaper.getTotalDelay());
+    }
+
+    /**
+     * Parent limit is shared between the connections.
+     */
+    @Test
+    public void parentLimit() {
+        GXTrafficShaper global = new GXTrafficShaper();
+        global.setBytesPerSecond(100, 100);
+        GXTrafficShaper first = new GXTrafficShaper(global);
+        first.setBytesPerSecond(1000, 1000);
+        GXTrafficShaper second = new GXTrafficShaper(global);
+        second.setBytesPerSecond(1000, 1000);
+        assertEquals(0, first.reserve(100, NOW));
+        // Own limit allows the frame, but global burst is used.
+        assertEquals(1000 * MS, second.reserve(100, NOW));
+        assertEquals(1, second.getDelayedFrameCount());
+        assertEquals(2, global.getFrameCount());
+    }
+
+    /**
+     * Connection limit is used when it's tighter than the parent limit.
+     */
+    @Test
+    public void connectionLimit() {
+        GXTrafficShaper global = new GXTrafficShaper();
+        global.setBytesPerSecond(1000000, 1000000);
+        GXTrafficShaper shaper = new GXTrafficShaper(global);
+        shaper.setBytesPerSecond(100, 100);
+        assertEquals(0, shaper.reserve(100, NOW));
+        assertEquals(1000 * MS, shaper.reserve(100, NOW));
+        assertEquals(0, global.getDelayedFrameCount());
+    }
+}
@@ -0,0 +1,906 @@
+//
+// --------------------------------------------------------------------------
+//  Gurux Ltd
+// 
+//
+//
+// Filename:        $HeadURL$
+//
+// Version:         $Revision$,
+//                  $Date$
+//                  $Author$
+//
+// Copyright (c) Gurux Ltd
+//
+//---------------------------------------------------------------------------
+//
+//  DESCRIPTION
+//
+// This file is a part of Gurux Device Framework.
+//
+// Gurux Device Framework is Open Source software; you can redistribute it
+// and/or modify it under the terms of the GNU General Public License 
+// as published by the Free Software Foundation; version 2 of the License.
+// Gurux Device Framework is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of 
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+// See the GNU General Public License for more details.
+//
+// More information of Gurux products: http://www.gurux.org
+//
+// This code is licensed under the GNU General Public License v2. 
+// Full text may be retrieved at http://www.gnu.org/licenses/gpl-2.0.txt
+//---------------------------------------------------------------------------
+
+package gurux.net;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import gurux.net.enums.NetworkType;
+
+/**
+ * Local TCP or UDP proxy that injects network faults.
+ * <p>
+ * Proxy is placed between the connection and the test peer. Connection is
+ * opened to the local port of the proxy and the proxy forwards the data to
+ * the target. Latency, jitter, bandwidth limit, TCP segment splitting and
+ * abrupt resets are applied to both directions. Packet loss and reordering
+ * are applied to UDP datagrams. Random generator can be seeded, so faults
+ * can be reproduced.
+ * </p>
+ * <p>
+ * Proxy is a test fixture and it's not part of the library.
+ * </p>
+ * <pre>
+ * GXFaultProxy proxy = new GXFaultProxy(NetworkType.TCP, 0, "meter", 4059);
+ * proxy.setLatency(300, 100);
+ * proxy.setMaxSegmentSize(7);
+ * proxy.setSplitEop(new byte[]{0x7E});
+ * proxy.start();
+ * GXNet net = new GXNet(context, NetworkType.TCP, "127.0.0.1", proxy.getLocalPort());
+ * </pre>
+ */
+public class GXFaultProxy {
+
+    /**
+     * How long reordered UDP datagram is held if the next datagram doesn't
+     * arrive in milliseconds.
+     */
+    private static final int REORDER_HOLD_TIME = 100;
+
+    /**
+     * Used protocol.
+     */
+    private final NetworkType mProtocol;
+
+    /**
+     * Requested listen port.
+     */
+    private final int mListenPort;
+
+    /**
+     * Target host name.
+     */
+    private final String mTargetHost;
+
+    /**
+     * Target port.
+     */
+    private final int mTargetPort;
+
+    /**
+     * Random generator used to inject the faults.
+     */
+    private final Random mRandom = new Random();
+
+    /**
+     * Open sockets of the proxy.
+     */
+    private final List<Closeable> mSockets = new CopyOnWriteArrayList<>();
+
+    /**
+     * TCP connections between client and target.
+     */
+    private final List<Socket[]> mConnections = new CopyOnWriteArrayList<>();
+
+    /**
+     * Listen socket.
+     */
+    private volatile Closeable mListener;
+
+    /**
+     * Local port where the proxy is listening.
+     */
+    private volatile int mLocalPort;
+
+    /**
+     * Latency in milliseconds.
+     */
+    private volatile int mLatency;
+
+    /**
+     * Jitter in milliseconds.
+     */
+    private volatile int mJitter;
+
+    /**
+     * Bytes per second or zero if bandwidth is not limited.
+     */
+    private volatile int mBytesPerSecond;
+
+    /**
+     * Maximum size of TCP segment or zero if segments are not split.
+     */
+    private volatile int mMaxSegmentSize;
+
+    /**
+     * End of packet where segments are split or null.
+     */
+    private volatile byte[] mSplitEop;
+
+    /**
+     * Probability that UDP datagram is lost.
+     */
+    private volatile double mLossRate;
+
+    /**
+     * Probability that UDP datagram is reordered.
+     */
+    private volatile double mReorderRate;
+
+    /**
+     * Probability that the connection is reset when data is forwarded.
+     */
+    private volatile double mResetRate;
+
+    /**
+     * Amount of forwarded bytes.
+     */
+    private final AtomicLong mForwardedBytes = new AtomicLong();
+
+    /**
+     * Amount of dropped datagrams.
+     */
+    private final AtomicLong mDroppedCount = new AtomicLong();
+
+    /**
+     * Amount of reordered datagrams.
+     */
+    private final AtomicLong mReorderedCount = new AtomicLong();
+
+    /**
+     * Amount of reset connections.
+     */
+    private final AtomicLong mResetCount = new AtomicLong();
+
+    /**
+     * Constructor.
+     *
+     * @param protocol   Used protocol. TLS is forwarded as TCP.
+     * @param listenPort Listen port or zero if free port is selected.
+     * @param targetHost Target host name.
+     * @param targetPort Target port.
+     */
+    public GXFaultProxy(final NetworkType protocol, final int listenPort,
+                        final String targetHost, final int targetPort) {
+        if (protocol == null) {
+            throw new IllegalArgumentException("protocol");
+        }
+        if (targetHost == null) {
+            throw new IllegalArgumentException("targetHost");
+        }
+        mProtocol = protocol;
+        mListenPort = listenPort;
+        mTargetHost = targetHost;
+        mTargetPort = targetPort;
+    }
+
+    /**
+     * Returns local port where the proxy is listening.
+     *
+     * @return Local port.
+     */
+    public final int getLocalPort() {
+        return mLocalPort;
+    }
+
+    /**
+     * Set seed of the random generator.
+     *
+     * @param seed Seed.
+     */
+    public final void setSeed(final long seed) {
+        synchronized (mRandom) {
+            mRandom.setSeed(seed);
+        }
+    }
+
+    /**
+     * Returns latency.
+     *
+     * @return Latency in milliseconds.
+     */
+    public final int getLatency() {
+        return mLatency;
+    }
+
+    /**
+     * Returns jitter.
+     *
+     * @return Jitter in milliseconds.
+     */
+    public final int getJitter() {
+        return mJitter;
+    }
+
+    /**
+     * Set latency and jitter. Delay of each chunk is latency plus random
+     * value between zero and jitter. TCP data is not reordered.
+     *
+     * @param latency Latency in milliseconds.
+     * @param jitter  Jitter in milliseconds.
+     */
+    public final void setLatency(final int latency, final int jitter) {
+        if (latency < 0 || jitter < 0) {
+            throw new IllegalArgumentException("Invalid latency.");
+        }
+        mLatency = latency;
+        mJitter = jitter;
+    }
+
+    /**
+     * Returns bandwidth limit.
+     *
+     * @return Bytes per second or zero if bandwidth is not limited.
+     */
+    public final int getBytesPerSecond() {
+        return mBytesPerSecond;
+    }
+
+    /**
+     * Set bandwidth limit for each direction.
+     *
+     * @param value Bytes per second or zero if bandwidth is not limited.
+     */
+    public final void setBytesPerSecond(final int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("bytesPerSecond");
+        }
+        mBytesPerSecond = value;
+    }
+
+    /**
+     * Returns maximum size of TCP segment.
+     *
+     * @return Maximum segment size or zero if segments are not split.
+     */
+    public final int getMaxSegmentSize() {
+        return mMaxSegmentSize;
+    }
+
+    /**
+     * Set maximum size of TCP segment. Forwarded data is written in pieces
+     * and each piece is flushed separately.
+     *
+     * @param value Maximum segment size or zero if segments are not split.
+     */
+    public final void setMaxSegmentSize(final int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("maxSegmentSize");
+        }
+        mMaxSegmentSize = value;
+    }
+
+    /**
+     * Returns end of packet where TCP segments are split.
+     *
+     * @return End of packet or null.
+     */
+    public final byte[] getSplitEop() {
+        return mSplitEop;
+    }
+
+    /**
+     * Set end of packet where TCP segments are split. Segment is split
+     * after the first byte of the end of packet, so receiver gets the end
+     * of packet in two reads. End of packet that is split between two
+     * reads of the proxy is already split and it's not searched.
+     *
+     * @param value End of packet or null.
+     */
+    public final void setSplitEop(final byte[] value) {
+        mSplitEop = value;
+    }
+
+    /**
+     * Returns probability that UDP datagram is lost.
+     *
+     * @return Loss rate between 0 and 1.
+     */
+    public final double getLossRate() {
+        return mLossRate;
+    }
+
+    /**
+     * Set probability that UDP datagram is lost.
+     *
+     * @param value Loss rate between 0 and 1.
+     */
+    public final void setLossRate(final double value) {
+        mLossRate = value;
+    }
+
+    /**
+     * Returns probability that UDP datagram is reordered.
+     *
+     * @return Reorder rate between 0 and 1.
+     */
+    public final double getReorderRate() {
+        return mReorderRate;
+    }
+
+    /**
+     * Set probability that UDP datagram is sent after the next datagram.
+     * If the next datagram doesn't arrive soon, held datagram is sent
+     * alone.
+     *
+     * @param value Reorder rate between 0 and 1.
+     */
+    public final void setReorderRate(final double value) {
+        mReorderRate = value;
+    }
+
+    /**
+     * Returns probability that the connection is reset.
+     *
+     * @return Reset rate between 0 and 1.
+     */
+    public final double getResetRate() {
+        return mResetRate;
+    }
+
+    /**
+     * Set probability that the TCP connection is reset when data is
+     * forwarded.
+     *
+     * @param value Reset rate between 0 and 1.
+     */
+    public final void setResetRate(final double value) {
+        mResetRate = value;
+    }
+
+    /**
+     * Returns amount of forwarded bytes.
+     *
+     * @return Amount of bytes.
+     */
+    public final long getForwardedBytes() {
+        return mForwardedBytes.get();
+    }
+
+    /**
+     * Returns amount of dropped datagrams.
+     *
+     * @return Amount of datagrams.
+     */
+    public final long getDroppedCount() {
+        return mDroppedCount.get();
+    }
+
+    /**
+     * Returns amount of reordered datagrams.
+     *
+     * @return Amount of datagrams.
+     */
+    public final long getReorderedCount() {
+        return mReorderedCount.get();
+    }
+
+    /**
+     * Returns amount of reset connections.
+     *
+     * @return Amount of connections.
+     */
+    public final long getResetCount() {
+        return mResetCount.get();
+    }
+
+    /**
+     * Returns amount of open TCP connections.
+     *
+     * @return Amount of connections.
+     */
+    public final int getConnectionCount() {
+        return mConnections.size();
+    }
+
+    /**
+     * Start the proxy.
+     *
+     * @throws IOException Listen port can't be opened.
+     */
+    public final synchronized void start() throws IOException {
+        if (mListener != null) {
+            throw new RuntimeException("Proxy is already started.");
+        }
+        if (mProtocol == NetworkType.UDP) {
+            final DatagramSocket socket = new DatagramSocket(mListenPort);
+            mListener = socket;
+            mLocalPort = socket.getLocalPort();
+            GXNetExecutors.getDefault().execute(null, new Runnable() {
+                @Override
+                public void run() {
+                    forwardDatagrams(socket);
+                }
+            }, "proxy");
+        } else {
+            final ServerSocket socket = new ServerSocket(mListenPort);
+            mListener = socket;
+            mLocalPort = socket.getLocalPort();
+            GXNetExecutors.getDefault().execute(null, new Runnable() {
+                @Override
+                public void run() {
+                    accept(socket);
+                }
+            }, "proxy");
+        }
+    }
+
+    /**
+     * Stop the proxy and close all connections.
+     */
+    public final synchronized void stop() {
+        Closeable listener = mListener;
+        mListener = null;
+        closeQuietly(listener);
+        reset();
+        for (Closeable it : mSockets) {
+            closeQuietly(it);
+        }
+        mSockets.clear();
+    }
+
+    /**
+     * Reset all open TCP connections abruptly.
+     */
+    public final void reset() {
+        for (Socket[] it : mConnections) {
+            resetConnection(it);
+        }
+    }
+
+    /**
+     * Close the socket and ignore errors.
+     *
+     * @param socket Closed socket.
+     */
+    private static void closeQuietly(final Closeable socket) {
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+                //Socket is already closed.
+            }
+        }
+    }
+
+    /**
+     * Reset both sides of the connection.
+     *
+     * @param connection Client and target sockets.
+     */
+    private void resetConnection(final Socket[] connection) {
+        if (mConnections.remove(connection)) {
+            mResetCount.incrementAndGet();
+            for (Socket it : connection) {
+                try {
+                    it.setSoLinger(true, 0);
+                } catch (IOException ignored) {
+                    //Socket is already closed.
+                }
+                closeQuietly(it);
+            }
+        }
+    }
+
+    /**
+     * Close both sides of the connection.
+     *
+     * @param connection Client and target sockets.
+     */
+    private void closeConnection(final Socket[] connection) {
+        if (mConnections.remove(connection)) {
+            for (Socket it : connection) {
+                closeQuietly(it);
+            }
+        }
+    }
+
+    /**
+     * Returns random value.
+     *
+     * @return Random value between 0 and 1.
+     */
+    private double nextRandom() {
+        synchronized (mRandom) {
+            return mRandom.nextDouble();
+        }
+    }
+
+    /**
+     * Returns random delay of the chunk.
+     *
+     * @return Delay in milliseconds.
+     */
+    private long nextDelay() {
+        int jitter = mJitter;
+        long delay = mLatency;
+        if (jitter != 0) {
+            synchronized (mRandom) {
+                delay += mRandom.nextInt(jitter + 1);
+            }
+        }
+        return delay;
+    }
+
+    /**
+     * Wait until the given time.
+     *
+     * @param time Time in milliseconds.
+     * @throws InterruptedException Thread is interrupted.
+     */
+    private static void sleepUntil(final long time) throws InterruptedException {
+        long delay = time - System.currentTimeMillis();
+        if (delay > 0) {
+            Thread.sleep(delay);
+        }
+    }
+
+    /**
+     * Accept TCP connections until the proxy is stopped.
+     *
+     * @param server Listen socket.
+     */
+    private void accept(final ServerSocket server) {
+        while (mListener == server) {
+            try {
+                Socket client = server.accept();
+                Socket target;
+                try {
+                    target = new Socket(mTargetHost, mTargetPort);
+                } catch (IOException ex) {
+                    closeQuietly(client);
+                    continue;
+                }
+                client.setTcpNoDelay(true);
+                target.setTcpNoDelay(true);
+                final Socket[] connection = new Socket[]{client, target};
+                mConnections.add(connection);
+                pump(connection, client, target);
+                pump(connection, target, client);
+            } catch (IOException ex) {
+                //Listen socket is closed.
+            }
+        }
+    }
+
+    /**
+     * Start forwarding the data from one socket to another.
+     *
+     * @param connection Client and target sockets.
+     * @param from       Socket where data is read.
+     * @param to         Socket where data is written.
+     */
+    private void pump(final Socket[] connection, final Socket from, final Socket to) {
+        final LinkedBlockingQueue<Object[]> queue = new LinkedBlockingQueue<>();
+        GXNetExecutors.getDefault().execute(null, new Runnable() {
+            @Override
+            public void run() {
+                read(from, queue);
+            }
+        }, "proxy read");
+        GXNetExecutors.getDefault().execute(null, new Runnable() {
+            @Override
+            public void run() {
+                write(connection, to, queue);
+            }
+        }, "proxy write");
+    }
+
+    /**
+     * Read the data and add it to the queue with the delivery time.
+     *
+     * @param from  Socket where data is read.
+     * @param queue Delivery queue.
+     */
+    private void read(final Socket from, final LinkedBlockingQueue<Object[]> queue) {
+        byte[] buffer = new byte[GXNetTransport.RECEIVE_BUFFER_SIZE];
+        long last = 0;
+        try {
+            InputStream in = from.getInputStream();
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                byte[] data = new byte[count];
+                System.arraycopy(buffer, 0, data, 0, count);
+                // TCP data is delivered in order.
+                last = Math.max(last, System.currentTimeMillis() + nextDelay());
+                queue.add(new Object[]{last, data});
+            }
+        } catch (IOException ex) {
+            //Connection is closed.
+        }
+        queue.add(new Object[]{last, null});
+    }
+
+    /**
+     * Write the data from the queue when the delivery time is reached.
+     *
+     * @param connection Client and target sockets.
+     * @param to         Socket where data is written.
+     * @param queue      Delivery queue.
+     */
+    private void write(final Socket[] connection, final Socket to,
+                       final LinkedBlockingQueue<Object[]> queue) {
+        GXTokenBucket bucket = new GXTokenBucket();
+        try {
+            OutputStream out = to.getOutputStream();
+            while (true) {
+                Object[] item = queue.take();
+                sleepUntil((Long) item[0]);
+                byte[] data = (byte[]) item[1];
+                if (data == null) {
+                    closeConnection(connection);
+                    break;
+                }
+                if (mResetRate != 0 && nextRandom() < mResetRate) {
+                    resetConnection(connection);
+                    break;
+                }
+                writeSegments(out, data, bucket);
+            }
+        } catch (IOException ex) {
+            closeConnection(connection);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            closeConnection(connection);
+        }
+    }
+
+    /**
+     * Find the first end of packet from the data.
+     *
+     * @param data Searched data.
+     * @param eop  End of packet.
+     * @return Index of the end of packet or -1 if it's not found.
+     */
+    private static int indexOf(final byte[] data, final byte[] eop) {
+        for (int pos = 0; pos <= data.length - eop.length; ++pos) {
+            int index = 0;
+            while (index != eop.length && data[pos + index] == eop[index]) {
+                ++index;
+            }
+            if (index == eop.length) {
+                return pos;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Write the data in segments.
+     *
+     * @param out    Output stream.
+     * @param data   Written data.
+     * @param bucket Bandwidth budget of the direction.
+     * @throws IOException          Write failed.
+     * @throws InterruptedException Thread is interrupted.
+     */
+    private void writeSegments(final OutputStream out, final byte[] data,
+                               final GXTokenBucket bucket)
+            throws IOException, InterruptedException {
+        int split = -1;
+        byte[] eop = mSplitEop;
+        if (eop != null && eop.length != 0) {
+            split = indexOf(data, eop);
+            if (split != -1) {
+                split += 1;
+            }
+        }
+        int max = mMaxSegmentSize;
+        int index = 0;
+        while (index < data.length) {
+            int size = data.length - index;
+            if (max != 0) {
+                size = Math.min(size, max);
+            }
+            if (split > index && split < index + size) {
+                size = split - index;
+            }
+            throttle(bucket, size);
+            out.write(data, index, size);
+            out.flush();
+            mForwardedBytes.addAndGet(size);
+            index += size;
+            if (index != data.length) {
+                // Give the receiver time to read the segment separately.
+                Thread.sleep(1);
+            }
+        }
+    }
+
+    /**
+     * Wait so that the bandwidth limit is not exceeded. Bytes are counted
+     * cumulatively, so small segments are limited too.
+     *
+     * @param bucket Bandwidth budget of the direction.
+     * @param size   Amount of written bytes.
+     * @throws InterruptedException Thread is interrupted.
+     */
+    private void throttle(final GXTokenBucket bucket, final int size)
+            throws InterruptedException {
+        int rate = mBytesPerSecond;
+        if (bucket.getRate() != rate) {
+            bucket.set(rate, 0);
+        }
+        long delay = bucket.reserve(size, System.nanoTime());
+        if (delay > 0) {
+            Thread.sleep(delay / 1000000, (int) (delay % 1000000));
+        }
+    }
+
+    /**
+     * Forward UDP datagrams until the proxy is stopped. Replies of the
+     * target are sent to the last client.
+     *
+     * @param socket Listen socket.
+     */
+    private void forwardDatagrams(final DatagramSocket socket) {
+        final DatagramSocket target;
+        final SocketAddress targetAddress;
+        try {
+            target = new DatagramSocket();
+            targetAddress = new InetSocketAddress(InetAddress.getByName(mTargetHost),
+                    mTargetPort);
+        } catch (IOException ex) {
+            return;
+        }
+        mSockets.add(target);
+        final SocketAddress[] client = new SocketAddress[1];
+        GXNetExecutors.getDefault().execute(null, new Runnable() {
+            @Override
+            public void run() {
+                relay(target, socket, client, null);
+            }
+        }, "proxy reply");
+        relay(socket, target, client, targetAddress);
+    }
+
+    /**
+     * Relay datagrams from one socket to another. Datagrams are read in
+     * this thread and sent in their own thread, so latency delays each
+     * datagram without limiting the throughput.
+     *
+     * @param from          Socket where datagrams are read.
+     * @param to            Socket where datagrams are sent.
+     * @param client        Address of the last client.
+     * @param targetAddress Target address or null if datagrams are sent to
+     *                      the client.
+     */
+    private void relay(final DatagramSocket from, final DatagramSocket to,
+                       final SocketAddress[] client, final SocketAddress targetAddress) {
+        final LinkedBlockingQueue<Object[]> queue = new LinkedBlockingQueue<>();
+        GXNetExecutors.getDefault().execute(null, new Runnable() {
+            @Override
+            public void run() {
+                send(to, queue);
+            }
+        }, "proxy send");
+        byte[] buffer = new byte[GXNetTransport.MAX_DATAGRAM_SIZE];
+        DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+        DatagramPacket held = null;
+        long heldTime = 0;
+        long heldReceived = 0;
+        long last = 0;
+        while (!from.isClosed()) {
+            try {
+                packet.setLength(buffer.length);
+                try {
+                    if (held == null) {
+                        from.setSoTimeout(0);
+                    } else {
+                        from.setSoTimeout((int) Math.max(1,
+                                heldReceived + REORDER_HOLD_TIME - System.currentTimeMillis()));
+                    }
+                    from.receive(packet);
+                } catch (SocketTimeoutException ex) {
+                    // Next datagram didn't arrive. Held datagram is sent
+                    // so that it's not lost.
+                    queue.add(new Object[]{heldTime, held});
+                    held = null;
+                    continue;
+                }
+                SocketAddress address;
+                if (targetAddress != null) {
+                    client[0] = packet.getSocketAddress();
+                    address = targetAddress;
+                } else {
+                    address = client[0];
+                    if (address == null) {
+                        continue;
+                    }
+                }
+                if (mLossRate != 0 && nextRandom() < mLossRate) {
+                    mDroppedCount.incrementAndGet();
+                    continue;
+                }
+                byte[] data = new byte[packet.getLength()];
+                System.arraycopy(buffer, 0, data, 0, data.length);
+                DatagramPacket p = new DatagramPacket(data, data.length, address);
+                // Delivery times don't decrease, so the queue is in time order.
+                long now = System.currentTimeMillis();
+                last = Math.max(last, now + nextDelay());
+                if (held == null && mReorderRate != 0 && nextRandom() < mReorderRate) {
+                    // Datagram is sent after the next datagram.
+                    mReorderedCount.incrementAndGet();
+                    held = p;
+                    heldTime = last;
+                    heldReceived = now;
+                    continue;
+                }
+                queue.add(new Object[]{last, p});
+                if (held != null) {
+                    queue.add(new Object[]{last, held});
+                    held = null;
+                }
+            } catch (IOException ex) {
+                //Socket is closed.
+            }
+        }
+        queue.add(new Object[]{last, null});
+    }
+
+    /**
+     * Send the datagrams from the queue when the delivery time is reached.
+     *
+     * @param to    Socket where datagrams are sent.
+     * @param queue Delivery queue.
+     */
+    private void send(final DatagramSocket to, final LinkedBlockingQueue<Object[]> queue) {
+        GXTokenBucket bucket = new GXTokenBucket();
+        try {
+            while (true) {
+                Object[] item = queue.take();
+                DatagramPacket p = (DatagramPacket) item[1];
+                if (p == null) {
+                    break;
+                }
+                sleepUntil((Long) item[0]);
+                throttle(bucket, p.getLength());
+                try {
+                    to.send(p);
+                    mForwardedBytes.addAndGet(p.getLength());
+                } catch (IOException ex) {
+                    //Socket is closed.
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -2,11 +2,15 @@ package gurux.net.android;
 
 import android.content.ClipData;
 import android.content.ClipboardManager;
+import android.content.ComponentName;
 import android.content.Context;
+import android.content.Intent;
+import android.content.ServiceConnection;
 import android.content.SharedPreferences;
 import android.content.pm.PackageInfo;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.IBinder;
 import android.text.method.LinkMovementMethod;
 import android.view.Menu;
 import android.view.MenuItem;
@@ -35,28 +39,64 @@ import gurux.common.PropertyChangedEventArgs;
 import gurux.common.ReceiveEventArgs;
 import gurux.common.TraceEventArgs;
 import gurux.net.GXNet;
+import gurux.net.GXNetClient;
+import gurux.net.GXNetService;
 import gurux.net.android.databinding.ActivityMainBinding;
 import gurux.net.android.ui.home.HomeViewModel;
 import gurux.net.android.ui.media.MediaViewModel;
 
 public class MainActivity extends AppCompatActivity implements IGXMediaListener {
 
+    /**
+     * Name of the connection in the connection service.
+     */
+    private static final String CONNECTION_NAME = "main";
+
     private AppBarConfiguration mAppBarConfiguration;
     private GXNet mNet;
+    private GXNetService mService;
+    private GXNetClient mClient;
+    private HomeViewModel mNetViewModel;
+    private MediaViewModel mMediaViewModel;
+
+    /**
+     * Connection is owned by the service, so it's kept open when the
+     * activity is recreated.
+     */
+    private final ServiceConnection mConnection = new ServiceConnection() {
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder binder) {
+            mService = ((GXNetService.LocalBinder) binder).getService();
+            mClient = mService.acquire(CONNECTION_NAME);
+            mClient.attach(MainActivity.this);
+            mNet = mClient.getNet();
+            if (!mNet.isOpen()) {
+                readSettings(mNet);
+            }
+            //Properties are saved after change.
+            mClient.addListener(MainActivity.this);
+            mMediaViewModel.setMedia(mNet);
+            mNetViewModel.setNet(mNet);
+        }
+
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            mService = null;
+            mClient = null;
+            mNet = null;
+        }
+    };
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
-        final HomeViewModel mNetViewModel = new ViewModelProvider(this).get(HomeViewModel.class);
-        final MediaViewModel mMediaViewModel = new ViewModelProvider(this).get(MediaViewModel.class);
+        mNetViewModel = new ViewModelProvider(this).get(HomeViewModel.class);
+        mMediaViewModel = new ViewModelProvider(this).get(MediaViewModel.class);
 
         ActivityMainBinding binding = ActivityMainBinding.inflate(getLayoutInflater());
-        mNet = new GXNet(this);
-        mMediaViewModel.setMedia(mNet);
-        readSettings(mNet);
-        //Properties are saved after change.
-        mNet.addListener(this);
-        mNetViewModel.setNet(mNet);
+        //Service is started so that it's not destroyed while the activity is recreated.
+        startService(new Intent(this, GXNetService.class));
+        bindService(new Intent(this, GXNetService.class), mConnection, Context.BIND_AUTO_CREATE);
         setContentView(binding.getRoot());
 
         //PreferenceManager is used to share data between the properties activity and main activity.
@@ -64,7 +104,7 @@ public class MainActivity extends AppCompatActivity implements IGXMediaListener
         prefs.registerOnSharedPreferenceChangeListener((sharedPreferences, key) -> {
             if ("mediaSettings".equals(key)) {
                 String settings = sharedPreferences.getString("mediaSettings", null);
-                if (settings != null) {
+                if (settings != null && mNet != null) {
                     mNet.removeListener(this);
                     mNet.setSettings(settings);
                     mNet.addListener(this);
@@ -85,6 +125,8 @@ public class MainActivity extends AppCompatActivity implements IGXMediaListener
                 R.id.nav_home,
                 //Add properties fragment.
                 R.id.nav_properties,
+                //Add benchmark.
+                R.id.nav_benchmark,
                 //Add info.
                 R.id.nav_info)
                 .setOpenableLayout(drawer)
@@ -197,7 +239,7 @@ public class MainActivity extends AppCompatActivity implements IGXMediaListener
             return true;
         }
         //Show properties activity.
-        if (id == R.id.action_settings) {
+        if (id == R.id.action_settings && mNet != null) {
             mNet.properties(this);
             return true;
         }
@@ -211,14 +253,6 @@ public class MainActivity extends AppCompatActivity implements IGXMediaListener
                 || super.onSupportNavigateUp();
     }
 
-    @Override
-    public void onStop() {
-        if (mNet != null) {
-            mNet.close();
-        }
-        super.onStop();
-    }
-
     /*
      * Settings activity is disabled when the connection is open.
      */
@@ -226,16 +260,24 @@ public class MainActivity extends AppCompatActivity implements IGXMediaListener
     public boolean onPrepareOptionsMenu(Menu menu) {
         MenuItem settingsItem = menu.findItem(R.id.action_settings);
         if (settingsItem != null) {
-            settingsItem.setEnabled(!mNet.isOpen());
+            settingsItem.setEnabled(mNet != null && !mNet.isOpen());
         }
         return super.onPrepareOptionsMenu(menu);
     }
 
     @Override
     public void onDestroy() {
-        if (mNet != null) {
-            mNet.close();
+        //Connection is closed only when the activity is finished.
+        if (mClient != null) {
+            mClient.release();
+            if (isFinishing()) {
+                mService.remove(CONNECTION_NAME);
+            }
+        }
+        if (isFinishing()) {
+            stopService(new Intent(this, GXNetService.class));
         }
+        unbindService(mConnection);
         super.onDestroy();
     }
 
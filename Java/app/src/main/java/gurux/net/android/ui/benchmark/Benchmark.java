@@ -0,0 +1,372 @@
+//
+// --------------------------------------------------------------------------
+//  Gurux Ltd
+//
+//
+//
+// Filename:        $HeadURL$
+//
+// Version:         $Revision$,
+//                  $Date$
+//                  $Author$
+//
+// Copyright (c) Gurux Ltd
+//
+//---------------------------------------------------------------------------
+//
+//  DESCRIPTION
+//
+// This file is a part of Gurux Device Framework.
+//
+// Gurux Device Framework is Open Source software; you can redistribute it
+// and/or modify it under the terms of the GNU General Public License
+// as published by the Free Software Foundation; version 2 of the License.
+// Gurux Device Framework is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+// See the GNU General Public License for more details.
+//
+// More information of Gurux products: http://www.gurux.org
+//
+// This code is licensed under the GNU General Public License v2.
+// Full text may be retrieved at http://www.gnu.org/licenses/gpl-2.0.txt
+//---------------------------------------------------------------------------
+
+
+package gurux.net.android.ui.benchmark;
+
+import android.os.Debug;
+
+import java.util.Arrays;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import gurux.net.GXNet;
+import gurux.net.GXReceivedData;
+import gurux.net.IGXReceiveHandler;
+
+/**
+ * Throughput and latency benchmark of the network connection.
+ * <p>
+ * In request/response mode the peer must echo the sent data. Concurrency
+ * is the amount of requests that can wait for the response at the same
+ * time. Responses are matched to the requests in the order they are sent.
+ * In fire-and-forget mode concurrency is the amount of sending threads and
+ * latency is the time that send takes. Received data is discarded while
+ * the benchmark is running.
+ * </p>
+ */
+public class Benchmark implements IGXReceiveHandler {
+
+    /**
+     * How long response is waited in milliseconds.
+     */
+    private static final int RESPONSE_TIMEOUT = 5000;
+
+    private final GXNet mNet;
+    private final int mSize;
+    private final int mCount;
+    private final int mConcurrency;
+    private final boolean mRequestResponse;
+
+    /**
+     * Send times of the requests in nanoseconds.
+     */
+    private final AtomicLongArray mSendTimes;
+
+    /**
+     * Latencies of the messages in nanoseconds. Zero if message is not
+     * completed.
+     */
+    private final AtomicLongArray mLatencies;
+
+    /**
+     * Requests that can wait for the response.
+     */
+    private final Semaphore mWindow;
+
+    /**
+     * Amount of started messages.
+     */
+    private final AtomicInteger mStarted = new AtomicInteger();
+
+    /**
+     * Amount of completed messages.
+     */
+    private final AtomicInteger mCompleted = new AtomicInteger();
+
+    /**
+     * Amount of running senders.
+     */
+    private final AtomicInteger mSenders = new AtomicInteger();
+
+    /**
+     * Received bytes. Accessed only from the receive thread.
+     */
+    private long mReceived;
+
+    private IGXReceiveHandler mPrevious;
+    private long mGcCount;
+    private long mBlockingGcCount;
+    private volatile long mStartTime;
+    private volatile long mEndTime;
+    private volatile boolean mStopped;
+    private volatile String mError;
+
+    /**
+     * Constructor.
+     *
+     * @param net             Network connection.
+     * @param size            Message size in bytes.
+     * @param count           Amount of messages.
+     * @param concurrency     Amount of concurrent messages.
+     * @param requestResponse Is response waited for each message.
+     */
+    public Benchmark(GXNet net, int size, int count, int concurrency, boolean requestResponse) {
+        if (size < 1 || count < 1 || concurrency < 1) {
+            throw new IllegalArgumentException("Invalid benchmark parameters.");
+        }
+        mNet = net;
+        mSize = size;
+        mCount = count;
+        mConcurrency = concurrency;
+        mRequestResponse = requestResponse;
+        mSendTimes = new AtomicLongArray(count);
+        mLatencies = new AtomicLongArray(count);
+        mWindow = new Semaphore(concurrency);
+    }
+
+    /**
+     * Start the benchmark.
+     */
+    public void start() {
+        if (!mNet.isOpen()) {
+            throw new RuntimeException("Network connection is not open.");
+        }
+        mPrevious = mNet.getReceiveHandler();
+        mNet.setReceiveHandler(this);
+        mGcCount = getRuntimeStat("art.gc.gc-count");
+        mBlockingGcCount = getRuntimeStat("art.gc.blocking-gc-count");
+        mStartTime = System.nanoTime();
+        final byte[] data = new byte[mSize];
+        for (int pos = 0; pos != data.length; ++pos) {
+            data[pos] = (byte) pos;
+        }
+        int threads = mRequestResponse ? 1 : mConcurrency;
+        mSenders.set(threads);
+        for (int pos = 0; pos != threads; ++pos) {
+            new Thread(() -> send(data), "benchmark").start();
+        }
+    }
+
+    /**
+     * Stop the benchmark.
+     */
+    public void stop() {
+        mStopped = true;
+        finish();
+    }
+
+    /**
+     * Send messages until all messages are sent.
+     *
+     * @param data Sent message.
+     */
+    private void send(byte[] data) {
+        try {
+            int index;
+            while (!mStopped && (index = mStarted.getAndIncrement()) < mCount) {
+                if (mRequestResponse) {
+                    if (!mWindow.tryAcquire(RESPONSE_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                        throw new RuntimeException("Response timeout.");
+                    }
+                    mSendTimes.set(index, System.nanoTime());
+                    mNet.send(data);
+                } else {
+                    long start = System.nanoTime();
+                    mNet.send(data);
+                    mLatencies.set(index, Math.max(1, System.nanoTime() - start));
+                    if (mCompleted.incrementAndGet() == mCount) {
+                        finish();
+                    }
+                }
+            }
+            if (mRequestResponse && !mStopped) {
+                // Wait responses of the last requests.
+                if (!mWindow.tryAcquire(mConcurrency, RESPONSE_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                    throw new RuntimeException("Response timeout.");
+                }
+            }
+        } catch (Exception ex) {
+            mError = ex.getMessage();
+            mStopped = true;
+        } finally {
+            if (mSenders.decrementAndGet() == 0) {
+                finish();
+            }
+        }
+    }
+
+    /**
+     * Match received bytes to the sent requests.
+     */
+    @Override
+    public void onReceived(GXNet sender, GXReceivedData data) {
+        if (!mRequestResponse) {
+            return;
+        }
+        long now = System.nanoTime();
+        mReceived += data.getCount();
+        int index = mCompleted.get();
+        while (index < mCount && mReceived >= (long) (index + 1) * mSize) {
+            mLatencies.set(index, Math.max(1, now - mSendTimes.get(index)));
+            index = mCompleted.incrementAndGet();
+            mWindow.release();
+        }
+    }
+
+    /**
+     * Stop measuring and restore the receive handler.
+     */
+    private synchronized void finish() {
+        if (mEndTime == 0) {
+            mEndTime = System.nanoTime();
+            if (mNet.getReceiveHandler() == this) {
+                mNet.setReceiveHandler(mPrevious);
+            }
+        }
+    }
+
+    /**
+     * Is benchmark running.
+     *
+     * @return True, if benchmark is running.
+     */
+    public boolean isRunning() {
+        return mStartTime != 0 && mEndTime == 0;
+    }
+
+    /**
+     * Returns error that stopped the benchmark.
+     *
+     * @return Error message or null.
+     */
+    public String getError() {
+        return mError;
+    }
+
+    /**
+     * Returns amount of completed messages.
+     *
+     * @return Completed messages.
+     */
+    public int getCompleted() {
+        return mCompleted.get();
+    }
+
+    /**
+     * Returns amount of messages.
+     *
+     * @return Amount of messages.
+     */
+    public int getCount() {
+        return mCount;
+    }
+
+    /**
+     * Returns elapsed time.
+     *
+     * @return Elapsed time in milliseconds.
+     */
+    public long getElapsed() {
+        long end = mEndTime;
+        if (end == 0) {
+            end = System.nanoTime();
+        }
+        return (end - mStartTime) / 1000000;
+    }
+
+    /**
+     * Returns throughput of the completed messages.
+     *
+     * @return Messages per second.
+     */
+    public double getMessagesPerSecond() {
+        long elapsed = getElapsed();
+        if (elapsed == 0) {
+            return 0;
+        }
+        return 1000.0 * getCompleted() / elapsed;
+    }
+
+    /**
+     * Returns throughput of the completed messages.
+     *
+     * @return Bytes per second.
+     */
+    public double getBytesPerSecond() {
+        return getMessagesPerSecond() * mSize;
+    }
+
+    /**
+     * Returns latency percentiles of the completed messages.
+     *
+     * @param percentiles Percentiles between 0 and 100.
+     * @return Latencies in microseconds.
+     */
+    public long[] getLatencies(double... percentiles) {
+        long[] values = new long[mCount];
+        int count = 0;
+        for (int pos = 0; pos != mCount; ++pos) {
+            long value = mLatencies.get(pos);
+            if (value != 0) {
+                values[count] = value;
+                ++count;
+            }
+        }
+        Arrays.sort(values, 0, count);
+        long[] ret = new long[percentiles.length];
+        if (count != 0) {
+            for (int pos = 0; pos != percentiles.length; ++pos) {
+                int index = (int) Math.ceil(percentiles[pos] / 100 * count) - 1;
+                ret[pos] = values[Math.max(0, Math.min(count - 1, index))] / 1000;
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Returns amount of garbage collections after the benchmark started.
+     *
+     * @return Amount of garbage collections.
+     */
+    public long getGcCount() {
+        return getRuntimeStat("art.gc.gc-count") - mGcCount;
+    }
+
+    /**
+     * Returns amount of blocking garbage collections after the benchmark
+     * started.
+     *
+     * @return Amount of blocking garbage collections.
+     */
+    public long getBlockingGcCount() {
+        return getRuntimeStat("art.gc.blocking-gc-count") - mBlockingGcCount;
+    }
+
+    /**
+     * Returns runtime statistic.
+     *
+     * @param name Name of the statistic.
+     * @return Value or zero if statistic is not available.
+     */
+    private static long getRuntimeStat(String name) {
+        try {
+            return Long.parseLong(Debug.getRuntimeStat(name));
+        } catch (NumberFormatException ex) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,160 @@
+//
+// --------------------------------------------------------------------------
+//  Gurux Ltd
+//
+//
+//
+// Filename:        $HeadURL$
+//
+// Version:         $Revision$,
+//                  $Date$
+//                  $Author$
+//
+// Copyright (c) Gurux Ltd
+//
+//---------------------------------------------------------------------------
+//
+//  DESCRIPTION
+//
+// This file is a part of Gurux Device Framework.
+//
+// Gurux Device Framework is Open Source software; you can redistribute it
+// and/or modify it under the terms of the GNU General Public License
+// as published by the Free Software Foundation; version 2 of the License.
+// Gurux Device Framework is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+// See the GNU General Public License for more details.
+//
+// More information of Gurux products: http://www.gurux.org
+//
+// This code is licensed under the GNU General Public License v2.
+// Full text may be retrieved at http://www.gnu.org/licenses/gpl-2.0.txt
+//---------------------------------------------------------------------------
+
+
+package gurux.net.android.ui.benchmark;
+
+import android.os.Bundle;
+import android.util.Log;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.Toast;
+
+import androidx.annotation.NonNull;
+import androidx.fragment.app.Fragment;
+import androidx.lifecycle.ViewModelProvider;
+
+import java.util.Locale;
+
+import gurux.net.GXNet;
+import gurux.net.android.R;
+import gurux.net.android.databinding.FragmentBenchmarkBinding;
+import gurux.net.android.ui.home.HomeViewModel;
+
+public class BenchmarkFragment extends Fragment {
+
+    /**
+     * How often results are updated in milliseconds.
+     */
+    private static final int UPDATE_INTERVAL = 500;
+
+    private FragmentBenchmarkBinding binding;
+    private BenchmarkViewModel mBenchmarkViewModel;
+
+    /**
+     * Updates the results while the benchmark is running.
+     */
+    private final Runnable mUpdate = new Runnable() {
+        @Override
+        public void run() {
+            if (binding != null) {
+                showResults();
+                Benchmark benchmark = mBenchmarkViewModel.getBenchmark();
+                if (benchmark != null && benchmark.isRunning()) {
+                    binding.getRoot().postDelayed(this, UPDATE_INTERVAL);
+                }
+            }
+        }
+    };
+
+    public View onCreateView(@NonNull LayoutInflater inflater,
+                             ViewGroup container, Bundle savedInstanceState) {
+        final HomeViewModel homeViewModel = new ViewModelProvider(requireActivity()).get(HomeViewModel.class);
+        mBenchmarkViewModel = new ViewModelProvider(this).get(BenchmarkViewModel.class);
+        binding = FragmentBenchmarkBinding.inflate(inflater, container, false);
+        View root = binding.getRoot();
+        binding.startBtn.setOnClickListener(v -> {
+            Benchmark benchmark = mBenchmarkViewModel.getBenchmark();
+            if (benchmark != null && benchmark.isRunning()) {
+                benchmark.stop();
+                enableUI(false);
+                return;
+            }
+            try {
+                final GXNet net = homeViewModel.getNet().getValue();
+                if (net == null) {
+                    return;
+                }
+                benchmark = new Benchmark(net,
+                        Integer.parseInt(binding.size.getText().toString()),
+                        Integer.parseInt(binding.count.getText().toString()),
+                        Integer.parseInt(binding.concurrency.getText().toString()),
+                        binding.requestResponse.isChecked());
+                benchmark.start();
+                mBenchmarkViewModel.setBenchmark(benchmark);
+                enableUI(true);
+                root.postDelayed(mUpdate, UPDATE_INTERVAL);
+            } catch (Exception ex) {
+                Log.e("Network", String.valueOf(ex.getMessage()));
+                Toast.makeText(getContext(), ex.getMessage(), Toast.LENGTH_SHORT).show();
+            }
+        });
+        Benchmark benchmark = mBenchmarkViewModel.getBenchmark();
+        enableUI(benchmark != null && benchmark.isRunning());
+        mUpdate.run();
+        return root;
+    }
+
+    private void enableUI(boolean running) {
+        if (running) {
+            binding.startBtn.setText(R.string.stop);
+        } else {
+            binding.startBtn.setText(R.string.start);
+        }
+        binding.size.setEnabled(!running);
+        binding.count.setEnabled(!running);
+        binding.concurrency.setEnabled(!running);
+        binding.requestResponse.setEnabled(!running);
+    }
+
+    private void showResults() {
+        Benchmark benchmark = mBenchmarkViewModel.getBenchmark();
+        if (benchmark == null) {
+            return;
+        }
+        long[] latencies = benchmark.getLatencies(50, 99);
+        String text = String.format(Locale.getDefault(),
+                "Messages: %d/%d\nElapsed: %d ms\nThroughput: %.1f msg/s, %.1f kB/s\n"
+                        + "Latency p50: %d µs\nLatency p99: %d µs\nGC: %d (blocking %d)",
+                benchmark.getCompleted(), benchmark.getCount(), benchmark.getElapsed(),
+                benchmark.getMessagesPerSecond(), benchmark.getBytesPerSecond() / 1024,
+                latencies[0], latencies[1],
+                benchmark.getGcCount(), benchmark.getBlockingGcCount());
+        if (benchmark.getError() != null) {
+            text += "\n" + benchmark.getError();
+        }
+        binding.results.setText(text);
+        if (!benchmark.isRunning()) {
+            enableUI(false);
+        }
+    }
+
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        binding.getRoot().removeCallbacks(mUpdate);
+        binding = null;
+    }
+}
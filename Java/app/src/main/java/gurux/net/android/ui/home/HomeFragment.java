@@ -48,8 +48,11 @@ import android.widget.Toast;
 import androidx.annotation.NonNull;
 import androidx.fragment.app.Fragment;
 import androidx.lifecycle.ViewModelProvider;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
 
 import java.util.Locale;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import gurux.common.GXCommon;
 import gurux.common.IGXMediaListener;
@@ -66,6 +69,29 @@ public class HomeFragment extends Fragment implements IGXMediaListener {
 
     private FragmentHomeBinding binding;
     boolean bHex = false;
+    private ReceivedLog mReceivedLog;
+    private ReceivedAdapter mAdapter;
+
+    /**
+     * Is view update already posted.
+     */
+    private final AtomicBoolean mUpdatePending = new AtomicBoolean();
+
+    /**
+     * Rows are updated once for all data that is received between frames.
+     */
+    private final Runnable mUpdate = () -> {
+        mUpdatePending.set(false);
+        if (binding != null) {
+            final RecyclerView receivedData = binding.receivedData;
+            //New rows are followed only if the last row is visible.
+            boolean follow = !receivedData.canScrollVertically(1);
+            mAdapter.refresh();
+            if (follow && mAdapter.getItemCount() != 0) {
+                receivedData.scrollToPosition(mAdapter.getItemCount() - 1);
+            }
+        }
+    };
 
     public View onCreateView(@NonNull LayoutInflater inflater,
                              ViewGroup container, Bundle savedInstanceState) {
@@ -79,7 +105,15 @@ public class HomeFragment extends Fragment implements IGXMediaListener {
         final Button clearBtn = binding.clearBtn;
         final Button sendBtn = binding.sendBtn;
         final CheckBox hexCb = binding.hex;
-        hexCb.setOnCheckedChangeListener((buttonView, isChecked) -> bHex = isChecked);
+        mReceivedLog = homeViewModel.getReceivedLog();
+        mAdapter = new ReceivedAdapter(mReceivedLog);
+        mAdapter.setHex(bHex);
+        binding.receivedData.setLayoutManager(new LinearLayoutManager(getContext()));
+        binding.receivedData.setAdapter(mAdapter);
+        hexCb.setOnCheckedChangeListener((buttonView, isChecked) -> {
+            bHex = isChecked;
+            mAdapter.setHex(isChecked);
+        });
         openBtn.setOnClickListener(v -> {
             try {
                 final GXNet net = homeViewModel.getNet().getValue();
@@ -96,7 +130,10 @@ public class HomeFragment extends Fragment implements IGXMediaListener {
             }
         });
 
-        clearBtn.setOnClickListener(v -> binding.receivedData.setText(""));
+        clearBtn.setOnClickListener(v -> {
+            mReceivedLog.clear();
+            mAdapter.refresh();
+        });
 
         sendBtn.setOnClickListener(v -> {
             try {
@@ -127,6 +164,13 @@ public class HomeFragment extends Fragment implements IGXMediaListener {
     @Override
     public void onDestroyView() {
         super.onDestroyView();
+        //Connection is kept over the view, so the listener must be removed.
+        final HomeViewModel homeViewModel = new ViewModelProvider(requireActivity()).get(HomeViewModel.class);
+        final GXNet net = homeViewModel.getNet().getValue();
+        if (net != null) {
+            net.removeListener(this);
+        }
+        binding.receivedData.removeCallbacks(mUpdate);
         binding = null;
     }
 
@@ -137,10 +181,11 @@ public class HomeFragment extends Fragment implements IGXMediaListener {
 
     @Override
     public void onReceived(Object sender, ReceiveEventArgs e) {
-        if (bHex) {
-            binding.receivedData.append(GXCommon.bytesToHex((byte[]) e.getData()));
-        } else {
-            binding.receivedData.append(new String((byte[]) e.getData()));
+        //Data is formatted when the row is shown.
+        mReceivedLog.add((byte[]) e.getData());
+        final FragmentHomeBinding tmp = binding;
+        if (tmp != null && mUpdatePending.compareAndSet(false, true)) {
+            tmp.receivedData.post(mUpdate);
         }
     }
 
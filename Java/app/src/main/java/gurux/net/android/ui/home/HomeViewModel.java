@@ -42,7 +42,13 @@ import gurux.net.GXNet;
 
 public class HomeViewModel extends ViewModel {
 
+    /**
+     * Maximum amount of received entries that are shown.
+     */
+    private static final int LOG_CAPACITY = 2000;
+
     private final MutableLiveData<GXNet> mNet = new MutableLiveData<>();
+    private final ReceivedLog mReceivedLog = new ReceivedLog(LOG_CAPACITY);
 
     public LiveData<GXNet> getNet() {
         return mNet;
@@ -51,4 +57,11 @@ public class HomeViewModel extends ViewModel {
     public void setNet(GXNet net) {
         mNet.setValue(net);
     }
+
+    /**
+     * Received data is kept over the view.
+     */
+    public ReceivedLog getReceivedLog() {
+        return mReceivedLog;
+    }
 }
\ No newline at end of file
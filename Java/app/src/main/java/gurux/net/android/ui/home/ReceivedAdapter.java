@@ -0,0 +1,140 @@
+//
+// --------------------------------------------------------------------------
+//  Gurux Ltd
+//
+//
+//
+// Filename:        $HeadURL$
+//
+// Version:         $Revision$,
+//                  $Date$
+//                  $Author$
+//
+// Copyright (c) Gurux Ltd
+//
+//---------------------------------------------------------------------------
+//
+//  DESCRIPTION
+//
+// This file is a part of Gurux Device Framework.
+//
+// Gurux Device Framework is Open Source software; you can redistribute it
+// and/or modify it under the terms of the GNU General Public License
+// as published by the Free Software Foundation; version 2 of the License.
+// Gurux Device Framework is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+// See the GNU General Public License for more details.
+//
+// More information of Gurux products: http://www.gurux.org
+//
+// This code is licensed under the GNU General Public License v2.
+// Full text may be retrieved at http://www.gnu.org/licenses/gpl-2.0.txt
+//---------------------------------------------------------------------------
+
+
+package gurux.net.android.ui.home;
+
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.RecyclerView;
+
+import gurux.common.GXCommon;
+import gurux.net.android.R;
+
+/**
+ * Shows the received data. Only visible rows are formatted.
+ */
+public class ReceivedAdapter extends RecyclerView.Adapter<ReceivedAdapter.ViewHolder> {
+
+    private final ReceivedLog mLog;
+    private boolean mHex;
+
+    /**
+     * Amount of shown entries.
+     */
+    private int mSize;
+
+    /**
+     * Total amount of entries when rows were updated last time.
+     */
+    private long mTotal;
+
+    public ReceivedAdapter(ReceivedLog log) {
+        mLog = log;
+        mSize = log.size();
+        mTotal = log.getTotal();
+    }
+
+    /**
+     * Show data as hex.
+     *
+     * @param value True, if data is shown as hex.
+     */
+    public void setHex(boolean value) {
+        if (mHex != value) {
+            mHex = value;
+            notifyItemRangeChanged(0, mSize);
+        }
+    }
+
+    /**
+     * Update rows after entries are added or removed from the log.
+     */
+    public void refresh() {
+        int size = mLog.size();
+        long total = mLog.getTotal();
+        if (total < mTotal) {
+            // Log is cleared.
+            notifyItemRangeRemoved(0, mSize);
+            mSize = 0;
+            mTotal = 0;
+        }
+        int added = (int) Math.min(total - mTotal, size);
+        int removed = mSize + added - size;
+        mSize = size;
+        mTotal = total;
+        if (removed != 0) {
+            notifyItemRangeRemoved(0, removed);
+        }
+        if (added != 0) {
+            notifyItemRangeInserted(size - added, added);
+        }
+    }
+
+    @NonNull
+    @Override
+    public ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(parent.getContext())
+                .inflate(R.layout.item_received, parent, false);
+        return new ViewHolder(view);
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
+        byte[] data = mLog.get(position);
+        if (mHex) {
+            holder.mText.setText(GXCommon.bytesToHex(data));
+        } else {
+            holder.mText.setText(new String(data));
+        }
+    }
+
+    @Override
+    public int getItemCount() {
+        return mSize;
+    }
+
+    static class ViewHolder extends RecyclerView.ViewHolder {
+        private final TextView mText;
+
+        ViewHolder(View view) {
+            super(view);
+            mText = (TextView) view;
+        }
+    }
+}
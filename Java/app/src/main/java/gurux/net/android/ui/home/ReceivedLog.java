@@ -0,0 +1,123 @@
+//
+// --------------------------------------------------------------------------
+//  Gurux Ltd
+//
+//
+//
+// Filename:        $HeadURL$
+//
+// Version:         $Revision$,
+//                  $Date$
+//                  $Author$
+//
+// Copyright (c) Gurux Ltd
+//
+//---------------------------------------------------------------------------
+//
+//  DESCRIPTION
+//
+// This file is a part of Gurux Device Framework.
+//
+// Gurux Device Framework is Open Source software; you can redistribute it
+// and/or modify it under the terms of the GNU General Public License
+// as published by the Free Software Foundation; version 2 of the License.
+// Gurux Device Framework is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+// See the GNU General Public License for more details.
+//
+// More information of Gurux products: http://www.gurux.org
+//
+// This code is licensed under the GNU General Public License v2.
+// Full text may be retrieved at http://www.gnu.org/licenses/gpl-2.0.txt
+//---------------------------------------------------------------------------
+
+
+package gurux.net.android.ui.home;
+
+import java.util.Arrays;
+
+/**
+ * Bounded ring buffer of received data.
+ * <p>
+ * When the log is full, the oldest entry is overwritten, so memory use
+ * doesn't grow on busy links. Data is stored as it's received and it's
+ * formatted only when the row is shown.
+ * </p>
+ */
+public class ReceivedLog {
+
+    private final byte[][] mEntries;
+
+    /**
+     * Amount of entries that are added after the log was cleared.
+     */
+    private long mTotal;
+
+    private int mSize;
+
+    /**
+     * Constructor.
+     *
+     * @param capacity Maximum amount of entries.
+     */
+    public ReceivedLog(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity");
+        }
+        mEntries = new byte[capacity][];
+    }
+
+    /**
+     * Add received data. Oldest entry is removed if the log is full.
+     *
+     * @param data Received data.
+     */
+    public synchronized void add(byte[] data) {
+        mEntries[(int) (mTotal % mEntries.length)] = data;
+        ++mTotal;
+        if (mSize < mEntries.length) {
+            ++mSize;
+        }
+    }
+
+    /**
+     * Returns entry.
+     *
+     * @param index Index of the entry. Zero is the oldest entry.
+     * @return Received data.
+     */
+    public synchronized byte[] get(int index) {
+        if (index < 0 || index >= mSize) {
+            throw new IndexOutOfBoundsException();
+        }
+        return mEntries[(int) ((mTotal - mSize + index) % mEntries.length)];
+    }
+
+    /**
+     * Returns amount of entries.
+     *
+     * @return Amount of entries.
+     */
+    public synchronized int size() {
+        return mSize;
+    }
+
+    /**
+     * Returns amount of entries that are added after the log was cleared.
+     *
+     * @return Amount of added entries.
+     */
+    public synchronized long getTotal() {
+        return mTotal;
+    }
+
+    /**
+     * Remove all entries.
+     */
+    public synchronized void clear() {
+        Arrays.fill(mEntries, null);
+        mTotal = 0;
+        mSize = 0;
+    }
+}
@@ -25,3 +25,4 @@ dependencyResolutionManagement {
 rootProject.name = "Gurux.Net.Android"
 include(":app")
 include(":Net")
+include(":NetCore")